@@ -0,0 +1,24 @@
+#!/bin/bash
+# Build the project and run the JMH benchmarks from the bench directory
+# All arguments are passed on to JMH, eg: ./bench.sh Curve25519 -f 1 -wi 3 -i 5
+# The GC profiler is always enabled, so every result also reports the allocation rate (gc.alloc.rate.norm = bytes per operation)
+JMH_VERSION=1.21
+MAVEN_CENTRAL=https://repo1.maven.org/maven2
+
+# fetch JMH and its dependencies once, they are not needed to build the wizard itself
+mkdir -p lib/bench
+for artifact in org/openjdk/jmh/jmh-core/$JMH_VERSION/jmh-core-$JMH_VERSION.jar \
+                org/openjdk/jmh/jmh-generator-annprocess/$JMH_VERSION/jmh-generator-annprocess-$JMH_VERSION.jar \
+                net/sf/jopt-simple/jopt-simple/4.6/jopt-simple-4.6.jar \
+                org/apache/commons/commons-math3/3.2/commons-math3-3.2.jar; do
+    if [ ! -f lib/bench/$(basename $artifact) ]; then
+        curl -sSfL -o lib/bench/$(basename $artifact) $MAVEN_CENTRAL/$artifact || exit 1
+    fi
+done
+
+./build.sh > /dev/null
+find bench -name "*.java" > bench-sources.txt
+javac -cp "build:lib/*:lib/bench/*" -d build-bench @bench-sources.txt || exit 1
+java -cp "build-bench:build:lib/*:lib/bench/*" org.openjdk.jmh.Main -prof gc "$@"
+
+exit 0
@@ -0,0 +1,64 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.bench;
+
+import org.openjdk.jmh.annotations.*;
+import wgWizard.config.Configuration;
+import wgWizard.config.IPv4Cidr;
+import wgWizard.config.IPv4Netmask;
+import wgWizard.config.Keypair;
+import wgWizard.helper.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Writing the config file of one site in a site-to-site setup
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ConfigurationBenchmark {
+
+    private File directory;
+    private String filePath;
+    private Configuration site1;
+    private Configuration site2;
+
+    @Setup
+    public void setUp() throws IOException {
+        Log.getInstance().setLevel(Level.OFF);
+        directory = Files.createTempDirectory("wgWizard-bench").toFile();
+        filePath = new File(directory, "site1.conf").getPath();
+
+        site1 = new Configuration("site1", new Keypair(), "203.0.113.1", 51820, "10.0.0.1", "24", "wg0");
+        site2 = new Configuration("site2", new Keypair(), "203.0.113.2", 51820, "10.0.0.2", "24", "wg0");
+        site1.setPsk(Keypair.genpsk());
+        site2.setKeepAliveSeconds(25);
+        site2.addLocalNetwork(IPv4Cidr.of("192.168.1.0", IPv4Netmask.of("24")));
+    }
+
+    @TearDown
+    public void tearDown() {
+        new File(filePath).delete();
+        directory.delete();
+    }
+
+    @Benchmark
+    public void generateConfigFile() throws IOException {
+        site1.generateConfigFile(site2, filePath);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.bench;
+
+import org.openjdk.jmh.annotations.*;
+import wgWizard.config.Curve25519Evaluator;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the 26-bit and the 51-bit limb backends of Curve25519,
+ * for the base point (public key derivation) and for any other point
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class Curve25519Benchmark {
+
+    @Param({Curve25519Evaluator.RADIX26, Curve25519Evaluator.RADIX51})
+    public String backend;
+
+    private Curve25519Evaluator evaluator;
+    private byte[] privateKey = new byte[32];
+    private byte[] publicKey = new byte[32];
+    private byte[] result = new byte[32];
+
+    @Setup
+    public void setUp() {
+        evaluator = Curve25519Evaluator.create(backend);
+        Random random = new Random(25519);
+        random.nextBytes(privateKey);
+        random.nextBytes(publicKey);
+        publicKey[31] &= 0x7F;
+    }
+
+    @Benchmark
+    public byte[] fixedBase() {
+        evaluator.evaluate(result, 0, privateKey, null);
+        return result;
+    }
+
+    @Benchmark
+    public byte[] variableBase() {
+        evaluator.evaluate(result, 0, privateKey, publicKey);
+        return result;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.bench;
+
+import org.openjdk.jmh.annotations.*;
+import wgWizard.config.ClientToSite.SiteConfiguration;
+import wgWizard.config.Configuration;
+import wgWizard.config.Export;
+import wgWizard.config.Keypair;
+import wgWizard.helper.Compression;
+import wgWizard.helper.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Exporting a client-to-site setup into the encrypted ZIP with every compression profile
+ * The keys are generated once up front, so only writing, compressing and encrypting is measured.
+ * The size of the ZIP is printed at the end of every trial, to compare the time with the ratio.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ExportBenchmark {
+
+    @Param({"100", "10000"})
+    public int clients;
+
+    // auto chooses the compression of every file by its type and size
+    @Param({"auto", "store", "fast", "default", "ultra"})
+    public String compression;
+
+    private File directory;
+    private SiteConfiguration site;
+    private List<Configuration> clientConfigs;
+    private Compression profile;
+
+    @Setup
+    public void setUp() throws IOException {
+        Log.getInstance().setLevel(Level.OFF);
+        directory = Files.createTempDirectory("wgWizard-bench").toFile();
+        profile = compression.equals("auto") ? null : Compression.of(compression);
+
+        site = new SiteConfiguration("site", new Keypair(), "203.0.113.1", 51820, "10.0.0.1", "16", "wg0");
+        List<Keypair> keypairs = Keypair.generateParallel(clients);
+        clientConfigs = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            Configuration client = new Configuration("client-" + (i + 1), keypairs.get(i), "203.0.113.1", 51820,
+                    "10.0." + ((i + 2) / 256) + "." + ((i + 2) % 256), "16", "wg0");
+            client.setPsk(Keypair.genpsk());
+            clientConfigs.add(client);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        File zip = new File(directory, "wireguard-configuration.zip");
+        System.out.println();
+        System.out.println("ZIP size with " + compression + " compression and " + clients + " clients: " + zip.length() + " bytes");
+        File[] dirList = directory.listFiles();
+        if (dirList != null) {
+            for (File file : dirList) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public void export() throws IOException {
+        Export.clientToSite(site, clientConfigs, directory.getPath()).zip("benchmark", profile).run();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.bench;
+
+import org.openjdk.jmh.annotations.*;
+import wgWizard.config.IPv4Netmask;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of netmasks in both notations and the network address calculation
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class IPv4NetmaskBenchmark {
+
+    // non-constant inputs, so the JIT can not fold the parsing away
+    public String fullNetmask = "255.255.254.0";
+    public String prefixNetmask = "23";
+    public String ip = "192.168.13.37";
+    private IPv4Netmask netmask;
+
+    @Setup
+    public void setUp() {
+        netmask = IPv4Netmask.of(prefixNetmask);
+    }
+
+    @Benchmark
+    public IPv4Netmask parseNetmask() {
+        return IPv4Netmask.of(fullNetmask);
+    }
+
+    @Benchmark
+    public IPv4Netmask parsePrefix() {
+        return IPv4Netmask.of(prefixNetmask);
+    }
+
+    @Benchmark
+    public String getNetworkAddress() {
+        return IPv4Netmask.getNetworkAddress(ip, netmask);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.bench;
+
+import org.openjdk.jmh.annotations.*;
+import wgWizard.config.Curve25519;
+import wgWizard.config.Keypair;
+import wgWizard.helper.Log;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Key generation: the static Curve25519 entry point, single keypairs, batches and pre-shared keys
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class KeypairBenchmark {
+    private static final int BATCH_SIZE = 100;
+
+    private byte[] privateKey = new byte[32];
+    private byte[] result = new byte[32];
+
+    @Setup
+    public void setUp() {
+        // keep the per-key log messages out of the measurement
+        Log.getInstance().setLevel(Level.OFF);
+        new Random(25519).nextBytes(privateKey);
+    }
+
+    @Benchmark
+    public byte[] eval() {
+        Curve25519.eval(result, 0, privateKey, null);
+        return result;
+    }
+
+    @Benchmark
+    public Keypair newKeypair() {
+        return new Keypair();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<Keypair> generateBatch() {
+        return Keypair.generateBatch(BATCH_SIZE);
+    }
+
+    @Benchmark
+    public String genpsk() {
+        return Keypair.genpsk();
+    }
+}
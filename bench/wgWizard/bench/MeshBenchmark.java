@@ -0,0 +1,77 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.bench;
+
+import org.openjdk.jmh.annotations.*;
+import wgWizard.config.Configuration;
+import wgWizard.config.Export;
+import wgWizard.config.IPv4Cidr;
+import wgWizard.config.Keypair;
+import wgWizard.helper.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Exporting a full mesh into the plain directory, every node with a local network and the shared pre-shared key
+ * 500 nodes are 249500 [Peer] sections in 500 configs. The keys are generated once up front.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class MeshBenchmark {
+
+    @Param({"50", "500"})
+    public int nodes;
+
+    private File directory;
+    private List<Configuration> nodeConfigs;
+
+    @Setup
+    public void setUp() throws IOException {
+        Log.getInstance().setLevel(Level.OFF);
+        directory = Files.createTempDirectory("wgWizard-bench").toFile();
+
+        List<Keypair> keypairs = Keypair.generateParallel(nodes);
+        String psk = Keypair.genpsk();
+        nodeConfigs = new ArrayList<>(nodes);
+        for (int i = 0; i < nodes; i++) {
+            Configuration node = new Configuration("node-" + (i + 1), keypairs.get(i), "198.51." + (i / 256) + "." + (i % 256), 51820,
+                    "10.0." + ((i + 1) / 256) + "." + ((i + 1) % 256), "16", 25, "wg0");
+            node.addLocalNetwork(IPv4Cidr.of((172 << 24) | (16 << 16) | (i << 8), 24));
+            node.setPsk(psk);
+            nodeConfigs.add(node);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] dirList = directory.listFiles();
+        if (dirList != null) {
+            for (File file : dirList) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public void export() throws IOException {
+        Export.mesh(nodeConfigs, directory.getPath()).run();
+    }
+}
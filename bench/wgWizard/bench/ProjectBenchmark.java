@@ -0,0 +1,77 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.bench;
+
+import org.openjdk.jmh.annotations.*;
+import wgWizard.config.ClientToSite.SiteConfiguration;
+import wgWizard.config.Configuration;
+import wgWizard.config.Keypair;
+import wgWizard.config.Project;
+import wgWizard.helper.Log;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Saving and opening a client-to-site project, every client with its keys and a pre-shared key
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ProjectBenchmark {
+
+    @Param({"1000", "50000"})
+    public int clients;
+
+    private Path file;
+    private Project project;
+
+    @Setup
+    public void setUp() throws IOException {
+        Log.getInstance().setLevel(Level.OFF);
+        file = Files.createTempFile("wgWizard-bench", ".wgp");
+
+        SiteConfiguration site = new SiteConfiguration("site", new Keypair(), "203.0.113.1", 51820, "10.0.0.1", "16", "wg0");
+        // the keys do not have to be unique to measure the file format
+        List<Keypair> keypairs = Keypair.generateParallel(1000);
+        List<Configuration> clientConfigs = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            Configuration client = new Configuration("client-" + (i + 1), keypairs.get(i % keypairs.size()), "203.0.113.1", 51820,
+                    "10.0." + ((i + 2) / 256) + "." + ((i + 2) % 256), "16", "wg0");
+            client.setPsk(Keypair.genpsk());
+            clientConfigs.add(client);
+        }
+        project = Project.clientToSite(site, clientConfigs);
+        project.save(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        project.save(file);
+    }
+
+    @Benchmark
+    public Project load() throws IOException {
+        return Project.load(file);
+    }
+}
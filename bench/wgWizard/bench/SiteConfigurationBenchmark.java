@@ -0,0 +1,87 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.bench;
+
+import org.openjdk.jmh.annotations.*;
+import wgWizard.config.ClientToSite.SiteConfiguration;
+import wgWizard.config.Configuration;
+import wgWizard.config.Keypair;
+import wgWizard.config.Peer;
+import wgWizard.helper.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Writing the config file of the site in a client-to-site setup, for a growing number of clients
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class SiteConfigurationBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int peers;
+
+    private File directory;
+    private String filePath;
+    private SiteConfiguration site;
+    private List<Configuration> clients;
+    private List<Peer> peerList;
+
+    @Setup
+    public void setUp() throws IOException {
+        Log.getInstance().setLevel(Level.OFF);
+        directory = Files.createTempDirectory("wgWizard-bench").toFile();
+        filePath = new File(directory, "site.conf").getPath();
+
+        site = new SiteConfiguration("site", new Keypair(), "203.0.113.1", 51820, "10.0.0.1", "16", "wg0");
+        site.setKeepAliveSeconds(25);
+        List<Keypair> keypairs = Keypair.generateParallel(peers);
+        clients = new ArrayList<>(peers);
+        for (int i = 0; i < peers; i++) {
+            Configuration client = new Configuration();
+            client.setName("client-" + (i + 1));
+            client.setKeypair(keypairs.get(i));
+            client.setIp("10.0." + ((i + 2) / 256) + "." + ((i + 2) % 256));
+            client.setNetmask("16");
+            client.setPsk(Keypair.genpsk());
+            clients.add(client);
+        }
+        peerList = new ArrayList<>(peers);
+        for (Configuration client : clients) {
+            peerList.add(SiteConfiguration.clientPeer(client));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        new File(filePath).delete();
+        directory.delete();
+    }
+
+    @Benchmark
+    public void generateConfigFile() throws IOException {
+        site.generateConfigFile(clients, filePath);
+    }
+
+    @Benchmark
+    public void generateConfigFileFromPeers() throws IOException {
+        site.generateConfigFile(peerList.iterator(), filePath);
+    }
+}
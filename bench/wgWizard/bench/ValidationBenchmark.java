@@ -0,0 +1,49 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.bench;
+
+import org.openjdk.jmh.annotations.*;
+import wgWizard.controller.S2SController;
+import wgWizard.helper.Log;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Input validation as done by the controllers for every field on save.
+ * The controllers are JavaFX classes, so this benchmark needs the JavaFX runtime
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ValidationBenchmark {
+
+    public String validIp = "192.168.13.37";
+    public String invalidIp = "192.168.13.256";
+
+    @Setup
+    public void setUp() {
+        // invalid input is logged as a warning
+        Log.getInstance().setLevel(Level.OFF);
+    }
+
+    @Benchmark
+    public boolean validateIPv4Valid() {
+        return S2SController.validateIPv4(validIp);
+    }
+
+    @Benchmark
+    public boolean validateIPv4Invalid() {
+        return S2SController.validateIPv4(invalidIp);
+    }
+}
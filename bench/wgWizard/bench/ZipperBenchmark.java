@@ -0,0 +1,88 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.bench;
+
+import org.openjdk.jmh.annotations.*;
+import wgWizard.config.Keypair;
+import wgWizard.helper.ZipWriter;
+import wgWizard.helper.Zipper;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packing an output directory into the password protected ZIP, compared to streaming the same files into it
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ZipperBenchmark {
+
+    @Param({"6", "100"})
+    public int files;
+
+    private File directory;
+    private File zip;
+    private byte[][] contents;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("wgWizard-bench").toFile();
+        zip = new File(directory, "wireguard-configuration.zip");
+        contents = new byte[files][];
+        for (int i = 1; i <= files; i++) {
+            // roughly the size and content of a client config
+            String content = "[Interface]\nPrivateKey = " + Keypair.genpsk() + "\nListenPort = 0\n\n" +
+                    "[Peer]\nPublicKey = " + Keypair.genpsk() + "\nEndpoint = 203.0.113.1:51820\n" +
+                    "AllowedIPs = 10.0.0.1/32,192.168.1.0/24\n";
+            contents[i - 1] = content.getBytes(StandardCharsets.UTF_8);
+            Files.write(new File(directory, "client-" + i + ".conf").toPath(), contents[i - 1]);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteZip() {
+        zip.delete();
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] dirList = directory.listFiles();
+        if (dirList != null) {
+            for (File file : dirList) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public void pack() throws IOException {
+        Zipper.pack(directory.getPath(), "benchmark");
+    }
+
+    @Benchmark
+    public void stream() throws IOException {
+        try (ZipWriter writer = new ZipWriter(new BufferedOutputStream(new FileOutputStream(zip)), "benchmark")) {
+            for (int i = 0; i < files; i++) {
+                writer.putNextEntry("client-" + (i + 1) + ".conf");
+                writer.write(contents[i]);
+            }
+        }
+    }
+}
@@ -1,10 +1,18 @@
 #!/bin/bash
-find -name "*.java" > sources.txt
+find src -name "*.java" > sources.txt
 javac -cp ".:lib/*" -d build @sources.txt
 cp -r src/wgWizard/res/* build/
 cp -r src/wgWizard/res build/wgWizard/
 cp -r lib/ build/
 cp src/META-INF/MANIFEST.MF build/
+
+# the core jar is compiled on its own, without JavaFX and the GUI classes on the classpath,
+# so any dependency of the model on the GUI breaks the build
+find src/wgWizard/config src/wgWizard/helper src/wgWizard/cli -name "*.java" > core-sources.txt
+javac -d build-core @core-sources.txt || exit 1
+cp -r src/wgWizard/res/files build-core/
+(cd build-core && jar -cfm ../build/wgWizard-core.jar ../src/META-INF/MANIFEST-core.MF wgWizard files)
+
 cd build
 jar -cvfm wgWizard.jar MANIFEST.MF *
 
@@ -0,0 +1,116 @@
+package wgWizard;
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+import org.junit.jupiter.api.Test;
+import wgWizard.config.ClientToSite.ClientImport;
+import wgWizard.config.Configuration;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientImportTest {
+
+    private static List<Configuration> read(ClientImport clientImport, String input) throws IOException {
+        return clientImport.read(new BufferedReader(new StringReader(input)));
+    }
+
+    @Test
+    void readCsv() throws IOException {
+        ClientImport clientImport = new ClientImport();
+        List<Configuration> clients = read(clientImport, "\uFEFF# roster\n" +
+                "10.0.0.2,24,alice\n" +
+                "\n" +
+                "10.0.0.3/24\n" +
+                "\"10.0.0.4\";\"255.255.255.0\"\n");
+        assertFalse(clientImport.hasErrors());
+        assertEquals(3, clients.size());
+        assertEquals("alice", clients.get(0).getName());
+        assertEquals("10.0.0.2", clients.get(0).getIp().toString());
+        assertEquals("24", clients.get(0).getNetmaskPrefix());
+        assertEquals("client-2", clients.get(1).getName());
+        assertEquals("10.0.0.3", clients.get(1).getIp().toString());
+        assertEquals("client-3", clients.get(2).getName());
+        assertEquals("24", clients.get(2).getNetmaskPrefix());
+    }
+
+    @Test
+    void readCsvHeader() throws IOException {
+        ClientImport clientImport = new ClientImport();
+        List<Configuration> clients = read(clientImport, "Name,IP,Mask\nbob,10.0.0.2,16\n");
+        assertFalse(clientImport.hasErrors());
+        assertEquals(1, clients.size());
+        assertEquals("bob", clients.get(0).getName());
+        assertEquals("16", clients.get(0).getNetmaskPrefix());
+    }
+
+    @Test
+    void readJsonLines() throws IOException {
+        ClientImport clientImport = new ClientImport();
+        List<Configuration> clients = read(clientImport,
+                "{\"ip\": \"10.0.0.2\", \"mask\": 24, \"name\": \"al\\u0069ce\", \"comment\": null}\n" +
+                        "{\"ip\":\"10.0.0.3/255.255.255.0\",\"enabled\":true}\n" +
+                        "10.0.0.4,24\n");
+        assertFalse(clientImport.hasErrors());
+        assertEquals(3, clients.size());
+        assertEquals("alice", clients.get(0).getName());
+        assertEquals("24", clients.get(0).getNetmaskPrefix());
+        assertEquals("client-2", clients.get(1).getName());
+        assertEquals("10.0.0.3", clients.get(1).getIp().toString());
+    }
+
+    @Test
+    void errorsHaveLineNumbers() throws IOException {
+        ClientImport clientImport = new ClientImport();
+        List<Configuration> clients = read(clientImport, "10.0.0.2,24\n" +
+                "10.0.0.300,24\n" +
+                "10.0.0.3,33\n" +
+                "\n" +
+                "10.0.0.2,24\n" +
+                "10.0.0.4\n" +
+                "10.0.0.5,24,../evil\n" +
+                "{\"ip\": \"10.0.0.6\", \"mask\": [24]}\n" +
+                "{\"ip\": \"10.0.0.7\"\n" +
+                "10.0.0.8/24,24\n" +
+                "10.0.0.9,24,client-1\n" +
+                "10.0.0.10,24,site\n" +
+                "10.0.0.11,24,Client-1\n");
+        assertEquals(1, clients.size());
+        assertEquals(11, clientImport.getErrorCount());
+        List<String> errors = clientImport.getErrors();
+        assertEquals("line 2: invalid IP '10.0.0.300'", errors.get(0));
+        assertEquals("line 3: invalid mask '33'", errors.get(1));
+        assertEquals("line 5: duplicate IP '10.0.0.2'", errors.get(2));
+        assertEquals("line 6: missing mask for '10.0.0.4'", errors.get(3));
+        assertEquals("line 7: invalid name '../evil'", errors.get(4));
+        assertTrue(errors.get(5).startsWith("line 8: unsupported JSON value"));
+        assertTrue(errors.get(6).startsWith("line 9: "));
+        assertEquals("line 10: mask given twice for '10.0.0.8/24'", errors.get(7));
+        assertEquals("line 11: duplicate name 'client-1'", errors.get(8));
+        // the files of the site would be overwritten
+        assertEquals("line 12: 'site' is the name of the site", errors.get(9));
+        assertEquals("line 13: duplicate name 'Client-1'", errors.get(10));
+    }
+
+    @Test
+    void errorsAreLimited() throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < ClientImport.MAX_ERRORS + 50; i++) {
+            input.append("invalid\n");
+        }
+        ClientImport clientImport = new ClientImport();
+        assertTrue(read(clientImport, input.toString()).isEmpty());
+        assertEquals(ClientImport.MAX_ERRORS + 50, clientImport.getErrorCount());
+        assertEquals(ClientImport.MAX_ERRORS, clientImport.getErrors().size());
+    }
+}
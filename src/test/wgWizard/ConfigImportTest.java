@@ -0,0 +1,214 @@
+package wgWizard;
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+import org.junit.jupiter.api.Test;
+import wgWizard.config.ClientToSite.SiteConfiguration;
+import wgWizard.config.ConfigImport;
+import wgWizard.config.Configuration;
+import wgWizard.config.IPv4Cidr;
+import wgWizard.config.Keypair;
+import wgWizard.config.Project;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigImportTest {
+
+    private static Project read(ConfigImport configImport, String content, Project.Type type) throws IOException {
+        return configImport.read(Channels.newChannel(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8))), "site", type);
+    }
+
+    @Test
+    void siteWithClients() throws IOException {
+        Path directory = Files.createTempDirectory("wgWizard-import");
+        try {
+            SiteConfiguration site = new SiteConfiguration("hub", new Keypair(), "203.0.113.1", 51820, "10.0.0.1", "16", 25, "wg0");
+            List<Keypair> keypairs = Keypair.generateBatch(50);
+            List<Configuration> clients = new ArrayList<>();
+            for (int i = 0; i < 5000; i++) {
+                Configuration client = new Configuration();
+                client.setName("client-" + (i + 1));
+                client.setIp(String.format("10.0.%d.%d", (i + 2) / 256, (i + 2) % 256));
+                client.setNetmask("16");
+                client.setKeypair(keypairs.get(i % keypairs.size()));
+                if (i % 2 == 0) {
+                    client.setPsk(Keypair.genpsk());
+                }
+                clients.add(client);
+            }
+            Path hub = directory.resolve("hub.conf");
+            site.generateConfigFile(clients, hub.toString());
+
+            ConfigImport configImport = new ConfigImport();
+            Project project = configImport.read(hub, Project.Type.CLIENT_TO_SITE);
+            assertFalse(configImport.hasErrors(), configImport.getErrors().toString());
+            SiteConfiguration imported = project.getSite();
+            assertEquals("hub", imported.getName());
+            assertEquals(site.getKeypair().getPrivateKey(), imported.getKeypair().getPrivateKey());
+            assertEquals(site.getKeypair().getPublicKey(), imported.getKeypair().getPublicKey());
+            assertEquals(51820, imported.getListenPort());
+            assertEquals(25, imported.getKeepAliveSeconds());
+            assertEquals(clients.size(), project.getClients().size());
+            for (int i = 0; i < clients.size(); i++) {
+                Configuration client = project.getClients().get(i);
+                assertEquals(clients.get(i).getKeypair().getPublicKey(), client.getKeypair().getPublicKey());
+                assertNull(client.getKeypair().getPrivateKey());
+                assertEquals(clients.get(i).getPsk(), client.getPsk());
+                assertEquals(clients.get(i).getIp(), client.getIp());
+            }
+
+            // the same site config is written again, the clients keep their own files
+            imported.setIp("10.0.0.1");
+            imported.setNetmask("16");
+            Path out = Files.createDirectory(directory.resolve("out"));
+            project.export(out.toString()).run();
+            assertArrayEquals(Files.readAllBytes(hub), Files.readAllBytes(out.resolve("hub.conf")));
+            assertFalse(Files.exists(out.resolve("client-1.conf")));
+        } finally {
+            TestFiles.delete(directory.toFile());
+        }
+    }
+
+    @Test
+    void siteToSite() throws IOException {
+        Path directory = Files.createTempDirectory("wgWizard-import");
+        try {
+            Configuration site1 = new Configuration("site1", new Keypair(), "203.0.113.1", 51820, "10.0.0.1", "30", 10, "wg0");
+            Configuration site2 = new Configuration("site2", new Keypair(), "203.0.113.2", 443, "10.0.0.2", "30", "wg0");
+            site2.addLocalNetwork(IPv4Cidr.parse("192.168.2.0/24"));
+            site2.addLocalNetwork(IPv4Cidr.parse("10.20.0.0/16"));
+            String psk = Keypair.genpsk();
+            site1.setPsk(psk);
+            site2.setPsk(psk);
+            Path file = directory.resolve("site1.conf");
+            site1.generateConfigFile(site2, file.toString());
+
+            Project project = new ConfigImport().read(file, Project.Type.SITE_TO_SITE);
+            Configuration own = project.getConfigs().get(0);
+            Configuration other = project.getConfigs().get(1);
+            assertEquals("site1", own.getName());
+            assertEquals(10, own.getKeepAliveSeconds());
+            assertEquals(psk, own.getPsk());
+            assertEquals(site2.getKeypair().getPublicKey(), other.getKeypair().getPublicKey());
+            assertEquals("203.0.113.2", other.getEndpoint());
+            assertEquals(443, other.getListenPort());
+            assertEquals(site2.getIp(), other.getIp());
+            assertEquals(site2.getLocalNetworks(), other.getLocalNetworks());
+
+            Path out = Files.createDirectory(directory.resolve("out"));
+            project.export(out.toString()).run();
+            assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(out.resolve("site1.conf")));
+        } finally {
+            TestFiles.delete(directory.toFile());
+        }
+    }
+
+    @Test
+    void wgQuick() throws IOException {
+        Keypair site = new Keypair();
+        Keypair client = new Keypair();
+        StringBuilder allowedIps = new StringBuilder("10.8.0.2/32, fd00::2/128");
+        // longer than the read buffer
+        for (int i = 0; i < 5000; i++) {
+            allowedIps.append(", 172.").append(16 + i / 256).append('.').append(i % 256).append(".0/24");
+        }
+        String config = "\uFEFF# managed by hand\r\n" +
+                "[Interface]\r\n" +
+                "Address = fd00::1/64, 10.8.0.1/24\r\n" +
+                "privatekey=" + site.getPrivateKey() + "\r\n" +
+                "ListenPort = 51000 # the default is 51820\r\n" +
+                "DNS = 1.1.1.1\r\n" +
+                "PostUp = iptables -A FORWARD -i %i -j ACCEPT\r\n" +
+                "\r\n" +
+                "[Peer]\r\n" +
+                "# alice\r\n" +
+                "PublicKey = " + client.getPublicKey() + "\r\n" +
+                "Endpoint = [2001:db8::2]:51001\r\n" +
+                "AllowedIPs = " + allowedIps + "\r\n" +
+                "PersistentKeepalive = off";
+
+        ConfigImport configImport = new ConfigImport();
+        Project project = read(configImport, config, Project.Type.CLIENT_TO_SITE);
+        assertFalse(configImport.hasErrors(), configImport.getErrors().toString());
+        assertEquals(site.getPublicKey(), project.getSite().getKeypair().getPublicKey());
+        assertEquals("10.8.0.1", project.getSite().getIp().toString());
+        assertEquals("24", project.getSite().getNetmaskPrefix());
+        assertEquals(51000, project.getSite().getListenPort());
+        assertFalse(project.getSite().isSetKeepAlive());
+
+        Configuration peer = project.getClients().get(0);
+        assertEquals("client-1", peer.getName());
+        assertEquals("[2001:db8::2]", peer.getEndpoint());
+        assertEquals(51001, peer.getListenPort());
+        assertEquals("10.8.0.2", peer.getIp().toString());
+        assertEquals("24", peer.getNetmaskPrefix());
+        assertEquals(5000, peer.getLocalNetworks().size());
+        assertEquals(IPv4Cidr.parse("172.35.135.0/24"), peer.getLocalNetworks().get(4999));
+    }
+
+    @Test
+    void invalidLines() throws IOException {
+        Keypair site = new Keypair();
+        Keypair client = new Keypair();
+        String config = "[Interface]\n" +
+                "PrivateKey = " + site.getPrivateKey() + "\n" +
+                "ListenPort = 70000\n" +
+                "[Peer]\n" +
+                "PublicKey = abc\n" +
+                "AllowedIPs = 10.0.0.2/32\n" +
+                "[Peer]\n" +
+                "PublicKey = " + client.getPublicKey() + "\n" +
+                "AllowedIPs = 10.0.0.300/32\n" +
+                "[Peer]\n" +
+                "PublicKey = " + client.getPublicKey() + "\n" +
+                "Foo = bar\n" +
+                "[Peer]\n" +
+                "PublicKey = " + client.getPublicKey() + "\n" +
+                "[Peer]\n" +
+                "PublicKey = " + client.getPublicKey() + "\n" +
+                "AllowedIPs = 192.168.2.0/24\n" +
+                "[Peer]\n" +
+                "PublicKey = " + client.getPublicKey() + "\n" +
+                "AllowedIPs = 10.0.0.3/32\n" +
+                "Endpoint = 2001:db8::3:51820\n";
+
+        ConfigImport configImport = new ConfigImport();
+        assertNull(read(configImport, config, Project.Type.CLIENT_TO_SITE));
+        assertEquals(Arrays.asList(
+                "line 3: invalid port '70000'",
+                "line 5: Invalid key, expected 32 bytes in base64",
+                "line 9: invalid IP '10.0.0.300/32'",
+                "line 12: unknown setting 'foo' in [Peer]",
+                "line 13: [Peer] without an IPv4 address in AllowedIPs",
+                "line 15: [Peer] without a single address (/32) in AllowedIPs as its tunnel IP",
+                "line 21: invalid endpoint '2001:db8::3:51820', expected [IPv6]:port"), configImport.getErrors());
+
+        // the name of the file is used for the files and in the setup script
+        assertNull(configImport.read(Channels.newChannel(new ByteArrayInputStream(new byte[0])), "my site", Project.Type.CLIENT_TO_SITE));
+        assertEquals("invalid name 'my site', the file has to be named like a site or client", configImport.getErrors().get(0));
+
+        // the private key never shows up in an error
+        assertNull(read(configImport, "[Interface]\nPrivateKey = " + site.getPrivateKey().substring(1) + "\n", Project.Type.CLIENT_TO_SITE));
+        assertEquals(Arrays.asList("line 2: Invalid key, expected 32 bytes in base64", "no [Interface] with a PrivateKey"),
+                configImport.getErrors());
+
+        assertNull(read(configImport, "[Interface]\nPrivateKey = " + site.getPrivateKey() + "\n", Project.Type.SITE_TO_SITE));
+        assertEquals(Arrays.asList("the config of a SITE_TO_SITE VPN has one [Peer], not 0"), configImport.getErrors());
+    }
+}
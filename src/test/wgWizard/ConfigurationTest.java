@@ -0,0 +1,102 @@
+package wgWizard;
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+import org.junit.jupiter.api.Test;
+import wgWizard.config.Configuration;
+import wgWizard.config.IPv4Cidr;
+import wgWizard.config.IPv4Netmask;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConfigurationTest {
+
+    @Test
+    void getLocalNetworksAsString() {
+        Configuration config = new Configuration();
+        assertEquals("", config.getLocalNetworksAsString());
+
+        config.addLocalNetwork(IPv4Cidr.of("192.168.1.5", new IPv4Netmask("24")));
+        config.addLocalNetwork(IPv4Cidr.of("10.1.1.1", new IPv4Netmask("255.255.0.0")));
+        assertEquals(",192.168.1.0/24,10.1.0.0/16", config.getLocalNetworksAsString());
+    }
+
+    @Test
+    void addRoutes() {
+        Configuration site1 = new Configuration();
+        Configuration site2 = new Configuration();
+        site2.setIp("10.0.0.2");
+        assertEquals("", site1.addRoutes(site2));
+
+        site2.addLocalNetwork(IPv4Cidr.of("192.168.2.0", new IPv4Netmask("24")));
+        site2.addLocalNetwork(IPv4Cidr.of("172.16.5.5", new IPv4Netmask("12")));
+        assertEquals("sudo ip route add 192.168.2.0/24 via 10.0.0.2\n" +
+                "sudo ip route add 172.16.0.0/12 via 10.0.0.2\n", site1.addRoutes(site2));
+    }
+
+    @Test
+    void summarizeNetworks() {
+        Configuration site1 = new Configuration();
+        Configuration site2 = new Configuration();
+        site2.setIp("10.0.0.2");
+        for (int i = 0; i < 4; i++) {
+            site2.addLocalNetwork(IPv4Cidr.parse("192.168." + i + ".0/24"));
+        }
+        site2.addLocalNetwork(IPv4Cidr.parse("192.168.2.128/25"));
+        site2.setSummarizeNetworks(true);
+        assertEquals(",192.168.0.0/22", site2.getLocalNetworksAsString());
+        assertEquals("sudo ip route add 192.168.0.0/22 via 10.0.0.2\n", site1.addRoutes(site2));
+        // the entered networks stay as they are
+        assertEquals(5, site2.getLocalNetworks().size());
+    }
+
+    @Test
+    void batchSetup() throws IOException {
+        Configuration site1 = new Configuration("site1", null, "203.0.113.1", 51820, "10.0.0.1", "30", "wg0");
+        Configuration site2 = new Configuration("site2", null, "203.0.113.2", 51820, "10.0.0.2", "30", "wg0");
+        site2.addLocalNetwork(IPv4Cidr.parse("192.168.2.0/24"));
+        site2.addLocalNetwork(IPv4Cidr.parse("172.16.0.0/12"));
+        site1.setBatchSetup(true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        site1.generateSetupFile(site2, out);
+        assertEquals("#!/bin/bash\n" +
+                "sudo ip -force -batch - <<'EOF'\n" +
+                "link add dev wg0 type wireguard\n" +
+                "addr add 10.0.0.1/30 dev wg0\n" +
+                "link set dev wg0 up\n" +
+                "route add 192.168.2.0/24 via 10.0.0.2\n" +
+                "route add 172.16.0.0/12 via 10.0.0.2\n" +
+                "EOF\n" +
+                "sudo wg setconf wg0 site1.conf\n", out.toString());
+
+        site1.setDefaultGateway(true);
+        out.reset();
+        site1.generateSetupFile(site2, out);
+        assertTrue(out.toString().contains("link set dev wg0 up\nroute add default via 10.0.0.2\nEOF\n"));
+    }
+
+    @Test
+    void copyReadme() throws IOException {
+        File readme = File.createTempFile("README", ".txt");
+        readme.deleteOnExit();
+        Configuration.copyReadme(readme.getPath(), "README_s2s.txt");
+        assertEquals(new String(Configuration.class.getResourceAsStream("/files/README_s2s.txt").readAllBytes()),
+                new String(Files.readAllBytes(readme.toPath())));
+
+        assertThrows(FileNotFoundException.class, () -> Configuration.copyReadme(readme.getPath(), "missing.txt"));
+    }
+}
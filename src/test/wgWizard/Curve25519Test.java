@@ -0,0 +1,127 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+package wgWizard;
+
+import org.junit.jupiter.api.Test;
+import wgWizard.config.Curve25519;
+import wgWizard.config.Curve25519Evaluator;
+import wgWizard.config.Curve25519Radix51;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class Curve25519Test {
+    private static final byte[] BASE_POINT = new byte[32];
+
+    static {
+        BASE_POINT[0] = 9;
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    @Test
+    void evalRfc7748() {
+        // test vectors from RFC 7748, section 6.1
+        byte[] alicePrivate = fromHex("77076d0a7318a57d3c16c17251b26645df4c2f87ebc0992ab177fba51db92c2a");
+        byte[] alicePublic = fromHex("8520f0098930a754748b7ddcb43ef75a0dbf3a0d26381af4eba4a98eaa9b4e6a");
+        byte[] bobPrivate = fromHex("5dab087e624a8a4b79e17f8b83800ee66f3bb1292618b6fd1c2f8b27ff88e0eb");
+        byte[] bobPublic = fromHex("de9edb7d7b7dc1b4d35b61c2ece435373f8343c85b78674dadfc7e146f882b4f");
+        byte[] shared = fromHex("4a5d9d5ba4ce2de1728e3bf480350f25e07e21c947d19e3376f09b3c1e161742");
+
+        byte[] result = new byte[32];
+        Curve25519.eval(result, 0, alicePrivate, null);
+        assertArrayEquals(alicePublic, result);
+
+        Curve25519.eval(result, 0, bobPrivate, null);
+        assertArrayEquals(bobPublic, result);
+
+        byte[] aliceShared = new byte[32];
+        byte[] bobShared = new byte[32];
+        Curve25519.eval(aliceShared, 0, alicePrivate, bobPublic);
+        Curve25519.eval(bobShared, 0, bobPrivate, alicePublic);
+        assertArrayEquals(shared, aliceShared);
+        assertArrayEquals(shared, bobShared);
+    }
+
+    @Test
+    void evalBaseMatchesLadder() {
+        Random random = new Random(25519);
+        Curve25519 curve = new Curve25519();
+        byte[] privateKey = new byte[32];
+        byte[] fixedBase = new byte[32];
+        byte[] ladder = new byte[32];
+
+        for (int i = 0; i < 500; i++) {
+            random.nextBytes(privateKey);
+            curve.evaluate(fixedBase, 0, privateKey, null);
+            curve.evaluate(ladder, 0, privateKey, BASE_POINT);
+            assertArrayEquals(ladder, fixedBase);
+        }
+    }
+
+    @Test
+    void radix51Rfc7748() {
+        // test vector from RFC 7748, section 5.2
+        byte[] scalar = fromHex("a546e36bf0527c9d3b16154b82465edd62144c0ac1fc5a18506a2244ba449ac4");
+        byte[] u = fromHex("e6db6867583030db3594c1a424b15f7c726624ec26b3353b10a903a6d0ab1c4c");
+        byte[] expected = fromHex("c3da55379de9c6908e94ea4df28d084f32eccf03491c71f754b4075577a28552");
+
+        byte[] result = new byte[32];
+        new Curve25519Radix51().evaluate(result, 0, scalar, u);
+        assertArrayEquals(expected, result);
+        new Curve25519().evaluate(result, 0, scalar, u);
+        assertArrayEquals(expected, result);
+    }
+
+    @Test
+    void radix51MatchesRadix26() {
+        Random random = new Random(51);
+        Curve25519Evaluator radix26 = Curve25519Evaluator.create(Curve25519Evaluator.RADIX26);
+        Curve25519Evaluator radix51 = Curve25519Evaluator.create(Curve25519Evaluator.RADIX51);
+        byte[] privateKey = new byte[32];
+        byte[] publicKey = new byte[32];
+        byte[] expected = new byte[32];
+        byte[] result = new byte[32];
+
+        for (int i = 0; i < 500; i++) {
+            random.nextBytes(privateKey);
+            random.nextBytes(publicKey);
+            radix26.evaluate(expected, 0, privateKey, null);
+            radix51.evaluate(result, 0, privateKey, null);
+            assertArrayEquals(expected, result);
+
+            radix26.evaluate(expected, 0, privateKey, publicKey);
+            radix51.evaluate(result, 0, privateKey, publicKey);
+            assertArrayEquals(expected, result);
+        }
+
+        // values at the edge of the field: 0, p - 1, p, p + 1 and 2^255 + 1
+        // (the 26-bit backend only reduces inputs below 2^255 + p exactly)
+        byte[][] edges = {
+                new byte[32],
+                fromHex("ecffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff7f"),
+                fromHex("edffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff7f"),
+                fromHex("eeffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff7f"),
+                fromHex("0100000000000000000000000000000000000000000000000000000000000080")
+        };
+        for (byte[] edge : edges) {
+            random.nextBytes(privateKey);
+            radix26.evaluate(expected, 0, privateKey, edge);
+            radix51.evaluate(result, 0, privateKey, edge);
+            assertArrayEquals(expected, result);
+        }
+    }
+}
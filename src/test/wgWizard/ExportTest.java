@@ -0,0 +1,463 @@
+package wgWizard;
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+import net.lingala.zip4j.core.ZipFile;
+import net.lingala.zip4j.exception.ZipException;
+import net.lingala.zip4j.model.FileHeader;
+import org.junit.jupiter.api.Test;
+import wgWizard.config.ClientToSite.SiteConfiguration;
+import wgWizard.config.Configuration;
+import wgWizard.config.Export;
+import wgWizard.config.IPv4Cidr;
+import wgWizard.config.Keypair;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExportTest {
+
+    private static Configuration site(String name, String ip) {
+        return new Configuration(name, null, "203.0.113.1", 51820, ip, "30", "wg0");
+    }
+
+    private static List<Configuration> clients(int n) {
+        List<Configuration> clients = new ArrayList<>();
+        for (int i = 1; i <= n; i++) {
+            Configuration client = new Configuration();
+            client.setName(String.format("client-%d", i));
+            client.setIp(String.format("10.0.%d.%d", i / 200, i % 200 + 2));
+            client.setNetmask("16");
+            clients.add(client);
+        }
+        return clients;
+    }
+
+    @Test
+    void siteToSite() throws IOException {
+        Path directory = Files.createTempDirectory("wgWizard-export");
+        try {
+            Configuration site1 = site("site1", "10.0.0.1");
+            Configuration site2 = site("site2", "10.0.0.2");
+            List<Export.Stage> stages = new ArrayList<>();
+            Export.siteToSite(site1, site2, directory.toString()).run((stage, done, total) -> {
+                assertTrue(done <= total);
+                if (stages.isEmpty() || stages.get(stages.size() - 1) != stage) {
+                    stages.add(stage);
+                }
+            }, () -> false);
+
+            assertEquals(Arrays.asList(Export.Stage.KEYS, Export.Stage.CONFIGS, Export.Stage.SCRIPTS), stages);
+            assertNotNull(site1.getKeypair());
+            assertNotNull(site2.getKeypair());
+            assertTrue(Arrays.asList(directory.toFile().list()).containsAll(Arrays.asList("site1.conf", "site2.conf",
+                    "setup_site1.sh", "setup_site2.sh", "install_wireguard.sh", "README.txt")));
+            assertTrue(Files.readAllLines(directory.resolve("site2.conf")).contains("PublicKey = " + site1.getKeypair().getPublicKey()));
+        } finally {
+            TestFiles.delete(directory.toFile());
+        }
+    }
+
+    @Test
+    void mesh() throws IOException {
+        Path directory = Files.createTempDirectory("wgWizard-export");
+        try {
+            List<Configuration> nodes = new ArrayList<>();
+            for (int i = 1; i <= 40; i++) {
+                Configuration node = new Configuration("node-" + i, null, "203.0.113." + i, 51820, "10.0.0." + i, "24", "wg0");
+                node.addLocalNetwork(IPv4Cidr.parse("192.168." + i + ".0/24"));
+                if (i % 2 == 0) {
+                    node.setKeepAliveSeconds(25);
+                }
+                node.setPsk("psk");
+                nodes.add(node);
+            }
+            nodes.get(0).setBatchSetup(true);
+            Export.mesh(nodes, directory.toString()).run();
+
+            for (int i = 2; i <= nodes.size(); i++) {
+                List<String> config = Files.readAllLines(directory.resolve("node-" + i + ".conf"));
+                assertEquals("PrivateKey = " + nodes.get(i - 1).getKeypair().getPrivateKey(), config.get(1));
+                assertEquals(nodes.size() - 1, config.stream().filter("[Peer]"::equals).count());
+                assertEquals(i % 2 == 0 ? nodes.size() - 1 : 0, config.stream().filter("PersistentKeepalive = 25"::equals).count());
+                assertEquals(nodes.size() - 1, Files.readAllLines(directory.resolve("setup_node-" + i + ".sh")).stream()
+                        .filter(line -> line.startsWith("sudo ip route add 192.168.")).count());
+            }
+
+            List<String> config = Files.readAllLines(directory.resolve("node-2.conf"));
+            int peer = config.indexOf("PublicKey = " + nodes.get(2).getKeypair().getPublicKey());
+            assertEquals(Arrays.asList("[Peer]", "PublicKey = " + nodes.get(2).getKeypair().getPublicKey(), "PresharedKey = psk",
+                    "Endpoint = 203.0.113.3:51820", "AllowedIPs = 10.0.0.3/32,192.168.3.0/24", "PersistentKeepalive = 25", ""),
+                    config.subList(peer - 1, peer + 6));
+            assertTrue(Files.readAllLines(directory.resolve("setup_node-2.sh")).contains("sudo ip route add 192.168.3.0/24 via 10.0.0.3"));
+            assertTrue(Files.readAllLines(directory.resolve("README.txt")).get(2).contains("Full-Mesh"));
+
+            // the routes of all other nodes are part of the one ip -batch, before the config is applied
+            List<String> batch = Files.readAllLines(directory.resolve("setup_node-1.sh"));
+            assertEquals("sudo ip -force -batch - <<'EOF'", batch.get(1));
+            assertEquals(Arrays.asList("route add 192.168.40.0/24 via 10.0.0.40", "EOF", "sudo wg setconf wg0 node-1.conf"),
+                    batch.subList(batch.size() - 3, batch.size()));
+            assertEquals(nodes.size() - 1, batch.stream().filter(line -> line.startsWith("route add 192.168.")).count());
+        } finally {
+            TestFiles.delete(directory.toFile());
+        }
+    }
+
+    @Test
+    void clientToSiteZip() throws IOException, ZipException {
+        Path directory = Files.createTempDirectory("wgWizard-export");
+        try {
+            SiteConfiguration site = new SiteConfiguration("site", null, "203.0.113.1", 51820, "10.0.0.1", "16", "wg0");
+            List<Configuration> clients = clients(300);
+            int[] progress = {0, 0};
+            Export.clientToSite(site, clients, directory.toString()).zip("secret").run((stage, done, total) -> {
+                assertTrue(done >= progress[0]);
+                progress[0] = done;
+                progress[1] = total;
+            }, () -> false);
+
+            // 2 key chunks, 301 configs, 301 scripts, installer, README, ZIP
+            assertEquals(2 + 301 + 301 + 2 + 1, progress[1]);
+            assertEquals(progress[1], progress[0]);
+            assertEquals(Arrays.asList("README.txt", "wireguard-configuration.zip"),
+                    Arrays.stream(directory.toFile().list()).sorted().collect(Collectors.toList()));
+            assertNotEquals(clients.get(0).getKeypair().getPublicKey(), clients.get(299).getKeypair().getPublicKey());
+
+            // the entries can be read back with the password
+            ZipFile zipFile = new ZipFile(directory.resolve("wireguard-configuration.zip").toFile());
+            assertTrue(zipFile.isEncrypted());
+            assertEquals(2 * 301 + 2, zipFile.getFileHeaders().size());
+            zipFile.setPassword("secret");
+            Path extracted = directory.resolve("extracted");
+            zipFile.extractAll(extracted.toString());
+            List<String> siteConfig = Files.readAllLines(extracted.resolve("site.conf"));
+            assertEquals("PrivateKey = " + site.getKeypair().getPrivateKey(), siteConfig.get(1));
+            assertTrue(siteConfig.contains("PublicKey = " + clients.get(299).getKeypair().getPublicKey()));
+            assertTrue(Files.readAllLines(extracted.resolve("client-300.conf")).contains("PublicKey = " + site.getKeypair().getPublicKey()));
+            assertEquals("sudo wg setconf wg0 site.conf", Files.readAllLines(extracted.resolve("setup_site.sh")).get(4));
+            assertArrayEquals(Files.readAllBytes(directory.resolve("README.txt")), Files.readAllBytes(extracted.resolve("README.txt")));
+        } finally {
+            TestFiles.delete(directory.toFile());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void clientToSiteBundles() throws IOException, ZipException {
+        Path directory = Files.createTempDirectory("wgWizard-export");
+        try {
+            SiteConfiguration site = new SiteConfiguration("site", null, "203.0.113.1", 51820, "10.0.0.1", "16", "wg0");
+            List<Configuration> clients = clients(100);
+            List<Export.Stage> stages = new ArrayList<>();
+            int[] total = {0};
+            Export.clientToSite(site, clients, directory.toString()).bundles("secret").run((stage, done, steps) -> {
+                if (stages.isEmpty() || stages.get(stages.size() - 1) != stage) {
+                    stages.add(stage);
+                }
+                total[0] = steps;
+            }, () -> false);
+
+            // 1 key chunk, 2 chunks of bundles, README
+            assertEquals(Arrays.asList(Export.Stage.KEYS, Export.Stage.BUNDLES), stages);
+            assertEquals(1 + 2 + 1, total[0]);
+            List<String> files = Arrays.asList(directory.toFile().list());
+            assertEquals(1 + 1 + 100, files.size());
+            assertTrue(files.containsAll(Arrays.asList("README.txt", "site.zip", "client-1.zip", "client-100.zip")));
+
+            // a client gets its own config and nothing of the other clients
+            ZipFile bundle = new ZipFile(directory.resolve("client-7.zip").toFile());
+            List<String> entries = new ArrayList<>();
+            for (FileHeader header : (List<FileHeader>) bundle.getFileHeaders()) {
+                entries.add(header.getFileName());
+            }
+            assertEquals(Arrays.asList("client-7.conf", "setup_client-7.sh", "install_wireguard.sh", "README.txt"), entries);
+            bundle.setPassword("secret");
+            Path extracted = directory.resolve("extracted");
+            bundle.extractAll(extracted.toString());
+            List<String> config = Files.readAllLines(extracted.resolve("client-7.conf"));
+            assertEquals("PrivateKey = " + clients.get(6).getKeypair().getPrivateKey(), config.get(1));
+            assertTrue(config.contains("PublicKey = " + site.getKeypair().getPublicKey()));
+
+            // the size of a client bundle does not depend on the number of clients
+            long size1 = Files.size(directory.resolve("client-1.zip"));
+            long size100 = Files.size(directory.resolve("client-100.zip"));
+            assertTrue(Math.abs(size1 - size100) < 64);
+        } finally {
+            TestFiles.delete(directory.toFile());
+        }
+    }
+
+    private static int countSteps(Export export, Export.Stage counted) throws IOException {
+        int[] steps = {0, -1};
+        export.run((stage, done, total) -> {
+            // the last update repeats the stage of the last step
+            if (stage == counted && done != steps[1]) {
+                steps[0]++;
+            }
+            steps[1] = done;
+        }, () -> false);
+        return steps[0];
+    }
+
+    @Test
+    void incrementalExport() throws IOException {
+        Path directory = Files.createTempDirectory("wgWizard-export");
+        try {
+            Path state = directory.resolve("state.properties");
+            Path out = Files.createDirectory(directory.resolve("out"));
+            SiteConfiguration site = new SiteConfiguration("site", null, "203.0.113.1", 51820, "10.0.0.1", "16", "wg0");
+            List<Configuration> clients = clients(5);
+            Export.clientToSite(site, clients, out.toString()).state(state).run();
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(state)));
+            FileTime old = FileTime.fromMillis(0);
+            for (File file : out.toFile().listFiles()) {
+                Files.setLastModifiedTime(file.toPath(), old);
+            }
+
+            // the same clients as new configs, as the next run of the CLI would create them, and one more
+            SiteConfiguration site2 = new SiteConfiguration("site", null, "203.0.113.1", 51820, "10.0.0.1", "16", "wg0");
+            List<Configuration> clients2 = clients(6);
+            assertEquals(1, countSteps(Export.clientToSite(site2, clients2, out.toString()).state(state), Export.Stage.KEYS));
+            assertEquals(site.getKeypair().getPrivateKey(), site2.getKeypair().getPrivateKey());
+            for (int i = 0; i < 5; i++) {
+                assertEquals(clients.get(i).getKeypair().getPublicKey(), clients2.get(i).getKeypair().getPublicKey());
+            }
+            // only the site config has a new peer, the other files are not touched
+            assertNotEquals(old, Files.getLastModifiedTime(out.resolve("site.conf")));
+            assertEquals(old, Files.getLastModifiedTime(out.resolve("client-1.conf")));
+            assertEquals(old, Files.getLastModifiedTime(out.resolve("setup_site.sh")));
+            assertEquals(old, Files.getLastModifiedTime(out.resolve("README.txt")));
+            assertTrue(Files.readAllLines(out.resolve("site.conf")).contains("PublicKey = " + clients2.get(5).getKeypair().getPublicKey()));
+
+            // a removed client loses its files
+            List<Configuration> clients3 = clients(6);
+            clients3.remove(1);
+            Export.clientToSite(new SiteConfiguration("site", null, "203.0.113.1", 51820, "10.0.0.1", "16", "wg0"), clients3, out.toString())
+                    .state(state).run();
+            assertFalse(Files.exists(out.resolve("client-2.conf")));
+            assertFalse(Files.exists(out.resolve("setup_client-2.sh")));
+            assertTrue(Files.exists(out.resolve("client-3.conf")));
+            assertEquals(clients.get(2).getKeypair().getPrivateKey(), clients3.get(1).getKeypair().getPrivateKey());
+        } finally {
+            TestFiles.delete(directory.toFile());
+        }
+    }
+
+    @Test
+    void removeMiddleClient() throws IOException {
+        Path directory = Files.createTempDirectory("wgWizard-export");
+        try {
+            Path state = directory.resolve("state.properties");
+            Path out = Files.createDirectory(directory.resolve("out"));
+            List<Configuration> clients = clients(3);
+            clients.forEach(client -> client.setPsk(Keypair.genpsk()));
+            Export.clientToSite(new SiteConfiguration("site", null, "203.0.113.1", 51820, "10.0.0.1", "16", "wg0"), clients, out.toString())
+                    .state(state).run();
+
+            // client-2 is removed, the client with the IP of client-3 is numbered client-2 now
+            List<Configuration> changed = clients(3);
+            changed.remove(1);
+            changed.get(1).setName("client-2");
+            changed.forEach(client -> client.setPsk(Keypair.genpsk()));
+            Export.clientToSite(new SiteConfiguration("site", null, "203.0.113.1", 51820, "10.0.0.1", "16", "wg0"), changed, out.toString())
+                    .state(state).run();
+            assertEquals(clients.get(2).getKeypair().getPrivateKey(), changed.get(1).getKeypair().getPrivateKey());
+            assertEquals(clients.get(2).getPsk(), changed.get(1).getPsk());
+            List<String> site = Files.readAllLines(out.resolve("site.conf"));
+            // the removed client can not connect anymore
+            assertFalse(site.contains("PublicKey = " + clients.get(1).getKeypair().getPublicKey()));
+            int peer = site.indexOf("PublicKey = " + clients.get(2).getKeypair().getPublicKey());
+            assertEquals("AllowedIPs = " + clients.get(2).getIp() + "/32", site.get(peer + 2));
+        } finally {
+            TestFiles.delete(directory.toFile());
+        }
+    }
+
+    @Test
+    void addMeshNode() throws IOException {
+        Path directory = Files.createTempDirectory("wgWizard-export");
+        try {
+            Path state = directory.resolve("state.properties");
+            Path out = Files.createDirectory(directory.resolve("out"));
+            List<Configuration> nodes = new ArrayList<>();
+            for (int i = 1; i <= 3; i++) {
+                nodes.add(new Configuration("node-" + i, null, "203.0.113." + i, 51820, "10.0.0." + i, "24", "wg0"));
+            }
+            String psk = Keypair.genpsk();
+            nodes.subList(0, 2).forEach(node -> node.setPsk(psk));
+            Export.mesh(nodes.subList(0, 2), out.toString()).state(state).run();
+
+            // every run creates a new pre-shared key for the whole mesh
+            String next = Keypair.genpsk();
+            nodes.forEach(node -> {
+                node.setKeypair(null);
+                node.setPsk(next);
+            });
+            Export.mesh(nodes, out.toString()).state(state).run();
+            for (Configuration node : nodes) {
+                assertEquals(psk, node.getPsk());
+            }
+            assertEquals(2, Files.readAllLines(out.resolve("node-3.conf")).stream().filter(("PresharedKey = " + psk)::equals).count());
+        } finally {
+            TestFiles.delete(directory.toFile());
+        }
+    }
+
+    @Test
+    void invalidStateKeys() throws IOException {
+        Path directory = Files.createTempDirectory("wgWizard-export");
+        try {
+            Path state = directory.resolve("state.properties");
+            Path out = Files.createDirectory(directory.resolve("out"));
+            Configuration site1 = site("site1", "10.0.0.1");
+            Configuration site2 = site("site2", "10.0.0.2");
+            Export.siteToSite(site1, site2, out.toString()).state(state).run();
+
+            // the public key of site1 replaced by the one of site2
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(state)) {
+                properties.load(reader);
+            }
+            properties.setProperty("key.10.0.0.1", site1.getKeypair().getPrivateKey() + " " + site2.getKeypair().getPublicKey());
+            try (Writer writer = Files.newBufferedWriter(state)) {
+                properties.store(writer, null);
+            }
+            IOException e = assertThrows(IOException.class,
+                    () -> Export.siteToSite(site("site1", "10.0.0.1"), site("site2", "10.0.0.2"), out.toString()).state(state).run());
+            assertTrue(e.getMessage().endsWith(": key.10.0.0.1"));
+            assertFalse(e.getMessage().contains(site1.getKeypair().getPrivateKey()));
+        } finally {
+            TestFiles.delete(directory.toFile());
+        }
+    }
+
+    @Test
+    void incrementalBundles() throws IOException {
+        Path directory = Files.createTempDirectory("wgWizard-export");
+        try {
+            Path state = directory.resolve("state.properties");
+            Path out = Files.createDirectory(directory.resolve("out"));
+            Export.clientToSite(new SiteConfiguration("site", null, "203.0.113.1", 51820, "10.0.0.1", "16", "wg0"), clients(3), out.toString())
+                    .bundles("secret").state(state).run();
+            FileTime old = FileTime.fromMillis(0);
+            for (File file : out.toFile().listFiles()) {
+                Files.setLastModifiedTime(file.toPath(), old);
+            }
+
+            List<Configuration> clients = clients(3);
+            clients.get(2).setIp("10.0.0.99");
+            Export.clientToSite(new SiteConfiguration("site", null, "203.0.113.1", 51820, "10.0.0.1", "16", "wg0"), clients, out.toString())
+                    .bundles("secret").state(state).run();
+            // the site lists the new IP, and the client itself changed
+            assertNotEquals(old, Files.getLastModifiedTime(out.resolve("site.zip")));
+            assertNotEquals(old, Files.getLastModifiedTime(out.resolve("client-3.zip")));
+            assertEquals(old, Files.getLastModifiedTime(out.resolve("client-1.zip")));
+            assertEquals(old, Files.getLastModifiedTime(out.resolve("client-2.zip")));
+        } finally {
+            TestFiles.delete(directory.toFile());
+        }
+    }
+
+    @Test
+    void cancelDeletesWrittenFiles() throws IOException {
+        Path directory = Files.createTempDirectory("wgWizard-export");
+        try {
+            Files.write(directory.resolve("other.txt"), Arrays.asList("not written by the export"));
+            SiteConfiguration site = new SiteConfiguration("site", null, "203.0.113.1", 51820, "10.0.0.1", "16", "wg0");
+            int[] steps = {0};
+            Export export = Export.clientToSite(site, clients(10), directory.toString()).zip("secret");
+            assertThrows(CancellationException.class, () -> export.run((stage, done, total) -> steps[0] = done, () -> steps[0] == 8));
+
+            assertEquals(Arrays.asList("other.txt"), Arrays.asList(directory.toFile().list()));
+        } finally {
+            TestFiles.delete(directory.toFile());
+        }
+    }
+
+    @Test
+    void cancelKeepsPreviousExport() throws IOException {
+        Path directory = Files.createTempDirectory("wgWizard-export");
+        try {
+            Path state = directory.resolve("state.properties");
+            Path out = Files.createDirectory(directory.resolve("out"));
+            Path zipped = Files.createDirectory(directory.resolve("zipped"));
+            Export.clientToSite(new SiteConfiguration("site", null, "203.0.113.1", 51820, "10.0.0.1", "16", "wg0"), clients(5), out.toString())
+                    .state(state).run();
+            Export.clientToSite(new SiteConfiguration("site", null, "203.0.113.1", 51820, "10.0.0.1", "16", "wg0"), clients(5), zipped.toString())
+                    .zip("secret").run();
+            List<String> files = Arrays.asList(out.toFile().list());
+            byte[] siteConfig = Files.readAllBytes(out.resolve("site.conf"));
+            byte[] stateContent = Files.readAllBytes(state);
+            byte[] zip = Files.readAllBytes(zipped.resolve("wireguard-configuration.zip"));
+
+            // the site config has already been written again when the export is cancelled
+            Export.Stage[] stages = {null};
+            Export export = Export.clientToSite(new SiteConfiguration("site", null, "203.0.113.1", 51820, "10.0.0.1", "16", "wg0"),
+                    clients(2), out.toString()).state(state);
+            assertThrows(CancellationException.class, () -> export.run((stage, done, total) -> stages[0] = stage,
+                    () -> stages[0] == Export.Stage.SCRIPTS));
+            assertEquals(files.stream().sorted().collect(Collectors.toList()),
+                    Arrays.stream(out.toFile().list()).sorted().collect(Collectors.toList()));
+            assertArrayEquals(siteConfig, Files.readAllBytes(out.resolve("site.conf")));
+            assertArrayEquals(stateContent, Files.readAllBytes(state));
+
+            // and a ZIP with some of its entries written again
+            stages[0] = null;
+            Export zipExport = Export.clientToSite(new SiteConfiguration("site", null, "203.0.113.1", 51820, "10.0.0.1", "16", "wg0"),
+                    clients(5), zipped.toString()).zip("secret");
+            assertThrows(CancellationException.class, () -> zipExport.run((stage, done, total) -> stages[0] = stage,
+                    () -> stages[0] == Export.Stage.SCRIPTS));
+            assertEquals(Arrays.asList("README.txt", "wireguard-configuration.zip"),
+                    Arrays.stream(zipped.toFile().list()).sorted().collect(Collectors.toList()));
+            assertArrayEquals(zip, Files.readAllBytes(zipped.resolve("wireguard-configuration.zip")));
+        } finally {
+            TestFiles.delete(directory.toFile());
+        }
+    }
+
+    @Test
+    void duplicateNames() {
+        SiteConfiguration site = new SiteConfiguration("site", null, "203.0.113.1", 51820, "10.0.0.1", "16", "wg0");
+        List<Configuration> clients = clients(3);
+        clients.get(1).setName("site");
+        assertThrows(IllegalArgumentException.class, () -> Export.clientToSite(site, clients, "."));
+        clients.get(1).setName("Client-1");
+        assertThrows(IllegalArgumentException.class, () -> Export.clientToSite(site, clients, "."));
+        assertThrows(IllegalArgumentException.class, () -> Export.siteToSite(site("site1", "10.0.0.1"), site("site1", "10.0.0.2"), "."));
+    }
+
+    @Test
+    void failureDeletesWrittenFiles() throws IOException {
+        Path directory = Files.createTempDirectory("wgWizard-export");
+        try {
+            Configuration site1 = site("site1", "10.0.0.1");
+            // the config of the second site can not be written
+            Configuration site2 = site("../missing/site2", "10.0.0.2");
+            assertThrows(IOException.class, () -> Export.siteToSite(site1, site2, directory.toString()).run());
+
+            assertEquals(0, directory.toFile().list().length);
+        } finally {
+            TestFiles.delete(directory.toFile());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package wgWizard;
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+import org.junit.jupiter.api.Test;
+import wgWizard.config.IPv4Address;
+
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IPv4AddressTest {
+    // the pattern used for validation before the hand-written parser
+    private static final Pattern IPV4_ADDR_PATTERN = Pattern.compile(
+            "^([01]?\\d\\d?|2[0-4]\\d|25[0-5])\\." +
+                    "([01]?\\d\\d?|2[0-4]\\d|25[0-5])\\." +
+                    "([01]?\\d\\d?|2[0-4]\\d|25[0-5])\\." +
+                    "([01]?\\d\\d?|2[0-4]\\d|25[0-5])$");
+
+    @Test
+    void parse() {
+        assertEquals(0x08080808L, IPv4Address.parse("8.8.8.8"));
+        assertEquals(0xC0A801FFL, IPv4Address.parse("192.168.1.255"));
+        assertEquals(0xFFFFFFFFL, IPv4Address.parse("255.255.255.255"));
+        assertEquals(0L, IPv4Address.parse("0.0.0.0"));
+        assertEquals(0xC0A8010AL, IPv4Address.parse("192.168.001.010"));
+
+        assertEquals(IPv4Address.INVALID, IPv4Address.parse("192.168.1.256"));
+        assertEquals(IPv4Address.INVALID, IPv4Address.parse("192.3.1"));
+        assertEquals(IPv4Address.INVALID, IPv4Address.parse("0.0.20.300"));
+        assertEquals(IPv4Address.INVALID, IPv4Address.parse("1.1.1.1.1"));
+        assertEquals(IPv4Address.INVALID, IPv4Address.parse("1..1.1"));
+        assertEquals(IPv4Address.INVALID, IPv4Address.parse("1.1.1."));
+        assertEquals(IPv4Address.INVALID, IPv4Address.parse(".1.1.1"));
+        assertEquals(IPv4Address.INVALID, IPv4Address.parse("1.1.1.0001"));
+        assertEquals(IPv4Address.INVALID, IPv4Address.parse("1.1.1.1 "));
+        assertEquals(IPv4Address.INVALID, IPv4Address.parse(""));
+    }
+
+    @Test
+    void parseMatchesPattern() {
+        String[] octets = {"", "0", "00", "000", "0000", "1", "01", "001", "9", "10", "99", "100", "199", "200",
+                "249", "250", "255", "256", "260", "300", "999", "1000", "a", "-1", " 1"};
+        for (String a : octets) {
+            for (String b : octets) {
+                String ip = a + "." + b + "." + b + "." + a;
+                assertEquals(IPV4_ADDR_PATTERN.matcher(ip).matches(), IPv4Address.isValid(ip), ip);
+            }
+        }
+    }
+
+    @Test
+    void valueType() {
+        IPv4Address address = IPv4Address.of("192.168.001.010");
+        assertEquals(0xC0A8010A, address.toInt());
+        assertEquals("192.168.1.10", address.toString());
+        assertEquals(IPv4Address.of(0xC0A8010A), address);
+        assertEquals("255.255.255.255", IPv4Address.toString(-1));
+        assertEquals(true, IPv4Address.of("200.0.0.0").compareTo(IPv4Address.of("100.0.0.0")) > 0);
+        assertThrows(NumberFormatException.class, () -> IPv4Address.of("192.168.1"));
+    }
+}
@@ -0,0 +1,89 @@
+package wgWizard;
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+import org.junit.jupiter.api.Test;
+import wgWizard.config.ClientToSite.SiteConfiguration;
+import wgWizard.config.Configuration;
+import wgWizard.config.IPv4Address;
+import wgWizard.config.IPv4Allocator;
+import wgWizard.config.IPv4Cidr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IPv4AllocatorTest {
+
+    @Test
+    void allocateWholeNetwork() {
+        IPv4Allocator allocator = new IPv4Allocator(IPv4Cidr.parse("10.8.0.0/16"));
+        assertEquals(65534, allocator.getFree());
+        assertTrue(allocator.reserve(IPv4Address.of("10.8.0.1")));
+        assertFalse(allocator.reserve(IPv4Address.of("10.8.0.1")));
+        assertFalse(allocator.reserve(IPv4Address.of("10.9.0.1")));
+
+        // every usable address once, in ascending order
+        int expected = IPv4Address.of("10.8.0.2").toInt();
+        while (allocator.getFree() > 0) {
+            assertEquals(expected++, allocator.allocate().toInt());
+        }
+        assertEquals(IPv4Address.of("10.8.255.255").toInt(), expected);
+        assertThrows(IllegalStateException.class, allocator::allocate);
+
+        // released addresses are handed out again, the lowest first
+        allocator.release(IPv4Address.of("10.8.200.7"));
+        allocator.release(IPv4Address.of("10.8.3.4"));
+        allocator.release(IPv4Address.of("10.8.255.255"));
+        assertEquals(2, allocator.getFree());
+        assertEquals(IPv4Address.of("10.8.3.4"), allocator.allocate());
+        assertEquals(IPv4Address.of("10.8.200.7"), allocator.allocate());
+        assertFalse(allocator.isFree(IPv4Address.of("10.8.0.0")));
+    }
+
+    @Test
+    void smallNetworks() {
+        IPv4Allocator allocator = new IPv4Allocator(IPv4Cidr.parse("192.168.1.4/30"));
+        assertEquals(2, allocator.getFree());
+        assertEquals(IPv4Address.of("192.168.1.5"), allocator.allocate());
+        assertEquals(IPv4Address.of("192.168.1.6"), allocator.allocate());
+        assertThrows(IllegalStateException.class, allocator::allocate);
+
+        // a point to point link has no network and broadcast address
+        allocator = new IPv4Allocator(IPv4Cidr.parse("192.168.1.4/31"));
+        assertEquals(2, allocator.getFree());
+        assertEquals(IPv4Address.of("192.168.1.4"), allocator.allocate());
+        assertEquals(1, new IPv4Allocator(IPv4Cidr.parse("192.168.1.4/32")).getFree());
+
+        assertEquals(16777214, new IPv4Allocator(IPv4Cidr.parse("10.0.0.0/8")).getFree());
+        assertThrows(IllegalArgumentException.class, () -> new IPv4Allocator(IPv4Cidr.parse("10.0.0.0/7")));
+    }
+
+    @Test
+    void reserveClients() {
+        SiteConfiguration site = new SiteConfiguration("site", null, "203.0.113.1", 51820, "10.0.0.1", "24", "wg0");
+        List<Configuration> clients = new ArrayList<>();
+        for (String ip : Arrays.asList("10.0.0.2", "10.0.1.2", "10.0.0.2", "10.0.0.1", "10.0.0.255")) {
+            Configuration client = new Configuration();
+            client.setName("client-" + (clients.size() + 1));
+            client.setIp(ip);
+            clients.add(client);
+        }
+
+        IPv4Allocator allocator = IPv4Allocator.forSite(site);
+        assertEquals(Arrays.asList(
+                "client-2: 10.0.1.2 is not part of the tunnel network 10.0.0.0/24",
+                "client-3: 10.0.0.2 is already used",
+                "client-4: 10.0.0.1 is already used",
+                "client-5: 10.0.0.255 is already used"), allocator.reserveAll(clients));
+        assertEquals(IPv4Address.of("10.0.0.3"), allocator.allocate());
+    }
+}
@@ -0,0 +1,104 @@
+package wgWizard;
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+import org.junit.jupiter.api.Test;
+import wgWizard.config.IPv4Cidr;
+import wgWizard.config.IPv4Netmask;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IPv4CidrTest {
+
+    @Test
+    void networkAndBroadcast() {
+        IPv4Cidr cidr = IPv4Cidr.parse("192.168.13.37/23");
+        assertEquals(0xC0A80C00, cidr.getNetworkAddress());
+        assertEquals(0xC0A80DFF, cidr.getBroadcastAddress());
+        assertEquals(0xFFFFFE00, cidr.getMask());
+        assertEquals("192.168.12.0/23", cidr.toString());
+
+        cidr = IPv4Cidr.of("10.4.48.3", new IPv4Netmask("255.255.255.252"));
+        assertEquals("10.4.48.0/30", cidr.toString());
+        assertEquals(0x0A043003, cidr.getBroadcastAddress());
+
+        cidr = IPv4Cidr.parse("1.2.3.4/0");
+        assertEquals("0.0.0.0/0", cidr.toString());
+        assertEquals(0xFFFFFFFF, cidr.getBroadcastAddress());
+
+        cidr = IPv4Cidr.parse("1.2.3.4/32");
+        assertEquals("1.2.3.4/32", cidr.toString());
+        assertEquals(0x01020304, cidr.getBroadcastAddress());
+
+        assertEquals(IPv4Cidr.parse("192.168.1.0/24"), IPv4Cidr.parse("192.168.1.77/24"));
+
+        // the prefix is parsed like the prefix of a netmask
+        for (String invalid : new String[]{"10.0.0.0/+24", "10.0.0.0/024", "10.0.0.0/33", "10.0.0.0/", "10.0.0.0/-1", "10.0.0.0"}) {
+            assertThrows(NumberFormatException.class, () -> IPv4Cidr.parse(invalid), invalid);
+        }
+    }
+
+    @Test
+    void containsAndOverlaps() {
+        IPv4Cidr big = IPv4Cidr.parse("10.0.0.0/8");
+        IPv4Cidr small = IPv4Cidr.parse("10.20.30.0/24");
+        IPv4Cidr other = IPv4Cidr.parse("192.168.0.0/16");
+
+        assertEquals(true, big.contains(0x0A141E01));
+        assertEquals(false, big.contains(0x0B000000));
+        assertEquals(true, big.contains(small));
+        assertEquals(false, small.contains(big));
+        assertEquals(true, big.overlaps(small));
+        assertEquals(true, small.overlaps(big));
+        assertEquals(false, big.overlaps(other));
+        assertEquals(true, IPv4Cidr.parse("0.0.0.0/0").overlaps(other));
+    }
+
+    private static List<IPv4Cidr> parse(String... networks) {
+        List<IPv4Cidr> list = new ArrayList<>();
+        for (String network : networks) {
+            list.add(IPv4Cidr.parse(network));
+        }
+        return list;
+    }
+
+    @Test
+    void summarize() {
+        // 256 adjacent /24 are one /16, in any order
+        List<IPv4Cidr> networks = new ArrayList<>();
+        for (int i = 255; i >= 0; i--) {
+            networks.add(IPv4Cidr.parse("10.20." + i + ".0/24"));
+        }
+        assertEquals(parse("10.20.0.0/16"), IPv4Cidr.summarize(networks));
+
+        // networks inside of another one and duplicates are left out
+        assertEquals(parse("10.0.0.0/8", "192.168.1.0/24"),
+                IPv4Cidr.summarize(parse("192.168.1.0/24", "10.1.0.0/16", "10.0.0.0/8", "10.2.3.4/32", "192.168.1.0/24")));
+        // adjacent networks that are not the two halves of a larger one stay apart
+        assertEquals(parse("10.0.1.0/24", "10.0.2.0/24"), IPv4Cidr.summarize(parse("10.0.2.0/24", "10.0.1.0/24")));
+        // merging goes up as far as possible
+        assertEquals(parse("10.0.0.0/22", "10.0.4.0/24"),
+                IPv4Cidr.summarize(parse("10.0.0.0/24", "10.0.1.0/24", "10.0.2.0/23", "10.0.4.0/24")));
+        assertEquals(parse("0.0.0.0/0"), IPv4Cidr.summarize(parse("0.0.0.0/1", "128.0.0.0/1")));
+        assertEquals(parse("255.255.255.254/31"), IPv4Cidr.summarize(parse("255.255.255.255/32", "255.255.255.254/32")));
+        assertEquals(new ArrayList<>(), IPv4Cidr.summarize(new ArrayList<>()));
+    }
+
+    @Test
+    void invalid() {
+        assertThrows(NumberFormatException.class, () -> IPv4Cidr.parse("10.0.0.0"));
+        assertThrows(NumberFormatException.class, () -> IPv4Cidr.parse("10.0.0/8"));
+        assertThrows(NumberFormatException.class, () -> IPv4Cidr.parse("10.0.0.0/33"));
+        assertThrows(NumberFormatException.class, () -> IPv4Cidr.parse("10.0.0.0/a"));
+    }
+}
@@ -11,9 +11,20 @@ package wgWizard;
 import org.junit.jupiter.api.Test;
 import wgWizard.config.IPv4Netmask;
 
+import java.util.regex.Pattern;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class IPv4NetmaskTest {
+    // the patterns used for validation before the hand-written parsers
+    private static final Pattern IPV4_NETMASK_PATTERN = Pattern.compile(
+            "^(((255\\.){3}(255|254|252|248|240|224|192|128|0+))" +
+                    "|((255\\.){2}(255|254|252|248|240|224|192|128|0+)\\.0)" +
+                    "|((255\\.)(255|254|252|248|240|224|192|128|0+)(\\.0+){2})" +
+                    "|((255|254|252|248|240|224|192|128|0+)(\\.0+){3}))$");
+    private static final Pattern IPV4_NETMASK_PREFIX_PATTERN = Pattern.compile("^([0-9]|[1-2][0-9]|3[0-2])$");
 
     @Test
     void validateIPv4Netmask() {
@@ -135,4 +146,68 @@ class IPv4NetmaskTest {
         assertEquals("16", netmask);
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void parseNetmask() {
+        assertEquals(24, IPv4Netmask.parseNetmask("255.255.255.0"));
+        assertEquals(8, IPv4Netmask.parseNetmask("255.000.0.00"));
+        assertEquals(32, IPv4Netmask.parseNetmask("255.255.255.255"));
+        assertEquals(-1, IPv4Netmask.parseNetmask("255.255.0.255"));
+        assertEquals(-1, IPv4Netmask.parseNetmask("255.255.0255.0"));
+        assertEquals(-1, IPv4Netmask.parseNetmask("255.255.255"));
+
+        assertEquals(24, IPv4Netmask.parsePrefix("24"));
+        assertEquals(-1, IPv4Netmask.parsePrefix("024"));
+        assertEquals(-1, IPv4Netmask.parsePrefix("33"));
+        assertEquals(-1, IPv4Netmask.parsePrefix(""));
+    }
+
+    @Test
+    void parseNetmaskMatchesPattern() {
+        String[] octets = {"", "0", "00", "000", "0000", "01", "1", "127", "128", "0128", "192", "224", "240",
+                "248", "252", "253", "254", "255", "0255", "256", "a"};
+        for (String a : octets) {
+            for (String b : octets) {
+                for (String c : octets) {
+                    String netmask = a + "." + b + "." + c + ".0";
+                    boolean expected = IPV4_NETMASK_PATTERN.matcher(netmask).matches() && netmask.startsWith("255");
+                    assertEquals(expected, IPv4Netmask.validateIPv4Netmask(netmask), netmask);
+
+                    // the pattern only allowed a single zero as last octet of 255.255.x.0,
+                    // the parser accepts any number of zeros there, just like in the other octets
+                    netmask = "255." + a + "." + b + "." + c;
+                    expected = IPV4_NETMASK_PATTERN.matcher(netmask.replaceAll("\\.0+$", ".0")).matches();
+                    assertEquals(expected, IPv4Netmask.validateIPv4Netmask(netmask), netmask);
+                }
+            }
+        }
+
+        String[] prefixes = {"", "0", "00", "7", "8", "08", "9", "10", "19", "20", "29", "30", "32", "33", "40",
+                "100", "a", "-8", " 8"};
+        for (String prefix : prefixes) {
+            boolean expected = IPV4_NETMASK_PREFIX_PATTERN.matcher(prefix).matches() && Integer.parseInt(prefix) >= 8;
+            assertEquals(expected, IPv4Netmask.validateIPv4NetmaskPrefix(prefix), prefix);
+        }
+    }
+
+    @Test
+    void of() {
+        assertSame(IPv4Netmask.of("24"), IPv4Netmask.of("255.255.255.0"));
+        assertSame(IPv4Netmask.of(24), IPv4Netmask.of("24"));
+        assertEquals(new IPv4Netmask("24"), IPv4Netmask.of(24));
+
+        // the full format is always returned in its canonical form
+        assertEquals("255.0.0.0", IPv4Netmask.of("255.000.0.00").getNetmask());
+
+        for (int prefix = 0; prefix <= 32; prefix++) {
+            IPv4Netmask netmask = IPv4Netmask.of(prefix);
+            assertEquals(prefix, netmask.getPrefixLength());
+            assertEquals(Integer.toString(prefix), netmask.getPrefix());
+            assertEquals(prefix == 0 ? 0 : -1 << (32 - prefix), netmask.getMask());
+        }
+
+        assertThrows(NumberFormatException.class, () -> IPv4Netmask.of("7"));
+        assertThrows(NumberFormatException.class, () -> IPv4Netmask.of("255.255.0.255"));
+        assertThrows(NumberFormatException.class, () -> IPv4Netmask.of(33));
+    }
+}
@@ -12,6 +12,10 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import wgWizard.config.Keypair;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 class KeypairTest {
@@ -39,4 +43,30 @@ class KeypairTest {
         String publicKey = Keypair.genpsk();
         assertEquals(44, publicKey.length());
     }
-}
\ No newline at end of file
+
+    @Test
+    void generateBatch() {
+        List<Keypair> keypairs = Keypair.generateBatch(100);
+        assertEquals(100, keypairs.size());
+
+        Set<String> publicKeys = new HashSet<>();
+        for (Keypair keypair : keypairs) {
+            assertEquals(44, keypair.getPrivateKey().length());
+            assertEquals(44, keypair.getPublicKey().length());
+            publicKeys.add(keypair.getPublicKey());
+        }
+        assertEquals(100, publicKeys.size());
+    }
+
+    @Test
+    void generateParallel() {
+        List<Keypair> keypairs = Keypair.generateParallel(1000);
+        assertEquals(1000, keypairs.size());
+
+        Set<String> privateKeys = new HashSet<>();
+        for (Keypair keypair : keypairs) {
+            privateKeys.add(keypair.getPrivateKey());
+        }
+        assertEquals(1000, privateKeys.size());
+    }
+}
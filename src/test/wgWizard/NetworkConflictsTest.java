@@ -0,0 +1,83 @@
+package wgWizard;
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+import org.junit.jupiter.api.Test;
+import wgWizard.config.ClientToSite.SiteConfiguration;
+import wgWizard.config.Configuration;
+import wgWizard.config.IPv4Cidr;
+import wgWizard.config.NetworkConflicts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NetworkConflictsTest {
+
+    private static Configuration site(String name, String ip, String mask, String... localNetworks) {
+        Configuration site = new Configuration(name, null, "203.0.113.1", 51820, ip, mask, "wg0");
+        for (String network : localNetworks) {
+            site.addLocalNetwork(IPv4Cidr.parse(network));
+        }
+        return site;
+    }
+
+    @Test
+    void siteToSite() {
+        Configuration site1 = site("site1", "10.0.0.1", "30", "192.168.0.0/16", "172.16.0.0/24", "172.16.0.0/24");
+        Configuration site2 = site("site2", "10.0.0.2", "30", "192.168.1.0/24", "192.168.1.128/25", "10.0.0.0/8");
+        assertEquals(Arrays.asList(
+                "the tunnel network 10.0.0.0/30 overlaps 10.0.0.0/8 of site2",
+                "172.16.0.0/24 of site1 overlaps 172.16.0.0/24 of site1",
+                "192.168.1.0/24 of site2 overlaps 192.168.0.0/16 of site1",
+                "192.168.1.128/25 of site2 overlaps 192.168.0.0/16 of site1",
+                "192.168.1.128/25 of site2 overlaps 192.168.1.0/24 of site2"), NetworkConflicts.find(Arrays.asList(site1, site2)));
+
+        assertTrue(NetworkConflicts.find(Arrays.asList(site("site1", "10.0.0.1", "30", "192.168.1.0/24"),
+                site("site2", "10.0.0.2", "30", "192.168.2.0/24", "192.168.0.0/24"))).isEmpty());
+    }
+
+    @Test
+    void clientToSite() {
+        List<Configuration> configs = new ArrayList<>();
+        SiteConfiguration site = new SiteConfiguration("site", null, "203.0.113.1", 51820, "10.0.0.1", "16", "wg0");
+        site.addLocalNetwork(IPv4Cidr.parse("192.168.1.0/24"));
+        configs.add(site);
+        for (int i = 0; i < 1000; i++) {
+            configs.add(site("client-" + (i + 1), "10.0." + (i / 250) + "." + (i % 250 + 2), "16"));
+        }
+        // the tunnel networks may overlap, eg: a client with a smaller netmask than its site
+        configs.add(site("client-1001", "10.0.5.2", "24"));
+        assertTrue(NetworkConflicts.find(configs).isEmpty());
+
+        configs.add(site("client-1002", "10.0.5.3", "24", "10.0.128.0/17"));
+        assertEquals(Arrays.asList("10.0.128.0/17 of client-1002 overlaps the tunnel network 10.0.0.0/16"), NetworkConflicts.find(configs));
+    }
+
+    @Test
+    void manySites() {
+        // 500 sites with 100 routes each
+        List<Configuration> configs = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Configuration site = site("site" + i, "10.0." + (i / 250) + "." + (i % 250 + 1), "16");
+            for (int j = 0; j < 100; j++) {
+                site.addLocalNetwork(IPv4Cidr.of((172 << 24) | (16 << 16) + ((i * 100 + j) << 8), 24));
+            }
+            configs.add(site);
+        }
+        assertTrue(NetworkConflicts.find(configs).isEmpty());
+
+        configs.add(site("other", "10.0.3.1", "16", "172.20.0.0/16"));
+        List<String> conflicts = NetworkConflicts.find(configs);
+        assertEquals(256, conflicts.size());
+        assertEquals("172.20.0.0/24 of site10 overlaps 172.20.0.0/16 of other", conflicts.get(0));
+    }
+}
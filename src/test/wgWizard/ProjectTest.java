@@ -0,0 +1,192 @@
+package wgWizard;
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+import org.junit.jupiter.api.Test;
+import wgWizard.config.ClientToSite.SiteConfiguration;
+import wgWizard.config.Configuration;
+import wgWizard.config.IPv4Cidr;
+import wgWizard.config.Keypair;
+import wgWizard.config.Project;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProjectTest {
+
+    private static void assertConfigEquals(Configuration expected, Configuration actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getEndpoint(), actual.getEndpoint());
+        assertEquals(expected.getListenPort(), actual.getListenPort());
+        assertEquals(expected.getIp(), actual.getIp());
+        assertEquals(expected.getNetmaskPrefix(), actual.getNetmaskPrefix());
+        assertEquals(expected.getIntName(), actual.getIntName());
+        assertEquals(expected.isSetKeepAlive(), actual.isSetKeepAlive());
+        assertEquals(expected.getKeepAliveSeconds(), actual.getKeepAliveSeconds());
+        assertEquals(expected.isSetDefaultGateway(), actual.isSetDefaultGateway());
+        assertEquals(expected.isSetSummarizeNetworks(), actual.isSetSummarizeNetworks());
+        assertEquals(expected.isSetBatchSetup(), actual.isSetBatchSetup());
+        assertEquals(expected.getPsk(), actual.getPsk());
+        assertEquals(expected.getLocalNetworks(), actual.getLocalNetworks());
+        if (expected.getKeypair() == null) {
+            assertNull(actual.getKeypair());
+        } else {
+            assertEquals(expected.getKeypair().getPrivateKey(), actual.getKeypair().getPrivateKey());
+            assertEquals(expected.getKeypair().getPublicKey(), actual.getKeypair().getPublicKey());
+        }
+    }
+
+    @Test
+    void clientToSite() throws IOException {
+        Path file = Files.createTempFile("wgWizard-project", ".wgp");
+        try {
+            SiteConfiguration site = new SiteConfiguration("site", new Keypair(), "203.0.113.1", 51820, "10.0.0.1", "16", "wg0");
+            site.addLocalNetwork(IPv4Cidr.parse("192.168.1.0/24"));
+            site.addLocalNetwork(IPv4Cidr.parse("172.16.0.0/12"));
+            List<Keypair> keypairs = Keypair.generateBatch(100);
+            List<Configuration> clients = new ArrayList<>();
+            for (int i = 0; i < 20000; i++) {
+                Configuration client = new Configuration();
+                client.setName("client-" + (i + 1));
+                client.setIp(String.format("10.0.%d.%d", (i + 2) / 256, (i + 2) % 256));
+                client.setNetmask("16");
+                // the clients of an earlier export have keys, new clients get them on the next export
+                if (i % 3 != 0) {
+                    client.setKeypair(keypairs.get(i % keypairs.size()));
+                    client.setPsk(Keypair.genpsk());
+                }
+                if (i % 2 == 0) {
+                    client.setKeepAliveSeconds(25);
+                    client.setIntName("wg-client");
+                    client.setDefaultGateway(true);
+                }
+                clients.add(client);
+            }
+            Project.clientToSite(site, clients).save(file);
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+
+            Project project = Project.load(file);
+            assertEquals(Project.Type.CLIENT_TO_SITE, project.getType());
+            assertConfigEquals(site, project.getSite());
+            assertEquals(clients.size(), project.getClients().size());
+            for (int i = 0; i < clients.size(); i++) {
+                assertConfigEquals(clients.get(i), project.getClients().get(i));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void siteToSite() throws IOException {
+        Path file = Files.createTempFile("wgWizard-project", ".wgp");
+        try {
+            Configuration site1 = new Configuration("site1", null, "203.0.113.1", 51820, "10.0.0.1", "30", 10, "wg0");
+            Configuration site2 = new Configuration("Z\u00fcrich", null, "203.0.113.2", 443, "10.0.0.2", "30", "wg1");
+            site2.addLocalNetwork(IPv4Cidr.parse("10.20.0.0/16"));
+            site2.setSummarizeNetworks(true);
+            Project.siteToSite(site1, site2).save(file);
+
+            Project project = Project.load(file);
+            assertEquals(Project.Type.SITE_TO_SITE, project.getType());
+            assertConfigEquals(site1, project.getConfigs().get(0));
+            assertConfigEquals(site2, project.getConfigs().get(1));
+            assertThrows(IllegalStateException.class, project::getSite);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void mesh() throws IOException {
+        Path file = Files.createTempFile("wgWizard-project", ".wgp");
+        try {
+            List<Configuration> nodes = new ArrayList<>();
+            for (int i = 1; i <= 3; i++) {
+                Configuration node = new Configuration("node-" + i, new Keypair(), "203.0.113." + i, 51820, "10.0.0." + i, "24", "wg0");
+                node.addLocalNetwork(IPv4Cidr.parse("192.168." + i + ".0/24"));
+                node.setBatchSetup(true);
+                nodes.add(node);
+            }
+            Project.mesh(nodes).save(file);
+
+            Project project = Project.load(file);
+            assertEquals(Project.Type.MESH, project.getType());
+            for (int i = 0; i < nodes.size(); i++) {
+                assertConfigEquals(nodes.get(i), project.getConfigs().get(i));
+            }
+
+            // both sides of every tunnel need the same pre-shared key
+            nodes.get(1).setPsk(Keypair.genpsk());
+            assertThrows(IllegalArgumentException.class, () -> Project.mesh(nodes));
+            assertThrows(IllegalArgumentException.class, () -> Project.mesh(nodes.subList(0, 1)));
+
+            // a file is checked like the nodes given to the factory
+            String psk = Keypair.genpsk();
+            nodes.forEach(node -> node.setPsk(psk));
+            Project.mesh(nodes).save(file);
+            assertEquals(psk, Project.load(file).getConfigs().get(2).getPsk());
+            byte[] content = Files.readAllBytes(file);
+            // the pre-shared key of the second node
+            content[16 + 128 + 64] ^= 1;
+            Files.write(file, content);
+            IOException e = assertThrows(IOException.class, () -> Project.load(file));
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void restoreKeys() {
+        Configuration site1 = new Configuration("site1", new Keypair(), "203.0.113.1", 51820, "10.0.0.1", "30", "wg0");
+        Configuration site2 = new Configuration("site2", new Keypair(), "203.0.113.2", 51820, "10.0.0.2", "30", "wg0");
+        Project project = Project.siteToSite(site1, site2);
+
+        Configuration changed = new Configuration("site1", null, "203.0.113.9", 51820, "10.0.0.1", "30", "wg0");
+        Configuration added = new Configuration("site3", null, "203.0.113.3", 51820, "10.0.0.3", "30", "wg0");
+        project.restoreKeys(Arrays.asList(changed, added));
+        assertEquals(site1.getKeypair().getPrivateKey(), changed.getKeypair().getPrivateKey());
+        assertNull(added.getKeypair());
+    }
+
+    @Test
+    void invalidFile() throws IOException {
+        Path file = Files.createTempFile("wgWizard-project", ".wgp");
+        try {
+            Files.write(file, "[Interface]\nPrivateKey = abc\n".getBytes());
+            assertThrows(IOException.class, () -> Project.load(file));
+
+            Project.clientToClient(
+                    new Configuration("client1", new Keypair(), "203.0.113.1", 51820, "10.0.0.1", "30", "wg0"),
+                    new Configuration("client2", new Keypair(), "203.0.113.2", 51820, "10.0.0.2", "30", "wg0")).save(file);
+            assertEquals(Project.Type.CLIENT_TO_CLIENT, Project.load(file).getType());
+
+            // cut off in the middle of the second record
+            byte[] content = Files.readAllBytes(file);
+            Files.write(file, Arrays.copyOf(content, 200));
+            assertThrows(IOException.class, () -> Project.load(file));
+
+            // the stored public key of the first client does not belong to its private key
+            content[48] ^= 1;
+            Files.write(file, content);
+            IOException e = assertThrows(IOException.class, () -> Project.load(file));
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
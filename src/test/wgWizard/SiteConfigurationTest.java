@@ -0,0 +1,102 @@
+package wgWizard;
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+import org.junit.jupiter.api.Test;
+import wgWizard.config.ClientToSite.SiteConfiguration;
+import wgWizard.config.Configuration;
+import wgWizard.config.IPv4Cidr;
+import wgWizard.config.Keypair;
+import wgWizard.config.Peer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SiteConfigurationTest {
+
+    @Test
+    void generateConfigFile() throws IOException {
+        Keypair siteKeypair = new Keypair();
+        SiteConfiguration site = new SiteConfiguration("site", siteKeypair, "203.0.113.1", 51820, "10.0.0.1", "24", 25, "wg0");
+
+        Configuration client1 = new Configuration();
+        client1.setKeypair(new Keypair());
+        client1.setIp("10.0.0.2");
+        client1.setPsk(Keypair.genpsk());
+        Configuration client2 = new Configuration();
+        client2.setKeypair(new Keypair());
+        client2.setIp("10.0.0.3");
+
+        File file = File.createTempFile("site", ".conf");
+        try {
+            site.generateConfigFile(Arrays.asList(client1, client2), file.getPath());
+            String expected = "[Interface]\n" +
+                    "PrivateKey = " + siteKeypair.getPrivateKey() + "\n" +
+                    "ListenPort = 51820\n" +
+                    "\n" +
+                    "[Peer]\n" +
+                    "PublicKey = " + client1.getKeypair().getPublicKey() + "\n" +
+                    "PresharedKey = " + client1.getPsk() + "\n" +
+                    "AllowedIPs = 10.0.0.2/32\n" +
+                    "PersistentKeepalive = 25\n" +
+                    "\n\n" +
+                    "[Peer]\n" +
+                    "PublicKey = " + client2.getKeypair().getPublicKey() + "\n" +
+                    "AllowedIPs = 10.0.0.3/32\n" +
+                    "PersistentKeepalive = 25\n" +
+                    "\n\n";
+            assertEquals(expected, new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    void generateConfigFileStreaming() throws IOException {
+        SiteConfiguration site = new SiteConfiguration("site", new Keypair(), "203.0.113.1", 51820, "10.0.0.1", "8", "wg0");
+        int clients = 50000;
+        String publicKey = Keypair.genpsk();
+
+        // the peers are created on the fly and never held in a list
+        Iterator<Peer> peers = new Iterator<Peer>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < clients;
+            }
+
+            @Override
+            public Peer next() {
+                List<IPv4Cidr> allowedIps = Collections.singletonList(IPv4Cidr.of(0x0A000002 + i++, 32));
+                return new Peer(publicKey, null, allowedIps);
+            }
+        };
+
+        File file = File.createTempFile("site", ".conf");
+        try {
+            site.generateConfigFile(peers, file.getPath());
+            List<String> lines = Files.readAllLines(file.toPath());
+            // every peer has 6 lines: header, key, allowed IPs, keepalive and two empty lines
+            assertEquals(4 + 6 * clients, lines.size());
+            assertEquals("AllowedIPs = 10.0.0.2/32", lines.get(6));
+            assertEquals("AllowedIPs = 10.0.195.81/32", lines.get(lines.size() - 4));
+        } finally {
+            file.delete();
+        }
+    }
+}
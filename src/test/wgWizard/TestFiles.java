@@ -0,0 +1,36 @@
+package wgWizard;
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+import java.io.File;
+
+/**
+ * Helpers for the temporary files of the tests
+ * It is public, the tests of the cli package use it as well
+ */
+public final class TestFiles {
+
+    private TestFiles() {
+    }
+
+    /**
+     * Delete a file or a directory with everything in it
+     *
+     * @param file the file or directory
+     */
+    public static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
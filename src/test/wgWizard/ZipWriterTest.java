@@ -0,0 +1,213 @@
+package wgWizard;
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+import net.lingala.zip4j.core.ZipFile;
+import net.lingala.zip4j.exception.ZipException;
+import net.lingala.zip4j.model.FileHeader;
+import net.lingala.zip4j.util.Zip4jConstants;
+import org.junit.jupiter.api.Test;
+import wgWizard.helper.Compression;
+import wgWizard.helper.ZipWriter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZipWriterTest {
+
+    private static byte[] text(int size) {
+        StringBuilder sb = new StringBuilder(size);
+        while (sb.length() < size) {
+            sb.append("[Peer]\nAllowedIPs = 10.0.0.").append(sb.length() % 250).append("/32\n\n");
+        }
+        sb.setLength(size);
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Read the actual compression method of every entry, AES entries store it in their extra data record
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Integer> methods(ZipFile zipFile) throws ZipException {
+        Map<String, Integer> methods = new HashMap<>();
+        for (FileHeader header : (List<FileHeader>) zipFile.getFileHeaders()) {
+            methods.put(header.getFileName(), header.getAesExtraDataRecord().getCompressionMethod());
+        }
+        return methods;
+    }
+
+    @Test
+    void forFile() {
+        assertEquals(Compression.STORE, Compression.forFile("client-1.conf", 300));
+        assertEquals(Compression.STORE, Compression.forFile("setup_client-1.sh", 250));
+        assertEquals(Compression.DEFAULT, Compression.forFile("site.conf", 100 * 1024));
+        assertEquals(Compression.FAST, Compression.forFile("site.conf", 2 * 1024 * 1024));
+        assertEquals(Compression.ULTRA, Compression.forFile("README.txt", 4 * 1024));
+        assertEquals(Compression.FAST, Compression.of(" Fast"));
+        assertThrows(IllegalArgumentException.class, () -> Compression.of("best"));
+    }
+
+    @Test
+    void chooseCompressionBySize() throws IOException, ZipException {
+        Path directory = Files.createTempDirectory("wgWizard-zip");
+        try {
+            File zip = directory.resolve("test.zip").toFile();
+            byte[] small = text(300);
+            byte[] large = text(Compression.LARGE_FILE + 1000);
+            try (ZipWriter writer = new ZipWriter(new FileOutputStream(zip), "secret")) {
+                writer.putNextEntry("client-1.conf");
+                writer.write(small);
+                writer.putNextEntry("site.conf");
+                // in small pieces, as the config writers do
+                for (int off = 0; off < large.length; off += 4096) {
+                    writer.write(large, off, Math.min(4096, large.length - off));
+                }
+                writer.putNextEntry("empty.txt");
+            }
+
+            ZipFile zipFile = new ZipFile(zip);
+            Map<String, Integer> methods = methods(zipFile);
+            assertEquals(Zip4jConstants.COMP_STORE, (int) methods.get("client-1.conf"));
+            assertEquals(Zip4jConstants.COMP_DEFLATE, (int) methods.get("site.conf"));
+            assertEquals(Zip4jConstants.COMP_STORE, (int) methods.get("empty.txt"));
+
+            zipFile.setPassword("secret");
+            zipFile.extractAll(directory.resolve("extracted").toString());
+            assertArrayEquals(small, Files.readAllBytes(directory.resolve("extracted/client-1.conf")));
+            assertArrayEquals(large, Files.readAllBytes(directory.resolve("extracted/site.conf")));
+            assertEquals(0, Files.size(directory.resolve("extracted/empty.txt")));
+        } finally {
+            TestFiles.delete(directory.toFile());
+        }
+    }
+
+    @Test
+    void fixedCompression() throws IOException, ZipException {
+        Path directory = Files.createTempDirectory("wgWizard-zip");
+        try {
+            File zip = directory.resolve("test.zip").toFile();
+            byte[] content = text(100 * 1024);
+            long[] sizes = new long[Compression.values().length];
+            for (Compression compression : Compression.values()) {
+                try (ZipWriter writer = new ZipWriter(new FileOutputStream(zip), "secret", compression)) {
+                    writer.putNextEntry("site.conf");
+                    writer.write(content);
+                }
+                sizes[compression.ordinal()] = zip.length();
+
+                ZipFile zipFile = new ZipFile(zip);
+                int expected = compression == Compression.STORE ? Zip4jConstants.COMP_STORE : Zip4jConstants.COMP_DEFLATE;
+                assertEquals(expected, (int) methods(zipFile).get("site.conf"));
+                zipFile.setPassword("secret");
+                Path extracted = directory.resolve(compression.name());
+                zipFile.extractAll(extracted.toString());
+                assertArrayEquals(content, Files.readAllBytes(extracted.resolve("site.conf")));
+            }
+            assertTrue(sizes[Compression.STORE.ordinal()] > sizes[Compression.FAST.ordinal()]);
+            assertTrue(sizes[Compression.FAST.ordinal()] >= sizes[Compression.ULTRA.ordinal()]);
+        } finally {
+            TestFiles.delete(directory.toFile());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void entriesInOrder() throws IOException, ZipException {
+        Path directory = Files.createTempDirectory("wgWizard-zip");
+        try {
+            File zip = directory.resolve("test.zip").toFile();
+            Random random = new Random(42);
+            byte[][] contents = new byte[200][];
+            try (ZipWriter writer = new ZipWriter(new FileOutputStream(zip), "secret", Compression.ULTRA)) {
+                for (int i = 0; i < contents.length; i++) {
+                    // random bytes do not compress, they are stored
+                    contents[i] = new byte[random.nextInt(5000)];
+                    random.nextBytes(contents[i]);
+                    writer.putNextEntry("file-" + i);
+                    writer.write(contents[i]);
+                }
+            }
+
+            ZipFile zipFile = new ZipFile(zip);
+            List<FileHeader> headers = (List<FileHeader>) zipFile.getFileHeaders();
+            assertEquals(contents.length, headers.size());
+            for (int i = 0; i < contents.length; i++) {
+                assertEquals("file-" + i, headers.get(i).getFileName());
+                assertEquals(Zip4jConstants.COMP_STORE, headers.get(i).getAesExtraDataRecord().getCompressionMethod());
+            }
+            zipFile.setPassword("secret");
+            Path extracted = directory.resolve("extracted");
+            zipFile.extractAll(extracted.toString());
+            for (int i = 0; i < contents.length; i++) {
+                assertArrayEquals(contents[i], Files.readAllBytes(extracted.resolve("file-" + i)));
+            }
+        } finally {
+            TestFiles.delete(directory.toFile());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void zip64() throws IOException, ZipException {
+        Path directory = Files.createTempDirectory("wgWizard-zip");
+        try {
+            File zip = directory.resolve("test.zip").toFile();
+            // more entries than the end of central directory record can count, eg: 33000 clients with two files each
+            int count = 65536;
+            try (ZipWriter writer = new ZipWriter(new FileOutputStream(zip), "secret", Compression.STORE)) {
+                for (int i = 0; i < count; i++) {
+                    writer.putNextEntry("file-" + i);
+                    writer.write(("entry " + i).getBytes(StandardCharsets.US_ASCII));
+                }
+            }
+
+            ZipFile zipFile = new ZipFile(zip);
+            List<FileHeader> headers = (List<FileHeader>) zipFile.getFileHeaders();
+            assertEquals(count, headers.size());
+            assertEquals("file-0", headers.get(0).getFileName());
+            assertEquals("file-" + (count - 1), headers.get(count - 1).getFileName());
+            zipFile.setPassword("secret");
+            Path extracted = directory.resolve("extracted");
+            zipFile.extractFile(headers.get(0), extracted.toString());
+            zipFile.extractFile(headers.get(count - 1), extracted.toString());
+            assertEquals("entry 0", new String(Files.readAllBytes(extracted.resolve("file-0")), StandardCharsets.US_ASCII));
+            assertEquals("entry " + (count - 1),
+                    new String(Files.readAllBytes(extracted.resolve("file-" + (count - 1))), StandardCharsets.US_ASCII));
+        } finally {
+            TestFiles.delete(directory.toFile());
+        }
+    }
+
+    @Test
+    void wrongPassword() throws IOException, ZipException {
+        Path directory = Files.createTempDirectory("wgWizard-zip");
+        try {
+            File zip = directory.resolve("test.zip").toFile();
+            try (ZipWriter writer = new ZipWriter(new FileOutputStream(zip), "secret")) {
+                writer.putNextEntry("site.conf");
+                writer.write(text(2000));
+            }
+            ZipFile zipFile = new ZipFile(zip);
+            zipFile.setPassword("wrong");
+            assertThrows(ZipException.class, () -> zipFile.extractAll(directory.resolve("extracted").toString()));
+        } finally {
+            TestFiles.delete(directory.toFile());
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package wgWizard.cli;
+
+import org.junit.jupiter.api.Test;
+import wgWizard.TestFiles;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CliTest {
+
+    @Test
+    void siteToSite() throws IOException {
+        Path out = Files.createTempDirectory("wgWizard-cli");
+        try {
+            int exit = Cli.run(new String[]{"s2s", "--out", out.toString(), "--no-zip",
+                    "site1.publicIp=203.0.113.1", "site1.publicPort=51820", "site1.tunnelIp=10.0.0.1", "site1.tunnelMask=30",
+                    "site1.localNetworks=192.168.1.0/24",
+                    "site2.publicIp=203.0.113.2", "site2.publicPort=51820", "site2.tunnelIp=10.0.0.2", "site2.tunnelMask=30",
+                    "site2.keepalive=25", "psk=true", "summarize=true",
+                    "site2.localNetworks=172.16.0.0/25,172.16.0.128/25"}, System.err);
+            assertEquals(Cli.EXIT_OK, exit);
+
+            File directory = out.resolve("wireguard-configuration").toFile();
+            List<String> files = Arrays.asList(directory.list());
+            assertTrue(files.containsAll(Arrays.asList("site1.conf", "site2.conf", "setup_site1.sh", "setup_site2.sh",
+                    "install_wireguard.sh", "README.txt")));
+
+            List<String> site2 = Files.readAllLines(directory.toPath().resolve("site2.conf"));
+            assertTrue(site2.contains("AllowedIPs = 10.0.0.1/32,192.168.1.0/24"));
+            assertTrue(site2.contains("PersistentKeepalive = 25"));
+            assertTrue(Files.readAllLines(directory.toPath().resolve("site1.conf")).contains("AllowedIPs = 10.0.0.2/32,172.16.0.0/24"));
+        } finally {
+            TestFiles.delete(out.toFile());
+        }
+    }
+
+    @Test
+    void clientToSiteZip() throws IOException {
+        Path out = Files.createTempDirectory("wgWizard-cli");
+        try {
+            int exit = Cli.run(new String[]{"c2s", "--out", out.toString(), "--password", "secret",
+                    "site.publicIp=203.0.113.1", "site.publicPort=51820", "site.tunnelIp=10.0.0.1", "site.tunnelMask=24",
+                    "clients=10.0.0.2/24,10.0.0.3/24,10.0.0.4/24"}, System.err);
+            assertEquals(Cli.EXIT_OK, exit);
+
+            // only the ZIP and the README are left
+            File directory = out.resolve("wireguard-configuration").toFile();
+            List<String> files = Arrays.asList(directory.list());
+            assertEquals(2, files.size());
+            assertTrue(files.contains("wireguard-configuration.zip"));
+        } finally {
+            TestFiles.delete(out.toFile());
+        }
+    }
+
+    @Test
+    void clientToSiteBundles() throws IOException {
+        Path out = Files.createTempDirectory("wgWizard-cli");
+        try {
+            int exit = Cli.run(new String[]{"c2s", "--out", out.toString(), "--password", "secret", "--bundles",
+                    "site.publicIp=203.0.113.1", "site.publicPort=51820", "site.tunnelIp=10.0.0.1", "site.tunnelMask=24",
+                    "clients=10.0.0.2/24,10.0.0.3/24"}, System.err);
+            assertEquals(Cli.EXIT_OK, exit);
+
+            File directory = out.resolve("wireguard-configuration").toFile();
+            List<String> files = Arrays.asList(directory.list());
+            assertEquals(4, files.size());
+            assertTrue(files.containsAll(Arrays.asList("site.zip", "client-1.zip", "client-2.zip", "README.txt")));
+
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            assertEquals(Cli.EXIT_USAGE, Cli.run(new String[]{"c2s", "--no-zip", "--bundles"}, new PrintStream(err)));
+        } finally {
+            TestFiles.delete(out.toFile());
+        }
+    }
+
+    @Test
+    void clientToSiteImport() throws IOException {
+        Path out = Files.createTempDirectory("wgWizard-cli");
+        try {
+            Path roster = out.resolve("clients.csv");
+            Files.write(roster, Arrays.asList("ip,mask,name", "10.0.0.2,24,alice", "10.0.0.3/24"));
+            int exit = Cli.run(new String[]{"c2s", "--out", out.toString(), "--no-zip",
+                    "site.publicIp=203.0.113.1", "site.publicPort=51820", "site.tunnelIp=10.0.0.1", "site.tunnelMask=24",
+                    "clients.file=" + roster}, System.err);
+            assertEquals(Cli.EXIT_OK, exit);
+
+            File directory = out.resolve("wireguard-configuration").toFile();
+            List<String> files = Arrays.asList(directory.list());
+            assertTrue(files.containsAll(Arrays.asList("alice.conf", "setup_alice.sh", "client-2.conf", "setup_client-2.sh")));
+            assertTrue(Files.readAllLines(directory.toPath().resolve("setup_alice.sh")).contains("sudo wg setconf wg0 alice.conf"));
+
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            Files.write(roster, Arrays.asList("10.0.0.2,24", "10.0.0.3,42"));
+            exit = Cli.run(new String[]{"c2s", "--out", out.toString(), "--no-zip",
+                    "site.publicIp=203.0.113.1", "site.publicPort=51820", "site.tunnelIp=10.0.0.1", "site.tunnelMask=24",
+                    "clients.file=" + roster}, new PrintStream(err));
+            assertEquals(Cli.EXIT_USAGE, exit);
+            assertTrue(err.toString().contains(roster + ": line 2: invalid mask '42'"));
+        } finally {
+            TestFiles.delete(out.toFile());
+        }
+    }
+
+    @Test
+    void mesh() throws IOException {
+        Path out = Files.createTempDirectory("wgWizard-cli");
+        try {
+            int exit = Cli.run(new String[]{"mesh", "--out", out.toString(), "--no-zip", "nodes=berlin,paris,rome", "psk=true",
+                    "berlin.publicIp=203.0.113.1", "berlin.publicPort=51820", "berlin.tunnelIp=10.0.0.1", "berlin.tunnelMask=24",
+                    "berlin.localNetworks=192.168.1.0/24",
+                    "paris.publicIp=203.0.113.2", "paris.publicPort=51820", "paris.tunnelIp=10.0.0.2", "paris.tunnelMask=24",
+                    "rome.publicIp=203.0.113.3", "rome.publicPort=51820", "rome.tunnelIp=10.0.0.3", "rome.tunnelMask=24"}, System.err);
+            assertEquals(Cli.EXIT_OK, exit);
+
+            Path directory = out.resolve("wireguard-configuration");
+            List<String> rome = Files.readAllLines(directory.resolve("rome.conf"));
+            assertTrue(rome.contains("AllowedIPs = 10.0.0.1/32,192.168.1.0/24"));
+            assertTrue(rome.contains("AllowedIPs = 10.0.0.2/32"));
+            // one pre-shared key for the whole mesh
+            assertEquals(2, rome.stream().filter(line -> line.startsWith("PresharedKey = ")).count());
+            assertEquals(1, rome.stream().filter(line -> line.startsWith("PresharedKey = ")).distinct().count());
+            assertTrue(Files.readAllLines(directory.resolve("setup_paris.sh")).contains("sudo ip route add 192.168.1.0/24 via 10.0.0.1"));
+
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            assertEquals(Cli.EXIT_USAGE, Cli.run(new String[]{"mesh", "--no-zip", "nodes=berlin,berlin,../x"}, new PrintStream(err)));
+            assertTrue(err.toString().contains("Duplicate node 'berlin' in 'nodes'"));
+            assertTrue(err.toString().contains("Invalid value '../x' for 'nodes'"));
+            assertTrue(err.toString().contains("Missing setting 'berlin.publicIp'"));
+        } finally {
+            TestFiles.delete(out.toFile());
+        }
+    }
+
+    @Test
+    void project() throws IOException {
+        Path out = Files.createTempDirectory("wgWizard-cli");
+        try {
+            String project = out.resolve("vpn.wgp").toString();
+            int exit = Cli.run(new String[]{"c2s", "--out", out.resolve("first").toString(), "--no-zip", "--save-project", project,
+                    "site.publicIp=203.0.113.1", "site.publicPort=51820", "site.tunnelIp=10.0.0.1", "site.tunnelMask=24",
+                    "clients=10.0.0.2/24,10.0.0.3/24"}, System.err);
+            assertEquals(Cli.EXIT_OK, exit);
+
+            // no settings needed, the keys stay the same
+            exit = Cli.run(new String[]{"c2s", "--out", out.resolve("second").toString(), "--no-zip", "--project", project}, System.err);
+            assertEquals(Cli.EXIT_OK, exit);
+            for (String file : Arrays.asList("site.conf", "client-1.conf", "client-2.conf")) {
+                assertEquals(Files.readAllLines(out.resolve("first/wireguard-configuration").resolve(file)),
+                        Files.readAllLines(out.resolve("second/wireguard-configuration").resolve(file)));
+            }
+
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            assertEquals(Cli.EXIT_USAGE, Cli.run(new String[]{"s2s", "--no-zip", "--project", project}, new PrintStream(err)));
+            assertTrue(err.toString().contains("is a CLIENT_TO_SITE VPN, not s2s"));
+        } finally {
+            TestFiles.delete(out.toFile());
+        }
+    }
+
+    @Test
+    void importConfig() throws IOException {
+        Path out = Files.createTempDirectory("wgWizard-cli");
+        try {
+            int exit = Cli.run(new String[]{"c2s", "--out", out.resolve("first").toString(), "--no-zip",
+                    "site.publicIp=203.0.113.1", "site.publicPort=51820", "site.tunnelIp=10.0.0.1", "site.tunnelMask=24",
+                    "clients=10.0.0.2/24,10.0.0.3/24"}, System.err);
+            assertEquals(Cli.EXIT_OK, exit);
+
+            // the tunnel IP and the public IP of the site are not part of its config file
+            Path site = out.resolve("first/wireguard-configuration/site.conf");
+            exit = Cli.run(new String[]{"c2s", "--out", out.resolve("second").toString(), "--no-zip", "--import", site.toString(),
+                    "site.publicIp=203.0.113.1", "site.tunnelIp=10.0.0.1", "site.tunnelMask=24"}, System.err);
+            assertEquals(Cli.EXIT_OK, exit);
+            Path directory = out.resolve("second/wireguard-configuration");
+            assertEquals(Files.readAllLines(site), Files.readAllLines(directory.resolve("site.conf")));
+            assertFalse(Files.exists(directory.resolve("client-1.conf")));
+
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            assertEquals(Cli.EXIT_USAGE, Cli.run(new String[]{"c2s", "--no-zip", "--import", site.toString()}, new PrintStream(err)));
+            assertTrue(err.toString().contains("Missing setting 'site.tunnelIp'"));
+            assertEquals(Cli.EXIT_USAGE, Cli.run(new String[]{"s2s", "--no-zip", "--import", site.toString()}, new PrintStream(err)));
+            assertTrue(err.toString().contains("has one [Peer], not 2"));
+        } finally {
+            TestFiles.delete(out.toFile());
+        }
+    }
+
+    @Test
+    void clientCount() throws IOException {
+        Path out = Files.createTempDirectory("wgWizard-cli");
+        try {
+            int exit = Cli.run(new String[]{"c2s", "--out", out.toString(), "--no-zip",
+                    "site.publicIp=203.0.113.1", "site.publicPort=51820", "site.tunnelIp=10.0.0.1", "site.tunnelMask=16",
+                    "clients.count=300", "batch=true"}, System.err);
+            assertEquals(Cli.EXIT_OK, exit);
+            Path directory = out.resolve("wireguard-configuration");
+            assertTrue(Files.readAllLines(directory.resolve("setup_client-1.sh")).contains("addr add 10.0.0.2/16 dev wg0"));
+            assertTrue(Files.readAllLines(directory.resolve("setup_client-300.sh")).contains("addr add 10.0.1.45/16 dev wg0"));
+            List<String> setup = Files.readAllLines(directory.resolve("setup_site.sh"));
+            assertEquals(Arrays.asList("#!/bin/bash", "sudo ip -force -batch - <<'EOF'", "link add dev wg0 type wireguard",
+                    "addr add 10.0.0.1/16 dev wg0", "link set dev wg0 up", "EOF", "sudo wg setconf wg0 site.conf"), setup);
+
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            assertEquals(Cli.EXIT_USAGE, Cli.run(new String[]{"c2s", "--no-zip",
+                    "site.publicIp=203.0.113.1", "site.publicPort=51820", "site.tunnelIp=10.0.0.1", "site.tunnelMask=30",
+                    "clients.count=2"}, new PrintStream(err)));
+            assertTrue(err.toString().contains("The tunnel network 10.0.0.0/30 only has 1 free IPs for 2 clients"));
+            // refused before 99 million clients are created
+            assertEquals(Cli.EXIT_USAGE, Cli.run(new String[]{"c2s", "--no-zip",
+                    "site.publicIp=203.0.113.1", "site.publicPort=51820", "site.tunnelIp=10.0.0.1", "site.tunnelMask=8",
+                    "clients.count=99999999", "psk=true"}, new PrintStream(err)));
+            assertTrue(err.toString().contains("The tunnel network 10.0.0.0/8 only has 16777213 free IPs for 99999999 clients"));
+            assertEquals(Cli.EXIT_USAGE, Cli.run(new String[]{"c2s", "--no-zip",
+                    "site.publicIp=203.0.113.1", "site.publicPort=51820", "site.tunnelIp=10.0.0.1", "site.tunnelMask=24",
+                    "clients=10.0.0.2/24,10.0.0.2/24,10.1.0.2/24"}, new PrintStream(err)));
+            assertTrue(err.toString().contains("client-2: 10.0.0.2 is already used"));
+            assertTrue(err.toString().contains("client-3: 10.1.0.2 is not part of the tunnel network 10.0.0.0/24"));
+        } finally {
+            TestFiles.delete(out.toFile());
+        }
+    }
+
+    @Test
+    void invalidSettings() {
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int exit = Cli.run(new String[]{"c2c", "--no-zip", "client1.publicIp=1.2.3.256"}, new PrintStream(err));
+        assertEquals(Cli.EXIT_USAGE, exit);
+        assertTrue(err.toString().contains("Invalid value '1.2.3.256' for 'client1.publicIp'"));
+        assertTrue(err.toString().contains("Missing setting 'client2.tunnelIp'"));
+
+        err.reset();
+        exit = Cli.run(new String[]{"s2s", "--no-zip",
+                "site1.publicIp=203.0.113.1", "site1.publicPort=51820", "site1.tunnelIp=10.0.0.1", "site1.tunnelMask=30",
+                "site1.localNetworks=192.168.0.0/16",
+                "site2.publicIp=203.0.113.2", "site2.publicPort=51820", "site2.tunnelIp=10.0.0.2", "site2.tunnelMask=30",
+                "site2.localNetworks=192.168.1.0/24"}, new PrintStream(err));
+        assertEquals(Cli.EXIT_USAGE, exit);
+        assertTrue(err.toString().contains("192.168.1.0/24 of site2 overlaps 192.168.0.0/16 of site1"));
+
+        assertEquals(Cli.EXIT_USAGE, Cli.run(new String[]{"s2s"}, new PrintStream(err)));
+        assertEquals(Cli.EXIT_USAGE, Cli.run(new String[]{}, new PrintStream(err)));
+    }
+}
@@ -0,0 +1,652 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.cli;
+
+import wgWizard.config.ClientToSite.ClientImport;
+import wgWizard.config.ClientToSite.SiteConfiguration;
+import wgWizard.config.ConfigImport;
+import wgWizard.config.Configuration;
+import wgWizard.config.Export;
+import wgWizard.config.IPv4Allocator;
+import wgWizard.config.IPv4Cidr;
+import wgWizard.config.IPv4Netmask;
+import wgWizard.config.Keypair;
+import wgWizard.config.NetworkConflicts;
+import wgWizard.config.Project;
+import wgWizard.helper.Compression;
+import wgWizard.helper.Log;
+import wgWizard.helper.Validator;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Level;
+
+/**
+ * Headless entry point of the wizard
+ * Generates the same files as the GUI, from a properties file and/or key=value arguments.
+ * Nothing in here touches JavaFX, so it starts as fast as any other command line tool
+ *
+ * Usage: java -cp wgWizard.jar wgWizard.cli.Cli s2s|c2s|c2c|mesh [options] [key=value ...]
+ */
+public class Cli {
+    // exit codes
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_IO_ERROR = 1;
+    public static final int EXIT_USAGE = 2;
+
+    // environment variable that can hold the ZIP password, so it does not show up in the process list
+    public static final String PASSWORD_ENV = "WGWIZARD_ZIP_PASSWORD";
+
+    private static final String USAGE =
+            "Usage: java -cp wgWizard.jar wgWizard.cli.Cli s2s|c2s|c2c|mesh [options] [key=value ...]\n" +
+                    "\n" +
+                    "Options:\n" +
+                    "  --config FILE     read the settings from a properties file, key=value arguments override them\n" +
+                    "  --out DIR         write to DIR/wireguard-configuration (default: current directory)\n" +
+                    "  --password PW     password of the ZIP, or set " + PASSWORD_ENV + "\n" +
+                    "  --no-zip          keep the plain files instead of packing them into an encrypted ZIP\n" +
+                    "  --bundles         one encrypted ZIP per site and client (NAME.zip) instead of one ZIP for all\n" +
+                    "  --compression C   store, fast, default or ultra for all files in the ZIP\n" +
+                    "                    (default: chosen by type and size of every file)\n" +
+                    "  --state FILE      keep the keys and unchanged files of the last export with this state file\n" +
+                    "                    and update it, the file contains the private keys\n" +
+                    "  --project FILE    read the sites and clients, including their keys, from a saved project\n" +
+                    "                    instead of the settings\n" +
+                    "  --import FILE     read an existing wireguard config, eg: /etc/wireguard/wg0.conf, instead of the\n" +
+                    "                    settings. It is the config of the site (c2s), site1 (s2s), client1 (c2c)\n" +
+                    "                    or of the first node (mesh),\n" +
+                    "                    settings of that side fill in what is not in the file, eg: X.publicIp\n" +
+                    "  --save-project FILE\n" +
+                    "                    save the sites and clients, including their keys, as a project after the export\n" +
+                    "  --verbose         log every step\n" +
+                    "\n" +
+                    "Settings, X is site1/site2 (s2s), site (c2s), client1/client2 (c2c) or a node name (mesh):\n" +
+                    "  X.publicIp, X.publicPort, X.tunnelIp, X.tunnelMask    required\n" +
+                    "  X.keepalive, X.interface, X.defaultGateway=true       optional\n" +
+                    "  X.localNetworks=192.168.1.0/24,10.1.0.0/255.255.0.0   optional, s2s, c2s and mesh\n" +
+                    "  clients=10.0.0.2/24,10.0.0.3/24                        required, c2s\n" +
+                    "  clients.file=clients.csv                               instead of clients, CSV or JSON lines:\n" +
+                    "                                                         ip,mask[,name] or {\"ip\":..,\"mask\":..,\"name\":..}\n" +
+                    "  clients.count=5000                                     instead of clients, the clients get the free\n" +
+                    "                                                         IPs of the site's tunnel network\n" +
+                    "  client.keepalive, client.interface, client.defaultGateway=true   optional, c2s\n" +
+                    "  nodes=berlin,paris,rome                                required, mesh: every node has all others as peer\n" +
+                    "  psk=true                                               add a pre-shared key\n" +
+                    "  summarize=true                                         merge adjacent local networks in AllowedIPs\n" +
+                    "                                                         and routes, eg: two /24 of a /23 become the /23\n" +
+                    "  batch=true                                             set up the interface and all routes of a setup\n" +
+                    "                                                         script with one ip -batch\n";
+
+    private final Properties settings = new Properties();
+    private final List<String> errors = new ArrayList<>();
+    private String mode;
+    private String out = ".";
+    private String password = System.getenv(PASSWORD_ENV);
+    private boolean zip = true;
+    private boolean bundles = false;
+    private Compression compression;
+    private Path state;
+    private Path project;
+    private Path importFile;
+    private Path saveProject;
+    private boolean verbose = false;
+
+    public static void main(String[] args) {
+        // set logging format
+        System.setProperty("java.util.logging.SimpleFormatter.format",
+                "%1$tY-%1$tm-%1$td %1$tH:%1$tM:%1$tS %4$-6s %2$s %5$s%6$s%n");
+        System.exit(run(args, System.err));
+    }
+
+    /**
+     * Parse the arguments and generate the configuration
+     *
+     * @param args the command line arguments
+     * @param err  where to print errors and the usage
+     * @return the exit code
+     */
+    public static int run(String[] args, PrintStream err) {
+        Cli cli = new Cli();
+        try {
+            cli.parseArguments(args);
+        } catch (IllegalArgumentException | IOException e) {
+            err.println(e.getMessage());
+            err.print(USAGE);
+            return EXIT_USAGE;
+        }
+        // invalid settings are reported below, the warnings of the validator would only repeat them
+        Log.getInstance().setLevel(cli.verbose ? Level.ALL : Level.SEVERE);
+
+        try {
+            if (!cli.generate()) {
+                for (String error : cli.errors) {
+                    err.println(error);
+                }
+                return EXIT_USAGE;
+            }
+        } catch (IOException e) {
+            err.println("Error writing the configuration: " + e.getMessage());
+            return EXIT_IO_ERROR;
+        }
+        return EXIT_OK;
+    }
+
+    private void parseArguments(String[] args) throws IOException {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("No mode given");
+        }
+        mode = args[0];
+        if (!mode.equals("s2s") && !mode.equals("c2s") && !mode.equals("c2c") && !mode.equals("mesh")) {
+            throw new IllegalArgumentException("Unknown mode '" + mode + "'");
+        }
+
+        // key=value arguments override the config file, no matter in which order they are given
+        Properties overrides = new Properties();
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--config":
+                    try (InputStream in = new FileInputStream(value(args, ++i, arg))) {
+                        settings.load(in);
+                    }
+                    break;
+                case "--out":
+                    out = value(args, ++i, arg);
+                    break;
+                case "--password":
+                    password = value(args, ++i, arg);
+                    break;
+                case "--no-zip":
+                    zip = false;
+                    break;
+                case "--bundles":
+                    bundles = true;
+                    break;
+                case "--compression":
+                    compression = Compression.of(value(args, ++i, arg));
+                    break;
+                case "--state":
+                    state = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--project":
+                    project = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--import":
+                    importFile = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--save-project":
+                    saveProject = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--verbose":
+                    verbose = true;
+                    break;
+                default:
+                    int equals = arg.indexOf('=');
+                    if (arg.startsWith("-") || equals < 1) {
+                        throw new IllegalArgumentException("Unknown argument '" + arg + "'");
+                    }
+                    overrides.setProperty(arg.substring(0, equals), arg.substring(equals + 1));
+            }
+        }
+        settings.putAll(overrides);
+
+        if (project != null && importFile != null) {
+            throw new IllegalArgumentException("--project and --import can not be used together");
+        }
+        if (bundles && !zip) {
+            throw new IllegalArgumentException("--bundles and --no-zip can not be used together");
+        }
+        if (zip && (password == null || password.isEmpty())) {
+            throw new IllegalArgumentException("No ZIP password given. Use --password, " + PASSWORD_ENV + " or --no-zip");
+        }
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[i];
+    }
+
+    /**
+     * Create the configurations of the selected mode and write them
+     *
+     * @return false if the settings are not valid, nothing is written in that case
+     */
+    private boolean generate() throws IOException {
+        String directory = Paths.get(out, "wireguard-configuration").toString();
+
+        Project configs = project != null ? openProject() : importFile != null ? importConfig() : createProject();
+        if (configs == null) {
+            return false;
+        }
+        if (Boolean.parseBoolean(settings.getProperty("summarize"))) {
+            for (Configuration config : configs.getConfigs()) {
+                config.setSummarizeNetworks(true);
+            }
+        }
+        if (Boolean.parseBoolean(settings.getProperty("batch"))) {
+            for (Configuration config : configs.getConfigs()) {
+                config.setBatchSetup(true);
+            }
+        }
+        // every local network is routed into the tunnel, so none of them may overlap
+        addErrors(NetworkConflicts.find(configs.getConfigs()));
+        if (!errors.isEmpty()) {
+            return false;
+        }
+
+        Export export = configs.export(directory);
+        Files.createDirectories(Paths.get(directory));
+        if (state != null) {
+            export.state(state);
+        }
+        if (bundles) {
+            export.bundles(password, compression);
+        } else if (zip) {
+            export.zip(password, compression);
+        }
+        // the keys are generated by the export as well
+        export.run();
+        if (saveProject != null) {
+            configs.save(saveProject);
+        }
+        return true;
+    }
+
+    /**
+     * Create the configurations of the selected mode from the settings
+     *
+     * @return the configurations, or null if the settings are not valid
+     */
+    private Project createProject() throws IOException {
+        switch (mode) {
+            case "s2s": {
+                Configuration site1 = createConfig("site1", true);
+                Configuration site2 = createConfig("site2", true);
+                if (!errors.isEmpty()) {
+                    return null;
+                }
+                addPsk(site1, site2);
+                return Project.siteToSite(site1, site2);
+            }
+            case "c2c": {
+                Configuration client1 = createConfig("client1", false);
+                Configuration client2 = createConfig("client2", false);
+                if (!errors.isEmpty()) {
+                    return null;
+                }
+                addPsk(client1, client2);
+                return Project.clientToClient(client1, client2);
+            }
+            case "mesh": {
+                List<Configuration> nodes = createNodeConfigs();
+                if (!errors.isEmpty()) {
+                    return null;
+                }
+                addPsk(nodes);
+                return Project.mesh(nodes);
+            }
+            default: {
+                SiteConfiguration site = new SiteConfiguration();
+                fillConfig(site, SiteConfiguration.NAME, true);
+                List<Configuration> clients = createClientConfigs(site);
+                if (!errors.isEmpty()) {
+                    return null;
+                }
+                allocateClientIps(site, clients);
+                if (!errors.isEmpty()) {
+                    return null;
+                }
+                return Project.clientToSite(site, clients);
+            }
+        }
+    }
+
+    /**
+     * Read the configurations from an existing config file of the selected mode
+     * The settings of the file's own side override it and fill in what is missing, eg: the public IP
+     *
+     * @return the configurations, or null if the file or the settings are not valid
+     */
+    private Project importConfig() throws IOException {
+        ConfigImport configImport = new ConfigImport();
+        Project configs = configImport.read(importFile, type());
+        for (String error : configImport.getErrors()) {
+            errors.add(importFile + ": " + error);
+        }
+        int more = configImport.getErrorCount() - configImport.getErrors().size();
+        if (more > 0) {
+            errors.add(importFile + ": " + more + " more errors");
+        }
+        if (configs == null) {
+            return null;
+        }
+
+        Configuration own = configs.getConfigs().get(0);
+        String name = mode.equals("s2s") ? "site1" : mode.equals("c2c") ? "client1" : mode.equals("mesh") ? own.getName() : "site";
+        String publicIp = setting(name + ".publicIp", own.getEndpoint() == null);
+        String tunnelIp = setting(name + ".tunnelIp", own.getIp() == null);
+        String tunnelMask = setting(name + ".tunnelMask", own.getNetmaskPrefix() == null);
+        if (!publicIp.isEmpty() && check(Validator.validateIPv4(publicIp), name + ".publicIp", publicIp)) {
+            own.setEndpoint(publicIp);
+        }
+        if (!tunnelIp.isEmpty() && check(Validator.validateIPv4(tunnelIp), name + ".tunnelIp", tunnelIp)) {
+            own.setIp(tunnelIp);
+        }
+        if (!tunnelMask.isEmpty() && check(Validator.validateNetmask(tunnelMask), name + ".tunnelMask", tunnelMask)) {
+            own.setNetmask(tunnelMask);
+        }
+        if (!mode.equals("c2c")) {
+            for (String network : list(name + ".localNetworks")) {
+                IPv4Cidr cidr = parseNetwork(name + ".localNetworks", network);
+                if (cidr != null) {
+                    own.addLocalNetwork(cidr);
+                }
+            }
+        }
+        if (!errors.isEmpty()) {
+            return null;
+        }
+        // the peers are in the tunnel network of the file's own side
+        for (Configuration other : configs.getConfigs()) {
+            if (other.getNetmaskPrefix() == null) {
+                other.setNetmask(own.getNetmaskPrefix());
+            }
+        }
+        return configs;
+    }
+
+    /**
+     * Read the configurations from the saved project, it has to be of the selected mode
+     *
+     * @return the configurations, or null if the project is of another mode
+     */
+    private Project openProject() throws IOException {
+        Project configs = Project.load(project);
+        if (configs.getType() != type()) {
+            errors.add("The project " + project + " is a " + configs.getType() + " VPN, not " + mode);
+            return null;
+        }
+        return configs;
+    }
+
+    private Configuration createConfig(String name, boolean localNetworks) {
+        Configuration config = new Configuration();
+        fillConfig(config, name, localNetworks);
+        return config;
+    }
+
+    /**
+     * The pre-shared key has to be in both or neither configurations
+     */
+    private void addPsk(Configuration config1, Configuration config2) {
+        addPsk(Arrays.asList(config1, config2));
+    }
+
+    /**
+     * The pre-shared key has to be in all or none of the configurations
+     */
+    private void addPsk(List<Configuration> configs) {
+        if (Boolean.parseBoolean(settings.getProperty("psk"))) {
+            String psk = Keypair.genpsk();
+            for (Configuration config : configs) {
+                config.setPsk(psk);
+            }
+        }
+    }
+
+    private void fillConfig(Configuration config, String name, boolean localNetworks) {
+        config.setName(name);
+
+        String publicIp = required(name + ".publicIp");
+        String publicPort = required(name + ".publicPort");
+        String tunnelIp = required(name + ".tunnelIp");
+        String tunnelMask = required(name + ".tunnelMask");
+        if (check(Validator.validateIPv4(publicIp), name + ".publicIp", publicIp)) {
+            config.setEndpoint(publicIp);
+        }
+        if (check(Validator.validateListenPort(publicPort), name + ".publicPort", publicPort)) {
+            config.setListenPort(Integer.parseInt(publicPort));
+        }
+        if (check(Validator.validateIPv4(tunnelIp), name + ".tunnelIp", tunnelIp)) {
+            config.setIp(tunnelIp);
+        }
+        if (check(Validator.validateNetmask(tunnelMask), name + ".tunnelMask", tunnelMask)) {
+            config.setNetmask(tunnelMask);
+        }
+        fillOptional(config, name);
+
+        if (localNetworks) {
+            for (String network : list(name + ".localNetworks")) {
+                IPv4Cidr cidr = parseNetwork(name + ".localNetworks", network);
+                if (cidr != null) {
+                    config.addLocalNetwork(cidr);
+                }
+            }
+        }
+    }
+
+    private void fillOptional(Configuration config, String prefix) {
+        String keepalive = settings.getProperty(prefix + ".keepalive", "");
+        String intName = settings.getProperty(prefix + ".interface", "");
+        if (!keepalive.isEmpty() && check(Validator.validateKeepaliveSec(keepalive), prefix + ".keepalive", keepalive)) {
+            config.setKeepAliveSeconds(Integer.parseInt(keepalive));
+        }
+        if (!intName.isEmpty() && check(Validator.validateInterfaceName(intName), prefix + ".interface", intName)) {
+            config.setIntName(intName);
+        }
+        config.setDefaultGateway(Boolean.parseBoolean(settings.getProperty(prefix + ".defaultGateway")));
+    }
+
+    private List<Configuration> createClientConfigs(SiteConfiguration site) throws IOException {
+        List<Configuration> clients;
+        String file = settings.getProperty("clients.file", "").trim();
+        String count = settings.getProperty("clients.count", "").trim();
+        if (!count.isEmpty()) {
+            clients = new ArrayList<>();
+            // checked before the clients are created, a count larger than the tunnel network only runs out of memory
+            IPv4Allocator allocator = check(count.matches("[1-9][0-9]{0,7}"), "clients.count", count) ? allocator(site) : null;
+            if (allocator != null && checkFree(allocator, Integer.parseInt(count))) {
+                for (int i = 1; i <= Integer.parseInt(count); i++) {
+                    // the IPs are allocated once the tunnel network is known
+                    Configuration client = new Configuration();
+                    client.setName(String.format("client-%d", i));
+                    clients.add(client);
+                }
+            }
+        } else if (!file.isEmpty()) {
+            ClientImport clientImport = new ClientImport();
+            clients = clientImport.read(Paths.get(file));
+            for (String error : clientImport.getErrors()) {
+                errors.add(file + ": " + error);
+            }
+            int more = clientImport.getErrorCount() - clientImport.getErrors().size();
+            if (more > 0) {
+                errors.add(file + ": " + more + " more errors");
+            }
+            if (clients.isEmpty() && !clientImport.hasErrors()) {
+                errors.add(file + ": no clients");
+            }
+        } else {
+            clients = parseClients();
+        }
+
+        for (Configuration client : clients) {
+            fillOptional(client, "client");
+        }
+
+        if (Boolean.parseBoolean(settings.getProperty("psk"))) {
+            for (Configuration client : clients) {
+                client.setPsk(Keypair.genpsk());
+            }
+        }
+        return clients;
+    }
+
+    /**
+     * The tunnel IPs of the clients have to be unique and part of the site's tunnel network
+     * Clients without IP get the free IPs of the network, in ascending order
+     */
+    private void allocateClientIps(SiteConfiguration site, List<Configuration> clients) {
+        IPv4Allocator allocator = allocator(site);
+        if (allocator == null) {
+            return;
+        }
+        List<Configuration> numbered = new ArrayList<>(clients.size());
+        List<Configuration> unnumbered = new ArrayList<>();
+        for (Configuration client : clients) {
+            (client.getIp() == null ? unnumbered : numbered).add(client);
+        }
+
+        addErrors(allocator.reserveAll(numbered));
+        if (!checkFree(allocator, unnumbered.size())) {
+            return;
+        }
+        for (Configuration client : unnumbered) {
+            client.setIp(allocator.allocate());
+            client.setNetmask(site.getNetmaskPrefix());
+        }
+    }
+
+    /**
+     * Create the allocator for the tunnel network of the site
+     *
+     * @return the allocator, or null if the tunnel IP or netmask of the site is not valid
+     */
+    private IPv4Allocator allocator(SiteConfiguration site) {
+        if (site.getIp() == null || site.getNetmaskPrefix() == null) {
+            // the error has already been added
+            return null;
+        }
+        try {
+            return IPv4Allocator.forSite(site);
+        } catch (IllegalArgumentException e) {
+            errors.add(e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean checkFree(IPv4Allocator allocator, int clients) {
+        if (clients > allocator.getFree()) {
+            errors.add("The tunnel network " + allocator.getNetwork() + " only has " + allocator.getFree()
+                    + " free IPs for " + clients + " clients");
+            return false;
+        }
+        return true;
+    }
+
+    private void addErrors(List<String> found) {
+        // like the errors of an imported file, there is no use in showing thousands of them
+        errors.addAll(found.subList(0, Math.min(found.size(), ClientImport.MAX_ERRORS)));
+        if (found.size() > ClientImport.MAX_ERRORS) {
+            errors.add((found.size() - ClientImport.MAX_ERRORS) + " more errors");
+        }
+    }
+
+    private List<Configuration> createNodeConfigs() {
+        List<String> names = list("nodes");
+        if (names.size() < 2) {
+            errors.add("Setting 'nodes' needs at least two names");
+        }
+
+        Set<String> unique = new HashSet<>();
+        List<Configuration> nodes = new ArrayList<>(names.size());
+        for (String name : names) {
+            // the names of files only differ in case on some file systems
+            if (check(Validator.validateName(name), "nodes", name) && !unique.add(name.toLowerCase(Locale.ROOT))) {
+                errors.add("Duplicate node '" + name + "' in 'nodes'");
+            }
+            nodes.add(createConfig(name, true));
+        }
+        return nodes;
+    }
+
+    private List<Configuration> parseClients() {
+        List<String> tunnels = list("clients");
+        if (tunnels.isEmpty()) {
+            errors.add("Missing setting 'clients', 'clients.file' or 'clients.count'");
+        }
+
+        List<Configuration> clients = new ArrayList<>(tunnels.size());
+        for (int i = 1; i <= tunnels.size(); i++) {
+            String tunnel = tunnels.get(i - 1);
+            int slash = tunnel.indexOf('/');
+            String ip = slash < 0 ? tunnel : tunnel.substring(0, slash);
+            String mask = slash < 0 ? "" : tunnel.substring(slash + 1);
+            boolean valid = check(Validator.validateIPv4(ip) && Validator.validateNetmask(mask), "clients", tunnel);
+
+            Configuration client = new Configuration();
+            client.setName(String.format("client-%d", i));
+            if (valid) {
+                client.setIp(ip);
+                client.setNetmask(mask);
+            }
+            clients.add(client);
+        }
+        return clients;
+    }
+
+    private IPv4Cidr parseNetwork(String key, String network) {
+        int slash = network.indexOf('/');
+        String ip = slash < 0 ? network : network.substring(0, slash);
+        String mask = slash < 0 ? "" : network.substring(slash + 1);
+        if (check(Validator.validateIPv4(ip) && Validator.validateNetmask(mask), key, network)) {
+            return IPv4Cidr.of(ip, IPv4Netmask.of(mask));
+        }
+        return null;
+    }
+
+    private Project.Type type() {
+        return mode.equals("s2s") ? Project.Type.SITE_TO_SITE : mode.equals("c2c") ? Project.Type.CLIENT_TO_CLIENT
+                : mode.equals("mesh") ? Project.Type.MESH : Project.Type.CLIENT_TO_SITE;
+    }
+
+    private String setting(String key, boolean required) {
+        return required ? required(key) : settings.getProperty(key, "").trim();
+    }
+
+    private String required(String key) {
+        String value = settings.getProperty(key, "").trim();
+        if (value.isEmpty()) {
+            errors.add("Missing setting '" + key + "'");
+        }
+        return value;
+    }
+
+    private List<String> list(String key) {
+        List<String> values = new ArrayList<>();
+        for (String value : settings.getProperty(key, "").split(",")) {
+            if (!value.trim().isEmpty()) {
+                values.add(value.trim());
+            }
+        }
+        return values;
+    }
+
+    private boolean check(boolean valid, String key, String value) {
+        if (!valid && !value.isEmpty()) {
+            errors.add("Invalid value '" + value + "' for '" + key + "'");
+        }
+        return valid;
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.config.ClientToSite;
+
+import wgWizard.config.Configuration;
+import wgWizard.config.IPv4Address;
+import wgWizard.config.IPv4Netmask;
+import wgWizard.helper.Log;
+import wgWizard.helper.Validator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Reads the clients of a client to site configuration from a file, one client per line
+ * The file is read line by line and every line is validated on its own, so rosters with thousands
+ * of clients never have to exist as input fields. Invalid lines are collected with their line number.
+ *
+ * Every line is either a CSV row or a JSON object (JSON lines), both can be mixed:
+ * <pre>
+ * ip,mask,name
+ * 10.0.0.2,24,alice
+ * 10.0.0.3/24
+ * {"ip": "10.0.0.4", "mask": "255.255.255.0", "name": "bob"}
+ * </pre>
+ * The mask can also be given together with the IP as x.x.x.x/xx. The name is optional and defaults to client-N,
+ * it can not be the name of the site.
+ * An optional CSV header line sets the order of the columns. Empty lines and lines starting with # are skipped.
+ */
+public class ClientImport {
+    // only this many errors are kept, there is no use in showing thousands of them
+    public static final int MAX_ERRORS = 100;
+
+    private static final String[] DEFAULT_COLUMNS = {"ip", "mask", "name"};
+
+    private final List<String> errors = new ArrayList<>();
+    private int errorCount;
+
+    /**
+     * Read the clients from a file, in UTF-8
+     *
+     * @param file the CSV or JSON lines file
+     * @return the valid clients, with name, IP and netmask set
+     * @throws IOException if the file can not be read
+     */
+    public List<Configuration> read(Path file) throws IOException {
+        Log.getInstance().info("Importing clients from " + file);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return read(reader);
+        }
+    }
+
+    /**
+     * Read the clients line by line
+     *
+     * @param reader the CSV or JSON lines input
+     * @return the valid clients, with name, IP and netmask set
+     * @throws IOException if reading fails
+     */
+    public List<Configuration> read(BufferedReader reader) throws IOException {
+        List<Configuration> clients = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        Set<IPv4Address> ips = new HashSet<>();
+        String[] columns = DEFAULT_COLUMNS;
+        boolean first = true;
+
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (lineNumber == 1 && !line.isEmpty() && line.charAt(0) == '\uFEFF') {
+                // byte order mark, as written by some spreadsheet programs
+                line = line.substring(1);
+            }
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            Map<String, String> row;
+            try {
+                if (line.startsWith("{")) {
+                    row = parseJson(line);
+                } else {
+                    String[] fields = splitCsv(line);
+                    if (first && isHeader(fields)) {
+                        columns = fields;
+                        first = false;
+                        continue;
+                    }
+                    row = new HashMap<>();
+                    for (int i = 0; i < fields.length && i < columns.length; i++) {
+                        row.put(columns[i].toLowerCase(Locale.ROOT), fields[i]);
+                    }
+                }
+                first = false;
+
+                Configuration client = createClient(row, clients.size() + 1);
+                if (!ips.add(client.getIp())) {
+                    throw new IllegalArgumentException("duplicate IP '" + client.getIp() + "'");
+                }
+                // the names of files only differ in case on some file systems
+                if (!names.add(client.getName().toLowerCase(Locale.ROOT))) {
+                    throw new IllegalArgumentException("duplicate name '" + client.getName() + "'");
+                }
+                clients.add(client);
+            } catch (IllegalArgumentException e) {
+                addError(lineNumber, e.getMessage());
+            }
+        }
+        Log.getInstance().info("Imported " + clients.size() + " clients, " + errorCount + " lines are not valid");
+        return clients;
+    }
+
+    /**
+     * Check if any line was not valid
+     * @return true if there was at least one error
+     */
+    public boolean hasErrors() {
+        return errorCount > 0;
+    }
+
+    /**
+     * Get the error messages, eg: "line 3: invalid IP '10.0.0.300'"
+     * @return the first MAX_ERRORS errors
+     */
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * Get the number of invalid lines
+     * @return the number of errors, including the ones not kept
+     */
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    private void addError(int lineNumber, String message) {
+        errorCount++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add("line " + lineNumber + ": " + message);
+        }
+    }
+
+    private static Configuration createClient(Map<String, String> row, int id) {
+        String ip = row.getOrDefault("ip", "").trim();
+        String mask = row.getOrDefault("mask", "").trim();
+        String name = row.getOrDefault("name", "").trim();
+
+        int slash = ip.indexOf('/');
+        if (slash >= 0) {
+            if (!mask.isEmpty()) {
+                throw new IllegalArgumentException("mask given twice for '" + ip + "'");
+            }
+            mask = ip.substring(slash + 1);
+            ip = ip.substring(0, slash);
+        }
+        if (ip.isEmpty()) {
+            throw new IllegalArgumentException("missing IP");
+        }
+        if (mask.isEmpty()) {
+            throw new IllegalArgumentException("missing mask for '" + ip + "'");
+        }
+        long address = IPv4Address.parse(ip);
+        if (address == IPv4Address.INVALID) {
+            throw new IllegalArgumentException("invalid IP '" + ip + "'");
+        }
+        IPv4Netmask netmask;
+        try {
+            netmask = IPv4Netmask.of(mask);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid mask '" + mask + "'");
+        }
+        if (name.isEmpty()) {
+            name = String.format("client-%d", id);
+        } else if (!Validator.validateName(name)) {
+            throw new IllegalArgumentException("invalid name '" + name + "'");
+        } else if (name.equalsIgnoreCase(SiteConfiguration.NAME)) {
+            throw new IllegalArgumentException("'" + name + "' is the name of the site");
+        }
+
+        Configuration client = new Configuration();
+        client.setName(name);
+        client.setIp(IPv4Address.of((int) address));
+        client.setNetmask(netmask);
+        return client;
+    }
+
+    private static boolean isHeader(String[] fields) {
+        for (String field : fields) {
+            if (field.equalsIgnoreCase("ip")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String[] splitCsv(String line) {
+        // IPs, masks and names never contain commas, so quotes only have to be removed
+        String[] fields = line.split("[,;]", -1);
+        for (int i = 0; i < fields.length; i++) {
+            String field = fields[i].trim();
+            if (field.length() >= 2 && field.startsWith("\"") && field.endsWith("\"")) {
+                field = field.substring(1, field.length() - 1).trim();
+            }
+            fields[i] = field;
+        }
+        return fields;
+    }
+
+    /**
+     * Parse a flat JSON object with string, number, boolean or null values
+     * Keys are lower case, values are returned as their text, null values are left out
+     */
+    static Map<String, String> parseJson(String line) {
+        Map<String, String> row = new HashMap<>();
+        int[] pos = {1};
+        skipWhitespace(line, pos);
+        if (peek(line, pos) == '}') {
+            pos[0]++;
+        } else {
+            while (true) {
+                skipWhitespace(line, pos);
+                String key = parseJsonString(line, pos);
+                skipWhitespace(line, pos);
+                expect(line, pos, ':');
+                skipWhitespace(line, pos);
+                String value = parseJsonValue(line, pos);
+                if (value != null) {
+                    row.put(key.toLowerCase(Locale.ROOT), value);
+                }
+                skipWhitespace(line, pos);
+                if (peek(line, pos) == ',') {
+                    pos[0]++;
+                } else {
+                    expect(line, pos, '}');
+                    break;
+                }
+            }
+        }
+        skipWhitespace(line, pos);
+        if (pos[0] != line.length()) {
+            throw new IllegalArgumentException("unexpected text after the JSON object");
+        }
+        return row;
+    }
+
+    private static String parseJsonValue(String line, int[] pos) {
+        char c = peek(line, pos);
+        if (c == '"') {
+            return parseJsonString(line, pos);
+        }
+        int start = pos[0];
+        while (pos[0] < line.length() && "-+.eE0123456789abcdefghijklmnopqrstuvwxyz".indexOf(line.charAt(pos[0])) >= 0) {
+            pos[0]++;
+        }
+        String value = line.substring(start, pos[0]);
+        if (value.equals("null")) {
+            return null;
+        }
+        if (value.isEmpty() || (!value.equals("true") && !value.equals("false") && !Character.isDigit(value.charAt(value.length() - 1)))) {
+            throw new IllegalArgumentException("unsupported JSON value at column " + (start + 1));
+        }
+        return value;
+    }
+
+    private static String parseJsonString(String line, int[] pos) {
+        expect(line, pos, '"');
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            char c = peek(line, pos);
+            pos[0]++;
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            char escaped = peek(line, pos);
+            pos[0]++;
+            switch (escaped) {
+                case 'n': sb.append('\n'); break;
+                case 't': sb.append('\t'); break;
+                case 'r': sb.append('\r'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    if (pos[0] + 4 > line.length()) {
+                        throw new IllegalArgumentException("unterminated JSON string");
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(line.substring(pos[0], pos[0] + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("invalid escape in JSON string at column " + pos[0]);
+                    }
+                    pos[0] += 4;
+                    break;
+                default:
+                    // \" \\ \/
+                    sb.append(escaped);
+            }
+        }
+    }
+
+    private static char peek(String line, int[] pos) {
+        if (pos[0] >= line.length()) {
+            throw new IllegalArgumentException("unexpected end of the JSON object");
+        }
+        return line.charAt(pos[0]);
+    }
+
+    private static void expect(String line, int[] pos, char expected) {
+        if (peek(line, pos) != expected) {
+            throw new IllegalArgumentException("expected '" + expected + "' at column " + (pos[0] + 1));
+        }
+        pos[0]++;
+    }
+
+    private static void skipWhitespace(String line, int[] pos) {
+        while (pos[0] < line.length() && Character.isWhitespace(line.charAt(pos[0]))) {
+            pos[0]++;
+        }
+    }
+}
@@ -9,20 +9,29 @@
 
 package wgWizard.config.ClientToSite;
 
-import javafx.scene.control.Alert;
+import wgWizard.config.ConfigWriter;
 import wgWizard.config.Configuration;
+import wgWizard.config.IPv4Cidr;
 import wgWizard.config.Keypair;
+import wgWizard.config.Peer;
 import wgWizard.helper.Log;
-import wgWizard.helper.PopUp;
 
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 /**
  * Configuration for the "Site" in a Client-To-Site setup
  */
 public class SiteConfiguration extends Configuration {
+    /**
+     * The name of the site, its files are site.conf and setup_site.sh, so no client can have it
+     */
+    public static final String NAME = "site";
 
     public SiteConfiguration() {
         super();
@@ -40,37 +49,76 @@ public class SiteConfiguration extends Configuration {
     /**
      * Generate the wireguard config file
      *
+     * @param clientConfigs the configurations of all clients
      * @param filePath  the destination path
      */
     public void generateConfigFile(List<Configuration> clientConfigs, String filePath) throws IOException {
+        generateConfigFile(clientConfigs.stream().map(SiteConfiguration::clientPeer).iterator(), filePath);
+    }
+
+    /**
+     * Generate the wireguard config file into a stream, eg: an entry of a ZIP
+     *
+     * @param clientConfigs the configurations of all clients
+     * @param out           the destination, it is not closed
+     */
+    public void generateConfigFile(List<Configuration> clientConfigs, OutputStream out) throws IOException {
+        generateConfigFile(clientConfigs.stream().map(SiteConfiguration::clientPeer).iterator(), out);
+    }
+
+    /**
+     * Generate the wireguard config file, streaming the [Peer] sections
+     * Every peer is written as soon as the iterator returns it, so the peers can be created on the fly
+     * and the memory use does not depend on the number of clients
+     *
+     * @param peers     the clients as seen from the site
+     * @param filePath  the destination path
+     */
+    public void generateConfigFile(Iterator<Peer> peers, String filePath) throws IOException {
         Log.getInstance().info("Writing Configuration file to " + filePath);
-        PrintWriter writer = new PrintWriter(filePath, "UTF-8");
+        try (ConfigWriter writer = new ConfigWriter(filePath)) {
+            writeConfig(peers, writer);
+        }
+    }
+
+    /**
+     * Generate the wireguard config file into a stream, streaming the [Peer] sections
+     *
+     * @param peers the clients as seen from the site
+     * @param out   the destination, it is not closed
+     */
+    public void generateConfigFile(Iterator<Peer> peers, OutputStream out) throws IOException {
+        try (ConfigWriter writer = new ConfigWriter(out)) {
+            writeConfig(peers, writer);
+        }
+    }
+
+    private void writeConfig(Iterator<Peer> peers, ConfigWriter writer) throws IOException {
+        int keepAlive = this.isSetKeepAlive() ? this.getKeepAliveSeconds() : 0;
         writer.print("[Interface]\n");
         // set this sites private key
-        writer.print("PrivateKey = " + this.getKeypair().getPrivateKey() + "\n");
+        writer.print("PrivateKey = ").print(this.getKeypair().getPrivateKey()).print("\n");
         // set this sites listen port
-        writer.print("ListenPort = " + this.getListenPort() + "\n");
+        writer.print("ListenPort = ").print(this.getListenPort()).print("\n");
         writer.print("\n");
 
         // CLIENTS
-        for (Configuration clientConfig : clientConfigs) {
-            writer.print("[Peer]\n");
-            // set the other sites public key
-            writer.print("PublicKey = " + clientConfig.getKeypair().getPublicKey() + "\n");
-            if (clientConfig.getPsk() != null) {
-                // set preshared key
-                writer.print("PresharedKey = " + clientConfig.getPsk() + "\n");
-            }
-            // add allowed ips. tunnelIP of the client is always allowed.
-            writer.print("AllowedIPs = " + clientConfig.getIp() + "/32\n");
-
-            // if enabled, set the keepalive interval
-            if (this.isSetKeepAlive()) {
-                writer.print("PersistentKeepalive = " + this.getKeepAliveSeconds() + "\n");
-            }
+        while (peers.hasNext()) {
+            writer.writePeer(peers.next(), keepAlive);
             writer.print("\n\n");
         }
-        writer.close();
+    }
+
+    /**
+     * Create the [Peer] section of a client: its public key, PSK and tunnel IP
+     *
+     * @param clientConfig the configuration of the client
+     * @return the client as peer of the site
+     */
+    public static Peer clientPeer(Configuration clientConfig) {
+        // tunnelIP of the client is always allowed.
+        IPv4Cidr tunnelIp = IPv4Cidr.of(clientConfig.getIp().toInt(), 32);
+        return new Peer(clientConfig.getKeypair().getPublicKey(), clientConfig.getPsk(), Collections.singletonList(tunnelIp));
     }
 
     /**
@@ -78,26 +126,27 @@ public class SiteConfiguration extends Configuration {
      * This will create the wireguard interface and add the wireguard config to it
      *
      * @param filePath  the destination path
+     * @throws IOException if the file can not be written
      */
-    public void generateSetupFile(String filePath) {
-        try {
-            Log.getInstance().info("Writing Setup file to " + filePath);
-            PrintWriter writer = new PrintWriter(filePath, "UTF-8");
-            writer.print("#!/bin/bash\n");
-            // add the wireguard interface, with the given interface name
-            writer.print("sudo ip link add dev " + this.getIntName() + " type wireguard\n");
-            // add the specified ip and netmask to the wireguard interface
-            writer.print("sudo ip addr add " + this.getIp() + "/" + this.getNetmaskPrefix() + " dev " + this.getIntName() + "\n");
-            // activate the interface
-            writer.print("sudo ip link set dev " + this.getIntName() + " up\n");
-            // apply the wireguard config
-            writer.print("sudo wg setconf " + this.getIntName() + " " + this.getName() + ".conf\n");
-
-            writer.close();
-        } catch (IOException e) {
-            Log.getInstance().warning("IO Error while writing setup file " + this.getName());
-            PopUp.showAlert(Alert.AlertType.ERROR, "IO Error", "Error writing setup file",
-                    "There was an error while creating the setup file. Please choose another destination directory.");
+    public void generateSetupFile(String filePath) throws IOException {
+        Log.getInstance().info("Writing Setup file to " + filePath);
+        try (OutputStream out = new FileOutputStream(filePath)) {
+            generateSetupFile(out);
         }
     }
+
+    /**
+     * Generate the Wireguard setup script into a stream, eg: an entry of a ZIP
+     *
+     * @param out the destination, it is flushed but not closed
+     * @throws IOException if writing to the stream fails
+     */
+    public void generateSetupFile(OutputStream out) throws IOException {
+        Writer writer = writer(out);
+        writer.write("#!/bin/bash\n");
+        // the routes to the clients are added with the address of the interface
+        writer.write(setupStart());
+        writer.write(setupEnd());
+        writer.flush();
+    }
 }
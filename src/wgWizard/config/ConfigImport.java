@@ -0,0 +1,608 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.config;
+
+import wgWizard.config.ClientToSite.SiteConfiguration;
+import wgWizard.helper.Log;
+import wgWizard.helper.Validator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Reads an existing wireguard config file, as written by this wizard, wg-quick or "wg showconf", into configurations
+ * The [Interface] is the site or client the file belongs to and every [Peer] is the other side of its tunnels.
+ * The private key of the interface is kept and its public key derived from it. The peers keep their public
+ * and pre-shared keys, so nothing has to be re-keyed. Their private keys are not in the file, so no config
+ * can be written for them, only for the interface and for new peers.
+ *
+ * <pre>
+ * [Interface]
+ * PrivateKey = ...
+ * ListenPort = 51820
+ * Address = 10.0.0.1/24            wg-quick only, the tunnel IP and netmask
+ *
+ * [Peer]
+ * PublicKey = ...
+ * PresharedKey = ...               optional
+ * Endpoint = 203.0.113.2:51820     optional
+ * AllowedIPs = 10.0.0.2/32, 192.168.2.0/24
+ * PersistentKeepalive = 25         optional
+ * </pre>
+ * The first single address (/32) in AllowedIPs is the tunnel IP of the peer, the other entries are its local networks.
+ * A peer without a single address is not valid, its tunnel IP is not known.
+ * IPv6 addresses are skipped, the wizard only supports IPv4. The other wg-quick settings, eg: DNS or PostUp, are ignored.
+ *
+ * The file is read in a single pass through a buffer, without creating a String for every line,
+ * so even the config of a site with tens of thousands of clients is read in a fraction of a second.
+ * Invalid lines are collected with their line number, like the errors of a client import.
+ */
+public class ConfigImport {
+    // only this many errors are kept, there is no use in showing thousands of them
+    public static final int MAX_ERRORS = 100;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // settings of wg-quick that have no counterpart in the wizard
+    private static final Set<String> IGNORED = new HashSet<>(Arrays.asList(
+            "dns", "mtu", "table", "preup", "postup", "predown", "postdown", "saveconfig", "fwmark"));
+
+    private final List<String> errors = new ArrayList<>();
+    private int errorCount;
+
+    // the state of the parser
+    private final Text line = new Text();
+    private final Text part = new Text();
+    private int lineNumber;
+    private int skippedIpv6;
+    private boolean inInterface;
+    private boolean inPeer;
+    private boolean seenInterface;
+    private String privateKey;
+    private int listenPort;
+    private IPv4Address address;
+    private IPv4Netmask netmask;
+    private List<PeerSection> peers;
+    private PeerSection peer;
+
+    /**
+     * The settings of one [Peer], until the whole file is read
+     */
+    private static final class PeerSection {
+        private int lineNumber;
+        private boolean valid = true;
+        private String publicKey;
+        private String presharedKey;
+        private String endpoint;
+        private int endpointPort;
+        private int keepAlive = -1;
+        private final List<IPv4Cidr> allowedIps = new ArrayList<>(1);
+    }
+
+    /**
+     * Read a config file
+     * The interface is named after the file, eg: site for site.conf, so the file name has to be a valid name
+     *
+     * @param file the config file
+     * @param type the kind of VPN: the config of a site with its clients, of one side of a point to point VPN
+     *             or of one node of a mesh
+     * @return the configurations, or null if the interface or the peers are not valid, see {@link #getErrors()}
+     * @throws IOException if the file can not be read
+     */
+    public Project read(Path file, Project.Type type) throws IOException {
+        Log.getInstance().info("Importing the config file " + file);
+        String name = file.getFileName().toString();
+        if (name.endsWith(".conf")) {
+            name = name.substring(0, name.length() - ".conf".length());
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel, name, type);
+        }
+    }
+
+    /**
+     * Read a config file
+     *
+     * @param channel the content of the config file
+     * @param name    the name of the interface's site or client
+     * @param type    the kind of VPN: the config of a site with its clients, of one side of a point to point VPN
+     *                or of one node of a mesh
+     * @return the configurations, or null if the interface or the peers are not valid, see {@link #getErrors()}
+     * @throws IOException if reading fails
+     */
+    public Project read(ReadableByteChannel channel, String name, Project.Type type) throws IOException {
+        errors.clear();
+        errorCount = 0;
+        inInterface = false;
+        inPeer = false;
+        seenInterface = false;
+        privateKey = null;
+        listenPort = 0;
+        address = null;
+        netmask = null;
+        peers = new ArrayList<>();
+        peer = null;
+        lineNumber = 0;
+        skippedIpv6 = 0;
+
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        int scanned = 0;
+        boolean eof = false;
+        while (!eof) {
+            eof = channel.read(buffer) < 0;
+            byte[] bytes = buffer.array();
+            int end = buffer.position();
+            int start = 0;
+            for (int i = scanned; i < end; i++) {
+                if (bytes[i] == '\n') {
+                    parseLine(bytes, start, i);
+                    start = i + 1;
+                }
+            }
+            if (eof) {
+                if (start < end) {
+                    parseLine(bytes, start, end);
+                }
+                break;
+            }
+            // keep the beginning of the last line for the next read
+            System.arraycopy(bytes, start, bytes, 0, end - start);
+            buffer.position(end - start);
+            scanned = end - start;
+            if (!buffer.hasRemaining()) {
+                // a line longer than the buffer, eg: a peer with many allowed IPs
+                ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+        endPeer();
+        if (skippedIpv6 > 0) {
+            Log.getInstance().warning("Skipped " + skippedIpv6 + " IPv6 addresses, only IPv4 is supported");
+        }
+        return createProject(name, type);
+    }
+
+    /**
+     * Check if any line was not valid
+     * @return true if there was at least one error
+     */
+    public boolean hasErrors() {
+        return errorCount > 0;
+    }
+
+    /**
+     * Get the error messages, eg: "line 3: invalid IP '10.0.0.300'"
+     * @return the first MAX_ERRORS errors
+     */
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * Get the number of errors
+     * @return the number of errors, including the ones not kept
+     */
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    private void addError(int lineNumber, String message) {
+        errorCount++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(lineNumber > 0 ? "line " + lineNumber + ": " + message : message);
+        }
+    }
+
+    private void parseLine(byte[] bytes, int start, int end) {
+        lineNumber++;
+        if (lineNumber == 1 && end - start >= 3 && (bytes[start] & 0xFF) == 0xEF && (bytes[start + 1] & 0xFF) == 0xBB
+                && (bytes[start + 2] & 0xFF) == 0xBF) {
+            // byte order mark
+            start += 3;
+        }
+        // everything after a # is a comment
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == '#') {
+                end = i;
+                break;
+            }
+        }
+        line.set(bytes, start, end).trim();
+        if (line.length() == 0) {
+            return;
+        }
+
+        if (line.charAt(0) == '[') {
+            endPeer();
+            if (line.equalsIgnoreCase("[Interface]")) {
+                if (seenInterface) {
+                    addError(lineNumber, "more than one [Interface]");
+                }
+                seenInterface = true;
+                inInterface = true;
+                inPeer = false;
+            } else if (line.equalsIgnoreCase("[Peer]")) {
+                inInterface = false;
+                inPeer = true;
+                peer = new PeerSection();
+                peer.lineNumber = lineNumber;
+            } else {
+                inInterface = false;
+                inPeer = false;
+                addError(lineNumber, "unknown section '" + line + "'");
+            }
+            return;
+        }
+
+        int equals = line.indexOf('=');
+        if (equals < 0) {
+            addError(lineNumber, "expected key = value, not '" + line + "'");
+            return;
+        }
+        String key = line.toString(0, equals).trim().toLowerCase(Locale.ROOT);
+        part.set(line, equals + 1, line.length()).trim();
+        try {
+            if (inInterface) {
+                parseInterface(key);
+            } else if (inPeer) {
+                parsePeer(key);
+            } else {
+                addError(lineNumber, "'" + key + "' outside of [Interface] and [Peer]");
+            }
+        } catch (IllegalArgumentException e) {
+            if (inPeer) {
+                // a peer with an invalid setting is left out, instead of being imported without it
+                peer.valid = false;
+            }
+            addError(lineNumber, e.getMessage());
+        }
+    }
+
+    private void parseInterface(String key) {
+        switch (key) {
+            case "privatekey":
+                privateKey = parseKey(part);
+                break;
+            case "listenport":
+                listenPort = parsePort(part);
+                break;
+            case "address":
+                // several addresses, eg: IPv4 and IPv6, are separated by commas. The first IPv4 one is the tunnel IP
+                for (long entry : parseList(part)) {
+                    if (address == null) {
+                        address = IPv4Address.of((int) (entry >>> 8));
+                        netmask = IPv4Netmask.of((int) (entry & 0xFF));
+                    }
+                }
+                break;
+            default:
+                if (!IGNORED.contains(key)) {
+                    throw new IllegalArgumentException("unknown setting '" + key + "' in [Interface]");
+                }
+        }
+    }
+
+    private void parsePeer(String key) {
+        switch (key) {
+            case "publickey":
+                peer.publicKey = parseKey(part);
+                break;
+            case "presharedkey":
+                peer.presharedKey = parseKey(part);
+                break;
+            case "endpoint": {
+                int colon = part.lastIndexOf(':');
+                if (colon < 1) {
+                    throw new IllegalArgumentException("invalid endpoint '" + part + "', expected host:port");
+                }
+                String host = part.toString(0, colon);
+                // an IPv6 endpoint keeps its brackets, eg: [2001:db8::1]:51820, the port is appended again on export
+                if (host.indexOf(':') >= 0 && !(host.startsWith("[") && host.endsWith("]"))) {
+                    throw new IllegalArgumentException("invalid endpoint '" + part + "', expected [IPv6]:port");
+                }
+                peer.endpoint = host;
+                peer.endpointPort = parsePort(new Text().set(part, colon + 1, part.length()));
+                break;
+            }
+            case "allowedips":
+                for (long entry : parseList(part)) {
+                    peer.allowedIps.add(IPv4Cidr.of((int) (entry >>> 8), (int) (entry & 0xFF)));
+                }
+                break;
+            case "persistentkeepalive":
+                if (part.equalsIgnoreCase("off")) {
+                    peer.keepAlive = 0;
+                } else {
+                    peer.keepAlive = parseNumber(part, 65535, "keepalive");
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("unknown setting '" + key + "' in [Peer]");
+        }
+    }
+
+    /**
+     * The end of a [Peer] section: check that it has everything a peer needs
+     */
+    private void endPeer() {
+        if (peer == null) {
+            return;
+        }
+        if (peer.valid) {
+            if (peer.publicKey == null) {
+                addError(peer.lineNumber, "[Peer] without a PublicKey");
+            } else if (peer.allowedIps.isEmpty()) {
+                addError(peer.lineNumber, "[Peer] without an IPv4 address in AllowedIPs");
+            } else if (peer.allowedIps.stream().noneMatch(network -> network.getPrefix() == 32)) {
+                // a network address would be a made up tunnel IP
+                addError(peer.lineNumber, "[Peer] without a single address (/32) in AllowedIPs as its tunnel IP");
+            } else {
+                peers.add(peer);
+            }
+        }
+        peer = null;
+    }
+
+    private Project createProject(String name, Project.Type type) {
+        // the name ends up in the setup script and the names of the files
+        if (!Validator.validateName(name)) {
+            addError(0, "invalid name '" + name + "', the file has to be named like a site or client");
+        }
+        if (privateKey == null) {
+            addError(0, "no [Interface] with a PrivateKey");
+        }
+        if (type == Project.Type.MESH) {
+            if (peers.isEmpty()) {
+                addError(0, "the config of a MESH node has at least one [Peer]");
+            }
+            // the nodes share one pre-shared key
+            for (PeerSection section : peers) {
+                if (!Objects.equals(section.presharedKey, peers.get(0).presharedKey)) {
+                    addError(0, "the peers of a MESH node have different pre-shared keys");
+                    break;
+                }
+            }
+        } else if (type != Project.Type.CLIENT_TO_SITE && peers.size() != 1) {
+            addError(0, "the config of a " + type + " VPN has one [Peer], not " + peers.size());
+        }
+        if (hasErrors()) {
+            Log.getInstance().info("The config file is not valid, " + errorCount + " errors");
+            return null;
+        }
+
+        Configuration own = type == Project.Type.CLIENT_TO_SITE ? new SiteConfiguration() : new Configuration();
+        own.setName(name);
+        own.setKeypair(Keypair.fromPrivateKey(privateKey));
+        own.setListenPort(listenPort);
+        if (address != null) {
+            own.setIp(address);
+            own.setNetmask(netmask);
+        }
+        // the interface's keepalive is written into every one of its peers
+        for (PeerSection section : peers) {
+            if (section.keepAlive > 0) {
+                own.setKeepAliveSeconds(section.keepAlive);
+                break;
+            }
+        }
+
+        List<Configuration> others = new ArrayList<>(peers.size());
+        for (PeerSection section : peers) {
+            Configuration other = new Configuration();
+            other.setName(type == Project.Type.CLIENT_TO_SITE ? String.format("client-%d", others.size() + 1)
+                    : type == Project.Type.MESH ? String.format("node-%d", others.size() + 1) : "peer");
+            other.setKeypair(Keypair.fromPublicKey(section.publicKey));
+            other.setPsk(section.presharedKey);
+            other.setEndpoint(section.endpoint);
+            other.setListenPort(section.endpointPort);
+            // the tunnel IP is the first single address, the other entries are the local networks of the peer
+            List<IPv4Cidr> networks = new ArrayList<>(section.allowedIps);
+            IPv4Cidr tunnelIp = null;
+            for (IPv4Cidr network : networks) {
+                if (network.getPrefix() == 32) {
+                    tunnelIp = network;
+                    break;
+                }
+            }
+            networks.remove(tunnelIp);
+            other.setIp(IPv4Address.of(tunnelIp.getNetworkAddress()));
+            // the peers are in the same tunnel network as the interface
+            if (netmask != null) {
+                other.setNetmask(netmask);
+            }
+            other.setLocalNetworks(networks);
+            others.add(other);
+        }
+        Log.getInstance().info("Imported " + name + " with " + others.size() + " peers");
+
+        switch (type) {
+            case SITE_TO_SITE:
+                // a point to point VPN has the pre-shared key in both configs
+                own.setPsk(others.get(0).getPsk());
+                return Project.siteToSite(own, others.get(0));
+            case CLIENT_TO_CLIENT:
+                own.setPsk(others.get(0).getPsk());
+                return Project.clientToClient(own, others.get(0));
+            case MESH: {
+                own.setPsk(others.get(0).getPsk());
+                List<Configuration> nodes = new ArrayList<>(others.size() + 1);
+                nodes.add(own);
+                nodes.addAll(others);
+                return Project.mesh(nodes);
+            }
+            default:
+                return Project.clientToSite((SiteConfiguration) own, others);
+        }
+    }
+
+    /**
+     * Parse a comma separated list of addresses with their prefix length, eg: 10.0.0.2/32, 192.168.1.0/24
+     * The address is not masked, so the Address of an interface keeps its host part
+     *
+     * @return every IPv4 entry as address &lt;&lt; 8 | prefix
+     */
+    private List<Long> parseList(Text list) {
+        List<Long> entries = new ArrayList<>(1);
+        int start = 0;
+        int length = list.length();
+        Text entry = new Text();
+        Text ip = new Text();
+        while (start <= length) {
+            int comma = list.indexOf(',', start);
+            int end = comma < 0 ? length : comma;
+            entry.set(list, start, end).trim();
+            start = end + 1;
+            if (entry.length() == 0) {
+                continue;
+            }
+            if (entry.indexOf(':') >= 0) {
+                skippedIpv6++;
+                continue;
+            }
+            int slash = entry.indexOf('/');
+            long address = IPv4Address.parse(ip.set(entry, 0, slash < 0 ? entry.length() : slash));
+            if (address == IPv4Address.INVALID) {
+                throw new IllegalArgumentException("invalid IP '" + entry + "'");
+            }
+            int prefix = slash < 0 ? 32 : parseNumber(ip.set(entry, slash + 1, entry.length()), 32, "prefix");
+            entries.add(address << 8 | prefix);
+        }
+        return entries;
+    }
+
+    private static String parseKey(Text value) {
+        String key = value.toString();
+        Keypair.decode(key);
+        return key;
+    }
+
+    private static int parsePort(Text value) {
+        return parseNumber(value, 65535, "port");
+    }
+
+    private static int parseNumber(Text value, int max, String what) {
+        int length = value.length();
+        if (length == 0 || length > 5) {
+            throw new IllegalArgumentException("invalid " + what + " '" + value + "'");
+        }
+        int number = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("invalid " + what + " '" + value + "'");
+            }
+            number = number * 10 + (c - '0');
+        }
+        if (number > max) {
+            throw new IllegalArgumentException("invalid " + what + " '" + value + "'");
+        }
+        return number;
+    }
+
+    /**
+     * A part of a line, read from the buffer without copying it
+     * Config files are ASCII, other bytes only show up in comments and in error messages.
+     */
+    private static final class Text implements CharSequence {
+        private byte[] bytes;
+        private int start;
+        private int end;
+
+        Text set(byte[] bytes, int start, int end) {
+            this.bytes = bytes;
+            this.start = start;
+            this.end = end;
+            return this;
+        }
+
+        Text set(Text text, int start, int end) {
+            return set(text.bytes, text.start + start, text.start + end);
+        }
+
+        Text trim() {
+            while (start < end && isSpace(bytes[start])) {
+                start++;
+            }
+            while (end > start && isSpace(bytes[end - 1])) {
+                end--;
+            }
+            return this;
+        }
+
+        private static boolean isSpace(byte b) {
+            return b == ' ' || b == '\t' || b == '\r';
+        }
+
+        int indexOf(char c) {
+            return indexOf(c, 0);
+        }
+
+        int indexOf(char c, int from) {
+            for (int i = start + from; i < end; i++) {
+                if (bytes[i] == c) {
+                    return i - start;
+                }
+            }
+            return -1;
+        }
+
+        int lastIndexOf(char c) {
+            for (int i = end - 1; i >= start; i--) {
+                if (bytes[i] == c) {
+                    return i - start;
+                }
+            }
+            return -1;
+        }
+
+        boolean equalsIgnoreCase(String other) {
+            if (other.length() != length()) {
+                return false;
+            }
+            for (int i = 0; i < other.length(); i++) {
+                if (Character.toLowerCase(charAt(i)) != Character.toLowerCase(other.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        String toString(int from, int to) {
+            return new String(bytes, start + from, to - from, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[start + index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new Text().set(this, from, to);
+        }
+
+        @Override
+        public String toString() {
+            return toString(0, length());
+        }
+    }
+}
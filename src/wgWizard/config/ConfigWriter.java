@@ -0,0 +1,242 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.config;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Writes wireguard config files through one large buffer straight into a FileChannel
+ * Text is encoded as UTF-8, with a fast path for ASCII, which is all a config normally contains.
+ * Memory use does not depend on the size of the file, so configs with tens of thousands of peers
+ * can be written from an Iterator without keeping all peers in memory
+ * A writer can also write into a stream, eg: an entry of a ZIP, which is left open when the writer is closed
+ */
+public class ConfigWriter implements Closeable {
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    // every thread keeps its buffer for the next file. An open writer takes the buffer out,
+    // so a second writer on the same thread gets a new one
+    private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<>();
+
+    private final WritableByteChannel channel;
+    private final boolean closeChannel;
+    private final ByteBuffer buffer;
+    // used to format addresses and networks without creating Strings
+    private final StringBuilder scratch = new StringBuilder(32);
+    private CharsetEncoder encoder;
+
+    /**
+     * Creates or truncates the file at the given path
+     *
+     * @param filePath the destination path
+     * @throws IOException if the file can not be opened
+     */
+    public ConfigWriter(String filePath) throws IOException {
+        this(FileChannel.open(Paths.get(filePath), CREATE, TRUNCATE_EXISTING, WRITE), true);
+    }
+
+    /**
+     * Writes into a stream, the stream is not closed by close()
+     *
+     * @param out the destination
+     */
+    public ConfigWriter(OutputStream out) {
+        this(Channels.newChannel(out), false);
+    }
+
+    private ConfigWriter(WritableByteChannel channel, boolean closeChannel) {
+        this.channel = channel;
+        this.closeChannel = closeChannel;
+        ByteBuffer buffer = BUFFER.get();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        } else {
+            BUFFER.set(null);
+        }
+        this.buffer = buffer;
+    }
+
+    /**
+     * Write the [Peer] section of a peer
+     *
+     * @param peer      the peer
+     * @param keepAlive the PersistentKeepalive interval in seconds, or 0 to leave it out
+     * @return this writer
+     * @throws IOException if writing to the file fails
+     */
+    public ConfigWriter writePeer(Peer peer, int keepAlive) throws IOException {
+        print("[Peer]\n");
+        // set the peer's public key
+        print("PublicKey = ").print(peer.getPublicKey()).print("\n");
+        if (peer.getPresharedKey() != null) {
+            // set preshared key
+            print("PresharedKey = ").print(peer.getPresharedKey()).print("\n");
+        }
+        if (peer.getEndpoint() != null) {
+            // set the peer's endpoint ip and port
+            print("Endpoint = ").print(peer.getEndpoint()).print(":").print(peer.getEndpointPort()).print("\n");
+        }
+
+        print("AllowedIPs = ");
+        boolean first = true;
+        for (IPv4Cidr network : peer.getAllowedIps()) {
+            if (!first) {
+                print(",");
+            }
+            print(network);
+            first = false;
+        }
+        print("\n");
+
+        // if enabled, set the keepalive interval
+        if (keepAlive > 0) {
+            print("PersistentKeepalive = ").print(keepAlive).print("\n");
+        }
+        return this;
+    }
+
+    /**
+     * Write a network in CIDR notation
+     *
+     * @param network the network
+     * @return this writer
+     * @throws IOException if writing to the file fails
+     */
+    public ConfigWriter print(IPv4Cidr network) throws IOException {
+        scratch.setLength(0);
+        return print(network.appendTo(scratch));
+    }
+
+    /**
+     * Write an IP
+     *
+     * @param ip the IP
+     * @return this writer
+     * @throws IOException if writing to the file fails
+     */
+    public ConfigWriter print(IPv4Address ip) throws IOException {
+        scratch.setLength(0);
+        return print(ip.appendTo(scratch));
+    }
+
+    /**
+     * Write a number in decimal
+     *
+     * @param i the number
+     * @return this writer
+     * @throws IOException if writing to the file fails
+     */
+    public ConfigWriter print(int i) throws IOException {
+        scratch.setLength(0);
+        return print(scratch.append(i));
+    }
+
+    /**
+     * Write text
+     *
+     * @param s the text
+     * @return this writer
+     * @throws IOException if writing to the file fails
+     */
+    public ConfigWriter print(CharSequence s) throws IOException {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                // leave the fast path for the rest of the text
+                return printEncoded(s, i);
+            }
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) c);
+        }
+        return this;
+    }
+
+    /**
+     * Write bytes that have been rendered before, eg: a [Peer] section that is part of many configs
+     *
+     * @param bytes the UTF-8 encoded text
+     * @return this writer
+     * @throws IOException if writing to the file fails
+     */
+    public ConfigWriter write(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.remaining()) {
+            drain();
+            if (bytes.length > buffer.capacity()) {
+                ByteBuffer large = ByteBuffer.wrap(bytes);
+                while (large.hasRemaining()) {
+                    channel.write(large);
+                }
+                return this;
+            }
+        }
+        buffer.put(bytes);
+        return this;
+    }
+
+    private ConfigWriter printEncoded(CharSequence s, int start) throws IOException {
+        if (encoder == null) {
+            // replace broken surrogates, in the same way as PrintWriter does
+            encoder = StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        CharBuffer chars = CharBuffer.wrap(s, start, s.length());
+        encoder.reset();
+        while (encoder.encode(chars, buffer, true).isOverflow()) {
+            drain();
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            drain();
+        }
+        return this;
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Write the rest of the buffer and close the file
+     *
+     * @throws IOException if writing to the file fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            if (closeChannel) {
+                channel.close();
+            }
+            buffer.clear();
+            BUFFER.set(buffer);
+        }
+    }
+}
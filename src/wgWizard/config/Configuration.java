@@ -9,12 +9,10 @@
 
 package wgWizard.config;
 
-import javafx.scene.control.Alert;
-import javafx.util.Pair;
 import wgWizard.helper.Log;
-import wgWizard.helper.PopUp;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -28,13 +26,15 @@ public class Configuration {
     private String presharedKey;
     private String endpoint;
     private int listenPort;
-    private String ip;
+    private IPv4Address ip;
     private IPv4Netmask netmask;
     private boolean keepAlive;
     private boolean defaultGateway;
+    private boolean summarizeNetworks;
+    private boolean batchSetup;
     private int keepAliveSeconds;
     private String intName;
-    private List<Pair<String, IPv4Netmask>> localNetworks;
+    private List<IPv4Cidr> localNetworks;
 
     public Configuration() {
         setIntName(DEFAULT_INTNAME);
@@ -66,38 +66,53 @@ public class Configuration {
      *
      * @param othersite SiteConfiguration of the other site
      * @param filePath  the destination path
+     * @throws IOException if the file can not be written
      */
     public void generateConfigFile(Configuration othersite, String filePath) throws IOException {
         Log.getInstance().info("Writing Configuration file to " + filePath);
-        PrintWriter writer = new PrintWriter(filePath, "UTF-8");
-        writer.print("[Interface]\n");
+        try (OutputStream out = new FileOutputStream(filePath)) {
+            generateConfigFile(othersite, out);
+        }
+    }
+
+    /**
+     * Generate the wireguard config file into a stream, eg: an entry of a ZIP
+     *
+     * @param othersite SiteConfiguration of the other site
+     * @param out       the destination, it is flushed but not closed
+     * @throws IOException if writing to the stream fails
+     */
+    public void generateConfigFile(Configuration othersite, OutputStream out) throws IOException {
+        Writer writer = writer(out);
+        writer.write("[Interface]\n");
         // set this sites private key
-        writer.print("PrivateKey = " + this.getKeypair().getPrivateKey() + "\n");
+        writer.write("PrivateKey = " + this.getKeypair().getPrivateKey() + "\n");
         // set this sites listen port
-        writer.print("ListenPort = " + this.getListenPort() + "\n");
-        writer.print("\n");
+        writer.write("ListenPort = " + this.getListenPort() + "\n");
+        writer.write("\n");
 
-        writer.print("[Peer]\n");
+        writer.write("[Peer]\n");
         // set the other sites public key
-        writer.print("PublicKey = " + othersite.getKeypair().getPublicKey() + "\n");
+        writer.write("PublicKey = " + othersite.getKeypair().getPublicKey() + "\n");
         if (this.presharedKey != null) {
             // set preshared key
-            writer.print("PresharedKey = " + this.getPsk() + "\n");
+            writer.write("PresharedKey = " + this.getPsk() + "\n");
         }
         // set the other sites endpoint ip and port
-        writer.print("Endpoint = " + othersite.getEndpoint() + ":" + othersite.getListenPort() + "\n");
+        writer.write("Endpoint = " + othersite.getEndpoint() + ":" + othersite.getListenPort() + "\n");
 
         // add allowed ips. tunnelIP of the other site is always allowed.
         // add all the local networks of the other site
-        String allowedIps = othersite.getIp() + "/32";
-        allowedIps += othersite.getLocalNetworksAsString();
-        writer.print("AllowedIPs = " + allowedIps + "\n");
+        StringBuilder allowedIps = new StringBuilder();
+        othersite.getIp().appendTo(allowedIps).append("/32");
+        othersite.appendLocalNetworks(allowedIps);
+        writer.write("AllowedIPs = " + allowedIps + "\n");
 
         // if enabled, set the keepalive interval
         if (this.isSetKeepAlive()) {
-            writer.print("PersistentKeepalive = " + this.getKeepAliveSeconds() + "\n");
+            writer.write("PersistentKeepalive = " + this.getKeepAliveSeconds() + "\n");
         }
-        writer.close();
+        writer.flush();
     }
 
     /**
@@ -106,34 +121,88 @@ public class Configuration {
      *
      * @param othersite SiteConfiguration of the other site
      * @param filePath  the destination path
+     * @throws IOException if the file can not be written
      */
-    public void generateSetupFile(Configuration othersite, String filePath) {
-        try {
-            Log.getInstance().info("Writing Setup file to " + filePath);
-            PrintWriter writer = new PrintWriter(filePath, "UTF-8");
-            writer.print("#!/bin/bash\n");
-            // add the wireguard interface, with the given interface name
-            writer.print("sudo ip link add dev " + this.getIntName() + " type wireguard\n");
-            // add the specified ip and netmask to the wireguard interface
-            writer.print("sudo ip addr add " + this.getIp() + "/" + this.getNetmaskPrefix() + " dev " + this.getIntName() + "\n");
-            // activate the interface
-            writer.print("sudo ip link set dev " + this.getIntName() + " up\n");
-            // apply the wireguard config
-            writer.print("sudo wg setconf " + this.getIntName() + " " + this.getName() + ".conf\n");
-
-            if (defaultGateway) {
-                // if enabled, add default route over the wireguard interface
-                writer.print("sudo ip route add default via " + othersite.getIp() + "\n");
-            } else {
-                // else, add routes for each local network of the other site
-                writer.print(addRoutes(othersite));
-            }
-            writer.close();
-        } catch (IOException e) {
-            Log.getInstance().warning("IO Error while writing setup file " + this.getName());
-            PopUp.showAlert(Alert.AlertType.ERROR, "IO Error", "Error writing setup file",
-                    "There was an error while creating the setup file. Please choose another destination directory.");
+    public void generateSetupFile(Configuration othersite, String filePath) throws IOException {
+        Log.getInstance().info("Writing Setup file to " + filePath);
+        try (OutputStream out = new FileOutputStream(filePath)) {
+            generateSetupFile(othersite, out);
+        }
+    }
+
+    /**
+     * Generate the Wireguard setup script into a stream, eg: an entry of a ZIP
+     *
+     * @param othersite SiteConfiguration of the other site
+     * @param out       the destination, it is flushed but not closed
+     * @throws IOException if writing to the stream fails
+     */
+    public void generateSetupFile(Configuration othersite, OutputStream out) throws IOException {
+        Writer writer = writer(out);
+        writer.write("#!/bin/bash\n");
+        writer.write(setupStart());
+
+        if (defaultGateway) {
+            // if enabled, add default route over the wireguard interface
+            writer.write(ipCommand() + "route add default via " + othersite.getIp() + "\n");
+        } else {
+            // else, add routes for each local network of the other site
+            writer.write(addRoutes(othersite));
+        }
+        writer.write(setupEnd());
+        writer.flush();
+    }
+
+    /**
+     * Get the commands at the start of the setup script, that create and activate the wireguard interface
+     * For a batch setup, they start the input of a single "ip -batch" process, the routes follow as part of it
+     *
+     * @return the commands
+     */
+    protected String setupStart() {
+        StringBuilder sb = new StringBuilder();
+        if (batchSetup) {
+            // the commands until EOF are read by one ip process. Like the separate commands, a failing command,
+            // eg: a route that already exists, does not stop the ones after it
+            sb.append("sudo ip -force -batch - <<'EOF'\n");
+        }
+        String ip = ipCommand();
+        // add the wireguard interface, with the given interface name
+        sb.append(ip).append("link add dev ").append(this.getIntName()).append(" type wireguard\n");
+        // add the specified ip and netmask to the wireguard interface
+        sb.append(ip).append("addr add ").append(this.getIp()).append('/').append(this.getNetmaskPrefix())
+                .append(" dev ").append(this.getIntName()).append('\n');
+        // activate the interface
+        sb.append(ip).append("link set dev ").append(this.getIntName()).append(" up\n");
+        if (!batchSetup) {
+            sb.append(applyConfig());
         }
+        return sb.toString();
+    }
+
+    /**
+     * Get the commands at the end of the setup script, after the routes
+     * For a batch setup, they end the input of "ip -batch" and apply the wireguard config
+     *
+     * @return the commands, empty if there are none
+     */
+    protected String setupEnd() {
+        return batchSetup ? "EOF\n" + applyConfig() : "";
+    }
+
+    /**
+     * Get the prefix of an ip command in the setup script, eg: "sudo ip route add ..."
+     * For a batch setup the commands are read by "ip -batch", without the prefix
+     *
+     * @return the prefix
+     */
+    protected String ipCommand() {
+        return batchSetup ? "" : "sudo ip ";
+    }
+
+    private String applyConfig() {
+        // apply the wireguard config
+        return "sudo wg setconf " + this.getIntName() + " " + this.getName() + ".conf\n";
     }
 
     /**
@@ -143,14 +212,20 @@ public class Configuration {
      */
     public static void copyInstaller(String path) throws IOException {
         Log.getInstance().info("Copying the wireguard install file to " + path);
-        InputStream in = Configuration.class.getResourceAsStream("/files/install_wireguard.sh");
-        byte[] bytes = in.readAllBytes();
-        try (FileOutputStream fos = new FileOutputStream(path)) {
-            fos.write(bytes);
-            fos.close();
+        try (OutputStream out = new FileOutputStream(path)) {
+            copyInstaller(out);
         }
     }
 
+    /**
+     * Copy the wireguard_installer.sh script into a stream, eg: an entry of a ZIP
+     * @param out the destination, it is not closed
+     * @throws IOException if writing to the stream fails
+     */
+    public static void copyInstaller(OutputStream out) throws IOException {
+        copyResource("/files/install_wireguard.sh", out);
+    }
+
     /**
      * Copy the readme file to the output directory
      * @param path destination directory
@@ -159,14 +234,41 @@ public class Configuration {
      */
     public static void copyReadme(String path, String name) throws IOException {
         Log.getInstance().info("Copying the readme file to " + path);
-        InputStream in = Configuration.class.getResourceAsStream("/files/" + name);
-        byte[] bytes = in.readAllBytes();
-        try (FileOutputStream fos = new FileOutputStream(path)) {
-            fos.write(bytes);
-            fos.close();
+        try (OutputStream out = new FileOutputStream(path)) {
+            copyReadme(out, name);
+        }
+    }
+
+    /**
+     * Copy the readme file into a stream, eg: an entry of a ZIP
+     * @param out  the destination, it is not closed
+     * @param name name of the README file
+     * @throws IOException if writing to the stream fails
+     */
+    public static void copyReadme(OutputStream out, String name) throws IOException {
+        copyResource("/files/" + name, out);
+    }
+
+    private static void copyResource(String resource, OutputStream out) throws IOException {
+        try (InputStream in = Configuration.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new FileNotFoundException("Resource not found: " + resource);
+            }
+            in.transferTo(out);
         }
     }
 
+    /**
+     * Create a buffered UTF-8 writer for a stream
+     * Unlike PrintWriter, it reports write errors as IOException
+     *
+     * @param out the stream
+     * @return the writer, has to be flushed at the end
+     */
+    protected static Writer writer(OutputStream out) {
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
     /**
      * Delete the generated files, leaving only the ZIP archive, which is password protected
      * @param path Path to the 'wireguard-configuration' directory, which contains all the files and also the zip file
@@ -201,19 +303,18 @@ public class Configuration {
      * @return a String of commands
      */
     public String addRoutes(Configuration othersite) {
+        List<IPv4Cidr> networks = othersite.getRoutedNetworks();
         // if there are no local networks on the other site, leave empty
-        if (othersite.getLocalNetworks().size() == 0) {
+        if (networks.size() == 0) {
             return "";
         }
         StringBuilder sb = new StringBuilder();
-        for (Pair<String, IPv4Netmask> pair : othersite.getLocalNetworks()) {
-            sb.append("sudo ip route add ");
-            // calculate the network address
-            sb.append(IPv4Netmask.getNetworkAddress(pair.getKey(), pair.getValue()));
-            sb.append("/");
-            sb.append(pair.getValue().getPrefix());
+        String ip = ipCommand();
+        for (IPv4Cidr network : networks) {
+            sb.append(ip).append("route add ");
+            network.appendTo(sb);
             sb.append(" via ");
-            sb.append(othersite.getIp());
+            othersite.getIp().appendTo(sb);
             sb.append("\n");
         }
 
@@ -221,21 +322,31 @@ public class Configuration {
     }
 
     /**
-     * Return a list of pairs. Each pair contains the IP and the netmask
-     * @return List of Pair<String ip, IPv4Netmask netmask>
+     * Return the list of local networks
+     * @return List of IPv4Cidr networks
      */
-    public List<Pair<String, IPv4Netmask>> getLocalNetworks() {
+    public List<IPv4Cidr> getLocalNetworks() {
         return this.localNetworks;
     }
 
     /**
      * Set local networks
-     * @param localNetworks List of Pair<String ip, IPv4Netmask netmask>
+     * @param localNetworks List of IPv4Cidr networks
      */
-    public void setLocalNetworks(List<Pair<String, IPv4Netmask>> localNetworks) {
+    public void setLocalNetworks(List<IPv4Cidr> localNetworks) {
         this.localNetworks = localNetworks;
     }
 
+    /**
+     * Return the local networks as they are routed into the tunnel, in AllowedIPs and the routes of the setup script
+     * If summarizing is set, they are merged into the fewest networks with the same addresses
+     *
+     * @return List of IPv4Cidr networks
+     */
+    public List<IPv4Cidr> getRoutedNetworks() {
+        return summarizeNetworks ? IPv4Cidr.summarize(localNetworks) : localNetworks;
+    }
+
     /**
      * Return the list of local networks as a comma-seperated list
      * ", 192.168.1.0/24,10.1.1.0/16"
@@ -243,23 +354,29 @@ public class Configuration {
      * @return a comma separated list of the local networks and their netmask prefix
      */
     public String getLocalNetworksAsString() {
-        StringBuilder stringBuilder = new StringBuilder();
-        for (Pair<String, IPv4Netmask> pair : localNetworks) {
-            stringBuilder.append(",");
-            // calculate the network address
-            stringBuilder.append(IPv4Netmask.getNetworkAddress(pair.getKey(), pair.getValue()));
-            stringBuilder.append("/");
-            stringBuilder.append(pair.getValue().getPrefix());
+        return appendLocalNetworks(new StringBuilder()).toString();
+    }
+
+    /**
+     * Append the local networks as a comma-separated list, each one starting with a comma
+     * They are summarized if set, like in AllowedIPs
+     *
+     * @param sb the StringBuilder to append to
+     * @return the given StringBuilder
+     */
+    public StringBuilder appendLocalNetworks(StringBuilder sb) {
+        for (IPv4Cidr network : getRoutedNetworks()) {
+            network.appendTo(sb.append(","));
         }
-        return stringBuilder.toString();
+        return sb;
     }
 
     /**
-     * Add a Pair<String ip, IPv4Netmask netmask> to the LocalNetwork list
-     * @param pair Pair<String ip, IPv4Netmask netmask>
+     * Add a network to the LocalNetwork list
+     * @param network the network, host bits of the address are ignored
      */
-    public void addLocalNetwork(Pair<String, IPv4Netmask> pair) {
-        this.localNetworks.add(pair);
+    public void addLocalNetwork(IPv4Cidr network) {
+        this.localNetworks.add(network);
     }
 
     /**
@@ -311,18 +428,27 @@ public class Configuration {
     }
 
     /**
-     * Get the IP as string
-     * @return the IP as string
+     * Get the IP
+     * @return the IP
      */
-    public String getIp() {
+    public IPv4Address getIp() {
         return this.ip;
     }
 
     /**
      * Set the IP
      * @param ip IP as String
+     * @throws NumberFormatException if the IP is not valid
      */
     public void setIp(String ip) {
+        this.ip = IPv4Address.of(ip);
+    }
+
+    /**
+     * Set the IP
+     * @param ip the IP
+     */
+    public void setIp(IPv4Address ip) {
         this.ip = ip;
     }
 
@@ -396,15 +522,23 @@ public class Configuration {
      * @param netmask Netmask as String in full format. eg: 255.255.255.0
      */
     public void setNetmask(String netmask) {
-        this.netmask = new IPv4Netmask(netmask);
+        this.netmask = IPv4Netmask.of(netmask);
+    }
+
+    /**
+     * Set the netmask
+     * @param netmask the netmask
+     */
+    public void setNetmask(IPv4Netmask netmask) {
+        this.netmask = netmask;
     }
 
     /**
      * Get the netmask as String in Prefix format. eg: /24
-     * @return for example '24' as String
+     * @return for example '24' as String, or null if the netmask is not set
      */
     public String getNetmaskPrefix() {
-        return this.netmask.getPrefix();
+        return this.netmask == null ? null : this.netmask.getPrefix();
     }
 
     /**
@@ -431,6 +565,40 @@ public class Configuration {
         this.defaultGateway = defaultGateway;
     }
 
+    /**
+     * Check if the local networks are summarized
+     * @return true if set, else if not
+     */
+    public boolean isSetSummarizeNetworks() {
+        return this.summarizeNetworks;
+    }
+
+    /**
+     * Summarize the local networks. If enabled, adjacent networks and networks inside of another one are merged
+     * in AllowedIPs and the routes of the other side, eg: 256 adjacent /24 become one /16
+     * @param summarizeNetworks true if active, else false
+     */
+    public void setSummarizeNetworks(boolean summarizeNetworks) {
+        this.summarizeNetworks = summarizeNetworks;
+    }
+
+    /**
+     * Check if the setup script runs a single "ip -batch" for the interface and the routes
+     * @return true if set, else if not
+     */
+    public boolean isSetBatchSetup() {
+        return this.batchSetup;
+    }
+
+    /**
+     * Write the setup script as batch. If enabled, the interface, its address and all routes are set up
+     * by one "ip -batch" process, instead of one sudo and ip process for every command
+     * @param batchSetup true if active, else false
+     */
+    public void setBatchSetup(boolean batchSetup) {
+        this.batchSetup = batchSetup;
+    }
+
     /**
      * Set preshared key.
      * @param psk base64 encoded preshared key, as generated by "wg genpsk"
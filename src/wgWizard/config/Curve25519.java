@@ -34,12 +34,16 @@ import java.util.Arrays;
  * representation instead of the 8/16/32-bit limbs in the original.
  * <p>
  * References: http://cr.yp.to/ecdh.html, RFC 7748
+ *
+ * @see Curve25519Radix51 for the 64-bit limb variant
  */
-public final class Curve25519 {
+public final class Curve25519 implements Curve25519Evaluator {
 
     // Numbers modulo 2^255 - 19 are broken up into ten 26-bit words.
     private static final int NUM_LIMBS_255BIT = 10;
     private static final int NUM_LIMBS_510BIT = 20;
+    // A precomputed point (y + x, y - x, 2dxy) takes three numbers.
+    private static final int NIELS_LIMBS = 3 * NUM_LIMBS_255BIT;
     private int[] x_1;
     private int[] x_2;
     private int[] x_3;
@@ -57,10 +61,29 @@ public final class Curve25519 {
     private long[] t1;
     private int[] t2;
 
+    // Temporary variables for the fixed-base evaluation on the Edwards form.
+    private int[] ex;
+    private int[] ey;
+    private int[] ez;
+    private int[] et;
+    private int[] ta;
+    private int[] tb;
+    private int[] tc;
+    private int[] td;
+    private int[] te;
+    private int[] nypx;
+    private int[] nymx;
+    private int[] nxy2d;
+    private byte[] scalar;
+    private byte[] digits;
+
     /**
      * Constructs the temporary state holder for Curve25519 evaluation.
+     * <p>
+     * An instance may be kept around and reused for any number of calls to
+     * {@link #evaluate(byte[], int, byte[], byte[])}, but it is not thread-safe.
      */
-    private Curve25519() {
+    public Curve25519() {
         // Allocate memory for all of the temporary variables we will need.
         x_1 = new int[NUM_LIMBS_255BIT];
         x_2 = new int[NUM_LIMBS_255BIT];
@@ -78,6 +101,20 @@ public final class Curve25519 {
         CB = new int[NUM_LIMBS_255BIT];
         t1 = new long[NUM_LIMBS_510BIT];
         t2 = new int[NUM_LIMBS_510BIT];
+        ex = new int[NUM_LIMBS_255BIT];
+        ey = new int[NUM_LIMBS_255BIT];
+        ez = new int[NUM_LIMBS_255BIT];
+        et = new int[NUM_LIMBS_255BIT];
+        ta = new int[NUM_LIMBS_255BIT];
+        tb = new int[NUM_LIMBS_255BIT];
+        tc = new int[NUM_LIMBS_255BIT];
+        td = new int[NUM_LIMBS_255BIT];
+        te = new int[NUM_LIMBS_255BIT];
+        nypx = new int[NUM_LIMBS_255BIT];
+        nymx = new int[NUM_LIMBS_255BIT];
+        nxy2d = new int[NUM_LIMBS_255BIT];
+        scalar = new byte[32];
+        digits = new byte[64];
     }
 
     /**
@@ -107,61 +144,167 @@ public final class Curve25519 {
      *                   if the base point of the curve should be used.
      */
     public static void eval(byte[] result, int offset, byte[] privateKey, byte[] publicKey) {
-        Curve25519 state = new Curve25519();
+        new Curve25519().evaluate(result, offset, privateKey, publicKey);
+    }
+
+    /**
+     * Evaluates the Curve25519 curve, reusing the temporary state of this object.
+     * The state is cleared again before returning.
+     *
+     * @param result     Buffer to place the result of the evaluation into.
+     * @param offset     Offset into the result buffer.
+     * @param privateKey The private key to use in the evaluation.
+     * @param publicKey  The public key to use in the evaluation, or null
+     *                   if the base point of the curve should be used.
+     */
+    @Override
+    public void evaluate(byte[] result, int offset, byte[] privateKey, byte[] publicKey) {
+        if (publicKey == null) {
+            // The base point never changes, use the precomputed table for it.
+            evaluateBase(result, offset, privateKey);
+            return;
+        }
         try {
-            // Unpack the public key value.  If null, use 9 as the base point.
-            Arrays.fill(state.x_1, 0);
-            if (publicKey != null) {
-                // Convert the input value from little-endian into 26-bit limbs.
-                for (int index = 0; index < 32; ++index) {
-                    int bit = (index * 8) % 26;
-                    int word = (index * 8) / 26;
-                    int value = publicKey[index] & 0xFF;
-                    if (bit <= (26 - 8)) {
-                        state.x_1[word] |= value << bit;
-                    } else {
-                        state.x_1[word] |= value << bit;
-                        state.x_1[word] &= 0x03FFFFFF;
-                        state.x_1[word + 1] |= value >> (26 - bit);
-                    }
-                }
+            // Unpack the public key value.
+            unpack(x_1, publicKey, 0);
 
-                // Just in case, we reduce the number modulo 2^255 - 19 to
-                // make sure that it is in range of the field before we start.
-                // This eliminates values between 2^255 - 19 and 2^256 - 1.
-                state.reduceQuick(state.x_1);
-                state.reduceQuick(state.x_1);
-            } else {
-                state.x_1[0] = 9;
-            }
+            // Just in case, we reduce the number modulo 2^255 - 19 to
+            // make sure that it is in range of the field before we start.
+            // This eliminates values between 2^255 - 19 and 2^256 - 1.
+            reduceQuick(x_1);
+            reduceQuick(x_1);
 
             // Initialize the other temporary variables.
-            Arrays.fill(state.x_2, 0);            // x_2 = 1
-            state.x_2[0] = 1;
-            Arrays.fill(state.z_2, 0);            // z_2 = 0
-            System.arraycopy(state.x_1, 0, state.x_3, 0, state.x_1.length);  // x_3 = x_1
-            Arrays.fill(state.z_3, 0);            // z_3 = 1
-            state.z_3[0] = 1;
+            Arrays.fill(x_2, 0);            // x_2 = 1
+            x_2[0] = 1;
+            Arrays.fill(z_2, 0);            // z_2 = 0
+            System.arraycopy(x_1, 0, x_3, 0, x_1.length);  // x_3 = x_1
+            Arrays.fill(z_3, 0);            // z_3 = 1
+            z_3[0] = 1;
 
             // Evaluate the curve for every bit of the private key.
-            state.evalCurve(privateKey);
+            evalCurve(privateKey);
 
             // Compute x_2 * (z_2 ^ (p - 2)) where p = 2^255 - 19.
-            state.recip(state.z_3, state.z_2);
-            state.mul(state.x_2, state.x_2, state.z_3);
+            recip(z_3, z_2);
+            mul(x_2, x_2, z_3);
 
             // Convert x_2 into little-endian in the result buffer.
+            pack(result, offset, x_2);
+        } finally {
+            // Clean up all temporary state before we exit.
+            destroy();
+        }
+    }
+
+    /**
+     * Evaluates the Curve25519 curve for the base point 9, giving the same
+     * result as the Montgomery ladder in {@link #evaluate(byte[], int, byte[], byte[])}.
+     * <p>
+     * The scalar multiplication is done on the birationally equivalent twisted
+     * Edwards curve with a fixed-base signed 4-bit window (as in the ref10 code
+     * of SUPERCOP), using a precomputed table of multiples of the base point.
+     * This needs 64 point additions and 4 doublings instead of 255 ladder steps.
+     * The result is mapped back to the Montgomery form with u = (1 + y) / (1 - y).
+     *
+     * @param result     Buffer to place the result of the evaluation into.
+     * @param offset     Offset into the result buffer.
+     * @param privateKey The private key to use in the evaluation.
+     */
+    private void evaluateBase(byte[] result, int offset, byte[] privateKey) {
+        int[] table = BaseTable.TABLE;
+        try {
+            // Clamp the scalar the same way the ladder in evalCurve() does.
+            System.arraycopy(privateKey, 0, scalar, 0, 32);
+            scalar[0] &= (byte) 0xF8;
+            scalar[31] &= 0x7F;
+            scalar[31] |= 0x40;
+
+            // Recode the scalar into 64 signed digits between -8 and 8.
             for (int index = 0; index < 32; ++index) {
-                int bit = (index * 8) % 26;
-                int word = (index * 8) / 26;
-                if (bit <= (26 - 8))
-                    result[offset + index] = (byte) (state.x_2[word] >> bit);
-                else
-                    result[offset + index] = (byte) ((state.x_2[word] >> bit) | (state.x_2[word + 1] << (26 - bit)));
+                digits[2 * index] = (byte) (scalar[index] & 0x0F);
+                digits[2 * index + 1] = (byte) ((scalar[index] >> 4) & 0x0F);
+            }
+            int carry = 0;
+            for (int index = 0; index < 63; ++index) {
+                digits[index] += carry;
+                carry = (digits[index] + 8) >> 4;
+                digits[index] -= carry << 4;
+            }
+            digits[63] += carry;
+
+            // Start with the neutral element (0, 1).
+            Arrays.fill(ex, 0);
+            Arrays.fill(ey, 0);
+            ey[0] = 1;
+            Arrays.fill(ez, 0);
+            ez[0] = 1;
+            Arrays.fill(et, 0);
+
+            // Add the odd digits, multiply by 16 and add the even digits.
+            for (int index = 1; index < 64; index += 2) {
+                select(table, index / 2, digits[index]);
+                addNiels();
             }
+            dbl();
+            dbl();
+            dbl();
+            dbl();
+            for (int index = 0; index < 64; index += 2) {
+                select(table, index / 2, digits[index]);
+                addNiels();
+            }
+
+            // Compute u = (Z + Y) / (Z - Y).
+            add(ta, ez, ey);
+            sub(tb, ez, ey);
+            recip(tc, tb);
+            mul(ta, ta, tc);
+            pack(result, offset, ta);
         } finally {
             // Clean up all temporary state before we exit.
-            state.destroy();
+            destroy();
+        }
+    }
+
+    /**
+     * Converts a little-endian 32-byte value into 26-bit limbs.
+     *
+     * @param x      The result.
+     * @param in     The buffer holding the value.
+     * @param offset Offset into the buffer.
+     */
+    private static void unpack(int[] x, byte[] in, int offset) {
+        Arrays.fill(x, 0);
+        for (int index = 0; index < 32; ++index) {
+            int bit = (index * 8) % 26;
+            int word = (index * 8) / 26;
+            int value = in[offset + index] & 0xFF;
+            if (bit <= (26 - 8)) {
+                x[word] |= value << bit;
+            } else {
+                x[word] |= value << bit;
+                x[word] &= 0x03FFFFFF;
+                x[word + 1] |= value >> (26 - bit);
+            }
+        }
+    }
+
+    /**
+     * Converts a reduced number in 26-bit limbs into little-endian.
+     *
+     * @param result Buffer to place the value into.
+     * @param offset Offset into the buffer.
+     * @param x      The number to convert.
+     */
+    private static void pack(byte[] result, int offset, int[] x) {
+        for (int index = 0; index < 32; ++index) {
+            int bit = (index * 8) % 26;
+            int word = (index * 8) / 26;
+            if (bit <= (26 - 8))
+                result[offset + index] = (byte) (x[word] >> bit);
+            else
+                result[offset + index] = (byte) ((x[word] >> bit) | (x[word + 1] << (26 - bit)));
         }
     }
 
@@ -186,6 +329,20 @@ public final class Curve25519 {
         Arrays.fill(CB, 0);
         Arrays.fill(t1, 0L);
         Arrays.fill(t2, 0);
+        Arrays.fill(ex, 0);
+        Arrays.fill(ey, 0);
+        Arrays.fill(ez, 0);
+        Arrays.fill(et, 0);
+        Arrays.fill(ta, 0);
+        Arrays.fill(tb, 0);
+        Arrays.fill(tc, 0);
+        Arrays.fill(td, 0);
+        Arrays.fill(te, 0);
+        Arrays.fill(nypx, 0);
+        Arrays.fill(nymx, 0);
+        Arrays.fill(nxy2d, 0);
+        Arrays.fill(scalar, (byte) 0);
+        Arrays.fill(digits, (byte) 0);
     }
 
     /**
@@ -514,4 +671,183 @@ public final class Curve25519 {
         cswap(swap, x_2, x_3);
         cswap(swap, z_2, z_3);
     }
+
+    /**
+     * Conditional move of a value.
+     *
+     * @param x         The destination.
+     * @param y         The buffer holding the source value.
+     * @param yOffset   Offset of the source value in y.
+     * @param select    Set to 1 to move, 0 to leave x as-is.
+     */
+    private static void cmov(int[] x, int[] y, int yOffset, int select) {
+        select = -select;
+        for (int index = 0; index < NUM_LIMBS_255BIT; ++index)
+            x[index] ^= select & (x[index] ^ y[yOffset + index]);
+    }
+
+    /**
+     * Loads the table entry digit * 256^position * B into the niels
+     * temporaries without revealing the digit through the memory access
+     * pattern.
+     *
+     * @param table    The precomputed table.
+     * @param position The position of the digit, between 0 and 31.
+     * @param digit    The signed digit, between -8 and 8.
+     */
+    private void select(int[] table, int position, int digit) {
+        int negative = (digit >> 7) & 0x01;
+        int abs = digit - ((-negative & digit) << 1);
+
+        // Start with the neutral element (y + x, y - x, 2dxy) = (1, 1, 0).
+        Arrays.fill(nypx, 0);
+        nypx[0] = 1;
+        Arrays.fill(nymx, 0);
+        nymx[0] = 1;
+        Arrays.fill(nxy2d, 0);
+        for (int multiple = 1; multiple <= 8; ++multiple) {
+            int equal = ((abs ^ multiple) - 1) >>> 31;
+            int entry = (position * 8 + multiple - 1) * NIELS_LIMBS;
+            cmov(nypx, table, entry, equal);
+            cmov(nymx, table, entry + NUM_LIMBS_255BIT, equal);
+            cmov(nxy2d, table, entry + 2 * NUM_LIMBS_255BIT, equal);
+        }
+
+        // Negating the point swaps y + x with y - x and negates 2dxy.
+        cswap(negative, nypx, nymx);
+        Arrays.fill(ta, 0);
+        sub(ta, ta, nxy2d);
+        cmov(nxy2d, ta, 0, negative);
+    }
+
+    /**
+     * Adds the point in the niels temporaries to the extended point (ex, ey, ez, et).
+     */
+    private void addNiels() {
+        add(ta, ey, ex);                // A = (Y + X) * (y + x)
+        mul(ta, ta, nypx);
+        sub(tb, ey, ex);                // B = (Y - X) * (y - x)
+        mul(tb, tb, nymx);
+        mul(tc, et, nxy2d);             // C = T * 2dxy
+        add(td, ez, ez);                // D = 2 * Z
+        sub(te, ta, tb);                // E = A - B
+        add(ta, ta, tb);                // H = A + B
+        add(tb, td, tc);                // G = D + C
+        sub(td, td, tc);                // F = D - C
+        mul(ex, te, td);                // X = E * F
+        mul(ey, tb, ta);                // Y = G * H
+        mul(ez, td, tb);                // Z = F * G
+        mul(et, te, ta);                // T = E * H
+    }
+
+    /**
+     * Doubles the extended point (ex, ey, ez, et).
+     */
+    private void dbl() {
+        square(ta, ex);                 // XX = X^2
+        square(tb, ey);                 // YY = Y^2
+        square(tc, ez);                 // ZZ2 = 2 * Z^2
+        add(tc, tc, tc);
+        add(td, ex, ey);                // AA = (X + Y)^2
+        square(td, td);
+        add(te, tb, ta);                // Y' = YY + XX
+        sub(tb, tb, ta);                // Z' = YY - XX
+        sub(td, td, te);                // X' = AA - Y'
+        sub(tc, tc, tb);                // T' = ZZ2 - Z'
+        mul(ex, td, tc);                // X = X' * T'
+        mul(ey, te, tb);                // Y = Y' * Z'
+        mul(ez, tb, tc);                // Z = Z' * T'
+        mul(et, td, te);                // T = X' * Y'
+    }
+
+    /**
+     * Stores the extended point (ex, ey, ez, et) as an affine niels point
+     * (y + x, y - x, 2dxy) in the table.
+     *
+     * @param table  The table.
+     * @param offset Offset of the entry in the table.
+     * @param d2     The constant 2d in 26-bit limbs.
+     */
+    private void storeNiels(int[] table, int offset, int[] d2) {
+        recip(ta, ez);
+        mul(tb, ex, ta);                // x = X / Z
+        mul(tc, ey, ta);                // y = Y / Z
+        add(td, tc, tb);
+        System.arraycopy(td, 0, table, offset, NUM_LIMBS_255BIT);
+        sub(td, tc, tb);
+        System.arraycopy(td, 0, table, offset + NUM_LIMBS_255BIT, NUM_LIMBS_255BIT);
+        mul(td, tb, tc);
+        mul(td, td, d2);
+        System.arraycopy(td, 0, table, offset + 2 * NUM_LIMBS_255BIT, NUM_LIMBS_255BIT);
+    }
+
+    /**
+     * Converts a big-endian hexadecimal constant into 26-bit limbs.
+     *
+     * @param hex The constant as 64 hexadecimal digits.
+     * @return the constant in 26-bit limbs
+     */
+    private static int[] constant(String hex) {
+        byte[] bytes = new byte[32];
+        for (int index = 0; index < 32; ++index)
+            bytes[31 - index] = (byte) Integer.parseInt(hex.substring(2 * index, 2 * index + 2), 16);
+        int[] x = new int[NUM_LIMBS_255BIT];
+        unpack(x, bytes, 0);
+        return x;
+    }
+
+    /**
+     * Holder for the table of precomputed multiples of the base point.
+     * The table is only built when the fixed-base evaluation is first used.
+     */
+    private static final class BaseTable {
+        // Entry (i, j) holds (j + 1) * 256^i * B for i = 0..31 and j = 0..7.
+        static final int[] TABLE = build();
+
+        private static int[] build() {
+            // d = -121665 / 121666, the Edwards base point B has y = 4/5 and
+            // a positive x, it is the point with u = 9 on the Montgomery curve.
+            int[] d2 = constant("2406d9dc56dffce7198e80f2eef3d13000e0149a8283b156ebd69b9426b2f159");
+            int[] bx = constant("216936d3cd6e53fec0a4e231fdd6dc5c692cc7609525a7b2c9562d608f25d51a");
+            int[] by = constant("6666666666666666666666666666666666666666666666666666666666666658");
+
+            int[] table = new int[32 * 8 * NIELS_LIMBS];
+            Curve25519 state = new Curve25519();
+            int[] rowX = new int[NUM_LIMBS_255BIT];
+            int[] rowY = new int[NUM_LIMBS_255BIT];
+            int[] rowZ = new int[NUM_LIMBS_255BIT];
+
+            // Start with B in extended coordinates (x, y, 1, xy).
+            System.arraycopy(bx, 0, state.ex, 0, NUM_LIMBS_255BIT);
+            System.arraycopy(by, 0, state.ey, 0, NUM_LIMBS_255BIT);
+            state.ez[0] = 1;
+            state.mul(state.et, bx, by);
+
+            for (int row = 0; row < 32; ++row) {
+                System.arraycopy(state.ex, 0, rowX, 0, NUM_LIMBS_255BIT);
+                System.arraycopy(state.ey, 0, rowY, 0, NUM_LIMBS_255BIT);
+                System.arraycopy(state.ez, 0, rowZ, 0, NUM_LIMBS_255BIT);
+
+                // Multiples 1 to 8 of 256^row * B.
+                int first = row * 8 * NIELS_LIMBS;
+                state.storeNiels(table, first, d2);
+                System.arraycopy(table, first, state.nypx, 0, NUM_LIMBS_255BIT);
+                System.arraycopy(table, first + NUM_LIMBS_255BIT, state.nymx, 0, NUM_LIMBS_255BIT);
+                System.arraycopy(table, first + 2 * NUM_LIMBS_255BIT, state.nxy2d, 0, NUM_LIMBS_255BIT);
+                for (int multiple = 1; multiple < 8; ++multiple) {
+                    state.addNiels();
+                    state.storeNiels(table, first + multiple * NIELS_LIMBS, d2);
+                }
+
+                // Move on to 256^(row + 1) * B.
+                System.arraycopy(rowX, 0, state.ex, 0, NUM_LIMBS_255BIT);
+                System.arraycopy(rowY, 0, state.ey, 0, NUM_LIMBS_255BIT);
+                System.arraycopy(rowZ, 0, state.ez, 0, NUM_LIMBS_255BIT);
+                for (int doubling = 0; doubling < 8; ++doubling)
+                    state.dbl();
+            }
+            state.destroy();
+            return table;
+        }
+    }
 }
@@ -0,0 +1,62 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.config;
+
+import wgWizard.helper.Log;
+
+/**
+ * Evaluates the Curve25519 function with one of the available field arithmetic backends.
+ * Implementations keep their temporary state between calls and are not thread-safe.
+ */
+public interface Curve25519Evaluator {
+    // system property used to select the backend, eg: -DwgWizard.curve25519=radix51
+    String BACKEND_PROPERTY = "wgWizard.curve25519";
+    String RADIX26 = "radix26";
+    String RADIX51 = "radix51";
+
+    /**
+     * Evaluates the Curve25519 curve.
+     *
+     * @param result     Buffer to place the result of the evaluation into.
+     * @param offset     Offset into the result buffer.
+     * @param privateKey The private key to use in the evaluation.
+     * @param publicKey  The public key to use in the evaluation, or null
+     *                   if the base point of the curve should be used.
+     */
+    void evaluate(byte[] result, int offset, byte[] privateKey, byte[] publicKey);
+
+    /**
+     * Create an evaluator for the backend selected with the system property {@value #BACKEND_PROPERTY}
+     * Defaults to the 26-bit limb backend
+     *
+     * @return a new evaluator
+     */
+    static Curve25519Evaluator create() {
+        return create(System.getProperty(BACKEND_PROPERTY, RADIX26));
+    }
+
+    /**
+     * Create an evaluator for the given backend
+     *
+     * @param backend either "radix26" (10 x 26-bit limbs) or "radix51" (5 x 51-bit limbs)
+     * @return a new evaluator
+     */
+    static Curve25519Evaluator create(String backend) {
+        switch (backend) {
+            case RADIX26:
+                return new Curve25519();
+            case RADIX51:
+                return new Curve25519Radix51();
+            default:
+                Log.getInstance().warning(String.format("Unknown Curve25519 backend '%s'. Using '%s'", backend, RADIX26));
+                return new Curve25519();
+        }
+    }
+}
@@ -0,0 +1,739 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.config;
+
+import java.util.Arrays;
+
+/**
+ * Implementation of the Curve25519 elliptic curve algorithm with 64-bit limbs.
+ * <p>
+ * Numbers modulo 2^255 - 19 are broken up into five 51-bit words, as in the
+ * curve25519-donna-c64 code. A product of two words needs up to 107 bits, so
+ * every product is split with {@link Math#multiplyHigh(long, long)}. This needs
+ * 25 multiplications per field multiplication instead of the 100 of the
+ * 26-bit limbs in {@link Curve25519}.
+ * <p>
+ * The algorithms are the same as in {@link Curve25519}: the Montgomery ladder
+ * for any point and the precomputed Edwards table for the base point, so both
+ * classes give bit-identical results.
+ * <p>
+ * References: http://cr.yp.to/ecdh.html, RFC 7748, https://github.com/agl/curve25519-donna
+ */
+public final class Curve25519Radix51 implements Curve25519Evaluator {
+
+    private static final int NUM_LIMBS = 5;
+    private static final long MASK_51 = 0x7FFFFFFFFFFFFL;
+    // A precomputed point (y + x, y - x, 2dxy) takes three numbers.
+    private static final int NIELS_LIMBS = 3 * NUM_LIMBS;
+
+    private long[] x_1;
+    private long[] x_2;
+    private long[] x_3;
+    private long[] z_2;
+    private long[] z_3;
+    private long[] A;
+    private long[] B;
+    private long[] C;
+    private long[] D;
+    private long[] E;
+    private long[] AA;
+    private long[] BB;
+    private long[] DA;
+    private long[] CB;
+
+    // Temporary variables for the fixed-base evaluation on the Edwards form.
+    private long[] ex;
+    private long[] ey;
+    private long[] ez;
+    private long[] et;
+    private long[] ta;
+    private long[] tb;
+    private long[] tc;
+    private long[] td;
+    private long[] te;
+    private long[] nypx;
+    private long[] nymx;
+    private long[] nxy2d;
+    private byte[] scalar;
+    private byte[] digits;
+
+    /**
+     * Constructs the temporary state holder for Curve25519 evaluation.
+     * An instance may be reused for any number of evaluations, but it is not thread-safe.
+     */
+    public Curve25519Radix51() {
+        x_1 = new long[NUM_LIMBS];
+        x_2 = new long[NUM_LIMBS];
+        x_3 = new long[NUM_LIMBS];
+        z_2 = new long[NUM_LIMBS];
+        z_3 = new long[NUM_LIMBS];
+        A = new long[NUM_LIMBS];
+        B = new long[NUM_LIMBS];
+        C = new long[NUM_LIMBS];
+        D = new long[NUM_LIMBS];
+        E = new long[NUM_LIMBS];
+        AA = new long[NUM_LIMBS];
+        BB = new long[NUM_LIMBS];
+        DA = new long[NUM_LIMBS];
+        CB = new long[NUM_LIMBS];
+        ex = new long[NUM_LIMBS];
+        ey = new long[NUM_LIMBS];
+        ez = new long[NUM_LIMBS];
+        et = new long[NUM_LIMBS];
+        ta = new long[NUM_LIMBS];
+        tb = new long[NUM_LIMBS];
+        tc = new long[NUM_LIMBS];
+        td = new long[NUM_LIMBS];
+        te = new long[NUM_LIMBS];
+        nypx = new long[NUM_LIMBS];
+        nymx = new long[NUM_LIMBS];
+        nxy2d = new long[NUM_LIMBS];
+        scalar = new byte[32];
+        digits = new byte[64];
+    }
+
+    /**
+     * Evaluates the Curve25519 curve.
+     *
+     * @param result     Buffer to place the result of the evaluation into.
+     * @param offset     Offset into the result buffer.
+     * @param privateKey The private key to use in the evaluation.
+     * @param publicKey  The public key to use in the evaluation, or null
+     *                   if the base point of the curve should be used.
+     */
+    @Override
+    public void evaluate(byte[] result, int offset, byte[] privateKey, byte[] publicKey) {
+        if (publicKey == null) {
+            evaluateBase(result, offset, privateKey);
+            return;
+        }
+        try {
+            // Unpack the public key value, the top bit is reduced like in Curve25519.
+            unpack(x_1, publicKey, 0);
+
+            Arrays.fill(x_2, 0);            // x_2 = 1
+            x_2[0] = 1;
+            Arrays.fill(z_2, 0);            // z_2 = 0
+            System.arraycopy(x_1, 0, x_3, 0, NUM_LIMBS);  // x_3 = x_1
+            Arrays.fill(z_3, 0);            // z_3 = 1
+            z_3[0] = 1;
+
+            evalCurve(privateKey);
+
+            // Compute x_2 * (z_2 ^ (p - 2)) where p = 2^255 - 19.
+            recip(z_3, z_2);
+            mul(x_2, x_2, z_3);
+            pack(result, offset, x_2);
+        } finally {
+            destroy();
+        }
+    }
+
+    /**
+     * Evaluates the Curve25519 curve for the base point 9 on the equivalent
+     * twisted Edwards curve, see Curve25519#evaluateBase for the details.
+     */
+    private void evaluateBase(byte[] result, int offset, byte[] privateKey) {
+        long[] table = BaseTable.TABLE;
+        try {
+            System.arraycopy(privateKey, 0, scalar, 0, 32);
+            scalar[0] &= (byte) 0xF8;
+            scalar[31] &= 0x7F;
+            scalar[31] |= 0x40;
+
+            for (int index = 0; index < 32; ++index) {
+                digits[2 * index] = (byte) (scalar[index] & 0x0F);
+                digits[2 * index + 1] = (byte) ((scalar[index] >> 4) & 0x0F);
+            }
+            int carry = 0;
+            for (int index = 0; index < 63; ++index) {
+                digits[index] += carry;
+                carry = (digits[index] + 8) >> 4;
+                digits[index] -= carry << 4;
+            }
+            digits[63] += carry;
+
+            Arrays.fill(ex, 0);
+            Arrays.fill(ey, 0);
+            ey[0] = 1;
+            Arrays.fill(ez, 0);
+            ez[0] = 1;
+            Arrays.fill(et, 0);
+
+            for (int index = 1; index < 64; index += 2) {
+                select(table, index / 2, digits[index]);
+                addNiels();
+            }
+            dbl();
+            dbl();
+            dbl();
+            dbl();
+            for (int index = 0; index < 64; index += 2) {
+                select(table, index / 2, digits[index]);
+                addNiels();
+            }
+
+            // Compute u = (Z + Y) / (Z - Y).
+            add(ta, ez, ey);
+            sub(tb, ez, ey);
+            recip(tc, tb);
+            mul(ta, ta, tc);
+            pack(result, offset, ta);
+        } finally {
+            destroy();
+        }
+    }
+
+    /**
+     * Destroy all sensitive data in this object.
+     */
+    private void destroy() {
+        Arrays.fill(x_1, 0);
+        Arrays.fill(x_2, 0);
+        Arrays.fill(x_3, 0);
+        Arrays.fill(z_2, 0);
+        Arrays.fill(z_3, 0);
+        Arrays.fill(A, 0);
+        Arrays.fill(B, 0);
+        Arrays.fill(C, 0);
+        Arrays.fill(D, 0);
+        Arrays.fill(E, 0);
+        Arrays.fill(AA, 0);
+        Arrays.fill(BB, 0);
+        Arrays.fill(DA, 0);
+        Arrays.fill(CB, 0);
+        Arrays.fill(ex, 0);
+        Arrays.fill(ey, 0);
+        Arrays.fill(ez, 0);
+        Arrays.fill(et, 0);
+        Arrays.fill(ta, 0);
+        Arrays.fill(tb, 0);
+        Arrays.fill(tc, 0);
+        Arrays.fill(td, 0);
+        Arrays.fill(te, 0);
+        Arrays.fill(nypx, 0);
+        Arrays.fill(nymx, 0);
+        Arrays.fill(nxy2d, 0);
+        Arrays.fill(scalar, (byte) 0);
+        Arrays.fill(digits, (byte) 0);
+    }
+
+    /**
+     * Converts a little-endian 32-byte value into 51-bit limbs.
+     * Bit 255 is kept and folded in as 19, so values of 2^255 and above are reduced.
+     */
+    private static void unpack(long[] x, byte[] in, int offset) {
+        long w0 = load64(in, offset);
+        long w1 = load64(in, offset + 8);
+        long w2 = load64(in, offset + 16);
+        long w3 = load64(in, offset + 24);
+        x[0] = w0 & MASK_51;
+        x[1] = ((w0 >>> 51) | (w1 << 13)) & MASK_51;
+        x[2] = ((w1 >>> 38) | (w2 << 26)) & MASK_51;
+        x[3] = ((w2 >>> 25) | (w3 << 39)) & MASK_51;
+        x[4] = w3 >>> 12;
+        carry(x);
+    }
+
+    private static long load64(byte[] in, int offset) {
+        long value = 0;
+        for (int index = 7; index >= 0; --index)
+            value = (value << 8) | (in[offset + index] & 0xFF);
+        return value;
+    }
+
+    /**
+     * Fully reduces a number modulo 2^255 - 19 and converts it into little-endian.
+     * This is curve25519_contract() from curve25519-donna-c64.
+     */
+    private static void pack(byte[] result, int offset, long[] x) {
+        long t0 = x[0], t1 = x[1], t2 = x[2], t3 = x[3], t4 = x[4];
+
+        // Two full carry passes leave a number between 0 and 2^255 - 1.
+        for (int pass = 0; pass < 2; ++pass) {
+            t1 += t0 >>> 51; t0 &= MASK_51;
+            t2 += t1 >>> 51; t1 &= MASK_51;
+            t3 += t2 >>> 51; t2 &= MASK_51;
+            t4 += t3 >>> 51; t3 &= MASK_51;
+            t0 += 19 * (t4 >>> 51); t4 &= MASK_51;
+        }
+
+        // Add 19, so numbers between 2^255 - 19 and 2^255 - 1 wrap around.
+        t0 += 19;
+        t1 += t0 >>> 51; t0 &= MASK_51;
+        t2 += t1 >>> 51; t1 &= MASK_51;
+        t3 += t2 >>> 51; t2 &= MASK_51;
+        t4 += t3 >>> 51; t3 &= MASK_51;
+        t0 += 19 * (t4 >>> 51); t4 &= MASK_51;
+
+        // Add 2^255 - 19 and drop the 2^255, which subtracts the 19 again.
+        t0 += 0x8000000000000L - 19;
+        t1 += 0x8000000000000L - 1;
+        t2 += 0x8000000000000L - 1;
+        t3 += 0x8000000000000L - 1;
+        t4 += 0x8000000000000L - 1;
+        t1 += t0 >>> 51; t0 &= MASK_51;
+        t2 += t1 >>> 51; t1 &= MASK_51;
+        t3 += t2 >>> 51; t2 &= MASK_51;
+        t4 += t3 >>> 51; t3 &= MASK_51;
+        t4 &= MASK_51;
+
+        store64(result, offset, t0 | (t1 << 51));
+        store64(result, offset + 8, (t1 >>> 13) | (t2 << 38));
+        store64(result, offset + 16, (t2 >>> 26) | (t3 << 25));
+        store64(result, offset + 24, (t3 >>> 39) | (t4 << 12));
+    }
+
+    private static void store64(byte[] out, int offset, long value) {
+        for (int index = 0; index < 8; ++index) {
+            out[offset + index] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    /**
+     * Propagates the carries so that every limb is below 2^51 again,
+     * except for a small excess in the lowest limb.
+     */
+    private static void carry(long[] x) {
+        long c;
+        c = x[0] >>> 51; x[0] &= MASK_51; x[1] += c;
+        c = x[1] >>> 51; x[1] &= MASK_51; x[2] += c;
+        c = x[2] >>> 51; x[2] &= MASK_51; x[3] += c;
+        c = x[3] >>> 51; x[3] &= MASK_51; x[4] += c;
+        c = x[4] >>> 51; x[4] &= MASK_51; x[0] += c * 19;
+    }
+
+    /**
+     * Conditional swap of two values.
+     *
+     * @param select Set to 1 to swap, 0 to leave as-is.
+     */
+    private static void cswap(int select, long[] x, long[] y) {
+        long mask = -select;
+        for (int index = 0; index < NUM_LIMBS; ++index) {
+            long dummy = mask & (x[index] ^ y[index]);
+            x[index] ^= dummy;
+            y[index] ^= dummy;
+        }
+    }
+
+    /**
+     * Conditional move of a value from y[yOffset] to x.
+     *
+     * @param select Set to 1 to move, 0 to leave x as-is.
+     */
+    private static void cmov(long[] x, long[] y, int yOffset, int select) {
+        long mask = -select;
+        for (int index = 0; index < NUM_LIMBS; ++index)
+            x[index] ^= mask & (x[index] ^ y[yOffset + index]);
+    }
+
+    /**
+     * Adds two numbers modulo 2^255 - 19.
+     */
+    private static void add(long[] result, long[] x, long[] y) {
+        for (int index = 0; index < NUM_LIMBS; ++index)
+            result[index] = x[index] + y[index];
+        carry(result);
+    }
+
+    /**
+     * Subtracts two numbers modulo 2^255 - 19.
+     * Adding 2 * p first keeps every limb positive.
+     */
+    private static void sub(long[] result, long[] x, long[] y) {
+        result[0] = x[0] + 0xFFFFFFFFFFFDAL - y[0];
+        result[1] = x[1] + 0xFFFFFFFFFFFFEL - y[1];
+        result[2] = x[2] + 0xFFFFFFFFFFFFEL - y[2];
+        result[3] = x[3] + 0xFFFFFFFFFFFFEL - y[3];
+        result[4] = x[4] + 0xFFFFFFFFFFFFEL - y[4];
+        carry(result);
+    }
+
+    /**
+     * Multiplies two numbers modulo 2^255 - 19.
+     * <p>
+     * Every 107-bit product is split at bit 51: the low parts and the high parts
+     * of the five products of one column are summed up separately, which cannot
+     * overflow as long as the limbs of x and y are below 2^52.
+     *
+     * @param result The result, may be the same as x or y.
+     * @param x      The first number to multiply.
+     * @param y      The second number to multiply.
+     */
+    private static void mul(long[] result, long[] x, long[] y) {
+        long x0 = x[0], x1 = x[1], x2 = x[2], x3 = x[3], x4 = x[4];
+        long y0 = y[0], y1 = y[1], y2 = y[2], y3 = y[3], y4 = y[4];
+        long y1_19 = y1 * 19, y2_19 = y2 * 19, y3_19 = y3 * 19, y4_19 = y4 * 19;
+        long lo, hi, l0, h0, l1, h1, l2, h2, l3, h3, l4, h4;
+
+        // column 0: x0*y0 + 19 * (x1*y4 + x2*y3 + x3*y2 + x4*y1)
+        lo = x0 * y0; l0 = lo & MASK_51; h0 = (Math.multiplyHigh(x0, y0) << 13) | (lo >>> 51);
+        lo = x1 * y4_19; l0 += lo & MASK_51; h0 += (Math.multiplyHigh(x1, y4_19) << 13) | (lo >>> 51);
+        lo = x2 * y3_19; l0 += lo & MASK_51; h0 += (Math.multiplyHigh(x2, y3_19) << 13) | (lo >>> 51);
+        lo = x3 * y2_19; l0 += lo & MASK_51; h0 += (Math.multiplyHigh(x3, y2_19) << 13) | (lo >>> 51);
+        lo = x4 * y1_19; l0 += lo & MASK_51; h0 += (Math.multiplyHigh(x4, y1_19) << 13) | (lo >>> 51);
+
+        // column 1: x0*y1 + x1*y0 + 19 * (x2*y4 + x3*y3 + x4*y2)
+        lo = x0 * y1; l1 = lo & MASK_51; h1 = (Math.multiplyHigh(x0, y1) << 13) | (lo >>> 51);
+        lo = x1 * y0; l1 += lo & MASK_51; h1 += (Math.multiplyHigh(x1, y0) << 13) | (lo >>> 51);
+        lo = x2 * y4_19; l1 += lo & MASK_51; h1 += (Math.multiplyHigh(x2, y4_19) << 13) | (lo >>> 51);
+        lo = x3 * y3_19; l1 += lo & MASK_51; h1 += (Math.multiplyHigh(x3, y3_19) << 13) | (lo >>> 51);
+        lo = x4 * y2_19; l1 += lo & MASK_51; h1 += (Math.multiplyHigh(x4, y2_19) << 13) | (lo >>> 51);
+
+        // column 2: x0*y2 + x1*y1 + x2*y0 + 19 * (x3*y4 + x4*y3)
+        lo = x0 * y2; l2 = lo & MASK_51; h2 = (Math.multiplyHigh(x0, y2) << 13) | (lo >>> 51);
+        lo = x1 * y1; l2 += lo & MASK_51; h2 += (Math.multiplyHigh(x1, y1) << 13) | (lo >>> 51);
+        lo = x2 * y0; l2 += lo & MASK_51; h2 += (Math.multiplyHigh(x2, y0) << 13) | (lo >>> 51);
+        lo = x3 * y4_19; l2 += lo & MASK_51; h2 += (Math.multiplyHigh(x3, y4_19) << 13) | (lo >>> 51);
+        lo = x4 * y3_19; l2 += lo & MASK_51; h2 += (Math.multiplyHigh(x4, y3_19) << 13) | (lo >>> 51);
+
+        // column 3: x0*y3 + x1*y2 + x2*y1 + x3*y0 + 19 * x4*y4
+        lo = x0 * y3; l3 = lo & MASK_51; h3 = (Math.multiplyHigh(x0, y3) << 13) | (lo >>> 51);
+        lo = x1 * y2; l3 += lo & MASK_51; h3 += (Math.multiplyHigh(x1, y2) << 13) | (lo >>> 51);
+        lo = x2 * y1; l3 += lo & MASK_51; h3 += (Math.multiplyHigh(x2, y1) << 13) | (lo >>> 51);
+        lo = x3 * y0; l3 += lo & MASK_51; h3 += (Math.multiplyHigh(x3, y0) << 13) | (lo >>> 51);
+        lo = x4 * y4_19; l3 += lo & MASK_51; h3 += (Math.multiplyHigh(x4, y4_19) << 13) | (lo >>> 51);
+
+        // column 4: x0*y4 + x1*y3 + x2*y2 + x3*y1 + x4*y0
+        lo = x0 * y4; l4 = lo & MASK_51; h4 = (Math.multiplyHigh(x0, y4) << 13) | (lo >>> 51);
+        lo = x1 * y3; l4 += lo & MASK_51; h4 += (Math.multiplyHigh(x1, y3) << 13) | (lo >>> 51);
+        lo = x2 * y2; l4 += lo & MASK_51; h4 += (Math.multiplyHigh(x2, y2) << 13) | (lo >>> 51);
+        lo = x3 * y1; l4 += lo & MASK_51; h4 += (Math.multiplyHigh(x3, y1) << 13) | (lo >>> 51);
+        lo = x4 * y0; l4 += lo & MASK_51; h4 += (Math.multiplyHigh(x4, y0) << 13) | (lo >>> 51);
+
+        reduce(result, l0, h0, l1, h1, l2, h2, l3, h3, l4, h4);
+    }
+
+    /**
+     * Squares a number modulo 2^255 - 19.
+     * Same as mul(result, x, x), but the symmetric products are only computed once.
+     */
+    private static void square(long[] result, long[] x) {
+        long x0 = x[0], x1 = x[1], x2 = x[2], x3 = x[3], x4 = x[4];
+        long x0_2 = x0 * 2, x1_2 = x1 * 2;
+        long x1_38 = x1 * 38, x2_38 = x2 * 38, x3_38 = x3 * 38;
+        long x3_19 = x3 * 19, x4_19 = x4 * 19;
+        long lo, l0, h0, l1, h1, l2, h2, l3, h3, l4, h4;
+
+        // column 0: x0^2 + 38 * (x1*x4 + x2*x3)
+        lo = x0 * x0; l0 = lo & MASK_51; h0 = (Math.multiplyHigh(x0, x0) << 13) | (lo >>> 51);
+        lo = x1_38 * x4; l0 += lo & MASK_51; h0 += (Math.multiplyHigh(x1_38, x4) << 13) | (lo >>> 51);
+        lo = x2_38 * x3; l0 += lo & MASK_51; h0 += (Math.multiplyHigh(x2_38, x3) << 13) | (lo >>> 51);
+
+        // column 1: 2*x0*x1 + 38*x2*x4 + 19*x3^2
+        lo = x0_2 * x1; l1 = lo & MASK_51; h1 = (Math.multiplyHigh(x0_2, x1) << 13) | (lo >>> 51);
+        lo = x2_38 * x4; l1 += lo & MASK_51; h1 += (Math.multiplyHigh(x2_38, x4) << 13) | (lo >>> 51);
+        lo = x3_19 * x3; l1 += lo & MASK_51; h1 += (Math.multiplyHigh(x3_19, x3) << 13) | (lo >>> 51);
+
+        // column 2: 2*x0*x2 + x1^2 + 38*x3*x4
+        lo = x0_2 * x2; l2 = lo & MASK_51; h2 = (Math.multiplyHigh(x0_2, x2) << 13) | (lo >>> 51);
+        lo = x1 * x1; l2 += lo & MASK_51; h2 += (Math.multiplyHigh(x1, x1) << 13) | (lo >>> 51);
+        lo = x3_38 * x4; l2 += lo & MASK_51; h2 += (Math.multiplyHigh(x3_38, x4) << 13) | (lo >>> 51);
+
+        // column 3: 2*x0*x3 + 2*x1*x2 + 19*x4^2
+        lo = x0_2 * x3; l3 = lo & MASK_51; h3 = (Math.multiplyHigh(x0_2, x3) << 13) | (lo >>> 51);
+        lo = x1_2 * x2; l3 += lo & MASK_51; h3 += (Math.multiplyHigh(x1_2, x2) << 13) | (lo >>> 51);
+        lo = x4_19 * x4; l3 += lo & MASK_51; h3 += (Math.multiplyHigh(x4_19, x4) << 13) | (lo >>> 51);
+
+        // column 4: 2*x0*x4 + 2*x1*x3 + x2^2
+        lo = x0_2 * x4; l4 = lo & MASK_51; h4 = (Math.multiplyHigh(x0_2, x4) << 13) | (lo >>> 51);
+        lo = x1_2 * x3; l4 += lo & MASK_51; h4 += (Math.multiplyHigh(x1_2, x3) << 13) | (lo >>> 51);
+        lo = x2 * x2; l4 += lo & MASK_51; h4 += (Math.multiplyHigh(x2, x2) << 13) | (lo >>> 51);
+
+        reduce(result, l0, h0, l1, h1, l2, h2, l3, h3, l4, h4);
+    }
+
+    /**
+     * Carries the five column sums of a product, each given as low part (below 2^54)
+     * and high part (the bits from 51 upwards), back into 51-bit limbs.
+     */
+    private static void reduce(long[] result, long l0, long h0, long l1, long h1, long l2, long h2,
+                               long l3, long h3, long l4, long h4) {
+        long r0, r1, r2, r3, r4, c;
+        r0 = l0 & MASK_51; c = h0 + (l0 >>> 51);
+        l1 += c; r1 = l1 & MASK_51; c = h1 + (l1 >>> 51);
+        l2 += c; r2 = l2 & MASK_51; c = h2 + (l2 >>> 51);
+        l3 += c; r3 = l3 & MASK_51; c = h3 + (l3 >>> 51);
+        l4 += c; r4 = l4 & MASK_51; c = h4 + (l4 >>> 51);
+        r0 += c * 19; c = r0 >>> 51; r0 &= MASK_51;
+        r1 += c;
+        result[0] = r0;
+        result[1] = r1;
+        result[2] = r2;
+        result[3] = r3;
+        result[4] = r4;
+    }
+
+    /**
+     * Multiplies a number by the a24 constant, modulo 2^255 - 19.
+     */
+    private static void mulA24(long[] result, long[] x) {
+        long a24 = 121665;
+        long c = 0;
+        for (int index = 0; index < NUM_LIMBS; ++index) {
+            long lo = x[index] * a24;
+            long low = (lo & MASK_51) + c;
+            result[index] = low & MASK_51;
+            c = ((Math.multiplyHigh(x[index], a24) << 13) | (lo >>> 51)) + (low >>> 51);
+        }
+        result[0] += c * 19;
+        c = result[0] >>> 51;
+        result[0] &= MASK_51;
+        result[1] += c;
+    }
+
+    /**
+     * Raise x to the power of (2^250 - 1), see Curve25519#pow250.
+     *
+     * @param result The result.  Must not overlap with x.
+     * @param x      The argument.
+     */
+    private void pow250(long[] result, long[] x) {
+        int i, j;
+        square(A, x);
+        for (j = 0; j < 9; ++j)
+            square(A, A);
+        mul(result, A, x);
+        for (i = 0; i < 23; ++i) {
+            for (j = 0; j < 10; ++j)
+                square(A, A);
+            mul(result, result, A);
+        }
+        square(A, result);
+        mul(result, result, A);
+        for (j = 0; j < 8; ++j) {
+            square(A, A);
+            mul(result, result, A);
+        }
+    }
+
+    /**
+     * Computes the reciprocal of a number modulo 2^255 - 19.
+     *
+     * @param result The result.  Must not overlap with x.
+     * @param x      The argument.
+     */
+    private void recip(long[] result, long[] x) {
+        pow250(result, x);
+        square(result, result);
+        square(result, result);
+        mul(result, result, x);
+        square(result, result);
+        square(result, result);
+        mul(result, result, x);
+        square(result, result);
+        mul(result, result, x);
+    }
+
+    /**
+     * Evaluates the curve for every bit in a secret key, see Curve25519#evalCurve.
+     *
+     * @param s The 32-byte secret key.
+     */
+    private void evalCurve(byte[] s) {
+        int sposn = 31;
+        int sbit = 6;
+        int svalue = s[sposn] | 0x40;
+        int swap = 0;
+        int select;
+
+        for (; ; ) {
+            select = (svalue >> sbit) & 0x01;
+            swap ^= select;
+            cswap(swap, x_2, x_3);
+            cswap(swap, z_2, z_3);
+            swap = select;
+
+            add(A, x_2, z_2);               // A = x_2 + z_2
+            square(AA, A);                  // AA = A^2
+            sub(B, x_2, z_2);               // B = x_2 - z_2
+            square(BB, B);                  // BB = B^2
+            sub(E, AA, BB);                 // E = AA - BB
+            add(C, x_3, z_3);               // C = x_3 + z_3
+            sub(D, x_3, z_3);               // D = x_3 - z_3
+            mul(DA, D, A);                  // DA = D * A
+            mul(CB, C, B);                  // CB = C * B
+            add(x_3, DA, CB);               // x_3 = (DA + CB)^2
+            square(x_3, x_3);
+            sub(z_3, DA, CB);               // z_3 = x_1 * (DA - CB)^2
+            square(z_3, z_3);
+            mul(z_3, z_3, x_1);
+            mul(x_2, AA, BB);               // x_2 = AA * BB
+            mulA24(z_2, E);                 // z_2 = E * (AA + a24 * E)
+            add(z_2, z_2, AA);
+            mul(z_2, z_2, E);
+
+            if (sbit > 0) {
+                --sbit;
+            } else if (sposn == 0) {
+                break;
+            } else if (sposn == 1) {
+                --sposn;
+                svalue = s[sposn] & 0xF8;
+                sbit = 7;
+            } else {
+                --sposn;
+                svalue = s[sposn];
+                sbit = 7;
+            }
+        }
+
+        cswap(swap, x_2, x_3);
+        cswap(swap, z_2, z_3);
+    }
+
+    /**
+     * Loads the table entry digit * 256^position * B into the niels temporaries
+     * in constant time, see Curve25519#select.
+     */
+    private void select(long[] table, int position, int digit) {
+        int negative = (digit >> 7) & 0x01;
+        int abs = digit - ((-negative & digit) << 1);
+
+        Arrays.fill(nypx, 0);
+        nypx[0] = 1;
+        Arrays.fill(nymx, 0);
+        nymx[0] = 1;
+        Arrays.fill(nxy2d, 0);
+        for (int multiple = 1; multiple <= 8; ++multiple) {
+            int equal = ((abs ^ multiple) - 1) >>> 31;
+            int entry = (position * 8 + multiple - 1) * NIELS_LIMBS;
+            cmov(nypx, table, entry, equal);
+            cmov(nymx, table, entry + NUM_LIMBS, equal);
+            cmov(nxy2d, table, entry + 2 * NUM_LIMBS, equal);
+        }
+
+        cswap(negative, nypx, nymx);
+        Arrays.fill(ta, 0);
+        sub(ta, ta, nxy2d);
+        cmov(nxy2d, ta, 0, negative);
+    }
+
+    /**
+     * Adds the point in the niels temporaries to the extended point (ex, ey, ez, et).
+     */
+    private void addNiels() {
+        add(ta, ey, ex);                // A = (Y + X) * (y + x)
+        mul(ta, ta, nypx);
+        sub(tb, ey, ex);                // B = (Y - X) * (y - x)
+        mul(tb, tb, nymx);
+        mul(tc, et, nxy2d);             // C = T * 2dxy
+        add(td, ez, ez);                // D = 2 * Z
+        sub(te, ta, tb);                // E = A - B
+        add(ta, ta, tb);                // H = A + B
+        add(tb, td, tc);                // G = D + C
+        sub(td, td, tc);                // F = D - C
+        mul(ex, te, td);                // X = E * F
+        mul(ey, tb, ta);                // Y = G * H
+        mul(ez, td, tb);                // Z = F * G
+        mul(et, te, ta);                // T = E * H
+    }
+
+    /**
+     * Doubles the extended point (ex, ey, ez, et).
+     */
+    private void dbl() {
+        square(ta, ex);                 // XX = X^2
+        square(tb, ey);                 // YY = Y^2
+        square(tc, ez);                 // ZZ2 = 2 * Z^2
+        add(tc, tc, tc);
+        add(td, ex, ey);                // AA = (X + Y)^2
+        square(td, td);
+        add(te, tb, ta);                // Y' = YY + XX
+        sub(tb, tb, ta);                // Z' = YY - XX
+        sub(td, td, te);                // X' = AA - Y'
+        sub(tc, tc, tb);                // T' = ZZ2 - Z'
+        mul(ex, td, tc);                // X = X' * T'
+        mul(ey, te, tb);                // Y = Y' * Z'
+        mul(ez, tb, tc);                // Z = Z' * T'
+        mul(et, td, te);                // T = X' * Y'
+    }
+
+    /**
+     * Stores the extended point (ex, ey, ez, et) as an affine niels point
+     * (y + x, y - x, 2dxy) in the table.
+     */
+    private void storeNiels(long[] table, int offset, long[] d2) {
+        recip(ta, ez);
+        mul(tb, ex, ta);                // x = X / Z
+        mul(tc, ey, ta);                // y = Y / Z
+        add(td, tc, tb);
+        System.arraycopy(td, 0, table, offset, NUM_LIMBS);
+        sub(td, tc, tb);
+        System.arraycopy(td, 0, table, offset + NUM_LIMBS, NUM_LIMBS);
+        mul(td, tb, tc);
+        mul(td, td, d2);
+        System.arraycopy(td, 0, table, offset + 2 * NUM_LIMBS, NUM_LIMBS);
+    }
+
+    /**
+     * Converts a big-endian hexadecimal constant into 51-bit limbs.
+     */
+    private static long[] constant(String hex) {
+        byte[] bytes = new byte[32];
+        for (int index = 0; index < 32; ++index)
+            bytes[31 - index] = (byte) Integer.parseInt(hex.substring(2 * index, 2 * index + 2), 16);
+        long[] x = new long[NUM_LIMBS];
+        unpack(x, bytes, 0);
+        return x;
+    }
+
+    /**
+     * Holder for the table of precomputed multiples of the base point,
+     * built the same way as the one in Curve25519.
+     */
+    private static final class BaseTable {
+        // Entry (i, j) holds (j + 1) * 256^i * B for i = 0..31 and j = 0..7.
+        static final long[] TABLE = build();
+
+        private static long[] build() {
+            long[] d2 = constant("2406d9dc56dffce7198e80f2eef3d13000e0149a8283b156ebd69b9426b2f159");
+            long[] bx = constant("216936d3cd6e53fec0a4e231fdd6dc5c692cc7609525a7b2c9562d608f25d51a");
+            long[] by = constant("6666666666666666666666666666666666666666666666666666666666666658");
+
+            long[] table = new long[32 * 8 * NIELS_LIMBS];
+            Curve25519Radix51 state = new Curve25519Radix51();
+            long[] rowX = new long[NUM_LIMBS];
+            long[] rowY = new long[NUM_LIMBS];
+            long[] rowZ = new long[NUM_LIMBS];
+
+            System.arraycopy(bx, 0, state.ex, 0, NUM_LIMBS);
+            System.arraycopy(by, 0, state.ey, 0, NUM_LIMBS);
+            state.ez[0] = 1;
+            mul(state.et, bx, by);
+
+            for (int row = 0; row < 32; ++row) {
+                System.arraycopy(state.ex, 0, rowX, 0, NUM_LIMBS);
+                System.arraycopy(state.ey, 0, rowY, 0, NUM_LIMBS);
+                System.arraycopy(state.ez, 0, rowZ, 0, NUM_LIMBS);
+
+                int first = row * 8 * NIELS_LIMBS;
+                state.storeNiels(table, first, d2);
+                System.arraycopy(table, first, state.nypx, 0, NUM_LIMBS);
+                System.arraycopy(table, first + NUM_LIMBS, state.nymx, 0, NUM_LIMBS);
+                System.arraycopy(table, first + 2 * NUM_LIMBS, state.nxy2d, 0, NUM_LIMBS);
+                for (int multiple = 1; multiple < 8; ++multiple) {
+                    state.addNiels();
+                    state.storeNiels(table, first + multiple * NIELS_LIMBS, d2);
+                }
+
+                System.arraycopy(rowX, 0, state.ex, 0, NUM_LIMBS);
+                System.arraycopy(rowY, 0, state.ey, 0, NUM_LIMBS);
+                System.arraycopy(rowZ, 0, state.ez, 0, NUM_LIMBS);
+                for (int doubling = 0; doubling < 8; ++doubling)
+                    state.dbl();
+            }
+            state.destroy();
+            return table;
+        }
+    }
+}
@@ -0,0 +1,649 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.config;
+
+import wgWizard.config.ClientToSite.SiteConfiguration;
+import wgWizard.helper.Compression;
+import wgWizard.helper.Log;
+import wgWizard.helper.ZipWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * Writes all files of a scenario to a directory, in stages: keys, configs, scripts, bundles and zip
+ * Every stage is split into small steps. Progress is reported for every step and the export can be cancelled
+ * between two steps, so it can run in the background of a UI. Every file is written to NAME.part first and
+ * only replaces NAME once all stages are done. If the export is cancelled or fails, the .part files are deleted
+ * and the files of an earlier export in the directory stay as they were.
+ *
+ * If the files are zipped, every file is written straight into its encrypted entry of the ZIP, so the private keys
+ * never touch the disk unencrypted. Only the README is written next to the ZIP as well.
+ * Instead of one ZIP for everything, every site and client can get its own encrypted bundle, NAME.zip, with
+ * its config, its setup script, the installer and the README. Then nobody gets the private keys of the others.
+ *
+ * With a state file, an export only changes what is needed since the last export with the same state file:
+ * sites and clients keep their keys, only new ones get keys, and files and bundles with the same content as
+ * before are not written again. Files of removed clients are deleted.
+ *
+ * Without a ZIP, the files are written to the directory in parallel.
+ *
+ * Every config is written to NAME.conf and its setup script to setup_NAME.sh, where NAME is the name of the config,
+ * because the setup script applies the config under that name. An Export can only be run once.
+ */
+public class Export {
+    /**
+     * The stages of an export, in the order in which they are run
+     */
+    public enum Stage {
+        KEYS("Generating keys"),
+        CONFIGS("Writing configurations"),
+        SCRIPTS("Writing setup scripts"),
+        BUNDLES("Writing the encrypted bundles"),
+        ZIP("Finishing the encrypted ZIP");
+
+        private final String description;
+
+        Stage(String description) {
+            this.description = description;
+        }
+
+        /**
+         * Get a description of the stage, to be shown to the user
+         * @return the description
+         */
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    /**
+     * Receives the progress of an export
+     */
+    public interface Listener {
+        /**
+         * Called before every step and once more with the last stage at the end
+         *
+         * @param stage the stage of the next step
+         * @param done  the number of finished steps
+         * @param total the number of steps of the whole export
+         */
+        void update(Stage stage, int done, int total);
+    }
+
+    private interface Step {
+        void run() throws IOException;
+    }
+
+    private interface FileStep {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * A file of the export, written by its FileStep
+     */
+    private static final class Artifact {
+        final Stage stage;
+        final String name;
+        final FileStep fileStep;
+
+        Artifact(Stage stage, String name, FileStep fileStep) {
+            this.stage = stage;
+            this.name = name;
+            this.fileStep = fileStep;
+        }
+    }
+
+    // keys are derived in chunks, which keeps all cores busy and still allows to cancel in between
+    private static final int KEYS_PER_STEP = 256;
+    // the same for the bundles, every bundle derives the keys of its entries
+    private static final int BUNDLES_PER_STEP = 64;
+    // and for the plain files, when they are not written into one ZIP
+    private static final int FILES_PER_STEP = 64;
+
+    private final String directory;
+    private final Map<Stage, List<Step>> steps = new EnumMap<>(Stage.class);
+    // the .part file of every file and the file it replaces at the end, bundles and files are written in parallel
+    private final Map<String, String> written = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final List<Configuration> configs = new ArrayList<>();
+    // the config and setup script of every site or client, which make up its bundle
+    private final Map<String, List<Artifact>> bundles = new LinkedHashMap<>();
+    // the names in lower case, two configs whose names only differ in case share their files on some file systems
+    private final Set<String> names = new HashSet<>();
+    // the installer and the README, which are part of every bundle
+    private final List<Artifact> common = new ArrayList<>();
+    private String password;
+    private Compression compression;
+    private boolean bundled;
+    private ZipWriter zip;
+    private Path stateFile;
+    private ExportState previous;
+    // all configs have the same pre-shared key, as the nodes of a mesh
+    private boolean sharedPsk;
+    private ExportState next;
+
+    private Export(String directory) {
+        this.directory = directory;
+        for (Stage stage : Stage.values()) {
+            steps.put(stage, new ArrayList<>());
+        }
+    }
+
+    /**
+     * Export the configurations of a site to site VPN
+     *
+     * @param site1     the configuration of the first site
+     * @param site2     the configuration of the second site
+     * @param directory the destination directory, has to exist
+     * @return the export, not started yet
+     * @throws IllegalArgumentException if both sites have the same name
+     */
+    public static Export siteToSite(Configuration site1, Configuration site2, String directory) {
+        return pointToPoint(site1, site2, "README_s2s.txt", directory);
+    }
+
+    /**
+     * Export the configurations of a client to client VPN
+     *
+     * @param client1   the configuration of the first client
+     * @param client2   the configuration of the second client
+     * @param directory the destination directory, has to exist
+     * @return the export, not started yet
+     * @throws IllegalArgumentException if both clients have the same name
+     */
+    public static Export clientToClient(Configuration client1, Configuration client2, String directory) {
+        return pointToPoint(client1, client2, "README_c2c.txt", directory);
+    }
+
+    private static Export pointToPoint(Configuration config1, Configuration config2, String readme, String directory) {
+        Export export = new Export(directory);
+        export.configs.addAll(Arrays.asList(config1, config2));
+        export.addConfigFiles(config1, out -> config1.generateConfigFile(config2, out), out -> config1.generateSetupFile(config2, out));
+        export.addConfigFiles(config2, out -> config2.generateConfigFile(config1, out), out -> config2.generateSetupFile(config1, out));
+        export.addCommonFiles(readme);
+        return export;
+    }
+
+    /**
+     * Export the configurations of a client to site VPN
+     *
+     * @param site      the configuration of the site
+     * @param clients   the configurations of the clients
+     * @param directory the destination directory, has to exist
+     * @return the export, not started yet
+     * @throws IllegalArgumentException if two configurations have the same name
+     */
+    public static Export clientToSite(SiteConfiguration site, List<Configuration> clients, String directory) {
+        Export export = new Export(directory);
+        export.configs.add(site);
+        export.configs.addAll(clients);
+
+        export.addConfigFiles(site, out -> site.generateConfigFile(clients, out), site::generateSetupFile);
+        for (Configuration client : clients) {
+            export.addConfigFiles(client, out -> client.generateConfigFile(site, out), out -> client.generateSetupFile(site, out));
+        }
+        export.addCommonFiles("README_c2s.txt");
+        return export;
+    }
+
+    /**
+     * Export the configurations of a full mesh, every node has all other nodes as peer
+     * The [Peer] section of every node is rendered only once and copied into the configs of all other nodes.
+     *
+     * @param nodes     the configurations of the nodes, with the same pre-shared key if there is one
+     * @param directory the destination directory, has to exist
+     * @return the export, not started yet
+     * @throws IllegalArgumentException if two nodes have the same name
+     */
+    public static Export mesh(List<Configuration> nodes, String directory) {
+        Export export = new Export(directory);
+        export.configs.addAll(nodes);
+        export.sharedPsk = true;
+
+        Mesh mesh = new Mesh(nodes);
+        for (int i = 0; i < nodes.size(); i++) {
+            int node = i;
+            export.addConfigFiles(nodes.get(i), out -> mesh.writeConfig(node, out), out -> mesh.writeSetup(node, out));
+        }
+        export.addCommonFiles("README_mesh.txt");
+        return export;
+    }
+
+    /**
+     * Write the files into a password protected ZIP instead of the directory
+     * The compression of every file is chosen by its type and size
+     *
+     * @param password the password of the ZIP
+     * @return this export
+     */
+    public Export zip(String password) {
+        return zip(password, null);
+    }
+
+    /**
+     * Write the files into a password protected ZIP instead of the directory
+     *
+     * @param password    the password of the ZIP
+     * @param compression the compression of all files, or null to choose it for every file
+     * @return this export
+     */
+    public Export zip(String password, Compression compression) {
+        setPassword(password);
+        this.compression = compression;
+        return this;
+    }
+
+    /**
+     * Write one password protected ZIP per site or client, NAME.zip, instead of the directory
+     * Every bundle contains the config and setup script of its site or client, the installer and the README,
+     * so its size does not depend on the number of clients. The bundles are written in parallel.
+     *
+     * @param password the password of the bundles
+     * @return this export
+     */
+    public Export bundles(String password) {
+        return bundles(password, null);
+    }
+
+    /**
+     * Write one password protected ZIP per site or client, NAME.zip, instead of the directory
+     *
+     * @param password    the password of the bundles
+     * @param compression the compression of all files, or null to choose it for every file
+     * @return this export
+     */
+    public Export bundles(String password, Compression compression) {
+        setPassword(password);
+        this.compression = compression;
+        this.bundled = true;
+        return this;
+    }
+
+    /**
+     * Keep the keys and unchanged files of the last export with this state file, and update it afterwards
+     * The state file contains the private keys of all sites and clients.
+     *
+     * @param stateFile the state file, it does not have to exist yet
+     * @return this export
+     */
+    public Export state(Path stateFile) {
+        this.stateFile = stateFile;
+        return this;
+    }
+
+    private void setPassword(String password) {
+        if (this.password != null) {
+            throw new IllegalStateException("The output of the export has already been chosen");
+        }
+        this.password = password;
+    }
+
+    /**
+     * Run the export without progress reporting
+     *
+     * @throws IOException if a file can not be written
+     */
+    public void run() throws IOException {
+        run(null, () -> false);
+    }
+
+    /**
+     * Run the export, in the calling thread
+     *
+     * @param listener  receives the progress, or null
+     * @param cancelled checked before every step, the export is cancelled once it returns true
+     * @throws IOException           if a file can not be written
+     * @throws CancellationException if the export has been cancelled
+     */
+    public void run(Listener listener, BooleanSupplier cancelled) throws IOException {
+        plan();
+        int total = 0;
+        for (List<Step> stageSteps : steps.values()) {
+            total += stageSteps.size();
+        }
+
+        int done = 0;
+        Stage last = Stage.KEYS;
+        boolean completed = false;
+        try {
+            if (password != null && !bundled) {
+                String zipPath = directory + "/wireguard-configuration.zip";
+                Log.getInstance().info("Writing the encrypted ZIP to " + zipPath);
+                // a ZIP that is cancelled halfway is of no use
+                zip = new ZipWriter(new BufferedOutputStream(new FileOutputStream(part(zipPath))), password, compression);
+            }
+            for (Stage stage : Stage.values()) {
+                for (Step step : steps.get(stage)) {
+                    if (cancelled.getAsBoolean()) {
+                        throw new CancellationException("The export to " + directory + " has been cancelled");
+                    }
+                    if (listener != null) {
+                        listener.update(stage, done, total);
+                    }
+                    step.run();
+                    done++;
+                    last = stage;
+                }
+            }
+            replaceFiles();
+            if (next != null) {
+                saveState();
+            }
+            if (listener != null) {
+                listener.update(last, done, total);
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                Log.getInstance().warning("Export to " + directory + " did not complete. Deleting the written files");
+                if (zip != null) {
+                    try {
+                        zip.close();
+                    } catch (IOException e) {
+                        // the ZIP is deleted anyway
+                    }
+                    zip = null;
+                }
+                synchronized (written) {
+                    for (String part : written.keySet()) {
+                        new File(part).delete();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the .part file that a file of the export is written to
+     *
+     * @param path the path of the file
+     * @return the path of its .part file
+     */
+    private String part(String path) {
+        String part = path + ".part";
+        written.put(part, path);
+        return part;
+    }
+
+    /**
+     * Replace the files of the directory with the written .part files, once all of them have been written
+     */
+    private void replaceFiles() throws IOException {
+        synchronized (written) {
+            Iterator<Map.Entry<String, String>> files = written.entrySet().iterator();
+            while (files.hasNext()) {
+                Map.Entry<String, String> file = files.next();
+                Files.move(Paths.get(file.getKey()), Paths.get(file.getValue()),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                files.remove();
+            }
+        }
+    }
+
+    private void add(Stage stage, Step step) {
+        steps.get(stage).add(step);
+    }
+
+    /**
+     * Add the steps that generate the keys and write the files, now that the output is known
+     */
+    private void plan() throws IOException {
+        if (stateFile != null) {
+            previous = ExportState.load(stateFile);
+            previous.restore(configs, sharedPsk);
+            next = new ExportState();
+        }
+        addKeys(configs);
+
+        if (bundled) {
+            List<List<Artifact>> all = new ArrayList<>(bundles.values());
+            List<String> names = new ArrayList<>(bundles.keySet());
+            for (int start = 0; start < all.size(); start += BUNDLES_PER_STEP) {
+                int end = Math.min(start + BUNDLES_PER_STEP, all.size());
+                List<String> chunkNames = names.subList(start, end);
+                List<List<Artifact>> chunk = all.subList(start, end);
+                add(Stage.BUNDLES, () -> writeBundles(chunkNames, chunk));
+            }
+            for (Artifact artifact : common) {
+                if (artifact.name.equals("README.txt")) {
+                    add(Stage.BUNDLES, () -> writeFile(artifact.name, artifact.fileStep));
+                }
+            }
+            return;
+        }
+
+        for (Stage stage : Arrays.asList(Stage.CONFIGS, Stage.SCRIPTS)) {
+            List<Artifact> files = new ArrayList<>();
+            for (List<Artifact> bundle : bundles.values()) {
+                for (Artifact artifact : bundle) {
+                    if (artifact.stage == stage) {
+                        files.add(artifact);
+                    }
+                }
+            }
+            if (password != null) {
+                // the entries of the ZIP are written one after the other
+                for (Artifact artifact : files) {
+                    addFile(artifact.stage, artifact.name, artifact.fileStep);
+                }
+                continue;
+            }
+            for (int start = 0; start < files.size(); start += FILES_PER_STEP) {
+                List<Artifact> chunk = files.subList(start, Math.min(start + FILES_PER_STEP, files.size()));
+                add(stage, () -> writeFiles(chunk));
+            }
+        }
+        for (Artifact artifact : common) {
+            // the README explains how to open the ZIP, so it is also needed outside of it
+            addFile(artifact.stage, artifact.name, artifact.name.equals("README.txt"), artifact.fileStep);
+        }
+        if (password != null) {
+            if (next != null) {
+                // the whole ZIP is written again, its entries are encrypted with new salts anyway
+                next.putFile("wireguard-configuration.zip", "-");
+            }
+            add(Stage.ZIP, () -> {
+                ZipWriter finished = zip;
+                zip = null;
+                finished.close();
+            });
+        }
+    }
+
+    /**
+     * Write a bundle for every name, all of them in parallel
+     */
+    private void writeBundles(List<String> names, List<List<Artifact>> chunk) throws IOException {
+        // the installer and the README are the same in every bundle, they are only read once
+        List<byte[]> commonContent = new ArrayList<>();
+        for (Artifact artifact : common) {
+            commonContent.add(render(artifact.fileStep));
+        }
+
+        try {
+            IntStream.range(0, names.size()).parallel().forEach(i -> {
+                try {
+                    writeBundle(names.get(i), chunk.get(i), commonContent);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Write files to the directory, all of them in parallel
+     */
+    private void writeFiles(List<Artifact> files) throws IOException {
+        try {
+            files.parallelStream().forEach(artifact -> {
+                try {
+                    writeFile(artifact.name, artifact.fileStep);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void writeBundle(String name, List<Artifact> artifacts, List<byte[]> commonContent) throws IOException {
+        String path = bundlePath(name);
+        List<byte[]> contents = new ArrayList<>(artifacts.size());
+        for (Artifact artifact : artifacts) {
+            contents.add(render(artifact.fileStep));
+        }
+        if (next != null) {
+            MessageDigest digest = ExportState.digest();
+            for (int i = 0; i < artifacts.size(); i++) {
+                digest.update(artifacts.get(i).name.getBytes(StandardCharsets.UTF_8));
+                digest.update(contents.get(i));
+            }
+            for (int i = 0; i < common.size(); i++) {
+                digest.update(common.get(i).name.getBytes(StandardCharsets.UTF_8));
+                digest.update(commonContent.get(i));
+            }
+            String hash = Base64.getEncoder().encodeToString(digest.digest());
+            next.putFile(name + ".zip", hash);
+            if (previous.isUnchanged(name + ".zip", hash) && new File(path).isFile()) {
+                return;
+            }
+        }
+
+        try (ZipWriter bundle = new ZipWriter(new BufferedOutputStream(new FileOutputStream(part(path))), password, compression)) {
+            for (int i = 0; i < artifacts.size(); i++) {
+                bundle.putNextEntry(artifacts.get(i).name);
+                bundle.write(contents.get(i));
+            }
+            for (int i = 0; i < common.size(); i++) {
+                bundle.putNextEntry(common.get(i).name);
+                bundle.write(commonContent.get(i));
+            }
+        }
+    }
+
+    private static byte[] render(FileStep fileStep) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        fileStep.write(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Remember the keys and files of this export and delete the files of the last export that are not needed anymore
+     */
+    private void saveState() throws IOException {
+        next.record(configs);
+        for (String name : previous.getFiles()) {
+            // only files in the directory itself, whatever the state file says
+            if (!next.getFiles().contains(name) && name.indexOf('/') < 0 && name.indexOf('\\') < 0) {
+                Log.getInstance().info("Deleting " + name + ", it is not part of the export anymore");
+                Files.deleteIfExists(Paths.get(directory, name));
+            }
+        }
+        next.save(stateFile);
+    }
+
+    private String bundlePath(String name) {
+        return directory + "/" + name + ".zip";
+    }
+
+    private void addFile(Stage stage, String name, FileStep fileStep) {
+        addFile(stage, name, false, fileStep);
+    }
+
+    /**
+     * Add a step that writes a file, into the ZIP if there is one
+     *
+     * @param plain also write the file to the directory when zipping
+     */
+    private void addFile(Stage stage, String name, boolean plain, FileStep fileStep) {
+        add(stage, () -> {
+            if (zip == null) {
+                writeFile(name, fileStep);
+                return;
+            }
+            zip.putNextEntry(name);
+            fileStep.write(zip);
+            zip.closeEntry();
+            if (plain) {
+                writeFile(name, fileStep);
+            }
+        });
+    }
+
+    private void writeFile(String name, FileStep fileStep) throws IOException {
+        String path = directory + "/" + name;
+        if (next != null) {
+            byte[] content = render(fileStep);
+            String hash = ExportState.hash(content);
+            next.putFile(name, hash);
+            if (previous.isUnchanged(name, hash) && new File(path).isFile()) {
+                return;
+            }
+            fileStep = out -> out.write(content);
+        }
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(part(path)))) {
+            fileStep.write(out);
+        }
+    }
+
+    /**
+     * Add the config and the setup script of a site or client, which make up its bundle
+     */
+    private void addConfigFiles(Configuration config, FileStep configFile, FileStep setupFile) {
+        if (!names.add(config.getName().toLowerCase(Locale.ROOT))) {
+            // the files of one config would overwrite those of the other one
+            throw new IllegalArgumentException("Two configurations are named '" + config.getName() + "'");
+        }
+        if (config.getKeypair() != null && config.getKeypair().getPrivateKey() == null) {
+            // an imported peer keeps its own private key, it only shows up in the config of the other side
+            Log.getInstance().info("Only the public key of " + config.getName() + " is known, its files are not written");
+            return;
+        }
+        bundles.put(config.getName(), Arrays.asList(
+                new Artifact(Stage.CONFIGS, config.getName() + ".conf", configFile),
+                new Artifact(Stage.SCRIPTS, "setup_" + config.getName() + ".sh", setupFile)));
+    }
+
+    private void addCommonFiles(String readme) {
+        common.add(new Artifact(Stage.SCRIPTS, "install_wireguard.sh", Configuration::copyInstaller));
+        common.add(new Artifact(Stage.SCRIPTS, "README.txt", out -> Configuration.copyReadme(out, readme)));
+    }
+
+    private void addKeys(List<Configuration> configs) {
+        List<Configuration> missing = new ArrayList<>();
+        for (Configuration config : configs) {
+            if (config.getKeypair() == null) {
+                missing.add(config);
+            }
+        }
+        for (int start = 0; start < missing.size(); start += KEYS_PER_STEP) {
+            List<Configuration> chunk = missing.subList(start, Math.min(start + KEYS_PER_STEP, missing.size()));
+            add(Stage.KEYS, () -> {
+                List<Keypair> keypairs = Keypair.generateParallel(chunk.size());
+                for (int i = 0; i < chunk.size(); i++) {
+                    chunk.get(i).setKeypair(keypairs.get(i));
+                }
+            });
+        }
+    }
+}
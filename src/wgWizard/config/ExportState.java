@@ -0,0 +1,282 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.config;
+
+import wgWizard.helper.Log;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The state of an earlier export: the keys of every site and client and a hash of every file that was written
+ * It is stored as a properties file. The file contains the private keys, so it is only readable by its owner.
+ * <pre>
+ * key.TUNNEL_IP=PRIVATE_KEY PUBLIC_KEY
+ * psk.TUNNEL_IP=PRESHARED_KEY
+ * file.FILE_NAME=SHA-256 of the content
+ * </pre>
+ * The keys belong to the tunnel IP, not to the name. The names of clients are numbered, eg: client-3, so when
+ * a client is removed, the clients after it get other names, but they keep their IPs and with them their keys.
+ */
+final class ExportState {
+    private static final String KEY = "key.";
+    private static final String PSK = "psk.";
+    private static final String FILE = "file.";
+
+    private final Map<String, Keypair> keypairs = new HashMap<>();
+    private final Map<String, String> psks = new HashMap<>();
+    // written from several threads when bundles are written in parallel
+    private final Map<String, String> files = new ConcurrentHashMap<>();
+
+    /**
+     * Read the state of an earlier export
+     *
+     * @param stateFile the state file
+     * @return the state, empty if there is no state file yet
+     * @throws IOException if the state file can not be read or is not valid
+     */
+    static ExportState load(Path stateFile) throws IOException {
+        ExportState state = new ExportState();
+        if (!Files.exists(stateFile)) {
+            Log.getInstance().info("No export state at " + stateFile + ", exporting everything");
+            return state;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(stateFile)) {
+            properties.load(reader);
+        }
+        List<String> keyProperties = new ArrayList<>();
+        for (String property : properties.stringPropertyNames()) {
+            String value = properties.getProperty(property).trim();
+            if (property.startsWith(KEY)) {
+                keyProperties.add(property);
+            } else if (property.startsWith(PSK)) {
+                state.psks.put(property.substring(PSK.length()), value);
+            } else if (property.startsWith(FILE)) {
+                state.files.put(property.substring(FILE.length()), value);
+            }
+        }
+        // the public keys are derived again, one key for every site and client, so in parallel
+        Keypair[] keypairs = keyProperties.parallelStream()
+                .map(property -> keypair(properties.getProperty(property).trim()))
+                .toArray(Keypair[]::new);
+        for (int i = 0; i < keypairs.length; i++) {
+            if (keypairs[i] == null) {
+                // the keys themselves are not part of the message
+                throw new IOException("Invalid export state " + stateFile + ": " + keyProperties.get(i));
+            }
+            state.keypairs.put(keyProperties.get(i).substring(KEY.length()), keypairs[i]);
+        }
+        Log.getInstance().info("Read the export state of " + state.keypairs.size() + " keys and " + state.files.size() + " files from " + stateFile);
+        return state;
+    }
+
+    /**
+     * Read a stored keypair, its public key has to belong to its private key
+     * An edited or broken state file would otherwise give the peers of a config the wrong public key.
+     *
+     * @return the keypair, or null if it is not valid
+     */
+    private static Keypair keypair(String value) {
+        String[] keys = value.split("\\s+");
+        if (keys.length != 2) {
+            return null;
+        }
+        try {
+            Keypair keypair = Keypair.fromPrivateKey(keys[0]);
+            return keypair.getPublicKey().equals(keys[1]) ? keypair : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Give every config the keys of the config with the same tunnel IP in the earlier export, so they do not change
+     * A pre-shared key is only taken over if the config should have one
+     *
+     * @param configs the configurations of the export
+     */
+    void restore(List<Configuration> configs) {
+        restore(configs, false);
+    }
+
+    /**
+     * Give every config the keys of the config with the same tunnel IP in the earlier export, so they do not change
+     *
+     * @param configs   the configurations of the export
+     * @param sharedPsk true if all configs have the same pre-shared key, eg: the nodes of a mesh. The first
+     *                  restored one is given to all configs that should have one, also to new configs
+     */
+    void restore(List<Configuration> configs, boolean sharedPsk) {
+        String shared = null;
+        for (Configuration config : configs) {
+            if (config.getIp() == null) {
+                continue;
+            }
+            String ip = config.getIp().toString();
+            Keypair keypair = keypairs.get(ip);
+            if (config.getKeypair() == null && keypair != null) {
+                config.setKeypair(keypair);
+            }
+            String psk = psks.get(ip);
+            if (config.getPsk() != null && psk != null) {
+                config.setPsk(psk);
+                if (shared == null) {
+                    shared = psk;
+                }
+            }
+        }
+        if (sharedPsk && shared != null) {
+            for (Configuration config : configs) {
+                if (config.getPsk() != null) {
+                    config.setPsk(shared);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remember the keys of every config
+     *
+     * @param configs the configurations of the export
+     */
+    void record(List<Configuration> configs) {
+        for (Configuration config : configs) {
+            if (config.getIp() == null) {
+                continue;
+            }
+            String ip = config.getIp().toString();
+            // the peers of an imported config only have a public key, it is part of their configuration anyway
+            if (config.getKeypair().getPrivateKey() != null) {
+                keypairs.put(ip, config.getKeypair());
+            }
+            if (config.getPsk() != null) {
+                psks.put(ip, config.getPsk());
+            }
+        }
+    }
+
+    /**
+     * Check if a file has been written with the same content before
+     *
+     * @param name the file name
+     * @param hash the hash of the content
+     * @return true if the earlier export wrote the same content
+     */
+    boolean isUnchanged(String name, String hash) {
+        return hash.equals(files.get(name));
+    }
+
+    /**
+     * Remember a written or unchanged file
+     *
+     * @param name the file name
+     * @param hash the hash of the content, or "-" if it can not be compared, eg: for an encrypted ZIP
+     */
+    void putFile(String name, String hash) {
+        files.put(name, hash);
+    }
+
+    /**
+     * Get the names of all files
+     *
+     * @return the file names
+     */
+    Set<String> getFiles() {
+        return files.keySet();
+    }
+
+    /**
+     * Write the state, replacing the earlier one
+     *
+     * @param stateFile the state file
+     * @throws IOException if the state file can not be written
+     */
+    void save(Path stateFile) throws IOException {
+        // sorted, so the file can be compared between two exports
+        Map<String, String> properties = new TreeMap<>();
+        for (Map.Entry<String, Keypair> entry : keypairs.entrySet()) {
+            properties.put(KEY + entry.getKey(), entry.getValue().getPrivateKey() + " " + entry.getValue().getPublicKey());
+        }
+        for (Map.Entry<String, String> entry : psks.entrySet()) {
+            properties.put(PSK + entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            properties.put(FILE + entry.getKey(), entry.getValue());
+        }
+
+        Path absolute = stateFile.toAbsolutePath();
+        Path temp = privateTempFile(absolute);
+        try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+            writer.write("# State of the last export of the wireguard config wizard. Contains private keys!\n");
+            Properties escape = new Properties();
+            for (Map.Entry<String, String> entry : properties.entrySet()) {
+                escape.clear();
+                escape.setProperty(entry.getKey(), entry.getValue());
+                // Properties.store escapes the keys and values, but adds a date and does not keep the order
+                StringWriter line = new StringWriter();
+                escape.store(line, null);
+                String text = line.toString();
+                writer.write(text.substring(text.indexOf('\n') + 1));
+            }
+        }
+        Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Log.getInstance().info("Wrote the export state to " + stateFile);
+    }
+
+    /**
+     * Create an empty file next to a file, that is only readable by its owner
+     * The content is written to it and it is then moved over the file, so the file is never half written
+     *
+     * @param file the absolute path of the file to replace
+     * @return the temporary file
+     * @throws IOException if the file can not be created
+     */
+    static Path privateTempFile(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.deleteIfExists(temp);
+        try {
+            Files.createFile(temp, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // not a POSIX file system, eg: on Windows
+            Files.createFile(temp);
+        }
+        return temp;
+    }
+
+    /**
+     * Hash the content of a file
+     *
+     * @param content the content
+     * @return the SHA-256 in base64
+     */
+    static String hash(byte[] content) {
+        return Base64.getEncoder().encodeToString(digest().digest(content));
+    }
+
+    /**
+     * Create a SHA-256 digest, for contents that consist of several parts
+     *
+     * @return a new digest
+     */
+    static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java runtime has to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
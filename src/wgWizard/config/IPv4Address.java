@@ -0,0 +1,161 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.config;
+
+/**
+ * Represents an IPv4 address, eg: 192.168.1.1
+ * The address is stored as a single int and is immutable
+ * The parser works in a single pass over the characters, without regular expressions or substrings
+ */
+public final class IPv4Address implements Comparable<IPv4Address> {
+    // every int is a valid address, so the parser returns a long and uses this value for invalid input
+    public static final long INVALID = -1L;
+
+    private final int address;
+
+    private IPv4Address(int address) {
+        this.address = address;
+    }
+
+    /**
+     * Create an address from its 32-bit value
+     *
+     * @param address the address as int, eg: 0xC0A80101 for 192.168.1.1
+     * @return the address
+     */
+    public static IPv4Address of(int address) {
+        return new IPv4Address(address);
+    }
+
+    /**
+     * Create an address from its dotted-decimal notation
+     *
+     * @param ip The IP as string x.x.x.x, without any kind of netmask
+     * @return the address
+     * @throws NumberFormatException if the IP is not valid
+     */
+    public static IPv4Address of(CharSequence ip) {
+        long address = parse(ip);
+        if (address == INVALID) {
+            throw new NumberFormatException("Invalid IP address: " + ip);
+        }
+        return new IPv4Address((int) address);
+    }
+
+    /**
+     * Parse an IP in dotted-decimal notation x.x.x.x
+     * Every octet has one to three digits and a value of at most 255. Leading zeros are allowed, eg: 192.168.001.010
+     *
+     * @param ip The IP without any kind of netmask
+     * @return the address as unsigned 32-bit value, or {@link #INVALID} if the IP is not valid
+     */
+    public static long parse(CharSequence ip) {
+        int length = ip.length();
+        int address = 0;
+        int octets = 0;
+        int value = 0;
+        int digits = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = ip.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (++digits > 3 || value > 255) {
+                    return INVALID;
+                }
+            } else if (c == '.' && digits > 0 && octets < 3) {
+                address = address << 8 | value;
+                octets++;
+                value = 0;
+                digits = 0;
+            } else {
+                return INVALID;
+            }
+        }
+
+        if (digits == 0 || octets != 3) {
+            return INVALID;
+        }
+        return (address << 8 | value) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Validate an IP in dotted-decimal notation x.x.x.x
+     *
+     * @param ip The IP without any kind of netmask
+     * @return true if valid, false if invalid
+     */
+    public static boolean isValid(CharSequence ip) {
+        return parse(ip) != INVALID;
+    }
+
+    /**
+     * Format a 32-bit address in dotted-decimal notation
+     *
+     * @param address the address as int
+     * @return the address as String, eg: 192.168.1.1
+     */
+    public static String toString(int address) {
+        return appendTo(new StringBuilder(15), address).toString();
+    }
+
+    /**
+     * Append a 32-bit address in dotted-decimal notation, without creating an intermediate String
+     *
+     * @param sb      the StringBuilder to append to
+     * @param address the address as int
+     * @return the given StringBuilder
+     */
+    public static StringBuilder appendTo(StringBuilder sb, int address) {
+        return sb.append(address >>> 24).append('.')
+                .append(address >>> 16 & 0xFF).append('.')
+                .append(address >>> 8 & 0xFF).append('.')
+                .append(address & 0xFF);
+    }
+
+    /**
+     * Append this address in dotted-decimal notation
+     *
+     * @param sb the StringBuilder to append to
+     * @return the given StringBuilder
+     */
+    public StringBuilder appendTo(StringBuilder sb) {
+        return appendTo(sb, address);
+    }
+
+    /**
+     * Get the address as int
+     *
+     * @return the 32-bit value of the address
+     */
+    public int toInt() {
+        return this.address;
+    }
+
+    @Override
+    public int compareTo(IPv4Address other) {
+        return Integer.compareUnsigned(address, other.address);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof IPv4Address && ((IPv4Address) o).address == address;
+    }
+
+    @Override
+    public int hashCode() {
+        return address;
+    }
+
+    @Override
+    public String toString() {
+        return toString(address);
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hands out the free addresses of a tunnel network, eg: the tunnel IPs of the clients of a site
+ * Every address of the network is one bit, so a /16 takes 8 KiB. Reserving, releasing and checking an address
+ * is a single bit operation. The next free address is searched 64 addresses at a time, starting at the first
+ * word that is not full, so numbering thousands of clients one after the other does not scan the network again
+ * for every client. The network and broadcast addresses are never handed out, except in a /31 or /32.
+ */
+public final class IPv4Allocator {
+    /**
+     * The shortest prefix of a network, a /8 takes 2 MiB
+     */
+    public static final int MIN_PREFIX = 8;
+
+    private final IPv4Cidr network;
+    // bit i is set if network address + i is used, the bits after the end of the network are always set
+    private final long[] used;
+    private int free;
+    // every word before it is full
+    private int cursor;
+
+    /**
+     * Creates an allocator with all usable addresses of the network free
+     *
+     * @param network the tunnel network
+     * @throws IllegalArgumentException if the prefix of the network is shorter than {@link #MIN_PREFIX}
+     */
+    public IPv4Allocator(IPv4Cidr network) {
+        if (network.getPrefix() < MIN_PREFIX) {
+            throw new IllegalArgumentException("The network " + network + " is too large, the prefix has to be at least /" + MIN_PREFIX);
+        }
+        this.network = network;
+        int size = 1 << (32 - network.getPrefix());
+        this.used = new long[(size + 63) >>> 6];
+        this.free = size;
+        if (size % 64 != 0) {
+            used[used.length - 1] = -1L << size;
+        }
+        if (network.getPrefix() <= 30) {
+            reserve(network.getNetworkAddress());
+            reserve(network.getBroadcastAddress());
+        }
+    }
+
+    /**
+     * Creates an allocator for the tunnel network of a site, with the tunnel IP of the site already used
+     *
+     * @param site the site, its tunnel IP and netmask have to be set
+     * @return the allocator
+     * @throws IllegalArgumentException if the tunnel network is larger than a /8
+     */
+    public static IPv4Allocator forSite(Configuration site) {
+        IPv4Allocator allocator = new IPv4Allocator(IPv4Cidr.of(site.getIp().toInt(), Integer.parseInt(site.getNetmaskPrefix())));
+        allocator.reserve(site.getIp());
+        return allocator;
+    }
+
+    /**
+     * Get the network of this allocator
+     *
+     * @return the network
+     */
+    public IPv4Cidr getNetwork() {
+        return network;
+    }
+
+    /**
+     * Get the number of free addresses
+     *
+     * @return the number of addresses that can still be allocated
+     */
+    public int getFree() {
+        return free;
+    }
+
+    /**
+     * Check if an address is part of the network and not used yet
+     *
+     * @param ip the address
+     * @return true if the address can be reserved
+     */
+    public boolean isFree(IPv4Address ip) {
+        int address = ip.toInt();
+        if (!network.contains(address)) {
+            return false;
+        }
+        int index = address - network.getNetworkAddress();
+        return (used[index >>> 6] & (1L << index)) == 0;
+    }
+
+    /**
+     * Mark an address as used, eg: the tunnel IP that has been entered for a client
+     *
+     * @param ip the address
+     * @return false if the address is not part of the network or already used
+     */
+    public boolean reserve(IPv4Address ip) {
+        return network.contains(ip.toInt()) && reserve(ip.toInt());
+    }
+
+    private boolean reserve(int address) {
+        int index = address - network.getNetworkAddress();
+        long bit = 1L << index;
+        if ((used[index >>> 6] & bit) != 0) {
+            return false;
+        }
+        used[index >>> 6] |= bit;
+        free--;
+        return true;
+    }
+
+    /**
+     * Mark an address as free again, eg: when a client is removed
+     * The network and broadcast addresses stay used.
+     *
+     * @param ip the address
+     */
+    public void release(IPv4Address ip) {
+        int address = ip.toInt();
+        if (!network.contains(address) || network.getPrefix() <= 30
+                && (address == network.getNetworkAddress() || address == network.getBroadcastAddress())) {
+            return;
+        }
+        int index = address - network.getNetworkAddress();
+        long bit = 1L << index;
+        if ((used[index >>> 6] & bit) != 0) {
+            used[index >>> 6] &= ~bit;
+            free++;
+            cursor = Math.min(cursor, index >>> 6);
+        }
+    }
+
+    /**
+     * Take the lowest free address
+     *
+     * @return the address, it is used from now on
+     * @throws IllegalStateException if there is no free address left
+     */
+    public IPv4Address allocate() {
+        if (free == 0) {
+            throw new IllegalStateException("There is no free address left in " + network);
+        }
+        while (used[cursor] == -1L) {
+            cursor++;
+        }
+        int index = (cursor << 6) + Long.numberOfTrailingZeros(~used[cursor]);
+        used[cursor] |= 1L << index;
+        free--;
+        return IPv4Address.of(network.getNetworkAddress() + index);
+    }
+
+    /**
+     * Reserve the tunnel IPs of configurations, eg: of all clients of a site
+     *
+     * @param configs the configurations, with their tunnel IP set
+     * @return a message for every configuration whose IP is not part of the network or already used, in the order of
+     * the configurations. Empty if all of them are valid
+     */
+    public List<String> reserveAll(List<Configuration> configs) {
+        List<String> errors = new ArrayList<>();
+        for (Configuration config : configs) {
+            IPv4Address ip = config.getIp();
+            if (!network.contains(ip.toInt())) {
+                errors.add(config.getName() + ": " + ip + " is not part of the tunnel network " + network);
+            } else if (!reserve(ip.toInt())) {
+                errors.add(config.getName() + ": " + ip + " is already used");
+            }
+        }
+        return errors;
+    }
+}
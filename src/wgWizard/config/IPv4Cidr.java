@@ -0,0 +1,203 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.config;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Represents an IPv4 network in CIDR notation, eg: 192.168.1.0/24
+ * The network address is stored as a single int together with the prefix length and is immutable.
+ * Host bits are cleared on creation, so 192.168.1.5/24 and 192.168.1.0/24 are the same network
+ */
+public final class IPv4Cidr {
+    private final int network;
+    private final int prefix;
+
+    private IPv4Cidr(int address, int prefix) {
+        if (prefix < 0 || prefix > 32) {
+            throw new NumberFormatException("Invalid prefix length: " + prefix);
+        }
+        this.prefix = prefix;
+        this.network = address & mask(prefix);
+    }
+
+    /**
+     * Create a network from any address inside of it and the prefix length
+     *
+     * @param address any address of the network as int
+     * @param prefix  the prefix length, 0 - 32
+     * @return the network
+     * @throws NumberFormatException if the prefix is out of range
+     */
+    public static IPv4Cidr of(int address, int prefix) {
+        return new IPv4Cidr(address, prefix);
+    }
+
+    /**
+     * Create a network from any address inside of it and its netmask, as entered in the local network fields
+     *
+     * @param ip      any IP of the network as String x.x.x.x
+     * @param netmask the netmask of the network
+     * @return the network
+     * @throws NumberFormatException if the IP is not valid
+     */
+    public static IPv4Cidr of(String ip, IPv4Netmask netmask) {
+        return new IPv4Cidr(IPv4Address.of(ip).toInt(), netmask.getPrefixLength());
+    }
+
+    /**
+     * Create a network from its CIDR notation x.x.x.x/xx
+     *
+     * @param cidr the network as String, eg: 192.168.1.0/24
+     * @return the network
+     * @throws NumberFormatException if the notation is not valid
+     */
+    public static IPv4Cidr parse(String cidr) {
+        int slash = cidr.indexOf('/');
+        if (slash < 0) {
+            throw new NumberFormatException("Missing prefix length: " + cidr);
+        }
+        long address = IPv4Address.parse(cidr.subSequence(0, slash));
+        if (address == IPv4Address.INVALID) {
+            throw new NumberFormatException("Invalid IP address: " + cidr);
+        }
+        // the same digits as the prefix of a netmask, but a network can be larger than a tunnel network
+        int prefix = IPv4Netmask.parsePrefix(cidr.subSequence(slash + 1, cidr.length()), 0);
+        if (prefix < 0) {
+            throw new NumberFormatException("Invalid prefix length: " + cidr);
+        }
+        return new IPv4Cidr((int) address, prefix);
+    }
+
+    /**
+     * Merge networks into the fewest networks that contain exactly the same addresses
+     * Networks inside of another one are left out and adjacent networks are combined, eg: 192.168.0.0/24
+     * and 192.168.1.0/24 become 192.168.0.0/23. No address is added that is not part of one of the networks.
+     *
+     * @param networks the networks, in any order
+     * @return the merged networks, ordered by their address
+     */
+    public static List<IPv4Cidr> summarize(Collection<IPv4Cidr> networks) {
+        IPv4Trie trie = new IPv4Trie();
+        for (IPv4Cidr network : networks) {
+            trie.add(network);
+        }
+        return trie.summarize();
+    }
+
+    /**
+     * Calculate the netmask of a prefix length as int
+     *
+     * @param prefix the prefix length, 0 - 32
+     * @return the netmask, eg: 0xFFFFFF00 for 24
+     */
+    public static int mask(int prefix) {
+        // a shift by 32 is a shift by 0 in Java, so /0 needs its own case
+        return prefix == 0 ? 0 : -1 << (32 - prefix);
+    }
+
+    /**
+     * Get the network address
+     *
+     * @return the network address as int
+     */
+    public int getNetworkAddress() {
+        return this.network;
+    }
+
+    /**
+     * Get the broadcast address, the last address of the network
+     *
+     * @return the broadcast address as int
+     */
+    public int getBroadcastAddress() {
+        return this.network | ~mask(prefix);
+    }
+
+    /**
+     * Get the prefix length
+     *
+     * @return the prefix length, 0 - 32
+     */
+    public int getPrefix() {
+        return this.prefix;
+    }
+
+    /**
+     * Get the netmask
+     *
+     * @return the netmask as int
+     */
+    public int getMask() {
+        return mask(prefix);
+    }
+
+    /**
+     * Check if an address belongs to this network
+     *
+     * @param address the address as int
+     * @return true if the address is inside of this network
+     */
+    public boolean contains(int address) {
+        return (address & mask(prefix)) == network;
+    }
+
+    /**
+     * Check if another network is completely inside of this network
+     *
+     * @param other the other network
+     * @return true if every address of the other network is inside of this network
+     */
+    public boolean contains(IPv4Cidr other) {
+        return other.prefix >= prefix && contains(other.network);
+    }
+
+    /**
+     * Check if this network and another network have any address in common.
+     * Two CIDR networks either do not overlap, or one contains the other
+     *
+     * @param other the other network
+     * @return true if the networks overlap
+     */
+    public boolean overlaps(IPv4Cidr other) {
+        int mask = mask(Math.min(prefix, other.prefix));
+        return ((network ^ other.network) & mask) == 0;
+    }
+
+    /**
+     * Append the network in CIDR notation, without creating an intermediate String
+     *
+     * @param sb the StringBuilder to append to
+     * @return the given StringBuilder
+     */
+    public StringBuilder appendTo(StringBuilder sb) {
+        return IPv4Address.appendTo(sb, network).append('/').append(prefix);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof IPv4Cidr)) {
+            return false;
+        }
+        IPv4Cidr other = (IPv4Cidr) o;
+        return other.network == network && other.prefix == prefix;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * network + prefix;
+    }
+
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder(18)).toString();
+    }
+}
@@ -9,41 +9,79 @@
 
 package wgWizard.config;
 
-
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 /**
  * Represents an IPv4 subnet mask
  * This stores the netmask as full notation, eg: 255.255.255.0
  * as well as in the prefix/slash notation, eg: /24
+ * Netmasks are immutable. There are only 33 of them, so {@link #of(String)} and {@link #of(int)}
+ * return shared instances from a table instead of creating new ones
  */
-public class IPv4Netmask {
-    // Validation regex patterns
-    private static final String IPV4_NETMASK_PATTERN =
-            "^(((255\\.){3}(255|254|252|248|240|224|192|128|0+))" +
-                    "|((255\\.){2}(255|254|252|248|240|224|192|128|0+)\\.0)" +
-                    "|((255\\.)(255|254|252|248|240|224|192|128|0+)(\\.0+){2})" +
-                    "|((255|254|252|248|240|224|192|128|0+)(\\.0+){3}))$";
-    private static final String IPV4_NETMASK_PREFIX_PATTERN =
-            "^([0-9]|[1-2][0-9]|3[0-2])$";
-
-    private String netmask;
-    private int prefix;
+public final class IPv4Netmask {
+    // returned by the parsers for invalid input
+    private static final int INVALID = -1;
+    // prefixes shorter than /8 are not accepted
+    private static final int MIN_PREFIX = 8;
+
+    // one instance for every prefix length, 0 - 32
+    private static final IPv4Netmask[] NETMASKS = new IPv4Netmask[33];
+
+    static {
+        for (int prefix = 0; prefix < NETMASKS.length; prefix++) {
+            NETMASKS[prefix] = new IPv4Netmask(prefix);
+        }
+    }
+
+    private final String netmask;
+    private final int prefix;
+
+    private IPv4Netmask(int prefix) {
+        this.prefix = prefix;
+        this.netmask = IPv4Address.toString(IPv4Cidr.mask(prefix));
+    }
 
     /**
      * Creates a subnet mask object
+     * Prefer {@link #of(String)}, which returns a shared instance
      *
      * @param netmask The netmask either in full format "255.255.255.0" or as prefix "24"
+     * @throws NumberFormatException if the netmask is not valid
      */
     public IPv4Netmask(String netmask) {
-        if (validateIPv4Netmask(netmask)) {
-            setNetmask(netmask);
-            netmaskToPrefix();
-        } else if (validateIPv4NetmaskPrefix(netmask)) {
-            setPrefix(Integer.parseInt(netmask));
-            prefixToNetmask();
+        IPv4Netmask shared = of(netmask);
+        this.prefix = shared.prefix;
+        this.netmask = shared.netmask;
+    }
+
+    /**
+     * Get the subnet mask for a prefix length
+     *
+     * @param prefix the prefix length, 0 - 32
+     * @return the shared netmask instance
+     * @throws NumberFormatException if the prefix is out of range
+     */
+    public static IPv4Netmask of(int prefix) {
+        if (prefix < 0 || prefix >= NETMASKS.length) {
+            throw new NumberFormatException("Invalid prefix length: " + prefix);
         }
+        return NETMASKS[prefix];
+    }
+
+    /**
+     * Get the subnet mask for a netmask in either format
+     *
+     * @param netmask The netmask either in full format "255.255.255.0" or as prefix "24"
+     * @return the shared netmask instance
+     * @throws NumberFormatException if the netmask is not valid
+     */
+    public static IPv4Netmask of(String netmask) {
+        int prefix = parseNetmask(netmask);
+        if (prefix == INVALID) {
+            prefix = parsePrefix(netmask);
+        }
+        if (prefix == INVALID) {
+            throw new NumberFormatException("Invalid netmask: " + netmask);
+        }
+        return NETMASKS[prefix];
     }
 
     /**
@@ -53,12 +91,7 @@ public class IPv4Netmask {
      * @return true if valid, false if invalid
      */
     public static boolean validateIPv4Netmask(String netmask) {
-        Pattern pattern = Pattern.compile(IPV4_NETMASK_PATTERN);
-        Matcher matcher = pattern.matcher(netmask);
-        if (matcher.matches() && netmask.substring(0, 3).equals("255")) {
-            return true;
-        }
-        return false;
+        return parseNetmask(netmask) != INVALID;
     }
 
     /**
@@ -68,112 +101,107 @@ public class IPv4Netmask {
      * @return true if valid, false if invalid
      */
     public static boolean validateIPv4NetmaskPrefix(String netmask) {
-        Pattern pattern = Pattern.compile(IPV4_NETMASK_PREFIX_PATTERN);
-        Matcher matcher = pattern.matcher(netmask);
-        if (matcher.matches() && Integer.parseInt(netmask) >= 8) {
-            return true;
-        }
-        return false;
+        return parsePrefix(netmask) != INVALID;
     }
 
     /**
-     * Calculate the network address for any given IP and netmask
+     * Parse a netmask (full-format) x.x.x.x in a single pass
+     * The first octet has to be 255 and the ones have to be contiguous. An octet of zeros can be written
+     * with any number of zeros, all other octets are written without leading zeros
      *
-     * @param ip   IP as String
-     * @param mask Netmask as IPV4Netmask
-     * @return the network address IP as String
+     * @param netmask The netmask in the full-format, eg: 255.255.255.0
+     * @return the prefix length, or -1 if the netmask is not valid
      */
-    public static String getNetworkAddress(String ip, IPv4Netmask mask) {
-        String[] ipAddrParts = ip.split("\\.");
-        String[] maskParts = mask.getNetmask().split("\\.");
-        String networkAddr = "";
-
-        for (int i = 0; i < 4; i++) {
-            int x = Integer.parseInt(ipAddrParts[i]);
-            int y = Integer.parseInt(maskParts[i]);
-            int z = x & y;
-            networkAddr += z + ".";
+    public static int parseNetmask(CharSequence netmask) {
+        int length = netmask.length();
+        int mask = 0;
+        int octets = 0;
+        int value = 0;
+        int digits = 0;
+        boolean zeros = false;
+
+        for (int i = 0; i < length; i++) {
+            char c = netmask.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (digits++ == 0) {
+                    zeros = c == '0';
+                } else if (zeros && c != '0') {
+                    return INVALID;
+                }
+                value = value * 10 + (c - '0');
+                if (value > 255) {
+                    return INVALID;
+                }
+            } else if (c == '.' && digits > 0 && octets < 3) {
+                mask = mask << 8 | value;
+                octets++;
+                value = 0;
+                digits = 0;
+            } else {
+                return INVALID;
+            }
         }
 
-        return networkAddr.substring(0, networkAddr.length() - 1);
+        if (digits == 0 || octets != 3) {
+            return INVALID;
+        }
+        mask = mask << 8 | value;
+
+        // the inverted mask has to be of the form 0...01...1
+        int hostBits = ~mask;
+        if ((mask >>> 24) != 255 || (hostBits & (hostBits + 1)) != 0) {
+            return INVALID;
+        }
+        return Integer.bitCount(mask);
     }
 
     /**
-     * Calculate the prefix from the netmask
+     * Parse a netmask (prefix-format) /xx in a single pass
+     *
+     * @param netmask The netmask in prefix-format without the slash, eg: 24
+     * @return the prefix length between 8 and 32, or -1 if the prefix is not valid
      */
-    private void netmaskToPrefix() {
-
-        /* Netmask */
-        String[] st = netmask.split("\\.");
-
-        if (st.length != 4) {
-            throw new NumberFormatException("Invalid netmask address: " + netmask);
-        }
-
-        int i = 24;
-        int netmaskNumeric = 0;
-
-        if (Integer.parseInt(st[0]) < 255) {
-            throw new NumberFormatException(
-                    "The first byte of netmask can not be less than 255");
-        }
+    public static int parsePrefix(CharSequence netmask) {
+        return parsePrefix(netmask, MIN_PREFIX);
+    }
 
-        for (String aSt : st) {
-            int value = Integer.parseInt(aSt);
-            if (value != (value & 0xff)) {
-                throw new NumberFormatException("Invalid netmask address: " + netmask);
-            }
-            netmaskNumeric += value << i;
-            i -= 8;
+    /**
+     * Parse a prefix length /xx in a single pass, without sign and leading zeros
+     *
+     * @param netmask the prefix length without the slash, eg: 24
+     * @param min     the shortest valid prefix length, eg: 0 for the local networks
+     * @return the prefix length between min and 32, or -1 if the prefix is not valid
+     */
+    static int parsePrefix(CharSequence netmask, int min) {
+        int length = netmask.length();
+        if (length == 0 || length > 2) {
+            return INVALID;
         }
 
-        /*
-         * see if there are zeroes inside netmask, like: 1111111101111 This is
-         * illegal, throw exception if encountered. Netmask should always have
-         * only ones, then only zeroes, like: 11111111110000
-         */
-        boolean encounteredOne = false;
-        int ourMaskBitPattern = 1;
-
-        for (i = 0; i < 32; i++) {
-
-            if ((netmaskNumeric & ourMaskBitPattern) != 0) {
-
-                encounteredOne = true; // the bit is 1
-            } else { // the bit is 0
-                if (encounteredOne) {
-                    throw new NumberFormatException("Invalid netmask: " +
-                            netmask + " (bit " + (i + 1) + ")");
-                }
+        int prefix = 0;
+        for (int i = 0; i < length; i++) {
+            char c = netmask.charAt(i);
+            if (c < '0' || c > '9' || (i == 0 && c == '0' && length > 1)) {
+                return INVALID;
             }
-
-            ourMaskBitPattern = ourMaskBitPattern << 1;
+            prefix = prefix * 10 + (c - '0');
         }
 
-        int j;
-        for (j = 0; j < 32; j++) {
-            if ((netmaskNumeric << j) == 0)
-                break;
+        if (prefix < min || prefix > 32) {
+            return INVALID;
         }
-        this.prefix = j;
+        return prefix;
     }
 
     /**
-     * Calculate the netmask from the prefix
+     * Calculate the network address for any given IP and netmask
+     *
+     * @param ip   IP as String
+     * @param mask Netmask as IPV4Netmask
+     * @return the network address IP as String
      */
-    private void prefixToNetmask() {
-        final int bits = 32 - prefix;
-        final int mask = 0xFFFFFFFF - ((1 << bits) - 1);
-
-        if (prefix == 0) {
-            this.netmask = "0.0.0.0";
-        } else {
-            this.netmask = Integer.toString(mask >> 24 & 0xFF, 10) + "." +  //                         11111111 & 0xFF = 0xFF
-                    Integer.toString(mask >> 16 & 0xFF, 10) + "." +         //                 1111111111111111 & 0xFF = 0xFF
-                    Integer.toString(mask >> 8 & 0xFF, 10) + "." +          //         111111111111111111111110 & 0xFF = 0xFE
-                    Integer.toString(mask >> 0 & 0xFF, 10);                 // 11111111111111111111111000000000 & 0xFF = 0x00
-        }
-
+    public static String getNetworkAddress(String ip, IPv4Netmask mask) {
+        return IPv4Address.toString(IPv4Address.of(ip).toInt() & mask.getMask());
     }
 
     /**
@@ -186,29 +214,39 @@ public class IPv4Netmask {
     }
 
     /**
-     * Set the netmask in full format
+     * Get the prefix as String
      *
-     * @param netmask netmask in full format as String
+     * @return the Prefix as String, for example: '24'
      */
-    public void setNetmask(String netmask) {
-        this.netmask = netmask;
+    public String getPrefix() {
+        return Integer.toString(this.prefix);
     }
 
     /**
-     * Get the prefix as String
+     * Get the prefix as int
      *
-     * @return the Prefix as String, for example: '24'
+     * @return the prefix length, for example: 24
      */
-    public String getPrefix() {
-        return Integer.toString(this.prefix);
+    public int getPrefixLength() {
+        return this.prefix;
     }
 
     /**
-     * Set the prefix
+     * Get the netmask as int
      *
-     * @param prefix prefix as int
+     * @return the netmask, for example: 0xFFFFFF00 for 255.255.255.0
      */
-    public void setPrefix(int prefix) {
-        this.prefix = prefix;
+    public int getMask() {
+        return IPv4Cidr.mask(this.prefix);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof IPv4Netmask && ((IPv4Netmask) o).prefix == prefix;
+    }
+
+    @Override
+    public int hashCode() {
+        return prefix;
     }
 }
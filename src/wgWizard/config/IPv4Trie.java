@@ -0,0 +1,101 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A binary trie over the bits of IPv4 networks, to merge networks into the fewest networks with the same addresses
+ * Every node is a network, its two children are its lower and upper half. A network that is added marks its node
+ * as covered, networks inside a covered node are ignored. Afterwards a node whose two halves are covered is covered
+ * as well, so two adjacent /25 become one /24, and two adjacent /24 of a /23 become the /23.
+ * The nodes are kept in plain arrays, a network adds at most one node per bit of its prefix.
+ */
+final class IPv4Trie {
+    // the children of node i are at 2 * i and 2 * i + 1, 0 if there is none. Node 0 is the root, 0.0.0.0/0
+    private int[] children = new int[64];
+    private boolean[] covered = new boolean[32];
+    private int size = 1;
+
+    /**
+     * Add a network
+     *
+     * @param network the network
+     */
+    void add(IPv4Cidr network) {
+        int address = network.getNetworkAddress();
+        int node = 0;
+        for (int depth = 0; depth < network.getPrefix(); depth++) {
+            if (covered[node]) {
+                // already part of a larger network
+                return;
+            }
+            int slot = 2 * node + ((address >>> (31 - depth)) & 1);
+            if (children[slot] == 0) {
+                // newNode() may replace the array, so it is called before the array is read
+                int child = newNode();
+                children[slot] = child;
+            }
+            node = children[slot];
+        }
+        covered[node] = true;
+        // the smaller networks inside of it are not needed anymore
+        children[2 * node] = 0;
+        children[2 * node + 1] = 0;
+    }
+
+    /**
+     * Get the fewest networks that contain exactly the addresses of all added networks
+     *
+     * @return the networks, ordered by their address
+     */
+    List<IPv4Cidr> summarize() {
+        merge(0);
+        List<IPv4Cidr> networks = new ArrayList<>();
+        collect(0, 0, 0, networks);
+        return networks;
+    }
+
+    private int newNode() {
+        if (size == covered.length) {
+            covered = Arrays.copyOf(covered, size * 2);
+            children = Arrays.copyOf(children, size * 4);
+        }
+        return size++;
+    }
+
+    private boolean merge(int node) {
+        if (covered[node]) {
+            return true;
+        }
+        int lower = children[2 * node];
+        int upper = children[2 * node + 1];
+        // both halves have to be merged, even if the lower one is not covered
+        boolean lowerCovered = lower != 0 && merge(lower);
+        boolean upperCovered = upper != 0 && merge(upper);
+        covered[node] = lowerCovered && upperCovered;
+        return covered[node];
+    }
+
+    private void collect(int node, int address, int depth, List<IPv4Cidr> networks) {
+        if (covered[node]) {
+            networks.add(IPv4Cidr.of(address, depth));
+            return;
+        }
+        if (children[2 * node] != 0) {
+            collect(children[2 * node], address, depth + 1, networks);
+        }
+        if (children[2 * node + 1] != 0) {
+            collect(children[2 * node + 1], address | (1 << (31 - depth)), depth + 1, networks);
+        }
+    }
+}
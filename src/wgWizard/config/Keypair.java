@@ -9,15 +9,25 @@
 
 package wgWizard.config;
 
-import javafx.util.Pair;
 import wgWizard.helper.Log;
 
+import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.List;
+import java.util.stream.IntStream;
 
 public class Keypair {
-    private Base64.Encoder encoder = Base64.getEncoder();
-    private SecureRandom random = new SecureRandom();
+    private static final int KEY_LENGTH = 32;
+    private static final int ENCODED_KEY_LENGTH = 44;
+    private static final Base64.Encoder ENCODER = Base64.getEncoder();
+    // below this many keys, spreading the work over several threads costs more than it saves
+    private static final int PARALLEL_THRESHOLD = 32;
+
+    // every thread keeps its own generator, so the curve state and buffers are reused for every key
+    private static final ThreadLocal<Generator> GENERATOR = ThreadLocal.withInitial(Generator::new);
 
     private String privateKey;
     private String publicKey;
@@ -26,42 +36,101 @@ public class Keypair {
      * Generate a new keypair
      */
     public Keypair() {
-        Pair<String, String> pair = genkey();
-        this.privateKey = pair.getKey();
-        this.publicKey = pair.getValue();
+        Log.getInstance().info("Generating a new keypair");
+        GENERATOR.get().genkey(this);
     }
 
+    private Keypair(Generator generator) {
+        generator.genkey(this);
+    }
 
     /**
-     * Generates  a random private key in base64 in the same way as "wg genkey" would
-     * The information was provided by Jason A. Donenfeld at https://lists.zx2c4.com/pipermail/wireguard/2017-September/001761.html
+     * An existing keypair, eg: from the state of an earlier export
+     */
+    Keypair(String privateKey, String publicKey) {
+        this.privateKey = privateKey;
+        this.publicKey = publicKey;
+    }
+
+    /**
+     * An existing private key, eg: from an imported config file
+     * The public key is derived from it in the same way as "wg pubkey" would
      *
-     * @return a Pair with the private key and public key in base64 as Strings
+     * @param privateKey the private key in base64
+     * @return the keypair
+     * @throws IllegalArgumentException if the key is not a base64 encoded 32 byte key
      */
-    private Pair<String, String> genkey() {
-        Log.getInstance().info("Generating a new private key");
-        byte privateKey[] = new byte[32];
-        random.nextBytes(privateKey);
-        privateKey[0] &= 248;
-        privateKey[31] &= 127;
-        privateKey[31] |= 64;
-
-        return new Pair<>(encoder.encodeToString(privateKey), pubkey(privateKey));
+    public static Keypair fromPrivateKey(String privateKey) {
+        byte[] key = decode(privateKey);
+        Keypair keypair = new Keypair(privateKey, GENERATOR.get().pubkey(key));
+        Arrays.fill(key, (byte) 0);
+        return keypair;
     }
 
     /**
-     * Calculates a public key and prints it in base64 in the same way as "wg pubkey" would
-     * The information was provided by Jason A. Donenfeld at https://lists.zx2c4.com/pipermail/wireguard/2017-September/001761.html
+     * The public key of a peer whose private key is not known, eg: a client in the imported config file of a site
+     * No config or setup file can be written for such a peer, it keeps its own private key
      *
-     * @param priv the private key as byte-array
-     * @return the public key in base64 as String
+     * @param publicKey the public key in base64
+     * @return the keypair without a private key
+     * @throws IllegalArgumentException if the key is not a base64 encoded 32 byte key
      */
-    private String pubkey(byte[] priv) {
-        Log.getInstance().info("Generating a new public key");
-        byte publicKey[] = new byte[32];
-        Curve25519.eval(publicKey, 0, priv, null);
+    public static Keypair fromPublicKey(String publicKey) {
+        decode(publicKey);
+        return new Keypair(null, publicKey);
+    }
 
-        return encoder.encodeToString(publicKey);
+    /**
+     * Decode a key in base64 and check its length
+     *
+     * @param key the key in base64, as written by "wg genkey", "wg pubkey" and "wg genpsk"
+     * @return the raw 32 bytes
+     * @throws IllegalArgumentException if the key is not a base64 encoded 32 byte key
+     */
+    public static byte[] decode(String key) {
+        byte[] raw = key.length() == ENCODED_KEY_LENGTH ? Base64.getDecoder().decode(key) : null;
+        if (raw == null || raw.length != KEY_LENGTH) {
+            // the key is not part of the message, it may be a private key
+            throw new IllegalArgumentException("Invalid key, expected 32 bytes in base64");
+        }
+        return raw;
+    }
+
+    /**
+     * Generate a batch of new keypairs.
+     * All keys are generated on the calling thread, reusing the same curve state and buffers for every key
+     *
+     * @param n the number of keypairs to generate
+     * @return a list with n new keypairs
+     */
+    public static List<Keypair> generateBatch(int n) {
+        Log.getInstance().info("Generating " + n + " new keypairs");
+        Generator generator = GENERATOR.get();
+        List<Keypair> keypairs = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            keypairs.add(new Keypair(generator));
+        }
+        return keypairs;
+    }
+
+    /**
+     * Generate a batch of new keypairs on all available cores.
+     * Every worker thread uses its own curve state and random source.
+     * The order of the result is the same as with {@link #generateBatch(int)}: keypair i belongs to row i
+     *
+     * @param n the number of keypairs to generate
+     * @return a list with n new keypairs
+     */
+    public static List<Keypair> generateParallel(int n) {
+        if (n < PARALLEL_THRESHOLD) {
+            return generateBatch(n);
+        }
+        Log.getInstance().info("Generating " + n + " new keypairs in parallel");
+        Keypair[] keypairs = IntStream.range(0, n)
+                .parallel()
+                .mapToObj(i -> new Keypair(GENERATOR.get()))
+                .toArray(Keypair[]::new);
+        return Arrays.asList(keypairs);
     }
 
     /**
@@ -71,16 +140,12 @@ public class Keypair {
      * @return the pre-shared key in base64 as String
      */
     public static String genpsk() {
-        SecureRandom random = new SecureRandom();
-        Base64.Encoder encoder = Base64.getEncoder();
-        byte privateKey[] = new byte[32];
-        random.nextBytes(privateKey);
-        return encoder.encodeToString(privateKey);
+        return GENERATOR.get().genpsk();
     }
 
     /**
      * Get the privateKey as String
-     * @return privateKey as String
+     * @return privateKey as String, or null if only the public key is known
      */
     public String getPrivateKey() {
         return this.privateKey;
@@ -93,4 +158,58 @@ public class Keypair {
     public String getPublicKey() {
         return this.publicKey;
     }
+
+    /**
+     * Holds the random source, the Curve25519 state and the key buffers of one thread.
+     * Nothing in here is allocated per key, except for the resulting Strings
+     * The Curve25519 backend can be selected with -DwgWizard.curve25519=radix26|radix51
+     */
+    private static final class Generator {
+        private final SecureRandom random = new SecureRandom();
+        private final Curve25519Evaluator curve = Curve25519Evaluator.create();
+        private final byte[] privateKey = new byte[KEY_LENGTH];
+        private final byte[] publicKey = new byte[KEY_LENGTH];
+        private final byte[] encoded = new byte[ENCODED_KEY_LENGTH];
+
+        /**
+         * Generates  a random private key in base64 in the same way as "wg genkey" would
+         * The information was provided by Jason A. Donenfeld at https://lists.zx2c4.com/pipermail/wireguard/2017-September/001761.html
+         *
+         * @param keypair the keypair to store the private key and public key in
+         */
+        private void genkey(Keypair keypair) {
+            random.nextBytes(privateKey);
+            privateKey[0] &= 248;
+            privateKey[31] &= 127;
+            privateKey[31] |= 64;
+
+            keypair.privateKey = encode(privateKey);
+            keypair.publicKey = pubkey(privateKey);
+            Arrays.fill(privateKey, (byte) 0);
+        }
+
+        /**
+         * Calculates a public key and prints it in base64 in the same way as "wg pubkey" would
+         * The information was provided by Jason A. Donenfeld at https://lists.zx2c4.com/pipermail/wireguard/2017-September/001761.html
+         *
+         * @param priv the private key as byte-array
+         * @return the public key in base64 as String
+         */
+        private String pubkey(byte[] priv) {
+            curve.evaluate(publicKey, 0, priv, null);
+            return encode(publicKey);
+        }
+
+        private String genpsk() {
+            random.nextBytes(privateKey);
+            String psk = encode(privateKey);
+            Arrays.fill(privateKey, (byte) 0);
+            return psk;
+        }
+
+        private String encode(byte[] key) {
+            ENCODER.encode(key, encoded);
+            return new String(encoded, StandardCharsets.ISO_8859_1);
+        }
+    }
 }
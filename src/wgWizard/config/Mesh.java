@@ -0,0 +1,143 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.config;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes the configs and setup scripts of a full mesh, where every node has all other nodes as [Peer]
+ * A mesh of N nodes has N * (N - 1) [Peer] sections and routes. The [Peer] section and the routes of a node
+ * are the same in the files of all other nodes, so they are rendered once per node and copied as bytes
+ * into every other file. Only the pre-shared key and keepalive lines belong to the node that is written.
+ * The writers can be called from several threads.
+ */
+final class Mesh {
+    private static final byte[] EMPTY = new byte[0];
+
+    private final List<Configuration> nodes;
+    // rendered on first use, once the keys have been generated:
+    // "[Peer]" and the public key, the endpoint and allowed IPs, and the routes of every node,
+    // as commands of the setup script and, if a node has a batch setup, as lines of "ip -batch"
+    private byte[][] publicKeys;
+    private byte[][] peers;
+    private byte[][] routes;
+    private byte[][] batchRoutes;
+
+    /**
+     * @param nodes the configurations of all nodes, they have to share the pre-shared key if there is one
+     */
+    Mesh(List<Configuration> nodes) {
+        this.nodes = nodes;
+    }
+
+    /**
+     * Write the wireguard config file of a node
+     *
+     * @param node the index of the node
+     * @param out  the destination, it is not closed
+     * @throws IOException if writing to the stream fails
+     */
+    void writeConfig(int node, OutputStream out) throws IOException {
+        render();
+        Configuration self = nodes.get(node);
+        byte[] psk = self.getPsk() == null ? EMPTY : bytes("PresharedKey = " + self.getPsk() + "\n");
+        byte[] keepAlive = self.isSetKeepAlive() ? bytes("PersistentKeepalive = " + self.getKeepAliveSeconds() + "\n") : EMPTY;
+        try (ConfigWriter writer = new ConfigWriter(out)) {
+            writer.print("[Interface]\n");
+            // set this nodes private key
+            writer.print("PrivateKey = ").print(self.getKeypair().getPrivateKey()).print("\n");
+            // set this nodes listen port
+            writer.print("ListenPort = ").print(self.getListenPort()).print("\n");
+
+            // every other node, in the same order in every file
+            for (int i = 0; i < nodes.size(); i++) {
+                if (i != node) {
+                    writer.print("\n").write(publicKeys[i]).write(psk).write(peers[i]).write(keepAlive);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the setup script of a node, it routes the local networks of all other nodes into the tunnel
+     *
+     * @param node the index of the node
+     * @param out  the destination, it is not closed
+     * @throws IOException if writing to the stream fails
+     */
+    void writeSetup(int node, OutputStream out) throws IOException {
+        render();
+        Configuration self = nodes.get(node);
+        byte[][] routes = self.isSetBatchSetup() ? batchRoutes : this.routes;
+        try (ConfigWriter writer = new ConfigWriter(out)) {
+            writer.print("#!/bin/bash\n").print(self.setupStart());
+            for (int i = 0; i < nodes.size(); i++) {
+                if (i != node) {
+                    writer.write(routes[i]);
+                }
+            }
+            writer.print(self.setupEnd());
+        }
+    }
+
+    private synchronized void render() {
+        if (peers != null) {
+            return;
+        }
+        int count = nodes.size();
+        byte[][] publicKeys = new byte[count][];
+        byte[][] peers = new byte[count][];
+        byte[][] routes = new byte[count][];
+        byte[][] batchRoutes = nodes.stream().anyMatch(Configuration::isSetBatchSetup) ? new byte[count][] : null;
+        StringBuilder sb = new StringBuilder(256);
+        for (int i = 0; i < count; i++) {
+            Configuration node = nodes.get(i);
+            publicKeys[i] = bytes("[Peer]\nPublicKey = " + node.getKeypair().getPublicKey() + "\n");
+
+            List<IPv4Cidr> networks = node.getRoutedNetworks();
+            sb.setLength(0);
+            if (node.getEndpoint() != null) {
+                sb.append("Endpoint = ").append(node.getEndpoint()).append(':').append(node.getListenPort()).append('\n');
+            }
+            // tunnelIP of the node is always allowed, and all its local networks
+            node.getIp().appendTo(sb.append("AllowedIPs = ")).append("/32");
+            for (IPv4Cidr network : networks) {
+                network.appendTo(sb.append(','));
+            }
+            sb.append('\n');
+            peers[i] = bytes(sb);
+
+            routes[i] = bytes(appendRoutes(sb, "sudo ip ", node, networks));
+            if (batchRoutes != null) {
+                batchRoutes[i] = bytes(appendRoutes(sb, "", node, networks));
+            }
+        }
+        this.publicKeys = publicKeys;
+        this.routes = routes;
+        this.batchRoutes = batchRoutes;
+        this.peers = peers;
+    }
+
+    private static StringBuilder appendRoutes(StringBuilder sb, String ip, Configuration node, List<IPv4Cidr> networks) {
+        sb.setLength(0);
+        for (IPv4Cidr network : networks) {
+            network.appendTo(sb.append(ip).append("route add "));
+            node.getIp().appendTo(sb.append(" via ")).append('\n');
+        }
+        return sb;
+    }
+
+    private static byte[] bytes(CharSequence text) {
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
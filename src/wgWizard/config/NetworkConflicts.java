@@ -0,0 +1,98 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.config;
+
+import java.util.*;
+
+/**
+ * Finds the networks of a VPN that overlap, before anything is exported
+ * The local networks of all sites and clients are routed into the tunnel, so every one of them has to be unique,
+ * must not overlap another one, not even one of the same site, and must not overlap the tunnel network.
+ * The networks are checked as they are routed, after summarizing if that is set.
+ * <p>
+ * Two networks in CIDR notation are either disjoint or one contains the other. Sorted by their first address,
+ * with the larger network first, the networks that contain the next one are exactly those on a stack of the
+ * networks seen so far that have not ended yet. So all overlaps are found in one pass after sorting,
+ * in O(n log n) plus the number of overlaps.
+ */
+public final class NetworkConflicts {
+
+    /**
+     * A network and where it comes from
+     */
+    private static final class Entry {
+        final IPv4Cidr network;
+        // null for a tunnel network
+        final String owner;
+        final long first;
+        final long last;
+
+        Entry(IPv4Cidr network, String owner) {
+            this.network = network;
+            this.owner = owner;
+            this.first = Integer.toUnsignedLong(network.getNetworkAddress());
+            this.last = Integer.toUnsignedLong(network.getBroadcastAddress());
+        }
+
+        @Override
+        public String toString() {
+            return owner == null ? "the tunnel network " + network : network + " of " + owner;
+        }
+    }
+
+    private NetworkConflicts() {
+    }
+
+    /**
+     * Find all overlaps of the local networks with each other and with the tunnel networks
+     * The tunnel networks may overlap each other, eg: a client that has a smaller netmask than its site.
+     *
+     * @param configs the configurations of all sites and clients
+     * @return a message for every pair of overlapping networks, eg: "192.168.1.0/24 of site2 overlaps
+     * 192.168.0.0/16 of site1", the smaller network first. Empty if there are none
+     */
+    public static List<String> find(List<Configuration> configs) {
+        List<Entry> entries = new ArrayList<>();
+        // all clients of a site share the tunnel network, it is checked only once
+        Set<IPv4Cidr> tunnels = new LinkedHashSet<>();
+        for (Configuration config : configs) {
+            // summarized networks do not overlap each other anymore
+            for (IPv4Cidr network : config.getRoutedNetworks()) {
+                entries.add(new Entry(network, config.getName()));
+            }
+            if (config.getIp() != null && config.getNetmaskPrefix() != null) {
+                tunnels.add(IPv4Cidr.of(config.getIp().toInt(), Integer.parseInt(config.getNetmaskPrefix())));
+            }
+        }
+        for (IPv4Cidr tunnel : tunnels) {
+            entries.add(new Entry(tunnel, null));
+        }
+        // the sort is stable, equal networks stay in the order of the configurations
+        entries.sort(Comparator.<Entry>comparingLong(entry -> entry.first).thenComparingLong(entry -> -entry.last));
+
+        List<String> conflicts = new ArrayList<>();
+        Deque<Entry> containing = new ArrayDeque<>();
+        for (Entry entry : entries) {
+            while (!containing.isEmpty() && containing.peek().last < entry.first) {
+                containing.pop();
+            }
+            // from the outermost network to the innermost
+            Iterator<Entry> outer = containing.descendingIterator();
+            while (outer.hasNext()) {
+                Entry other = outer.next();
+                if (entry.owner != null || other.owner != null) {
+                    conflicts.add(entry + " overlaps " + other);
+                }
+            }
+            containing.push(entry);
+        }
+        return conflicts;
+    }
+}
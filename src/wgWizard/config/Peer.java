@@ -0,0 +1,94 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.config;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One [Peer] section of a wireguard config file
+ * Holds only what ends up in the file, so large numbers of peers can be streamed
+ * into a config without keeping a full Configuration for every one of them
+ */
+public final class Peer {
+    private final String publicKey;
+    private final String presharedKey;
+    private final String endpoint;
+    private final int endpointPort;
+    private final List<IPv4Cidr> allowedIps;
+
+    /**
+     * Creates a peer without an endpoint, eg: a client as seen from the site
+     *
+     * @param publicKey    the peer's public key in base64
+     * @param presharedKey the pre-shared key in base64, or null
+     * @param allowedIps   the networks routed to this peer
+     */
+    public Peer(String publicKey, String presharedKey, List<IPv4Cidr> allowedIps) {
+        this(publicKey, presharedKey, null, 0, allowedIps);
+    }
+
+    /**
+     * Creates a peer
+     *
+     * @param publicKey    the peer's public key in base64
+     * @param presharedKey the pre-shared key in base64, or null
+     * @param endpoint     the peer's public IP or hostname, or null if the peer has no fixed endpoint
+     * @param endpointPort the peer's listen port
+     * @param allowedIps   the networks routed to this peer
+     */
+    public Peer(String publicKey, String presharedKey, String endpoint, int endpointPort, List<IPv4Cidr> allowedIps) {
+        this.publicKey = publicKey;
+        this.presharedKey = presharedKey;
+        this.endpoint = endpoint;
+        this.endpointPort = endpointPort;
+        this.allowedIps = Collections.unmodifiableList(allowedIps);
+    }
+
+    /**
+     * Get the public key
+     * @return the public key in base64
+     */
+    public String getPublicKey() {
+        return this.publicKey;
+    }
+
+    /**
+     * Get the pre-shared key
+     * @return the pre-shared key in base64, or null if there is none
+     */
+    public String getPresharedKey() {
+        return this.presharedKey;
+    }
+
+    /**
+     * Get the endpoint
+     * @return the public IP or hostname, or null if the peer has no fixed endpoint
+     */
+    public String getEndpoint() {
+        return this.endpoint;
+    }
+
+    /**
+     * Get the endpoint port
+     * @return the listen port of the endpoint
+     */
+    public int getEndpointPort() {
+        return this.endpointPort;
+    }
+
+    /**
+     * Get the allowed IPs
+     * @return unmodifiable list of the networks routed to this peer
+     */
+    public List<IPv4Cidr> getAllowedIps() {
+        return this.allowedIps;
+    }
+}
@@ -0,0 +1,497 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.config;
+
+import wgWizard.config.ClientToSite.SiteConfiguration;
+import wgWizard.helper.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A saved VPN setup: the configurations of all sites and clients, including their keys
+ * It is stored in a compact binary file, so a setup with tens of thousands of clients is opened again in milliseconds.
+ * The file contains the private keys, so it is only readable by its owner.
+ * <pre>
+ * header   magic "WGWP", version (short), type (byte), options (byte), number of configs (int), size of the data (int)
+ * configs  one record of 128 bytes per config, in the order of {@link #getConfigs()}:
+ *          private key, public key and pre-shared key as raw 32 bytes (zeros if not known), flags (byte), prefix (byte),
+ *          listen port (short), tunnel IP (int), keepalive (int), offsets into the data of the name, endpoint
+ *          and interface name (int, -1 if not set), offset and number of the local networks (int)
+ * data     the strings as length (int) and UTF-8, every string only once, and the local networks as IP (int)
+ *          and prefix (byte)
+ * </pre>
+ * The records all have the same size, so they are the index of the configs: config i starts at 16 + i * 128.
+ */
+public final class Project {
+    private static final int MAGIC = 0x57475750;
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 128;
+    private static final int KEY_LENGTH = 32;
+    private static final int NETWORK_SIZE = 5;
+    private static final int NONE = -1;
+
+    // the flags of a record
+    private static final int KEYS = 1;
+    private static final int PSK = 2;
+    private static final int KEEPALIVE = 4;
+    private static final int DEFAULT_GATEWAY = 8;
+    private static final int IP = 16;
+    private static final int NETMASK = 32;
+    // only the public key is known, eg: a client of an imported config file
+    private static final int PUBLIC_KEY = 64;
+    private static final int SUMMARIZE = 128;
+
+    // the options of the header, for all configs
+    private static final int BATCH_SETUP = 1;
+
+    /**
+     * The kind of VPN, the order of the constants is part of the file format
+     */
+    public enum Type {
+        SITE_TO_SITE, CLIENT_TO_SITE, CLIENT_TO_CLIENT, MESH
+    }
+
+    private final Type type;
+    private final List<Configuration> configs;
+
+    private Project(Type type, List<Configuration> configs) {
+        this.type = type;
+        this.configs = configs;
+    }
+
+    /**
+     * A site to site VPN
+     *
+     * @param site1 the configuration of the first site
+     * @param site2 the configuration of the second site
+     * @return the project
+     */
+    public static Project siteToSite(Configuration site1, Configuration site2) {
+        return new Project(Type.SITE_TO_SITE, Arrays.asList(site1, site2));
+    }
+
+    /**
+     * A client to client VPN
+     *
+     * @param client1 the configuration of the first client
+     * @param client2 the configuration of the second client
+     * @return the project
+     */
+    public static Project clientToClient(Configuration client1, Configuration client2) {
+        return new Project(Type.CLIENT_TO_CLIENT, Arrays.asList(client1, client2));
+    }
+
+    /**
+     * A client to site VPN
+     *
+     * @param site    the configuration of the site
+     * @param clients the configurations of the clients
+     * @return the project
+     */
+    public static Project clientToSite(SiteConfiguration site, List<Configuration> clients) {
+        List<Configuration> configs = new ArrayList<>(clients.size() + 1);
+        configs.add(site);
+        configs.addAll(clients);
+        return new Project(Type.CLIENT_TO_SITE, configs);
+    }
+
+    /**
+     * A full mesh, every node has all other nodes as peer
+     *
+     * @param nodes the configurations of the nodes, at least two
+     * @return the project
+     * @throws IllegalArgumentException if there are less than two nodes or they do not share the same pre-shared key
+     */
+    public static Project mesh(List<Configuration> nodes) {
+        if (nodes.size() < 2) {
+            throw new IllegalArgumentException("A mesh needs at least two nodes, not " + nodes.size());
+        }
+        // both sides of a tunnel need the same key, so one key is shared by the whole mesh
+        String psk = nodes.get(0).getPsk();
+        for (Configuration node : nodes) {
+            if (!Objects.equals(psk, node.getPsk())) {
+                throw new IllegalArgumentException("The nodes of a mesh have to share the same pre-shared key");
+            }
+        }
+        return new Project(Type.MESH, new ArrayList<>(nodes));
+    }
+
+    /**
+     * Get the kind of VPN
+     *
+     * @return the type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Get all configurations, the site comes first in a client to site VPN
+     *
+     * @return the configurations
+     */
+    public List<Configuration> getConfigs() {
+        return Collections.unmodifiableList(configs);
+    }
+
+    /**
+     * Get the site of a client to site VPN
+     *
+     * @return the configuration of the site
+     * @throws IllegalStateException if this is not a client to site VPN
+     */
+    public SiteConfiguration getSite() {
+        if (type != Type.CLIENT_TO_SITE) {
+            throw new IllegalStateException("A " + type + " VPN has no site with clients");
+        }
+        return (SiteConfiguration) configs.get(0);
+    }
+
+    /**
+     * Get the clients of a client to site VPN
+     *
+     * @return the configurations of the clients
+     * @throws IllegalStateException if this is not a client to site VPN
+     */
+    public List<Configuration> getClients() {
+        getSite();
+        return Collections.unmodifiableList(configs.subList(1, configs.size()));
+    }
+
+    /**
+     * Create the export of the configurations
+     *
+     * @param directory the destination directory, has to exist
+     * @return the export, not started yet
+     */
+    public Export export(String directory) {
+        switch (type) {
+            case SITE_TO_SITE:
+                return Export.siteToSite(configs.get(0), configs.get(1), directory);
+            case CLIENT_TO_CLIENT:
+                return Export.clientToClient(configs.get(0), configs.get(1), directory);
+            case MESH:
+                return Export.mesh(configs, directory);
+            default:
+                return Export.clientToSite(getSite(), new ArrayList<>(getClients()), directory);
+        }
+    }
+
+    /**
+     * Give configurations without keys the keys of the config with the same tunnel IP in this project,
+     * eg: when the configurations are created again from changed input
+     *
+     * @param configs the configurations to complete
+     */
+    public void restoreKeys(List<Configuration> configs) {
+        ExportState keys = new ExportState();
+        keys.record(this.configs);
+        keys.restore(configs, type == Type.MESH);
+    }
+
+    /**
+     * Write the project, replacing an existing file
+     *
+     * @param file the project file
+     * @throws IOException if the file can not be written
+     */
+    public void save(Path file) throws IOException {
+        ByteBuffer records = ByteBuffer.allocate(HEADER_SIZE + configs.size() * RECORD_SIZE);
+        Data data = new Data();
+        records.position(HEADER_SIZE);
+        for (Configuration config : configs) {
+            writeRecord(records, config, data);
+        }
+        // the flags of a record are all taken, the setup scripts are written the same way for the whole project
+        boolean batchSetup = configs.stream().allMatch(Configuration::isSetBatchSetup);
+        records.putInt(0, MAGIC)
+                .putShort(4, VERSION)
+                .put(6, (byte) type.ordinal())
+                .put(7, (byte) (batchSetup ? BATCH_SETUP : 0))
+                .putInt(8, configs.size())
+                .putInt(12, data.size());
+        records.flip();
+
+        Path absolute = file.toAbsolutePath();
+        Path temp = ExportState.privateTempFile(absolute);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            ByteBuffer[] buffers = {records, data.toByteBuffer()};
+            while (buffers[0].hasRemaining() || buffers[1].hasRemaining()) {
+                channel.write(buffers);
+            }
+        }
+        Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Log.getInstance().info("Saved the project with " + configs.size() + " configurations to " + file);
+    }
+
+    /**
+     * Read a project
+     *
+     * @param file the project file
+     * @return the project
+     * @throws IOException if the file can not be read or is not a valid project file
+     */
+    public static Project load(Path file) throws IOException {
+        ByteBuffer buffer;
+        // read in one go instead of mapping the file, a mapped file can not be replaced on Windows until it is garbage collected
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is not a project file");
+            }
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read until the buffer is full
+            }
+            buffer.flip();
+        }
+
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a project file");
+        }
+        if (buffer.getShort(4) != VERSION) {
+            throw new IOException(file + " has the unsupported project version " + buffer.getShort(4));
+        }
+        int typeIndex = buffer.get(6);
+        int options = buffer.get(7);
+        int count = buffer.getInt(8);
+        int dataSize = buffer.getInt(12);
+        if (typeIndex < 0 || typeIndex >= Type.values().length || count < 0 || dataSize < 0
+                || (long) HEADER_SIZE + (long) count * RECORD_SIZE + dataSize != buffer.limit()) {
+            throw new IOException(file + " is not a valid project file");
+        }
+        Type type = Type.values()[typeIndex];
+        if (type == Type.CLIENT_TO_SITE ? count < 1 : type == Type.MESH ? count < 2 : count != 2) {
+            throw new IOException(file + " does not contain the configurations of a " + type + " VPN");
+        }
+
+        int dataOffset = HEADER_SIZE + count * RECORD_SIZE;
+        Map<Integer, String> strings = new HashMap<>();
+        List<Configuration> configs = new ArrayList<>(count);
+        Project project;
+        try {
+            for (int i = 0; i < count; i++) {
+                Configuration config = i == 0 && type == Type.CLIENT_TO_SITE ? new SiteConfiguration() : new Configuration();
+                readRecord(buffer, HEADER_SIZE + i * RECORD_SIZE, dataOffset, strings, config);
+                config.setBatchSetup((options & BATCH_SETUP) != 0);
+                configs.add(config);
+            }
+            // the factories check the configurations, eg: the shared pre-shared key of a mesh
+            project = create(type, configs);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException(file + " is not a valid project file", e);
+        }
+        Log.getInstance().info("Opened the project with " + count + " configurations from " + file);
+        return project;
+    }
+
+    private static Project create(Type type, List<Configuration> configs) {
+        switch (type) {
+            case SITE_TO_SITE:
+                return siteToSite(configs.get(0), configs.get(1));
+            case CLIENT_TO_CLIENT:
+                return clientToClient(configs.get(0), configs.get(1));
+            case MESH:
+                return mesh(configs);
+            default:
+                return clientToSite((SiteConfiguration) configs.get(0), configs.subList(1, configs.size()));
+        }
+    }
+
+    private static void writeRecord(ByteBuffer records, Configuration config, Data data) {
+        int flags = 0;
+        int start = records.position();
+        if (config.getKeypair() != null) {
+            if (config.getKeypair().getPrivateKey() != null) {
+                flags |= KEYS;
+                putKey(records, start, config.getKeypair().getPrivateKey(), config);
+            } else {
+                flags |= PUBLIC_KEY;
+            }
+            putKey(records, start + KEY_LENGTH, config.getKeypair().getPublicKey(), config);
+        }
+        if (config.getPsk() != null) {
+            flags |= PSK;
+            putKey(records, start + 2 * KEY_LENGTH, config.getPsk(), config);
+        }
+        if (config.isSetKeepAlive()) {
+            flags |= KEEPALIVE;
+        }
+        if (config.isSetDefaultGateway()) {
+            flags |= DEFAULT_GATEWAY;
+        }
+        if (config.isSetSummarizeNetworks()) {
+            flags |= SUMMARIZE;
+        }
+        if (config.getIp() != null) {
+            flags |= IP;
+        }
+        String prefix = config.getNetmaskPrefix();
+        if (prefix != null) {
+            flags |= NETMASK;
+        }
+
+        records.position(start + 3 * KEY_LENGTH);
+        records.put((byte) flags)
+                .put((byte) (prefix == null ? 0 : Integer.parseInt(prefix)))
+                .putShort((short) config.getListenPort())
+                .putInt(config.getIp() == null ? 0 : config.getIp().toInt())
+                .putInt(config.getKeepAliveSeconds())
+                .putInt(data.putString(config.getName()))
+                .putInt(data.putString(config.getEndpoint()))
+                .putInt(data.putString(config.getIntName()))
+                .putInt(data.putNetworks(config.getLocalNetworks()))
+                .putInt(config.getLocalNetworks().size());
+    }
+
+    private static void putKey(ByteBuffer records, int offset, String key, Configuration config) {
+        byte[] raw;
+        try {
+            raw = Keypair.decode(key);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid key in the configuration of " + config.getName(), e);
+        }
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            records.put(offset + i, raw[i]);
+        }
+    }
+
+    private static void readRecord(ByteBuffer buffer, int start, int dataOffset, Map<Integer, String> strings, Configuration config) {
+        Base64.Encoder encoder = Base64.getEncoder();
+        byte[] key = new byte[KEY_LENGTH];
+        int position = start + 3 * KEY_LENGTH;
+        int flags = buffer.get(position);
+        int prefix = buffer.get(position + 1);
+        int listenPort = buffer.getShort(position + 2) & 0xFFFF;
+        int ip = buffer.getInt(position + 4);
+        int keepAliveSeconds = buffer.getInt(position + 8);
+
+        if ((flags & KEYS) != 0) {
+            buffer.position(start);
+            String privateKey = encoder.encodeToString(getKey(buffer, key));
+            String publicKey = encoder.encodeToString(getKey(buffer, key));
+            // the public key is stored to show it without deriving it, it has to belong to the private key
+            Keypair keypair = Keypair.fromPrivateKey(privateKey);
+            if (!keypair.getPublicKey().equals(publicKey)) {
+                throw new IllegalArgumentException("The public key does not belong to the private key");
+            }
+            config.setKeypair(keypair);
+        } else if ((flags & PUBLIC_KEY) != 0) {
+            buffer.position(start + KEY_LENGTH);
+            config.setKeypair(new Keypair(null, encoder.encodeToString(getKey(buffer, key))));
+        }
+        if ((flags & PSK) != 0) {
+            buffer.position(start + 2 * KEY_LENGTH);
+            config.setPsk(encoder.encodeToString(getKey(buffer, key)));
+        }
+        if ((flags & IP) != 0) {
+            config.setIp(IPv4Address.of(ip));
+        }
+        if ((flags & NETMASK) != 0) {
+            config.setNetmask(IPv4Netmask.of(prefix));
+        }
+        config.setListenPort(listenPort);
+        config.setKeepAliveSeconds(keepAliveSeconds);
+        config.setKeepAlive((flags & KEEPALIVE) != 0);
+        config.setDefaultGateway((flags & DEFAULT_GATEWAY) != 0);
+        config.setSummarizeNetworks((flags & SUMMARIZE) != 0);
+        config.setName(getString(buffer, dataOffset, buffer.getInt(position + 12), strings));
+        config.setEndpoint(getString(buffer, dataOffset, buffer.getInt(position + 16), strings));
+        config.setIntName(getString(buffer, dataOffset, buffer.getInt(position + 20), strings));
+
+        int networks = buffer.getInt(position + 24);
+        int networkCount = buffer.getInt(position + 28);
+        if (networkCount < 0) {
+            throw new IllegalArgumentException("Negative number of local networks");
+        }
+        List<IPv4Cidr> localNetworks = new ArrayList<>(networkCount);
+        for (int i = 0; i < networkCount; i++) {
+            int offset = dataOffset + networks + i * NETWORK_SIZE;
+            localNetworks.add(IPv4Cidr.of(buffer.getInt(offset), buffer.get(offset + 4)));
+        }
+        config.setLocalNetworks(localNetworks);
+    }
+
+    private static byte[] getKey(ByteBuffer buffer, byte[] key) {
+        buffer.get(key);
+        return key;
+    }
+
+    private static String getString(ByteBuffer buffer, int dataOffset, int offset, Map<Integer, String> strings) {
+        if (offset == NONE) {
+            return null;
+        }
+        // most strings are shared by all clients, eg: the interface name, they are only decoded once
+        String string = strings.get(offset);
+        if (string == null) {
+            int length = buffer.getInt(dataOffset + offset);
+            if (length < 0) {
+                throw new IllegalArgumentException("Negative string length");
+            }
+            byte[] bytes = new byte[length];
+            buffer.position(dataOffset + offset + 4);
+            buffer.get(bytes);
+            string = new String(bytes, StandardCharsets.UTF_8);
+            strings.put(offset, string);
+        }
+        return string;
+    }
+
+    /**
+     * The data part of the file, which every record points into
+     */
+    private static final class Data extends ByteArrayOutputStream {
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        int putString(String string) {
+            if (string == null) {
+                return NONE;
+            }
+            Integer offset = strings.get(string);
+            if (offset == null) {
+                offset = count;
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                putInt(bytes.length);
+                write(bytes, 0, bytes.length);
+                strings.put(string, offset);
+            }
+            return offset;
+        }
+
+        int putNetworks(List<IPv4Cidr> networks) {
+            int offset = count;
+            for (IPv4Cidr network : networks) {
+                putInt(network.getNetworkAddress());
+                write(network.getPrefix());
+            }
+            return offset;
+        }
+
+        private void putInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+}
@@ -16,12 +16,10 @@ import javafx.scene.control.*;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.AnchorPane;
-import net.lingala.zip4j.exception.ZipException;
 import wgWizard.config.Configuration;
+import wgWizard.config.Export;
 import wgWizard.config.Keypair;
 import wgWizard.helper.Log;
-import wgWizard.helper.PopUp;
-import java.io.IOException;
 import java.net.URL;
 import java.nio.file.Path;
 import java.util.Arrays;
@@ -99,7 +97,6 @@ public class C2CController implements Initializable {
             logger.info("Creating config for Client 1");
             client1Config = new Configuration();
             client1Config.setName("client1");
-            client1Config.setKeypair(new Keypair());
             client1Config.setEndpoint(this.c1_publicIP.getText());
             client1Config.setListenPort(Integer.parseInt(this.c1_publicPort.getText()));
             client1Config.setIp(this.c1_tunnelIP.getText());
@@ -120,7 +117,6 @@ public class C2CController implements Initializable {
             logger.info("Creating config for Client 2");
             client2Config = new Configuration();
             client2Config.setName("client2");
-            client2Config.setKeypair(new Keypair());
             client2Config.setEndpoint(this.c2_publicIP.getText());
             client2Config.setListenPort(Integer.parseInt(this.c2_publicPort.getText()));
             client2Config.setIp(this.c2_tunnelIP.getText());
@@ -145,27 +141,16 @@ public class C2CController implements Initializable {
                 logger.warning("No directory selected. No Configuration will be written");
             } else {
                 logger.info("Directory selected: '" + selectedDirectory + "'");
-                try {
-                    logger.info("Prompting the user for a ZIP password");
-                    String password = promptPassword();
-                    if (password.equals("")) {
-                        // no password entered or dialog canceled
-                        logger.warning("No password entered or Dialog canceled. Showing error dialog");
-                        PopUp.showAlert(Alert.AlertType.ERROR, "Empty Password!", "Empty or no password entered!", "Please enter a password for the resulting ZIP file");
-                    } else {
-                        logger.info("Password entered. Writing and zipping and encrypting the files");
-                        client1Config.generateConfigFile(client2Config, selectedDirectory + "/client1.conf");
-                        client2Config.generateConfigFile(client1Config, selectedDirectory + "/client2.conf");
-                        client1Config.generateSetupFile(client2Config, selectedDirectory + "/setup_client1.sh");
-                        client2Config.generateSetupFile(client1Config,  selectedDirectory + "/setup_client2.sh");
-                        Configuration.copyInstaller(selectedDirectory + "/install_wireguard.sh");
-                        Configuration.copyReadme(selectedDirectory + "/README.txt", "README_c2c.txt");
-                        zipConfiguration(selectedDirectory.toString(), password);
-                        Configuration.deleteFiles(selectedDirectory.toString());
-                    }
-                } catch (ZipException | IOException e) {
-                    logger.warning("IO or ZIP error. Showing error dialog");
-                    PopUp.showAlert(Alert.AlertType.ERROR, "Access Rights!", "Access to this folder is denied!", "Please choose another folder than " + selectedDirectory);
+                logger.info("Prompting the user for a ZIP password");
+                String password = promptPassword();
+                if (password.equals("")) {
+                    // no password entered or dialog canceled
+                    logger.warning("No password entered or Dialog canceled. Showing error dialog");
+                    PopUp.showAlert(Alert.AlertType.ERROR, "Empty Password!", "Empty or no password entered!", "Please enter a password for the resulting ZIP file");
+                } else {
+                    logger.info("Password entered. Writing and zipping and encrypting the files in the background");
+                    Export export = Export.clientToClient(client1Config, client2Config, selectedDirectory.toString()).zip(password);
+                    ExportTask.start(export, main_anchorPane, selectedDirectory.toString());
                 }
             }
         } else {
@@ -17,15 +17,21 @@ import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.GridPane;
+import javafx.stage.FileChooser;
 import javafx.util.Pair;
-import net.lingala.zip4j.exception.ZipException;
+import wgWizard.config.ClientToSite.ClientImport;
 import wgWizard.config.ClientToSite.SiteConfiguration;
 import wgWizard.config.Configuration;
+import wgWizard.config.Export;
+import wgWizard.config.IPv4Address;
+import wgWizard.config.IPv4Allocator;
+import wgWizard.config.IPv4Cidr;
 import wgWizard.config.IPv4Netmask;
 import wgWizard.config.Keypair;
+import wgWizard.config.Project;
 import wgWizard.helper.Log;
-import wgWizard.helper.PopUp;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.file.Path;
@@ -40,7 +46,7 @@ import static wgWizard.controller.S2SController.*;
 public class C2SController implements Initializable {
 
     @FXML
-    private MenuItem menu_close, menu_about;
+    private MenuItem menu_close, menu_about, menu_openProject, menu_saveProject;
 
     @FXML
     private TextField c_tunnelIP, c_tunnelMask, c_sec, c_tunnelInterfaceName;
@@ -49,10 +55,10 @@ public class C2SController implements Initializable {
     private TextField s_publicIP, s_publicPort, s_tunnelIP, s_tunnelMask, s_sec, s_tunnelInterfaceName, s_localNetwork, s_localNetworkMask;
 
     @FXML
-    private Button btn_save, btn_back, btn_add, btn_add_client;
+    private Button btn_save, btn_back, btn_add, btn_add_client, btn_import_clients;
 
     @FXML
-    private CheckBox c_defaultGateway, c_psk, s_psk;
+    private CheckBox c_defaultGateway, c_psk, s_psk, chk_bundles;
 
     @FXML
     private AnchorPane main_anchorPane;
@@ -72,6 +78,12 @@ public class C2SController implements Initializable {
     private List<Pair<TextField, TextField>> localNetworks = new ArrayList<>();
     private List<Pair<TextField, TextField>> clients = new ArrayList<>();
     private List<Configuration> clientConfigs = new ArrayList<>();
+    // imported clients are read again from this file on save, instead of the client input fields
+    private File clientFile;
+    // the clients of an opened project are used on save, instead of the client input fields
+    private List<Configuration> projectClients;
+    // the opened or last saved project, its sites and clients keep their keys
+    private Project project;
     private int clientCounter = 1;
     private int localNetworkCounter = 1;
 
@@ -84,8 +96,11 @@ public class C2SController implements Initializable {
         this.btn_save.setOnAction(this::handleSave);
         this.btn_add.setOnAction(this::handleAdd);
         this.btn_add_client.setOnAction(this::addClient);
+        this.btn_import_clients.setOnAction(this::handleImportClients);
         this.menu_about.setOnAction(MainController::handleAbout);
         this.menu_close.setOnAction(MainController::handleClose);
+        this.menu_openProject.setOnAction(this::handleOpenProject);
+        this.menu_saveProject.setOnAction(this::handleSaveProject);
         this.c_psk.setOnAction(this::handlePsk);
         this.s_psk.setOnAction(this::handlePsk);
         this.btn_back.setOnAction(event -> MainController.handleBack(event, getClass(), main_anchorPane));
@@ -112,6 +127,12 @@ public class C2SController implements Initializable {
         // create two new input fields for additional ip/masks
         TextField ip = new TextField();
         TextField mask = new TextField();
+        // number the new client with the next free IP of the site's tunnel network
+        IPv4Address next = nextClientIp();
+        if (next != null) {
+            ip.setText(next.toString());
+            mask.setText(s_tunnelMask.getText());
+        }
 
         // add them to the list, to keep track
         clients.add(new Pair<>(ip, mask));
@@ -122,26 +143,294 @@ public class C2SController implements Initializable {
         clientCounter += 1;
     }
 
+    /**
+     * Find the lowest IP of the site's tunnel network that neither the site nor a client field uses
+     *
+     * @return the IP, or null if the site's tunnel IP or netmask is not valid or the network is full
+     */
+    private IPv4Address nextClientIp() {
+        String siteIp = s_tunnelIP.getText().trim();
+        String siteMask = s_tunnelMask.getText().trim();
+        if (!IPv4Address.isValid(siteIp) || !IPv4Netmask.validateIPv4Netmask(siteMask) && !IPv4Netmask.validateIPv4NetmaskPrefix(siteMask)) {
+            return null;
+        }
+        IPv4Allocator allocator;
+        try {
+            allocator = new IPv4Allocator(IPv4Cidr.of(siteIp, IPv4Netmask.of(siteMask)));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        allocator.reserve(IPv4Address.of(siteIp));
+        for (Pair<TextField, TextField> pair : clients) {
+            String clientIp = pair.getKey().getText().trim();
+            if (IPv4Address.isValid(clientIp)) {
+                allocator.reserve(IPv4Address.of(clientIp));
+            }
+        }
+        return allocator.getFree() > 0 ? allocator.allocate() : null;
+    }
+
+    /**
+     * Handle clicking the import button
+     * Let the user choose a CSV or JSON lines file of clients and check it. The clients of the file
+     * replace the client input fields, so large rosters never have to exist as input fields
+     */
+    private void handleImportClients(Event event) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Import clients");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV or JSON lines", "*.csv", "*.txt", "*.json", "*.jsonl"),
+                new FileChooser.ExtensionFilter("All files", "*"));
+        File file = fileChooser.showOpenDialog(main_anchorPane.getScene().getWindow());
+        if (file == null) {
+            logger.warning("No file selected. No clients will be imported");
+            return;
+        }
+
+        List<Configuration> imported = importClients(file);
+        if (imported != null) {
+            clientFile = file;
+            projectClients = null;
+            disableClientFields(imported.size());
+        }
+    }
+
+    /**
+     * The clients come from a file or a project, the client input fields are not used anymore
+     *
+     * @param count the number of clients
+     */
+    private void disableClientFields(int count) {
+        for (Pair<TextField, TextField> pair : clients) {
+            pair.getKey().setDisable(true);
+            pair.getValue().setDisable(true);
+            markInputField(pair.getKey(), false);
+            markInputField(pair.getValue(), false);
+        }
+        btn_add_client.setDisable(true);
+        btn_import_clients.setText(count + " clients");
+    }
+
+    /**
+     * Handle clicking "Open Project..." in the menu
+     * Let the user choose a saved project and show it in a new view
+     */
+    private void handleOpenProject(Event event) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Open project");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Wireguard wizard project", "*.wgp"),
+                new FileChooser.ExtensionFilter("All files", "*"));
+        File file = fileChooser.showOpenDialog(main_anchorPane.getScene().getWindow());
+        if (file == null) {
+            logger.warning("No file selected. No project will be opened");
+            return;
+        }
+
+        Project opened;
+        try {
+            opened = Project.load(file.toPath());
+        } catch (IOException e) {
+            logger.warning("IO error. Showing error dialog");
+            PopUp.showAlert(Alert.AlertType.ERROR, "Open Error!", "Could not open " + file, e.getMessage());
+            return;
+        }
+        if (opened.getType() != Project.Type.CLIENT_TO_SITE) {
+            PopUp.showAlert(Alert.AlertType.ERROR, "Open Error!", null, file.getName() + " is not a client to site VPN");
+            return;
+        }
+
+        // start from an empty view, so no input of before is left over
+        C2SController controller = MainController.loadNewScene("C2S.fxml", getClass(), main_anchorPane);
+        if (controller != null) {
+            controller.showProject(opened);
+        }
+    }
+
+    /**
+     * Fill the input fields with the settings of a project
+     * The clients of the project replace the client input fields, like imported clients
+     *
+     * @param opened the opened project
+     */
+    private void showProject(Project opened) {
+        logger.info("Showing a project with " + opened.getClients().size() + " clients");
+        project = opened;
+        SiteConfiguration site = opened.getSite();
+        s_publicIP.setText(site.getEndpoint());
+        s_publicPort.setText(Integer.toString(site.getListenPort()));
+        s_tunnelIP.setText(site.getIp() == null ? "" : site.getIp().toString());
+        s_tunnelMask.setText(site.getNetmaskPrefix());
+        s_tunnelInterfaceName.setText(site.getIntName());
+        s_sec.setText(site.isSetKeepAlive() ? Integer.toString(site.getKeepAliveSeconds()) : "");
+        List<IPv4Cidr> networks = site.getLocalNetworks();
+        for (int i = 0; i < networks.size(); i++) {
+            if (i >= localNetworks.size()) {
+                handleAdd(null);
+            }
+            localNetworks.get(i).getKey().setText(IPv4Address.toString(networks.get(i).getNetworkAddress()));
+            localNetworks.get(i).getValue().setText(Integer.toString(networks.get(i).getPrefix()));
+        }
+
+        projectClients = new ArrayList<>(opened.getClients());
+        if (!projectClients.isEmpty()) {
+            // the settings shared by all clients
+            Configuration client = projectClients.get(0);
+            c_psk.setSelected(client.getPsk() != null);
+            s_psk.setSelected(client.getPsk() != null);
+            c_defaultGateway.setSelected(client.isSetDefaultGateway());
+            c_tunnelInterfaceName.setText(client.getIntName());
+            c_sec.setText(client.isSetKeepAlive() ? Integer.toString(client.getKeepAliveSeconds()) : "");
+        }
+        disableClientFields(projectClients.size());
+    }
+
+    /**
+     * Handle clicking "Save Project..." in the menu
+     * Validate the input and save the site and all clients, with the keys they have so far
+     */
+    private void handleSaveProject(Event event) {
+        logger.info("Save Project was clicked. Validating inputs...");
+        SiteConfiguration siteConfig = createConfigs();
+        if (siteConfig == null) {
+            return;
+        }
+
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Save project");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Wireguard wizard project", "*.wgp"));
+        File file = fileChooser.showSaveDialog(main_anchorPane.getScene().getWindow());
+        if (file == null) {
+            logger.warning("No file selected. The project will not be saved");
+            return;
+        }
+        try {
+            project.save(file.toPath());
+        } catch (IOException e) {
+            logger.warning("IO error. Showing error dialog");
+            PopUp.showAlert(Alert.AlertType.ERROR, "Save Error!", "Could not save " + file, e.getMessage());
+        }
+    }
+
+    /**
+     * Read the clients from a file and show a dialog with the first errors if there are any
+     *
+     * @param file the CSV or JSON lines file
+     * @return the clients, or null if the file could not be read or has errors
+     */
+    private List<Configuration> importClients(File file) {
+        ClientImport clientImport = new ClientImport();
+        List<Configuration> imported;
+        try {
+            imported = clientImport.read(file.toPath());
+        } catch (IOException e) {
+            logger.warning("IO error. Showing error dialog");
+            PopUp.showAlert(Alert.AlertType.ERROR, "Import Error!", "Could not read " + file, e.getMessage());
+            return null;
+        }
+
+        if (clientImport.hasErrors()) {
+            logger.warning(clientImport.getErrorCount() + " lines of the client file are not valid. Showing error dialog");
+            PopUp.showErrors("Import Error!", clientImport.getErrorCount() + " lines of " + file.getName() + " are not valid",
+                    clientImport.getErrors(), clientImport.getErrorCount());
+            return null;
+        }
+        if (imported.isEmpty()) {
+            PopUp.showAlert(Alert.AlertType.ERROR, "Import Error!", null, file.getName() + " does not contain any clients");
+            return null;
+        }
+        return imported;
+    }
+
     /**
      * Handle clicking the save button
      * Validate the input, create the configurations and write and zip them
      */
     public void handleSave(Event event) {
         logger.info("Save was clicked. Validating inputs...");
-        if (validateConfig()) {
-            logger.info("Input is valid");
-            // create config files and the installer
-            SiteConfiguration siteConfig = createSiteConfig();
-
-            for (int i = 1; i <= clients.size(); i++) {
-                Configuration clientConfiguration = createClientConfig(clients.get(i-1), i);
-                clientConfigs.add(clientConfiguration);
-            }
+        SiteConfiguration siteConfig = createConfigs();
+        if (siteConfig != null) {
             writeConfiguration(siteConfig);
-        } else {
+        }
+    }
+
+    /**
+     * Validate the input and create the configurations of the site and all clients
+     * The site and the clients of the opened or last saved project keep their keys
+     *
+     * @return the configuration of the site, the clients are in clientConfigs. null if the input is not valid
+     */
+    private SiteConfiguration createConfigs() {
+        if (!validateConfig()) {
             logger.warning("Input is not valid. Showing error dialog");
             PopUp.showAlert(Alert.AlertType.INFORMATION, "Input Error!", null, "At least one of the necessary content is wrong or missing");
+            return null;
         }
+        logger.info("Input is valid");
+        // create config files and the installer
+        SiteConfiguration siteConfig = createSiteConfig();
+
+        List<Configuration> baseConfigs;
+        if (projectClients != null) {
+            baseConfigs = projectClients;
+        } else if (clientFile != null) {
+            // the file may have been changed since it was imported
+            baseConfigs = importClients(clientFile);
+            if (baseConfigs == null) {
+                return null;
+            }
+        } else {
+            baseConfigs = new ArrayList<>(clients.size());
+            for (int i = 1; i <= clients.size(); i++) {
+                baseConfigs.add(createClientConfig(clients.get(i-1), i));
+            }
+        }
+
+        if (!checkClientIps(siteConfig, baseConfigs)) {
+            return null;
+        }
+        List<Configuration> all = new ArrayList<>(baseConfigs);
+        all.add(siteConfig);
+        if (!checkNetworks(all)) {
+            return null;
+        }
+
+        // the missing keys of the site and the clients are derived by the export, in the background
+        clientConfigs.clear();
+        for (Configuration clientConfig : baseConfigs) {
+            clientConfigs.add(applyClientSettings(clientConfig));
+        }
+        if (project != null) {
+            List<Configuration> configs = new ArrayList<>(clientConfigs);
+            configs.add(siteConfig);
+            project.restoreKeys(configs);
+        }
+        // the export adds the keys to these configurations, so they are part of the project when it is saved next time
+        project = Project.clientToSite(siteConfig, clientConfigs);
+        return siteConfig;
+    }
+
+    /**
+     * Check that the tunnel IPs of the clients are unique and part of the site's tunnel network
+     * Shows a dialog with the first invalid clients if there are any
+     *
+     * @return true if all IPs are valid
+     */
+    private boolean checkClientIps(SiteConfiguration siteConfig, List<Configuration> clientConfigs) {
+        List<String> invalid;
+        try {
+            invalid = IPv4Allocator.forSite(siteConfig).reserveAll(clientConfigs);
+        } catch (IllegalArgumentException e) {
+            markInputField(s_tunnelMask, true);
+            PopUp.showAlert(Alert.AlertType.ERROR, "Input Error!", null, e.getMessage());
+            return false;
+        }
+        if (invalid.isEmpty()) {
+            return true;
+        }
+        logger.warning(invalid.size() + " clients have an invalid tunnel IP. Showing error dialog");
+        PopUp.showErrors("Input Error!", invalid.size() + " clients have an invalid tunnel IP", invalid, invalid.size());
+        return false;
     }
 
     /**
@@ -262,19 +551,22 @@ public class C2SController implements Initializable {
                 valid = false;
             }
         }
-        for (Pair<TextField, TextField> pair : clients) {
-            error = validateIPv4(pair.getKey().getText());
-            markInputField(pair.getKey(), !error);
-            if (!error) {
-                logger.warning("One of the Clients IP fields is not valid!");
-                valid = false;
-            }
+        // imported clients are checked line by line when the file is read
+        if (clientFile == null) {
+            for (Pair<TextField, TextField> pair : clients) {
+                error = validateIPv4(pair.getKey().getText());
+                markInputField(pair.getKey(), !error);
+                if (!error) {
+                    logger.warning("One of the Clients IP fields is not valid!");
+                    valid = false;
+                }
 
-            error = validateNetmask(pair.getValue().getText());
-            markInputField(pair.getValue(), !error);
-            if (!error) {
-                logger.warning("One of the Clients Netmask fields is not valid!");
-                valid = false;
+                error = validateNetmask(pair.getValue().getText());
+                markInputField(pair.getValue(), !error);
+                if (!error) {
+                    logger.warning("One of the Clients Netmask fields is not valid!");
+                    valid = false;
+                }
             }
         }
 
@@ -302,8 +594,7 @@ public class C2SController implements Initializable {
     private SiteConfiguration createSiteConfig() {
         logger.info("Creating config for Site");
         SiteConfiguration siteConfig = new SiteConfiguration();
-        siteConfig.setName("site");
-        siteConfig.setKeypair(new Keypair());
+        siteConfig.setName(SiteConfiguration.NAME);
         siteConfig.setEndpoint(this.s_publicIP.getText());
         siteConfig.setListenPort(Integer.parseInt(this.s_publicPort.getText()));
         siteConfig.setIp(this.s_tunnelIP.getText());
@@ -315,35 +606,42 @@ public class C2SController implements Initializable {
             siteConfig.setKeepAliveSeconds(Integer.parseInt(this.s_sec.getText()));
         }
         for (Pair<TextField, TextField> pair : localNetworks) {
-            siteConfig.addLocalNetwork(new Pair<>(pair.getKey().getText(), new IPv4Netmask(pair.getValue().getText())));
+            siteConfig.addLocalNetwork(IPv4Cidr.of(pair.getKey().getText(), IPv4Netmask.of(pair.getValue().getText())));
         }
 
         return siteConfig;
     }
 
     /**
-     * Creates a SiteConfiguration object for site2 with all the data that the user has entered
+     * Creates a Configuration object for a client with the tunnel IP and netmask the user has entered
      *
-     * @return an object of SiteConfiguration for Site2
+     * @return an object of Configuration for the client
      */
     private Configuration createClientConfig(Pair<TextField, TextField> ipmask, int id) {
         logger.info("Creating config for Client " + id);
         Configuration clientConfig = new Configuration();
         clientConfig.setName(String.format("client-%d", id));
-        clientConfig.setKeypair(new Keypair());
         clientConfig.setIp(ipmask.getKey().getText());
         clientConfig.setNetmask(ipmask.getValue().getText());
-        if (this.c_psk.isSelected()) {
-            clientConfig.setPsk(Keypair.genpsk());
-        }
-        if (c_defaultGateway.isSelected()) {
-            clientConfig.setDefaultGateway(true);
-        }
+        return clientConfig;
+    }
+
+    /**
+     * Add the settings shared by all clients to a client's configuration
+     *
+     * @return the given configuration
+     */
+    private Configuration applyClientSettings(Configuration clientConfig) {
+        // the clients of a project already have these settings, they are replaced by the current input
+        clientConfig.setPsk(this.c_psk.isSelected() ? Keypair.genpsk() : null);
+        clientConfig.setDefaultGateway(c_defaultGateway.isSelected());
         if (!this.c_tunnelInterfaceName.getText().isEmpty()) {
             clientConfig.setIntName(this.c_tunnelInterfaceName.getText());
         }
         if (!this.c_sec.getText().isEmpty()) {
             clientConfig.setKeepAliveSeconds(Integer.parseInt(this.c_sec.getText()));
+        } else {
+            clientConfig.setKeepAlive(false);
         }
         return clientConfig;
     }
@@ -361,30 +659,22 @@ public class C2SController implements Initializable {
             logger.warning("No directory selected. No Configuration will be written");
         } else {
             logger.info("Directory selected: '" + selectedDirectory + "'");
-            try {
-                logger.info("Prompting the user for a ZIP password");
-                String password = promptPassword();
-                if (password.equals("")) {
-                    // no password entered or dialog canceled
-                    logger.warning("No password entered or Dialog canceled. Showing error dialog");
-                    PopUp.showAlert(Alert.AlertType.ERROR, "Empty Password!", "Empty or no password entered!", "Please enter a password for the resulting ZIP file");
+            logger.info("Prompting the user for a ZIP password");
+            String password = promptPassword();
+            if (password.equals("")) {
+                // no password entered or dialog canceled
+                logger.warning("No password entered or Dialog canceled. Showing error dialog");
+                PopUp.showAlert(Alert.AlertType.ERROR, "Empty Password!", "Empty or no password entered!", "Please enter a password for the resulting ZIP file");
+            } else {
+                logger.info("Password entered. Writing and zipping and encrypting the files in the background");
+                Export export = Export.clientToSite(siteConfig, new ArrayList<>(clientConfigs), selectedDirectory.toString());
+                if (chk_bundles.isSelected()) {
+                    // every client only gets its own keys
+                    export.bundles(password);
                 } else {
-                    logger.info("Password entered. Writing and zipping and encrypting the files");
-                    siteConfig.generateConfigFile(clientConfigs, selectedDirectory + "/site.conf");
-                    siteConfig.generateSetupFile(selectedDirectory + "/setup_site.conf");
-                    for (int i = 1; i <= clientConfigs.size(); i++) {
-                        Configuration clientConfig = clientConfigs.get(i-1);
-                        clientConfig.generateConfigFile(siteConfig, selectedDirectory + String.format("/client-%d.conf", i));
-                        clientConfig.generateSetupFile(siteConfig, selectedDirectory + String.format("/setup_client-%d.sh", i));
-                    }
-                    Configuration.copyInstaller(selectedDirectory + "/install_wireguard.sh");
-                    Configuration.copyReadme(selectedDirectory + "/README.txt", "README_c2s.txt");
-                    zipConfiguration(selectedDirectory.toString(), password);
-                    Configuration.deleteFiles(selectedDirectory.toString());
+                    export.zip(password);
                 }
-            } catch (ZipException | IOException e) {
-                logger.warning("IO or ZIP error. Showing error dialog");
-                PopUp.showAlert(Alert.AlertType.ERROR, "Access Rights!", "Access to this folder is denied!", "Please choose another folder than " + selectedDirectory);
+                ExportTask.start(export, main_anchorPane, selectedDirectory.toString());
             }
         }
     }
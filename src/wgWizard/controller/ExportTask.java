@@ -0,0 +1,100 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.controller;
+
+import javafx.concurrent.Task;
+import javafx.scene.control.*;
+import javafx.scene.layout.AnchorPane;
+import javafx.scene.layout.VBox;
+import wgWizard.config.Export;
+import wgWizard.helper.Log;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs an Export in the background, so the window stays responsive while keys are generated and files are written
+ * The progress is shown in a dialog. Closing the dialog cancels the export, the files written so far are deleted then
+ */
+public class ExportTask extends Task<Void> {
+    // one export at a time, the dialog blocks the window until it is done
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "wgWizard-export");
+        // do not keep the application alive after the window has been closed
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Export export;
+
+    private ExportTask(Export export) {
+        this.export = export;
+    }
+
+    @Override
+    protected Void call() throws Exception {
+        export.run((stage, done, total) -> {
+            updateMessage(stage.getDescription());
+            updateProgress(done, total);
+        }, this::isCancelled);
+        return null;
+    }
+
+    /**
+     * Start an export in the background and show its progress
+     *
+     * @param export    the export
+     * @param main      the main pane of the window, the dialog belongs to its window
+     * @param directory the destination directory, for the dialogs
+     */
+    public static void start(Export export, AnchorPane main, String directory) {
+        Logger logger = Log.getInstance();
+        ExportTask task = new ExportTask(export);
+
+        Label label = new Label();
+        label.textProperty().bind(task.messageProperty());
+        ProgressBar progressBar = new ProgressBar();
+        progressBar.setPrefWidth(360);
+        progressBar.progressProperty().bind(task.progressProperty());
+
+        Dialog<Void> dialog = new Dialog<>();
+        dialog.initOwner(main.getScene().getWindow());
+        dialog.setTitle("Saving");
+        dialog.setHeaderText("Writing the configuration to " + directory);
+        dialog.getDialogPane().setContent(new VBox(10, label, progressBar));
+        dialog.getDialogPane().getButtonTypes().add(ButtonType.CANCEL);
+        // the dialog can be closed in several ways, all of them cancel the export. Cancelling a finished task does nothing
+        dialog.setOnHidden(event -> task.cancel());
+
+        task.setOnSucceeded(event -> {
+            logger.info("Export to " + directory + " finished");
+            dialog.close();
+        });
+        task.setOnCancelled(event -> logger.warning("Export to " + directory + " was cancelled"));
+        task.setOnFailed(event -> {
+            dialog.close();
+            Throwable e = task.getException();
+            logger.log(Level.WARNING, "Export to " + directory + " failed. Showing error dialog", e);
+            if (e instanceof IOException) {
+                // an AccessDeniedException is an IOException as well
+                PopUp.showAlert(Alert.AlertType.ERROR, "Access Rights!", "Access to this folder is denied!", "Please choose another folder than " + directory);
+            } else {
+                PopUp.showAlert(Alert.AlertType.ERROR, "Error!", "The configuration could not be saved!", String.valueOf(e.getMessage()));
+            }
+        });
+
+        logger.info("Starting export to " + directory);
+        dialog.show();
+        EXECUTOR.execute(task);
+    }
+}
@@ -21,7 +21,6 @@ import javafx.scene.layout.AnchorPane;
 import javafx.stage.Stage;
 import wgWizard.Main;
 import wgWizard.helper.Log;
-import wgWizard.helper.PopUp;
 
 import java.io.IOException;
 import java.net.URL;
@@ -118,8 +117,10 @@ public class MainController implements Initializable {
 
     /**
      * Handle switching scenes. load new view.
+     *
+     * @return the controller of the new view, or null if the view could not be loaded
      */
-    public static void loadNewScene(String view, Class thisClass, AnchorPane anchorPane) {
+    public static <T> T loadNewScene(String view, Class thisClass, AnchorPane anchorPane) {
         FXMLLoader loader = new FXMLLoader(thisClass.getResource("/wgWizard/res/view/" + view));
         setUserAgentStylesheet(STYLESHEET_MODENA);
 
@@ -134,10 +135,12 @@ public class MainController implements Initializable {
             stage.setScene(scene);
             stage.setResizable(true);
             stage.show();
+            return loader.getController();
 
         } catch (IOException e) {
             PopUp.showAlert(Alert.AlertType.ERROR, "Error", "Error loading the view file",
                     String.format("Something went wrong. Could not load '%s'. Please try again.", view));
+            return null;
         }
     }
 }
@@ -1,8 +1,9 @@
-package wgWizard.helper;
+package wgWizard.controller;
 
 import javafx.scene.control.Alert;
 import javafx.scene.image.ImageView;
 
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -28,4 +29,20 @@ public class PopUp {
         }
         alert.showAndWait();
     }
+
+    /**
+     * Show an error dialog with the first few of a list of errors
+     * @param title The title as String
+     * @param header The header as String
+     * @param errors the errors, one per line
+     * @param count the number of all errors, there may be more than in the list
+     */
+    public static void showErrors(String title, String header, List<String> errors, int count) {
+        // a dialog can only show a few lines
+        StringBuilder message = new StringBuilder(String.join("\n", errors.subList(0, Math.min(10, errors.size()))));
+        if (count > 10) {
+            message.append("\n... and ").append(count - 10).append(" more");
+        }
+        showAlert(Alert.AlertType.ERROR, title, header, message.toString());
+    }
 }
@@ -19,13 +19,14 @@ import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.GridPane;
 import javafx.stage.DirectoryChooser;
 import javafx.util.Pair;
-import net.lingala.zip4j.exception.ZipException;
 import wgWizard.config.Configuration;
+import wgWizard.config.Export;
+import wgWizard.config.IPv4Cidr;
 import wgWizard.config.IPv4Netmask;
 import wgWizard.config.Keypair;
+import wgWizard.config.NetworkConflicts;
 import wgWizard.helper.Log;
-import wgWizard.helper.PopUp;
-import wgWizard.helper.Zipper;
+import wgWizard.helper.Validator;
 
 import java.io.File;
 import java.io.IOException;
@@ -36,17 +37,9 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class S2SController implements Initializable {
 
-    private static final String IPV4_ADDR_PATTERN =
-            "^([01]?\\d\\d?|2[0-4]\\d|25[0-5])\\." +
-                    "([01]?\\d\\d?|2[0-4]\\d|25[0-5])\\." +
-                    "([01]?\\d\\d?|2[0-4]\\d|25[0-5])\\." +
-                    "([01]?\\d\\d?|2[0-4]\\d|25[0-5])$";
-
     @FXML
     private MenuItem menu_close, menu_about;
 
@@ -125,6 +118,9 @@ public class S2SController implements Initializable {
             // create config files and the installer
             site1Config = createSite1Config();
             site2Config = createSite2Config();
+            if (!checkNetworks(Arrays.asList(site1Config, site2Config))) {
+                return;
+            }
 
             logger.info("Opening directory chooser");
             // let user choose a directory
@@ -133,22 +129,16 @@ public class S2SController implements Initializable {
                 logger.warning("No directory selected. No Configuration will be written");
             } else {
                 logger.info("Directory selected: '" + selectedDirectory + "'");
-                try {
-                    logger.info("Prompting the user for a ZIP password");
-                    String password = promptPassword();
-                    if (password.equals("")) {
-                        // no password entered or dialog canceled
-                        logger.warning("No password entered or Dialog canceled. Showing error dialog");
-                        PopUp.showAlert(Alert.AlertType.ERROR, "Empty Password!", "Empty or no password entered!", "Please enter a password for the resulting ZIP file");
-                    } else {
-                        logger.info("Password entered. Writing and zipping and encrypting the files");
-                        writeConfiguration(site1Config, site2Config, selectedDirectory + "");
-                        zipConfiguration(selectedDirectory.toString(), password);
-                        Configuration.deleteFiles(selectedDirectory.toString());
-                    }
-                } catch (ZipException | IOException e) {
-                    logger.warning("IO or ZIP error. Showing error dialog");
-                    PopUp.showAlert(Alert.AlertType.ERROR, "Access Rights!", "Access to this folder is denied!", "Please choose another folder than " + selectedDirectory);
+                logger.info("Prompting the user for a ZIP password");
+                String password = promptPassword();
+                if (password.equals("")) {
+                    // no password entered or dialog canceled
+                    logger.warning("No password entered or Dialog canceled. Showing error dialog");
+                    PopUp.showAlert(Alert.AlertType.ERROR, "Empty Password!", "Empty or no password entered!", "Please enter a password for the resulting ZIP file");
+                } else {
+                    logger.info("Password entered. Writing and zipping and encrypting the files in the background");
+                    Export export = Export.siteToSite(site1Config, site2Config, selectedDirectory.toString()).zip(password);
+                    ExportTask.start(export, main_anchorPane, selectedDirectory.toString());
                 }
             }
         } else {
@@ -157,6 +147,23 @@ public class S2SController implements Initializable {
         }
     }
 
+    /**
+     * Check that no local network overlaps another one or the tunnel network
+     * Shows a dialog with the first overlaps if there are any
+     *
+     * @param configs the configurations of all sites and clients
+     * @return true if no networks overlap
+     */
+    public static boolean checkNetworks(List<Configuration> configs) {
+        List<String> conflicts = NetworkConflicts.find(configs);
+        if (conflicts.isEmpty()) {
+            return true;
+        }
+        Log.getInstance().warning(conflicts.size() + " overlaps of the networks. Showing error dialog");
+        PopUp.showErrors("Input Error!", "Overlapping networks can not be routed", conflicts, conflicts.size());
+        return false;
+    }
+
     /**
      * Handle clicking the plus button for adding more local networks
      * Add a new row in the Grid
@@ -321,14 +328,7 @@ public class S2SController implements Initializable {
      * @return true if valid, false if invalid
      */
     public static boolean validateIPv4(String ip) {
-        Pattern pattern = Pattern.compile(IPV4_ADDR_PATTERN);
-        Matcher matcher = pattern.matcher(ip);
-        if (matcher.matches()) {
-            return true;
-        } else {
-            Log.getInstance().warning(String.format("IP '%s' is not valid!", ip));
-            return false;
-        }
+        return Validator.validateIPv4(ip);
     }
 
     /**
@@ -339,18 +339,7 @@ public class S2SController implements Initializable {
      * @return true if valid, false if invalid
      */
     public static boolean validateListenPort(String listenPort) {
-        try {
-            int port = Integer.parseInt(listenPort);
-            if (port >= 1 && port <= 65535) {
-                return true;
-            } else {
-                Log.getInstance().warning(String.format("listenPort '%s' is not valid!", listenPort));
-                return false;
-            }
-        } catch (NumberFormatException nfe) {
-            Log.getInstance().warning(String.format("listenPort '%s' is not a valid Integer valid!", listenPort));
-            return false;
-        }
+        return Validator.validateListenPort(listenPort);
     }
 
     /**
@@ -361,22 +350,7 @@ public class S2SController implements Initializable {
      * @return true if valid, false if invalid
      */
     public static boolean validateInterfaceName(String interfaceName) {
-        int wgNumber;
-        if (interfaceName.startsWith("wg")) {
-            try {
-                wgNumber = Integer.parseInt(interfaceName.substring(2));
-            } catch (NumberFormatException e) {
-                return false;
-            }
-            if (wgNumber >= 0 && wgNumber <= 255) {
-                return true;
-            } else {
-                Log.getInstance().warning(String.format("InterfaceName '%s' starts with 'wg' but the number is not valid.", interfaceName));
-                return false;
-            }
-        }
-        Log.getInstance().warning(String.format("InterfaceName '%s' is not valid!", interfaceName));
-        return false;
+        return Validator.validateInterfaceName(interfaceName);
     }
 
     /**
@@ -387,18 +361,7 @@ public class S2SController implements Initializable {
      * @return true if valid, false if invalid
      */
     public static boolean validateKeepaliveSec(String keepalive) {
-        try {
-            int sec = Integer.parseInt(keepalive);
-            if (sec >= 1 && sec <= 65535) {
-                return true;
-            } else {
-                Log.getInstance().warning(String.format("listenPort '%s' is not valid!", keepalive));
-                return false;
-            }
-        } catch (NumberFormatException nfe) {
-            Log.getInstance().warning(String.format("listenPort '%s' is not a valid Integer valid!", keepalive));
-            return false;
-        }
+        return Validator.validateKeepaliveSec(keepalive);
     }
 
     /**
@@ -408,7 +371,7 @@ public class S2SController implements Initializable {
      * @return true if valid, false if invalid
      */
     public static boolean validateNetmask(String netmask) {
-        return IPv4Netmask.validateIPv4Netmask(netmask) || IPv4Netmask.validateIPv4NetmaskPrefix(netmask);
+        return Validator.validateNetmask(netmask);
     }
 
     /**
@@ -435,7 +398,6 @@ public class S2SController implements Initializable {
         logger.info("Creating config for Site 1");
         Configuration site1Config = new Configuration();
         site1Config.setName("site1");
-        site1Config.setKeypair(new Keypair());
         site1Config.setEndpoint(this.s1_publicIP.getText());
         site1Config.setListenPort(Integer.parseInt(this.s1_publicPort.getText()));
         site1Config.setIp(this.s1_tunnelIP.getText());
@@ -453,7 +415,7 @@ public class S2SController implements Initializable {
             site1Config.setKeepAliveSeconds(Integer.parseInt(this.s1_sec.getText()));
         }
         for (Pair<TextField, TextField> pair : s1_localNetworks) {
-            site1Config.addLocalNetwork(new Pair<>(pair.getKey().getText(), new IPv4Netmask(pair.getValue().getText())));
+            site1Config.addLocalNetwork(IPv4Cidr.of(pair.getKey().getText(), IPv4Netmask.of(pair.getValue().getText())));
         }
 
         return site1Config;
@@ -468,7 +430,6 @@ public class S2SController implements Initializable {
         logger.info("Creating config for Site 2");
         Configuration site2Config = new Configuration();
         site2Config.setName("site2");
-        site2Config.setKeypair(new Keypair());
         site2Config.setEndpoint(this.s2_publicIP.getText());
         site2Config.setListenPort(Integer.parseInt(this.s2_publicPort.getText()));
         site2Config.setIp(this.s2_tunnelIP.getText());
@@ -486,7 +447,7 @@ public class S2SController implements Initializable {
             site2Config.setKeepAliveSeconds(Integer.parseInt(this.s2_sec.getText()));
         }
         for (Pair<TextField, TextField> pair : s2_localNetworks) {
-            site2Config.addLocalNetwork(new Pair<>(pair.getKey().getText(), new IPv4Netmask(pair.getValue().getText())));
+            site2Config.addLocalNetwork(IPv4Cidr.of(pair.getKey().getText(), IPv4Netmask.of(pair.getValue().getText())));
         }
 
         return site2Config;
@@ -534,30 +495,4 @@ public class S2SController implements Initializable {
             return dir;
         }
     }
-
-    /**
-     * Generate the wireguard configuration files and the setup scripts
-     * Opens a DirectoryChooser dialog which lets the user select the destination directory
-     *
-     * @param site1Config configuration of Site1
-     * @param site2Config configuration of Site2
-     */
-    private void writeConfiguration(Configuration site1Config, Configuration site2Config, String selectedDirectory) throws IOException {
-        site1Config.generateConfigFile(site2Config, selectedDirectory + "/site1.conf");
-        site2Config.generateConfigFile(site1Config, selectedDirectory + "/site2.conf");
-        site1Config.generateSetupFile(site2Config, selectedDirectory + "/setup_site1.sh");
-        site2Config.generateSetupFile(site1Config, selectedDirectory + "/setup_site2.sh");
-        Configuration.copyInstaller(selectedDirectory + "/install_wireguard.sh");
-        Configuration.copyReadme(selectedDirectory + "/README.txt", "README_s2s.txt");
-    }
-
-    /**
-     * pack the generated setup and configuration files in a password protected ZIP
-     * delete the original files
-     *
-     * @param filePath path where the setup files have been saved
-     */
-    public static void zipConfiguration(String filePath, String password) throws ZipException {
-        Zipper.pack(filePath, password);
-    }
 }
@@ -0,0 +1,82 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.helper;
+
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+/**
+ * Compression profiles of the ZIP entries, trading the size of the ZIP for the time to write it
+ * Every entry is AES-256 encrypted, whatever the profile.
+ */
+public enum Compression {
+    STORE(Compression.METHOD_STORE, Deflater.NO_COMPRESSION),
+    FAST(Compression.METHOD_DEFLATE, Deflater.BEST_SPEED),
+    DEFAULT(Compression.METHOD_DEFLATE, 5),
+    ULTRA(Compression.METHOD_DEFLATE, Deflater.BEST_COMPRESSION);
+
+    // below this size the deflate blocks save next to nothing, a config is mostly base64 keys
+    public static final int SMALL_FILE = 1024;
+    // from this size on, eg: the config of a site with thousands of clients, the time matters more than the ratio
+    public static final int LARGE_FILE = 1024 * 1024;
+
+    // the compression methods of the ZIP format
+    private static final int METHOD_STORE = 0;
+    private static final int METHOD_DEFLATE = 8;
+
+    private final int method;
+    private final int level;
+
+    Compression(int method, int level) {
+        this.method = method;
+        this.level = level;
+    }
+
+    /**
+     * Choose the profile of a file by its type and size
+     * Small files are stored, large configs are compressed fast and text, eg: the README, is compressed as well as possible
+     *
+     * @param name the file name
+     * @param size the size of the file in bytes
+     * @return the profile
+     */
+    public static Compression forFile(String name, long size) {
+        if (size < SMALL_FILE) {
+            return STORE;
+        }
+        if (name.endsWith(".conf")) {
+            return size < LARGE_FILE ? DEFAULT : FAST;
+        }
+        return size < LARGE_FILE ? ULTRA : DEFAULT;
+    }
+
+    /**
+     * Parse a profile name, case insensitive
+     *
+     * @param name store, fast, default or ultra
+     * @return the profile
+     * @throws IllegalArgumentException if there is no such profile
+     */
+    public static Compression of(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown compression '" + name + "', use store, fast, default or ultra");
+        }
+    }
+
+    int getMethod() {
+        return method;
+    }
+
+    int getLevel() {
+        return level;
+    }
+}
@@ -17,14 +17,19 @@ import java.util.logging.Logger;
  * Logging to console
  */
 public class Log {
-    private static Logger LOGGER = null;
+    // created when the class is loaded, so threads generating configs in parallel share one instance
+    private static final Logger LOGGER = createLogger();
 
     public static Logger getInstance() {
-        if (LOGGER == null) {
-            LOGGER = Logger.getLogger(Log.class.getName());
-            LOGGER.setLevel(Level.ALL);
-        }
-
         return LOGGER;
     }
+
+    private static Logger createLogger() {
+        Logger logger = Logger.getLogger(Log.class.getName());
+        // keep a level set in the logging config of an application that embeds the wizard
+        if (logger.getLevel() == null) {
+            logger.setLevel(Level.ALL);
+        }
+        return logger;
+    }
 }
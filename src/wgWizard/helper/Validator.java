@@ -0,0 +1,134 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.helper;
+
+import wgWizard.config.IPv4Address;
+import wgWizard.config.IPv4Netmask;
+
+import java.util.regex.Pattern;
+
+/**
+ * Validation of the user input, shared by the wizard and the command line
+ * Invalid input is logged as a warning
+ */
+public class Validator {
+    // the name ends up in the file names of the config and setup script
+    private static final Pattern NAME_PATTERN = Pattern.compile("^[A-Za-z0-9_-][A-Za-z0-9_.-]{0,63}$");
+
+    /**
+     * Validate an IP
+     *
+     * @param ip The IP as string x.x.x.x, without any kind of netmask
+     * @return true if valid, false if invalid
+     */
+    public static boolean validateIPv4(String ip) {
+        if (IPv4Address.isValid(ip)) {
+            return true;
+        } else {
+            Log.getInstance().warning(String.format("IP '%s' is not valid!", ip));
+            return false;
+        }
+    }
+
+    /**
+     * Validate the listen port.
+     * Valid range: 1 - 65535
+     *
+     * @param listenPort the Port entered by the user
+     * @return true if valid, false if invalid
+     */
+    public static boolean validateListenPort(String listenPort) {
+        try {
+            int port = Integer.parseInt(listenPort);
+            if (port >= 1 && port <= 65535) {
+                return true;
+            } else {
+                Log.getInstance().warning(String.format("listenPort '%s' is not valid!", listenPort));
+                return false;
+            }
+        } catch (NumberFormatException nfe) {
+            Log.getInstance().warning(String.format("listenPort '%s' is not a valid Integer valid!", listenPort));
+            return false;
+        }
+    }
+
+    /**
+     * Validate the wireguard interface name
+     * Valid range: wg0 - wg255
+     *
+     * @param interfaceName the interface name entered by the user, eg: wg21
+     * @return true if valid, false if invalid
+     */
+    public static boolean validateInterfaceName(String interfaceName) {
+        int wgNumber;
+        if (interfaceName.startsWith("wg")) {
+            try {
+                wgNumber = Integer.parseInt(interfaceName.substring(2));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            if (wgNumber >= 0 && wgNumber <= 255) {
+                return true;
+            } else {
+                Log.getInstance().warning(String.format("InterfaceName '%s' starts with 'wg' but the number is not valid.", interfaceName));
+                return false;
+            }
+        }
+        Log.getInstance().warning(String.format("InterfaceName '%s' is not valid!", interfaceName));
+        return false;
+    }
+
+    /**
+     * Validate the keepalive value
+     * Valid range: 1 - 65535
+     *
+     * @param keepalive the keepalive value in seconds
+     * @return true if valid, false if invalid
+     */
+    public static boolean validateKeepaliveSec(String keepalive) {
+        try {
+            int sec = Integer.parseInt(keepalive);
+            if (sec >= 1 && sec <= 65535) {
+                return true;
+            } else {
+                Log.getInstance().warning(String.format("listenPort '%s' is not valid!", keepalive));
+                return false;
+            }
+        } catch (NumberFormatException nfe) {
+            Log.getInstance().warning(String.format("listenPort '%s' is not a valid Integer valid!", keepalive));
+            return false;
+        }
+    }
+
+    /**
+     * Validate the name of a site, client or node
+     * Valid: up to 64 letters, digits, '_', '-' and '.', not starting with '.'
+     *
+     * @param name the name, eg: client-1
+     * @return true if valid, false if invalid
+     */
+    public static boolean validateName(String name) {
+        if (NAME_PATTERN.matcher(name).matches()) {
+            return true;
+        }
+        Log.getInstance().warning(String.format("Name '%s' is not valid!", name));
+        return false;
+    }
+
+    /**
+     * Validate the IPv4 subnet mask
+     *
+     * @param netmask the netmask in full format "255.255.255.0" or as prefix "24"
+     * @return true if valid, false if invalid
+     */
+    public static boolean validateNetmask(String netmask) {
+        return IPv4Netmask.validateIPv4Netmask(netmask) || IPv4Netmask.validateIPv4NetmaskPrefix(netmask);
+    }
+}
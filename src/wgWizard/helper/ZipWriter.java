@@ -0,0 +1,430 @@
+/*
+ * This software is GPL2 licensed, find further license information
+ * in the LICENSE file located in the root directory
+ *
+ * Created on : 22-12-17
+ * Authors    : Christian Colic, Marc Werenfels
+ *
+ */
+
+package wgWizard.helper;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a password protected ZIP entry by entry, every entry is AES-256 encrypted in the WinZip AE-2 format,
+ * which is what zip4j, 7-Zip and WinZip read
+ * Everything written to this stream goes into the current entry, which is kept in memory until it is closed.
+ * Then it is compressed and encrypted on a worker thread of the common pool, while the next entries are written.
+ * A ZipWriter used on a worker of a pool, eg: to write many ZIPs in parallel, does the work in that thread instead.
+ * The entries are written to the ZIP in the order in which they were added, and the central directory is written
+ * once at the end, so the time to write a ZIP grows linearly with the number of entries. Closing the stream finishes the ZIP.
+ *
+ * Without a fixed compression, the compression of every entry is chosen by its name and size, see Compression.forFile.
+ * An entry that does not get smaller by compressing it is stored.
+ */
+public class ZipWriter extends OutputStream {
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    // AES encryption needs version 5.1
+    private static final int VERSION = 51;
+    private static final int ZIP64_VERSION = 45;
+    // encrypted, UTF-8 file names
+    private static final int FLAGS = 0x0001 | 0x0800;
+    private static final int METHOD_AES = 99;
+    private static final int AES_EXTRA_FIELD = 0x9901;
+    private static final int AES_EXTRA_LENGTH = 11;
+    private static final int AE_2 = 2;
+    private static final int AES_256 = 3;
+    private static final int SALT_LENGTH = 16;
+    private static final int KEY_LENGTH = 32;
+    private static final int VERIFIER_LENGTH = 2;
+    private static final int AUTH_CODE_LENGTH = 10;
+    private static final int PBKDF2_ITERATIONS = 1000;
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+
+    // every worker thread keeps its own cipher, MAC, deflater and random source
+    private static final ThreadLocal<Encoder> ENCODER = ThreadLocal.withInitial(Encoder::new);
+
+    private final OutputStream out;
+    private final char[] password;
+    private final Compression compression;
+    private final int dosTime;
+    // the entries being compressed and encrypted, at most this many are kept in memory
+    private final int window = Math.max(4, 4 * ForkJoinPool.getCommonPoolParallelism());
+    private final Deque<CompletableFuture<Entry>> inFlight = new ArrayDeque<>();
+    private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+    private final ByteBuffer header = ByteBuffer.allocate(128).order(ByteOrder.LITTLE_ENDIAN);
+    private Buffer current;
+    private String currentName;
+    private long offset;
+    private long entries;
+    private boolean closed;
+
+    /**
+     * Start a new ZIP, choosing the compression of every entry by its name and size
+     *
+     * @param out      where to write the ZIP to, closed together with this stream
+     * @param password the password of all entries
+     */
+    public ZipWriter(OutputStream out, String password) {
+        this(out, password, null);
+    }
+
+    /**
+     * Start a new ZIP
+     *
+     * @param out         where to write the ZIP to, closed together with this stream
+     * @param password    the password of all entries
+     * @param compression the compression of all entries, or null to choose it for every entry
+     */
+    public ZipWriter(OutputStream out, String password, Compression compression) {
+        this.out = out;
+        this.password = password.toCharArray();
+        this.compression = compression;
+        this.dosTime = dosTime(LocalDateTime.now());
+    }
+
+    /**
+     * Start the next entry, the previous one is closed if it is still open
+     *
+     * @param name the file name in the ZIP
+     * @throws IOException if the previous entry can not be written
+     */
+    public void putNextEntry(String name) throws IOException {
+        closeEntry();
+        currentName = name;
+        current = new Buffer();
+    }
+
+    /**
+     * Close the current entry, if there is one
+     * The entry is compressed and encrypted in the background, it is written once the entries before it are written
+     *
+     * @throws IOException if an earlier entry can not be written
+     */
+    public void closeEntry() throws IOException {
+        if (currentName == null) {
+            return;
+        }
+        String name = currentName;
+        Buffer content = current;
+        currentName = null;
+        current = null;
+        if (ForkJoinTask.inForkJoinPool()) {
+            // already on a worker, eg: when several ZIPs are written in parallel, waiting for other workers would only block this one
+            CompletableFuture<Entry> entry = new CompletableFuture<>();
+            try {
+                entry.complete(ENCODER.get().encode(name, content, compression, password));
+            } catch (RuntimeException e) {
+                entry.completeExceptionally(e);
+            }
+            inFlight.add(entry);
+        } else {
+            inFlight.add(CompletableFuture.supplyAsync(() -> ENCODER.get().encode(name, content, compression, password)));
+        }
+        while (inFlight.size() >= window) {
+            writeNext();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        currentEntry().write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        currentEntry().write(b, off, len);
+    }
+
+    private Buffer currentEntry() throws IOException {
+        if (current == null) {
+            throw new IOException("No ZIP entry started");
+        }
+        return current;
+    }
+
+    /**
+     * Close the current entry, write the central directory and close the underlying stream
+     * The password is cleared, the writer can not be used afterwards.
+     *
+     * @throws IOException if the ZIP can not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            closeEntry();
+            while (!inFlight.isEmpty()) {
+                writeNext();
+            }
+            writeEnd();
+            out.flush();
+        } finally {
+            // do not leave workers running for a ZIP that failed
+            for (CompletableFuture<Entry> entry : inFlight) {
+                entry.cancel(false);
+            }
+            Arrays.fill(password, '\0');
+            out.close();
+        }
+    }
+
+    /**
+     * Wait for the oldest entry and write it with its local header
+     */
+    private void writeNext() throws IOException {
+        Entry entry;
+        try {
+            entry = inFlight.removeFirst().join();
+        } catch (CompletionException e) {
+            throw new IOException("Can not encrypt the ZIP entry: " + e.getCause().getMessage(), e.getCause());
+        }
+        if (offset > MAX_32) {
+            throw new IOException("ZIP files larger than 4 GB are not supported");
+        }
+
+        header.clear();
+        header.putInt(LOCAL_HEADER).putShort((short) VERSION);
+        putEntryHeader(entry);
+        header.putShort((short) entry.name.length).putShort((short) AES_EXTRA_LENGTH);
+        out.write(header.array(), 0, header.position());
+        out.write(entry.name);
+        writeAesExtraField(out, entry.method);
+        out.write(entry.data);
+
+        header.clear();
+        header.putInt(CENTRAL_HEADER).putShort((short) VERSION).putShort((short) VERSION);
+        putEntryHeader(entry);
+        header.putShort((short) entry.name.length).putShort((short) AES_EXTRA_LENGTH)
+                // no comment, disk 0, no attributes
+                .putShort((short) 0).putShort((short) 0).putShort((short) 0).putInt(0)
+                .putInt((int) offset);
+        centralDirectory.write(header.array(), 0, header.position());
+        centralDirectory.write(entry.name);
+        writeAesExtraField(centralDirectory, entry.method);
+
+        offset += 30 + entry.name.length + AES_EXTRA_LENGTH + entry.data.length;
+        entries++;
+    }
+
+    /**
+     * The part that is the same in the local and the central header, from the flags to the uncompressed size
+     */
+    private void putEntryHeader(Entry entry) {
+        header.putShort((short) FLAGS).putShort((short) METHOD_AES).putInt(dosTime)
+                // AE-2 leaves out the CRC, the authentication code protects the data instead
+                .putInt(0)
+                .putInt(entry.data.length).putInt(entry.size);
+    }
+
+    private void writeAesExtraField(OutputStream stream, int method) throws IOException {
+        ByteBuffer extra = ByteBuffer.allocate(AES_EXTRA_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        extra.putShort((short) AES_EXTRA_FIELD).putShort((short) (AES_EXTRA_LENGTH - 4)).putShort((short) AE_2)
+                .put((byte) 'A').put((byte) 'E').put((byte) AES_256).putShort((short) method);
+        stream.write(extra.array());
+    }
+
+    /**
+     * Write the central directory and its end record, with the ZIP64 records if there are too many entries
+     */
+    private void writeEnd() throws IOException {
+        long centralOffset = offset;
+        long centralSize = centralDirectory.size();
+        centralDirectory.writeTo(out);
+        offset += centralSize;
+
+        boolean zip64 = entries > MAX_16 || centralOffset > MAX_32 || centralSize > MAX_32;
+        if (zip64) {
+            header.clear();
+            header.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY).putLong(44)
+                    .putShort((short) ZIP64_VERSION).putShort((short) ZIP64_VERSION).putInt(0).putInt(0)
+                    .putLong(entries).putLong(entries).putLong(centralSize).putLong(centralOffset);
+            header.putInt(ZIP64_LOCATOR).putInt(0).putLong(offset).putInt(1);
+            out.write(header.array(), 0, header.position());
+        }
+
+        header.clear();
+        header.putInt(END_OF_CENTRAL_DIRECTORY).putShort((short) 0).putShort((short) 0)
+                .putShort((short) Math.min(entries, MAX_16)).putShort((short) Math.min(entries, MAX_16))
+                .putInt((int) Math.min(centralSize, MAX_32)).putInt((int) Math.min(centralOffset, MAX_32))
+                .putShort((short) 0);
+        out.write(header.array(), 0, header.position());
+    }
+
+    private static int dosTime(LocalDateTime time) {
+        return (time.getYear() - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16
+                | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+    }
+
+    /**
+     * Gives access to the content without copying it
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(1024);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    /**
+     * A compressed and encrypted entry
+     */
+    private static final class Entry {
+        final byte[] name;
+        final int method;
+        final int size;
+        // salt, password verifier, encrypted content and authentication code
+        final byte[] data;
+
+        Entry(byte[] name, int method, int size, byte[] data) {
+            this.name = name;
+            this.method = method;
+            this.size = size;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Compresses and encrypts entries, one instance per thread
+     */
+    private static final class Encoder {
+        private final SecureRandom random = new SecureRandom();
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final byte[] salt = new byte[SALT_LENGTH];
+        private final byte[] counter = new byte[16 * 64];
+        private final byte[] keyStream = new byte[counter.length];
+        private final SecretKeyFactory keyFactory;
+        private final Cipher aes;
+        private final Mac hmac;
+        private byte[] compressed = new byte[4096];
+
+        Encoder() {
+            try {
+                keyFactory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
+                aes = Cipher.getInstance("AES/ECB/NoPadding");
+                hmac = Mac.getInstance("HmacSHA1");
+            } catch (GeneralSecurityException e) {
+                // every Java runtime has to provide these
+                throw new IllegalStateException(e);
+            }
+        }
+
+        Entry encode(String name, Buffer content, Compression compression, char[] password) {
+            byte[] input = content.array();
+            int size = content.size();
+            if (compression == null) {
+                compression = Compression.forFile(name, size);
+            }
+
+            int length = size;
+            byte[] plain = input;
+            int method = Compression.STORE.getMethod();
+            if (compression != Compression.STORE) {
+                length = deflate(input, size, compression.getLevel());
+                if (length < size) {
+                    plain = compressed;
+                    method = compression.getMethod();
+                } else {
+                    length = size;
+                }
+            }
+
+            byte[] data = new byte[SALT_LENGTH + VERIFIER_LENGTH + length + AUTH_CODE_LENGTH];
+            try {
+                random.nextBytes(salt);
+                PBEKeySpec spec = new PBEKeySpec(password, salt, PBKDF2_ITERATIONS, (2 * KEY_LENGTH + VERIFIER_LENGTH) * 8);
+                byte[] keys = keyFactory.generateSecret(spec).getEncoded();
+                // the spec keeps a copy of the password
+                spec.clearPassword();
+                System.arraycopy(salt, 0, data, 0, SALT_LENGTH);
+                System.arraycopy(keys, 2 * KEY_LENGTH, data, SALT_LENGTH, VERIFIER_LENGTH);
+
+                int start = SALT_LENGTH + VERIFIER_LENGTH;
+                aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(keys, 0, KEY_LENGTH, "AES"));
+                encrypt(plain, length, data, start);
+
+                hmac.init(new SecretKeySpec(keys, KEY_LENGTH, KEY_LENGTH, "HmacSHA1"));
+                hmac.update(data, start, length);
+                System.arraycopy(hmac.doFinal(), 0, data, start + length, AUTH_CODE_LENGTH);
+                Arrays.fill(keys, (byte) 0);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+            return new Entry(name.getBytes(StandardCharsets.UTF_8), method, size, data);
+        }
+
+        /**
+         * Deflate without zlib header into the compressed buffer
+         *
+         * @return the compressed length
+         */
+        private int deflate(byte[] input, int size, int level) {
+            deflater.reset();
+            deflater.setLevel(level);
+            deflater.setInput(input, 0, size);
+            deflater.finish();
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            return length;
+        }
+
+        /**
+         * AES in counter mode, as used by WinZip: the counter is a little endian number, starting at 1
+         */
+        private void encrypt(byte[] plain, int length, byte[] data, int start) throws GeneralSecurityException {
+            long block = 1;
+            for (int done = 0; done < length; done += counter.length) {
+                int n = Math.min(counter.length, length - done);
+                int blocks = (n + 15) / 16;
+                Arrays.fill(counter, 0, blocks * 16, (byte) 0);
+                for (int i = 0; i < blocks; i++, block++) {
+                    for (int b = 0; b < 8; b++) {
+                        counter[i * 16 + b] = (byte) (block >>> (8 * b));
+                    }
+                }
+                aes.update(counter, 0, blocks * 16, keyStream, 0);
+                for (int i = 0; i < n; i++) {
+                    data[start + done + i] = (byte) (plain[done + i] ^ keyStream[i]);
+                }
+            }
+        }
+    }
+}
@@ -9,12 +9,8 @@
 
 package wgWizard.helper;
 
-import net.lingala.zip4j.core.ZipFile;
-import net.lingala.zip4j.exception.ZipException;
-import net.lingala.zip4j.model.ZipParameters;
-import net.lingala.zip4j.util.Zip4jConstants;
-
-import java.io.File;
+import java.io.*;
+import java.nio.file.Files;
 
 /**
  * Helper class to create a password protected ZIP file
@@ -24,30 +20,38 @@ public class Zipper {
 
     /**
      * Pack the given filePath in a ZIP and encrypt with the given password
+     * The compression of every file is chosen by its type and size, see Compression.forFile
      * @param filePath Path of the folder that you want to pack
      * @param password Password
-     * @throws ZipException IO error
+     * @throws IOException if the folder can not be read or the ZIP can not be written
      */
-    public static void pack(String filePath, String password) throws ZipException {
-        String destinationZipFilePath = filePath + "/wireguard-configuration." + EXTENSION;
-
-        ZipParameters zipParameters = new ZipParameters();
-        zipParameters.setCompressionMethod(Zip4jConstants.COMP_DEFLATE);
-        zipParameters.setCompressionLevel(Zip4jConstants.DEFLATE_LEVEL_ULTRA);
-        zipParameters.setEncryptFiles(true);
-        zipParameters.setEncryptionMethod(Zip4jConstants.ENC_METHOD_AES);
-        zipParameters.setAesKeyStrength(Zip4jConstants.AES_STRENGTH_256);
-        zipParameters.setPassword(password);
+    public static void pack(String filePath, String password) throws IOException {
+        pack(filePath, password, null);
+    }
 
-        ZipFile zipFile = new ZipFile(destinationZipFilePath);
+    /**
+     * Pack the given filePath in a ZIP and encrypt with the given password
+     * The files are compressed and encrypted in parallel, see ZipWriter
+     * @param filePath    Path of the folder that you want to pack
+     * @param password    Password
+     * @param compression the compression of all files, or null to choose it for every file
+     * @throws IOException if the folder can not be read or the ZIP can not be written
+     */
+    public static void pack(String filePath, String password, Compression compression) throws IOException {
+        File destination = new File(filePath, "wireguard-configuration." + EXTENSION);
 
         File inFolder = new File(filePath);
         File[] listOfFiles = inFolder.listFiles();
+        if (listOfFiles == null) {
+            throw new FileNotFoundException("Not a directory: " + filePath);
+        }
 
-        assert listOfFiles != null;
-        for (File file : listOfFiles) {
-            if (file.isFile()) {
-                zipFile.addFile(file, zipParameters);
+        try (ZipWriter zip = new ZipWriter(new BufferedOutputStream(new FileOutputStream(destination)), password, compression)) {
+            for (File file : listOfFiles) {
+                if (file.isFile() && !file.equals(destination)) {
+                    zip.putNextEntry(file.getName());
+                    Files.copy(file.toPath(), zip);
+                }
             }
         }
     }